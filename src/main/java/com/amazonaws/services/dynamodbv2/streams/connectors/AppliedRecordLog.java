@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.amazonaws.services.dynamodbv2.model.Record;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Memory-mapped, append-only log of the (key, sequence number) pairs that were applied to the destination table since
+ * the last checkpoint of a shard. After a crash, KCL restarts the shard from its last checkpoint; records whose key
+ * already has an applied entry with the same or a newer sequence number are skipped instead of written again.
+ * <p>
+ * Each entry is a length byte, the 16 byte key digest and the ASCII sequence number. A zero length byte terminates the
+ * log. Entries survive a process crash as soon as they are written to the mapped buffer. The log is compacted, i.e.
+ * emptied, whenever the shard is checkpointed since all its entries are then covered by the checkpoint.
+ */
+@Log4j
+public class AppliedRecordLog implements Closeable {
+
+    private static final int DIGEST_LENGTH = 16;
+    private static final int MAX_SEQUENCE_NUMBER_LENGTH = 127;
+
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<UUID, String> applied = new HashMap<UUID, String>();
+    private boolean full = false;
+
+    /**
+     * Opens the log in the given file, creating it with the given size if it does not exist, and loads the entries
+     * written before a crash.
+     *
+     * @param file
+     *            the log file of the shard
+     * @param sizeBytes
+     *            the size of the mapped region
+     * @throws IOException
+     *             if the file cannot be opened or mapped
+     */
+    public AppliedRecordLog(final File file, final int sizeBytes) throws IOException {
+        this.file = file;
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+        load();
+    }
+
+    private void load() {
+        while (buffer.remaining() > 1) {
+            final int length = buffer.get(buffer.position());
+            if (length <= 0 || buffer.remaining() < 1 + DIGEST_LENGTH + length) {
+                break;
+            }
+            buffer.get();
+            final UUID key = new UUID(buffer.getLong(), buffer.getLong());
+            final byte[] sequenceNumber = new byte[length];
+            buffer.get(sequenceNumber);
+            put(key, new String(sequenceNumber, StandardCharsets.US_ASCII));
+        }
+        if (!applied.isEmpty()) {
+            log.info("Loaded " + applied.size() + " applied keys from " + file);
+        }
+    }
+
+    /**
+     * @param record
+     *            a DynamoDB Streams record about to be written to the destination table
+     * @return true if the same or a newer version of the record's item has already been applied
+     */
+    public synchronized boolean isApplied(final Record record) {
+        final String appliedSequenceNumber = applied.get(getKey(record));
+        return null != appliedSequenceNumber
+            && DynamoDBConnectorUtilities.compareSequenceNumbers(appliedSequenceNumber, record.getDynamodb().getSequenceNumber()) >= 0;
+    }
+
+    /**
+     * Record that the given record has been applied to the destination table.
+     *
+     * @param record
+     *            the applied DynamoDB Streams record
+     */
+    public synchronized void append(final Record record) {
+        final String sequenceNumber = record.getDynamodb().getSequenceNumber();
+        final UUID key = getKey(record);
+        put(key, sequenceNumber);
+        final byte[] bytes = sequenceNumber.getBytes(StandardCharsets.US_ASCII);
+        if (full || bytes.length > MAX_SEQUENCE_NUMBER_LENGTH) {
+            return;
+        }
+        final int position = buffer.position();
+        if (buffer.capacity() - position < 2 + DIGEST_LENGTH + bytes.length) {
+            full = true;
+            log.warn("Applied record log " + file + " is full, records applied until the next checkpoint may be written again after a crash");
+            return;
+        }
+        // write the entry before its length byte and terminate the log after it, so a crash never exposes a partial entry
+        buffer.position(position + 1);
+        buffer.putLong(key.getMostSignificantBits());
+        buffer.putLong(key.getLeastSignificantBits());
+        buffer.put(bytes);
+        buffer.put(buffer.position(), (byte) 0);
+        buffer.put(position, (byte) bytes.length);
+    }
+
+    /**
+     * Empty the log once the shard has been checkpointed.
+     */
+    public synchronized void compact() {
+        buffer.put(0, (byte) 0);
+        buffer.position(0);
+        applied.clear();
+        full = false;
+    }
+
+    /**
+     * @return the number of keys with an applied entry
+     */
+    public synchronized int size() {
+        return applied.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Delete the log file, once the log has been closed.
+     *
+     * @throws IOException
+     *             if the file cannot be deleted
+     */
+    public void delete() throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    private void put(final UUID key, final String sequenceNumber) {
+        final String previous = applied.get(key);
+        if (null == previous || DynamoDBConnectorUtilities.compareSequenceNumbers(previous, sequenceNumber) < 0) {
+            applied.put(key, sequenceNumber);
+        }
+    }
+
+    private static UUID getKey(final Record record) {
+        final ByteBuffer digest = ByteBuffer.wrap(DynamoDBConnectorUtilities.getKeyDigest(record.getDynamodb().getKeys()));
+        return new UUID(digest.getLong(), digest.getLong());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Projection of the images of the stream records on a subset of their attributes, so that attributes only needed in the
+ * source region are not written to the replicas. Either the included attributes are kept, or the excluded attributes
+ * are removed. Key attributes and the attributes the replicator itself relies on are always kept.
+ */
+public class AttributeProjection {
+
+    private final Set<String> included;
+    private final Set<String> excluded;
+    private final Set<String> retained;
+
+    /**
+     * @param included
+     *            the attributes to keep, null to keep all the attributes that are not excluded
+     * @param excluded
+     *            the attributes to remove, ignored if included attributes are given
+     * @param retained
+     *            the attributes always kept, such as the last update timestamp and the origin marker
+     */
+    public AttributeProjection(final Collection<String> included, final Collection<String> excluded, final Collection<String> retained) {
+        this.included = null == included ? null : new HashSet<String>(included);
+        this.excluded = null == excluded ? new HashSet<String>() : new HashSet<String>(excluded);
+        this.retained = new HashSet<String>(retained);
+    }
+
+    /**
+     * @param image
+     *            the image of an item, may be null
+     * @param keys
+     *            the key attributes of the item
+     * @return the projected image, the image itself if no attribute was removed
+     */
+    public Map<String, AttributeValue> project(final Map<String, AttributeValue> image, final Map<String, AttributeValue> keys) {
+        if (null == image) {
+            return null;
+        }
+        Map<String, AttributeValue> projected = null;
+        for (String attribute : image.keySet()) {
+            if (!isKept(attribute, keys)) {
+                if (null == projected) {
+                    projected = new HashMap<String, AttributeValue>(image);
+                }
+                projected.remove(attribute);
+            }
+        }
+        return null == projected ? image : projected;
+    }
+
+    private boolean isKept(final String attribute, final Map<String, AttributeValue> keys) {
+        if (keys.containsKey(attribute) || retained.contains(attribute)) {
+            return true;
+        }
+        return null == included ? !excluded.contains(attribute) : included.contains(attribute);
+    }
+}
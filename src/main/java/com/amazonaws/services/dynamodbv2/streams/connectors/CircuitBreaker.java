@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Circuit breaker of the writes to a destination table, shared by the emitters of all shards. It opens after a number of
+ * consecutive failed writes and rejects writes while open. Once the open interval elapsed, it lets a single probe write
+ * through: the breaker closes if the probe succeeds and opens again otherwise.
+ */
+@Log4j
+public class CircuitBreaker {
+
+    /**
+     * State of a circuit breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String destination;
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedMillis;
+    private boolean probing;
+
+    /**
+     * @param destination
+     *            the destination described in logs
+     * @param failureThreshold
+     *            the number of consecutive failed writes opening the breaker
+     * @param openMillis
+     *            how long the breaker stays open before a probe
+     */
+    public CircuitBreaker(final String destination, final int failureThreshold, final long openMillis) {
+        this.destination = destination;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @param now
+     *            the current time
+     * @return true if a write may be sent to the destination
+     */
+    public synchronized boolean allowRequest(final long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedMillis < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = false;
+                // fall through to let the probe through
+            case HALF_OPEN:
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    /**
+     * Report a write that reached the destination.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        if (State.CLOSED != state) {
+            log.info("Circuit breaker of " + destination + " closed after " + (System.currentTimeMillis() - openedMillis) + " ms");
+            state = State.CLOSED;
+        }
+        probing = false;
+    }
+
+    /**
+     * Report a write that failed because of the destination.
+     *
+     * @param now
+     *            the current time
+     */
+    public synchronized void recordFailure(final long now) {
+        consecutiveFailures++;
+        if (State.HALF_OPEN == state || (State.CLOSED == state && consecutiveFailures >= failureThreshold)) {
+            if (State.CLOSED == state) {
+                log.warn("Circuit breaker of " + destination + " opened after " + consecutiveFailures + " consecutive failed writes");
+            }
+            state = State.OPEN;
+            openedMillis = now;
+            probing = false;
+        }
+    }
+
+    /**
+     * @return the current state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+}
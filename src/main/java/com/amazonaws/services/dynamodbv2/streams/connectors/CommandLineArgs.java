@@ -5,6 +5,7 @@
  */
 package com.amazonaws.services.dynamodbv2.streams.connectors;
 
+import com.amazonaws.services.dynamodbv2.streams.connectors.verify.MerkleVerifier;
 import com.beust.jcommander.Parameter;
 
 import lombok.Getter;
@@ -72,6 +73,206 @@ public class CommandLineArgs {
             hidden = true)
     private Long parentShardPollIntervalMillis;
 
+    public static final String CHECKPOINT_INTERVAL_MILLIS = "--checkpointIntervalMillis";
+    @Parameter(names = CHECKPOINT_INTERVAL_MILLIS, description = "Minimum time between two checkpoints of a shard, 0 to checkpoint after every batch")
+    private Long checkpointIntervalMillis;
+
+    public static final String CHECKPOINT_MAX_RECORDS = "--checkpointMaxRecords";
+    @Parameter(names = CHECKPOINT_MAX_RECORDS, description = "Checkpoint a shard after this many records even if the checkpoint interval has not elapsed")
+    private Long checkpointMaxRecords;
+
+    public static final String APPLIED_LOG_DIRECTORY = "--appliedLogDirectory";
+    @Parameter(names = APPLIED_LOG_DIRECTORY, description = "Directory of the per-shard logs of records applied since the last checkpoint, used to skip them after a restart")
+    private String appliedLogDirectory;
+
+    public static final String GRACEFUL_SHUTDOWN_MILLIS = "--gracefulShutdownMillis";
+    @Parameter(names = GRACEFUL_SHUTDOWN_MILLIS, description = "On shutdown, wait this long for in-flight writes to complete and checkpoints to be written before releasing the leases")
+    private Long gracefulShutdownMillis;
+
+    public static final String PREWARM_CONNECTIONS = "--prewarmConnections";
+    @Parameter(names = PREWARM_CONNECTIONS, description = "Open this many connections to the destination and lease table endpoints, and resolve their credentials, before taking leases")
+    private Long prewarmConnections;
+
+    public static final String LOCAL_CHECKPOINT_FILE = "--localCheckpointFile";
+    @Parameter(names = LOCAL_CHECKPOINT_FILE, description = "Keep leases and checkpoints in this local file instead of a KCL lease table, only for a single worker")
+    private String localCheckpointFile;
+
+    public static final String LOCAL_CHECKPOINT_FLUSH_MILLIS = "--localCheckpointFlushMillis";
+    @Parameter(names = LOCAL_CHECKPOINT_FLUSH_MILLIS, description = "Maximum time between a checkpoint and its write to the local checkpoint file")
+    private Long localCheckpointFlushMillis;
+
+    public static final String BOOTSTRAP = "--bootstrap";
+    @Parameter(names = BOOTSTRAP, description = "Copy the existing items of the source table with a parallel scan before replicating the stream")
+    private boolean bootstrap = false;
+
+    public static final String BOOTSTRAP_SEGMENTS = "--bootstrapSegments";
+    @Parameter(names = BOOTSTRAP_SEGMENTS, description = "Number of segments scanned in parallel by the bootstrap copy, defaults to twice the number of cores")
+    private Integer bootstrapSegments;
+
+    public static final String BOOTSTRAP_READ_UNITS_PER_SECOND = "--bootstrapReadUnitsPerSecond";
+    @Parameter(names = BOOTSTRAP_READ_UNITS_PER_SECOND, description = "Read capacity units per second the bootstrap copy may consume on the source table, 0 for no limit")
+    private Double bootstrapReadUnitsPerSecond;
+
+    public static final String BOOTSTRAP_WRITE_ITEMS_PER_SECOND = "--bootstrapWriteItemsPerSecond";
+    @Parameter(names = BOOTSTRAP_WRITE_ITEMS_PER_SECOND, description = "Items per second the bootstrap copy may write to the destination table, 0 for no limit")
+    private Double bootstrapWriteItemsPerSecond;
+
+    public static final String BOOTSTRAP_PROGRESS_DIRECTORY = "--bootstrapProgressDirectory";
+    @Parameter(names = BOOTSTRAP_PROGRESS_DIRECTORY, description = "Directory where the bootstrap copy saves its progress, to resume it after a restart")
+    private String bootstrapProgressDirectory;
+
+    public static final String BOOTSTRAP_PROGRESS_TABLE = "--bootstrapProgressTable";
+    @Parameter(names = BOOTSTRAP_PROGRESS_TABLE, description = "Save the bootstrap copy progress in the <taskName>-bootstrap table next to the KCL lease table, "
+            + "so that a restarted copy resumes and several workers share the copy")
+    private boolean bootstrapProgressTable = false;
+
+    public static final String BOOTSTRAP_EXPORT_DIRECTORY = "--bootstrapExportDirectory";
+    @Parameter(names = BOOTSTRAP_EXPORT_DIRECTORY, description = "Copy the existing items from the DynamoDB JSON files of a table export in this directory "
+            + "instead of scanning the source table, reading as many files in parallel as " + BOOTSTRAP_SEGMENTS)
+    private String bootstrapExportDirectory;
+
+    public static final String BOOTSTRAP_EXPORT_TIME_MILLIS = "--bootstrapExportTimeMillis";
+    @Parameter(names = BOOTSTRAP_EXPORT_TIME_MILLIS, description = "Point in time of the table export, in milliseconds since the epoch, "
+            + "which must be within the 24 hours of stream retention when the copy completes")
+    private Long bootstrapExportTimeMillis;
+
+    public static final String VERIFY = "--verify";
+    @Parameter(names = VERIFY, description = "Compare the source and destination tables with Merkle trees and write the keys of the divergent items "
+            + "to the divergence file instead of replicating")
+    private boolean verify = false;
+
+    public static final String VERIFY_SEGMENTS = "--verifySegments";
+    @Parameter(names = VERIFY_SEGMENTS, description = "Number of segments each table is scanned with in parallel by the verifier, defaults to twice the number of cores")
+    private Integer verifySegments;
+
+    public static final String VERIFY_READ_UNITS_PER_SECOND = "--verifyReadUnitsPerSecond";
+    @Parameter(names = VERIFY_READ_UNITS_PER_SECOND, description = "Read capacity units per second the verifier may consume on each table, 0 for no limit")
+    private Double verifyReadUnitsPerSecond;
+
+    public static final String VERIFY_TREE_DEPTH = "--verifyTreeDepth";
+    @Parameter(names = VERIFY_TREE_DEPTH, description = "Depth of the Merkle trees of the verifier, the tables are compared over 2^depth key ranges")
+    private Integer verifyTreeDepth;
+
+    public static final String VERIFY_STEP = "--verifyStep";
+    @Parameter(names = VERIFY_STEP, description = "Run one step of the verification in the region of the table it reads instead of scanning both tables "
+            + "from this process: EXPORT_SOURCE and EXPORT_DESTINATION write the tree and the item keys and hashes of a table, EXTRACT_SOURCE "
+            + "and EXTRACT_DESTINATION keep the keys and hashes of the divergent key ranges once both trees are in the verify directory, "
+            + "COMPARE writes the divergences once both extracts are in the verify directory")
+    private MerkleVerifier.Step verifyStep;
+
+    public static final String VERIFY_DIRECTORY = "--verifyDirectory";
+    @Parameter(names = VERIFY_DIRECTORY, description = "Directory the steps of the verification read and write their files in")
+    private String verifyDirectory = "verify";
+
+    public static final String DIVERGENCE_FILE = "--divergenceFile";
+    @Parameter(names = DIVERGENCE_FILE, description = "File the verifier writes the keys of the divergent items to")
+    private String divergenceFile = "divergences.tsv";
+
+    public static final String REPAIR = "--repair";
+    @Parameter(names = REPAIR, description = "Rewrite the items listed in the divergence file from the source table to the destination table "
+            + "instead of replicating, resuming after the last repaired batch")
+    private boolean repair = false;
+
+    public static final String REPAIR_ITEMS_PER_SECOND = "--repairItemsPerSecond";
+    @Parameter(names = REPAIR_ITEMS_PER_SECOND, description = "Items per second the repair may read and write, 0 for no limit")
+    private Double repairItemsPerSecond;
+
+    public static final String FAILED_KEYS_FILE = "--failedKeysFile";
+    @Parameter(names = FAILED_KEYS_FILE, description = "File the keys of the records that could not be replicated are appended to, "
+            + "to be used as divergence file of a repair")
+    private String failedKeysFile;
+
+    public static final String DEAD_LETTER_DIRECTORY = "--deadLetterDirectory";
+    @Parameter(names = DEAD_LETTER_DIRECTORY, description = "Directory of a durable spool of the records that could not be written, replayed in the background "
+            + "instead of exiting the process on non-retryable errors")
+    private String deadLetterDirectory;
+
+    public static final String OUTAGE_SPOOL_DIRECTORY = "--outageSpoolDirectory";
+    @Parameter(names = OUTAGE_SPOOL_DIRECTORY, description = "Directory of a memory-mapped spool of the latest record of each key written while the "
+            + "circuit breaker of the destination table is open, drained once it recovers")
+    private String outageSpoolDirectory;
+
+    public static final String CIRCUIT_BREAKER_FAILURES = "--circuitBreakerFailures";
+    @Parameter(names = CIRCUIT_BREAKER_FAILURES, description = "Consecutive failed writes opening the circuit breaker of the destination table")
+    private Long circuitBreakerFailures;
+
+    public static final String CIRCUIT_BREAKER_OPEN_MILLIS = "--circuitBreakerOpenMillis";
+    @Parameter(names = CIRCUIT_BREAKER_OPEN_MILLIS, description = "Time the circuit breaker stays open before probing the destination table")
+    private Long circuitBreakerOpenMillis;
+
+    public static final String OUTAGE_DRAIN_ITEMS_PER_SECOND = "--outageDrainItemsPerSecond";
+    @Parameter(names = OUTAGE_DRAIN_ITEMS_PER_SECOND, description = "Items per second the outage spool is drained at, 0 for no limit")
+    private Long outageDrainItemsPerSecond;
+
+    public static final String LAST_WRITE_CACHE_SIZE = "--lastWriteCacheSize";
+    @Parameter(names = LAST_WRITE_CACHE_SIZE, description = "Number of keys whose last update timestamp written to the destination table is cached "
+            + "per worker, to drop records failing the last writer wins condition before writing them, 0 to disable")
+    private Long lastWriteCacheSize;
+
+    public static final String REPLICATION_TIMESTAMP_ATTRIBUTE = "--replicationTimestampAttribute";
+    @Parameter(names = REPLICATION_TIMESTAMP_ATTRIBUTE, description = "Attribute the replicator stamps each written item with, from the approximate creation time "
+            + "and sequence number of its stream record, and conditions the writes on")
+    private String replicationTimestampAttribute;
+
+    public static final String ORIGIN_ATTRIBUTE = "--originAttribute";
+    @Parameter(names = ORIGIN_ATTRIBUTE, description = "Attribute the replicator stamps each written item with an origin marker in, to drop the records "
+            + "of items written by the replicator of another origin in bidirectional setups")
+    private String originAttribute;
+
+    public static final String ORIGIN = "--origin";
+    @Parameter(names = ORIGIN, description = "Origin of the replicator in the origin markers, defaults to the source region and table")
+    private String origin;
+
+    public static final String FILTER_EXPRESSION = "--filterExpression";
+    @Parameter(names = FILTER_EXPRESSION, description = "Expression the records to replicate match, over eventName, userIdentity.type, "
+            + "userIdentity.principalId and the keys, newImage and oldImage attributes, e.g. NOT begins_with(keys.id, 'local#')")
+    private String filterExpression;
+
+    public static final String EMIT_STRIPES = "--emitStripes";
+    @Parameter(names = EMIT_STRIPES, description = "Number of stripes the records of each batch are split in by key hash and written in parallel, "
+            + "to use several cores on hot shards")
+    private Long emitStripes;
+
+    public static final String MAX_IN_FLIGHT_PER_PARTITION = "--maxInFlightPerPartition";
+    @Parameter(names = MAX_IN_FLIGHT_PER_PARTITION, description = "Maximum number of writes in flight of a partition key of the destination table, "
+            + "interleaving the writes of the partition keys and backing off the throttled ones")
+    private Long maxInFlightPerPartition;
+
+    public static final String HEDGE_PERCENTILE = "--hedgePercentile";
+    @Parameter(names = HEDGE_PERCENTILE, description = "Percentile of the recent write latencies after which a duplicate of a conditional "
+            + "write still in flight is sent, whichever completes first wins, requires " + REPLICATION_TIMESTAMP_ATTRIBUTE
+            + " or a last writer wins condition")
+    private Long hedgePercentile;
+
+    public static final String HEDGE_BUDGET_PERCENT = "--hedgeBudgetPercent";
+    @Parameter(names = HEDGE_BUDGET_PERCENT, description = "Maximum number of hedged writes, in percent of the writes, 5 by default")
+    private Long hedgeBudgetPercent;
+
+    public static final String SUPERSEDE_PENDING_WRITES = "--supersedePendingWrites";
+    @Parameter(names = SUPERSEDE_PENDING_WRITES, description = "Index the records of each batch as soon as it is received and cancel "
+            + "the pending writes of the previous batch superseded by a newer record of the same item")
+    private boolean supersedePendingWrites = false;
+
+    public static final String INCLUDED_ATTRIBUTES = "--includedAttributes";
+    @Parameter(names = INCLUDED_ATTRIBUTES, description = "Attributes replicated besides the key attributes, separated by comma, "
+            + "changes of the other attributes only are not replicated")
+    private String includedAttributes;
+
+    public static final String EXCLUDED_ATTRIBUTES = "--excludedAttributes";
+    @Parameter(names = EXCLUDED_ATTRIBUTES, description = "Attributes not replicated, separated by comma, cannot be used with "
+            + INCLUDED_ATTRIBUTES)
+    private String excludedAttributes;
+
+    public static final String TRANSFORM = "--transform";
+    @Parameter(names = TRANSFORM, description = "Statements rewriting the records before they are written, separated by semicolon, e.g. "
+            + "RENAME a TO b; SET c = 'x'; PREFIX id 'us#' TO 'eu#'; ROUTE TO 'archive' WHEN newImage.closed = TRUE")
+    private String transform;
+
+    public static final String REPLICAS = "--replicas";
+    @Parameter(names = REPLICAS, description = "Additional destination tables the stream of the source table is fanned out to, separated by comma, "
+            + "e.g. eu-west-1:table,ap-southeast-2:table")
+    private String replicas;
+
     public static final String PIPELINE_CLASS_NAMES = "--pipelineClassNames";
     @Parameter(names = PIPELINE_CLASS_NAMES, description = "The FQCN of pipelines, separated by comma, e.g. com.my.Pipeline,com.your.Pipeline")
     private String pipelineClassNames = DynamoDBMasterToReplicasPipeline.class.getName();
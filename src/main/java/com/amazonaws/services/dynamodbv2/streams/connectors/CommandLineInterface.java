@@ -15,6 +15,7 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j;
 
+import java.io.File;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -34,12 +35,39 @@ public class CommandLineInterface {
      */
     public static void main(String[] args) {
         try {
-            final Optional<Worker> workerOption = mainUnsafe(args);
-            if (!workerOption.isPresent()) {
+            final Optional<CommandLineInterface> cliOption = parse(args);
+            if (!cliOption.isPresent()) {
                 return;
             }
+            final KinesisWorkerCreator workerCreator = cliOption.get().workerCreator;
+            if (null != workerCreator.getVerifyStep()) {
+                System.out.println("Running verify step " + workerCreator.getVerifyStep() + " in " + workerCreator.getVerifyDirectory()
+                        + ", check logs for more details.");
+                final long count = workerCreator.createVerifier().run(workerCreator.getVerifyStep(), new File(workerCreator.getVerifyDirectory()));
+                System.out.println("Verify step " + workerCreator.getVerifyStep() + " completed with " + count + " items.");
+                return;
+            }
+            if (workerCreator.isVerify()) {
+                System.out.println("Verifying the destination table, check logs for more details.");
+                final long divergences = workerCreator.createVerifier().run();
+                System.out.println("Found " + divergences + " divergent items, written to " + workerCreator.getDivergenceFile());
+                return;
+            }
+            if (workerCreator.isRepair()) {
+                System.out.println("Repairing the items listed in " + workerCreator.getDivergenceFile() + ", check logs for more details.");
+                final long repaired = workerCreator.createRepair().run();
+                System.out.println("Repaired " + repaired + " items.");
+                return;
+            }
+            final Worker worker = workerCreator.create();
+            // drain in-flight writes, checkpoint and release the leases when the process is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(workerCreator.getGracefulShutdownHook()));
+            if (workerCreator.getBootstrap().isPresent()) {
+                System.out.println("Copying the existing items of the source table, check logs for more details.");
+                workerCreator.getBootstrap().get().run();
+            }
             System.out.println("Starting replication now, check logs for more details.");
-            workerOption.get().run();
+            worker.run();
         } catch (ParameterException e) {
             log.error(e);
             JCommander.getConsole().println(e.toString());
@@ -52,6 +80,11 @@ public class CommandLineInterface {
     }
 
     static Optional<Worker> mainUnsafe(String[] args) {
+        // create worker
+        return parse(args).map(cli -> cli.workerCreator.create());
+    }
+
+    static Optional<CommandLineInterface> parse(String[] args) {
         // Initialize command line arguments and JCommander parser
         CommandLineArgs params = new CommandLineArgs();
         JCommander cmd = new JCommander(params);
@@ -65,9 +98,7 @@ public class CommandLineInterface {
             return Optional.empty();
         }
 
-        final CommandLineInterface cli = new CommandLineInterface(params);
-        // create worker
-        return Optional.of(cli.workerCreator.create());
+        return Optional.of(new CommandLineInterface(params));
     }
 
     @Getter(AccessLevel.PACKAGE)
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Opens connections of a client before the worker takes its leases, so that the first batches do not pay for the DNS
+ * lookup, TCP connect, TLS handshake and credential resolution. The credentials are resolved once, then a cheap request
+ * is sent concurrently as many times as connections are wanted: each concurrent request leases its own connection,
+ * which goes back to the pool of the client afterwards.
+ * <p>
+ * Pre-warming is best effort: failures are logged and the worker starts anyway.
+ */
+@Log4j
+class ConnectionPrewarmer {
+
+    private final int connections;
+    private final long timeoutMillis;
+
+    /**
+     * @param connections
+     *            the number of connections to open per client
+     * @param timeoutMillis
+     *            how long to wait for the requests of a client
+     */
+    ConnectionPrewarmer(final int connections, final long timeoutMillis) {
+        this.connections = connections;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param name
+     *            the name of the endpoint in the logs
+     * @param credentials
+     *            the credentials of the client
+     * @param request
+     *            a cheap request sent with the client, an error response still warms the connection
+     */
+    void prewarm(final String name, final AWSCredentialsProvider credentials, final Callable<?> request) {
+        final long start = System.currentTimeMillis();
+        try {
+            credentials.getCredentials();
+        } catch (RuntimeException e) {
+            log.warn("Could not resolve credentials of " + name + " before starting", e);
+            return;
+        }
+        final ExecutorService threads = Executors.newFixedThreadPool(connections,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("prewarm-%d").build());
+        try {
+            final List<Future<?>> requests = new ArrayList<Future<?>>();
+            for (int i = 0; i < connections; i++) {
+                requests.add(threads.submit(request));
+            }
+            int warmed = 0;
+            final long deadline = start + timeoutMillis;
+            for (Future<?> future : requests) {
+                try {
+                    future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    warmed++;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof AmazonServiceException) {
+                        // the endpoint responded, so the connection is open
+                        warmed++;
+                    } else {
+                        log.warn("Could not open connection to " + name, e.getCause());
+                    }
+                } catch (TimeoutException e) {
+                    log.warn("Connections to " + name + " were still opening after " + timeoutMillis + " ms");
+                    break;
+                }
+            }
+            log.info("Opened " + warmed + " connections to " + name + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
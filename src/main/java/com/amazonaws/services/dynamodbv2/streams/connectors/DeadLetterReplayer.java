@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Replays the records of a {@link DeadLetterSpool} through an emitter, run periodically on a background thread. Records
+ * that fail again are spooled again at the end of the spool with their original spool time. While whole batches fail,
+ * the time between two replays doubles up to {@link #MAX_BACKOFF_MILLIS}, and it is reset as soon as records get through.
+ * <p>
+ * Replayed records are older than the records replicated since, so the emitter should use the last writer wins condition
+ * of <code>partitionKeyName</code> and <code>lastUpdateTimeKeyName</code> to avoid overwriting newer versions.
+ */
+@Log4j
+public class DeadLetterReplayer implements Runnable {
+
+    /**
+     * CloudWatch metric for the number of records waiting in the dead letter spool.
+     */
+    public static final String DEAD_LETTER_SPOOL_DEPTH = "DeadLetterSpoolDepth";
+
+    /**
+     * CloudWatch metric for the age of the oldest record waiting in the dead letter spool.
+     */
+    public static final String DEAD_LETTER_SPOOL_AGE = "DeadLetterSpoolAgeMillis";
+
+    static final int BATCH_SIZE = 25;
+    static final long MIN_BACKOFF_MILLIS = 1000L;
+    static final long MAX_BACKOFF_MILLIS = 300000L;
+    static final long METRICS_INTERVAL_MILLIS = 60000L;
+
+    private final DeadLetterSpool spool;
+    private final IEmitter<Record> emitter;
+    private final IBuffer<Record> buffer;
+    private final AmazonCloudWatch cloudwatch;
+    private final String namespace;
+    private long backoffMillis = MIN_BACKOFF_MILLIS;
+    private long nextReplayMillis = 0L;
+    private long lastMetricsMillis = 0L;
+
+    /**
+     * @param spool
+     *            the spool to replay
+     * @param emitter
+     *            the emitter the records are replayed with
+     * @param buffer
+     *            the buffer handed to the emitter with the replayed records
+     * @param cloudwatch
+     *            the CloudWatch client the spool metrics are published with
+     * @param namespace
+     *            the CloudWatch namespace of the metrics
+     */
+    public DeadLetterReplayer(final DeadLetterSpool spool, final IEmitter<Record> emitter, final IBuffer<Record> buffer,
+        final AmazonCloudWatch cloudwatch, final String namespace) {
+        this.spool = spool;
+        this.emitter = emitter;
+        this.buffer = buffer;
+        this.cloudwatch = cloudwatch;
+        this.namespace = namespace;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        final long now = System.currentTimeMillis();
+        try {
+            replay(now);
+        } catch (Exception e) {
+            // keep the scheduled replays running
+            log.error("Could not replay dead letter spool", e);
+        }
+        publishMetrics(now);
+    }
+
+    /**
+     * Replay one batch of spooled records if the backoff elapsed.
+     *
+     * @return the number of records written
+     */
+    int replay(final long now) throws Exception {
+        if (now < nextReplayMillis) {
+            return 0;
+        }
+        final List<DeadLetterSpool.Entry> entries = spool.peek(BATCH_SIZE);
+        if (entries.isEmpty()) {
+            backoffMillis = MIN_BACKOFF_MILLIS;
+            return 0;
+        }
+        final Map<Record, Long> spooledMillis = new IdentityHashMap<Record, Long>();
+        final List<Record> records = new ArrayList<Record>(entries.size());
+        for (DeadLetterSpool.Entry entry : entries) {
+            records.add(entry.getRecord());
+            spooledMillis.put(entry.getRecord(), entry.getSpooledMillis());
+        }
+        final List<Record> failed = emitter.emit(new UnmodifiableBuffer<Record>(buffer, records));
+        for (Record record : failed) {
+            spool.append(Collections.singletonList(record), spooledMillis.get(record));
+        }
+        spool.remove(entries.size());
+        if (failed.size() == records.size()) {
+            nextReplayMillis = now + backoffMillis;
+            backoffMillis = Math.min(2 * backoffMillis, MAX_BACKOFF_MILLIS);
+            log.warn("Could not replay " + failed.size() + " dead letter records, retrying in " + (nextReplayMillis - now) + " ms");
+        } else {
+            backoffMillis = MIN_BACKOFF_MILLIS;
+            log.info("Replayed " + (records.size() - failed.size()) + " dead letter records, " + spool.getDepth() + " left");
+        }
+        return records.size() - failed.size();
+    }
+
+    private void publishMetrics(final long now) {
+        if (now - lastMetricsMillis < METRICS_INTERVAL_MILLIS) {
+            return;
+        }
+        lastMetricsMillis = now;
+        final List<MetricDatum> metrics = new ArrayList<MetricDatum>();
+        metrics.add(new MetricDatum().withMetricName(DEAD_LETTER_SPOOL_DEPTH).withValue((double) spool.getDepth()).withUnit(StandardUnit.Count)
+            .withTimestamp(new Date(now)));
+        metrics.add(new MetricDatum().withMetricName(DEAD_LETTER_SPOOL_AGE).withValue((double) spool.getAgeMillis(now))
+            .withUnit(StandardUnit.Milliseconds).withTimestamp(new Date(now)));
+        try {
+            cloudwatch.putMetricData(new PutMetricDataRequest().withNamespace(namespace).withMetricData(metrics));
+        } catch (RuntimeException e) {
+            log.error("Could not publish dead letter spool metrics", e);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.DynamoDBJson;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformedRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Durable local spool of the records the emitters could not write, replayed later by a {@link DeadLetterReplayer}.
+ * <p>
+ * Each record is a frame of the payload length (4 bytes), the CRC32 of the rest of the frame (4 bytes), the time the
+ * record was first spooled (8 bytes) and the record as JSON, with its images in DynamoDB JSON. Appends are forced to
+ * disk before returning, so a record is never lost once the checkpoint following its failure is written. The offset of
+ * the first frame not replayed yet is kept in a file next to the spool, and the spool is truncated once it was fully
+ * replayed. A torn frame at the end of the spool, left by a crash during an append, is discarded when the spool is
+ * opened.
+ */
+@Log4j
+public class DeadLetterSpool implements Closeable {
+
+    private static final int HEADER_BYTES = 16;
+    private static final String OFFSET_FILE_SUFFIX = ".offset";
+    private static final String EVENT_NAME = "eventName";
+    private static final String SEQUENCE_NUMBER = "sequenceNumber";
+    private static final String CREATION_MILLIS = "creationMillis";
+    private static final String KEYS = "keys";
+    private static final String NEW_IMAGE = "newImage";
+    private static final String OLD_IMAGE = "oldImage";
+    private static final String DESTINATION_TABLE = "destinationTable";
+
+    /**
+     * A spooled record.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final Record record;
+        private final long spooledMillis;
+    }
+
+    private final File file;
+    private final File offsetFile;
+    private final FileChannel channel;
+    private long readOffset;
+    private int depth;
+    private long oldestMillis;
+
+    /**
+     * @param file
+     *            the spool file, created if needed
+     * @throws IOException
+     *             if the spool cannot be opened
+     */
+    public DeadLetterSpool(final File file) throws IOException {
+        this.file = file;
+        this.offsetFile = new File(file.getPath() + OFFSET_FILE_SUFFIX);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        readOffset = offsetFile.exists() ? Long.parseLong(new String(Files.readAllBytes(offsetFile.toPath()), StandardCharsets.UTF_8).trim()) : 0L;
+        if (readOffset > channel.size()) {
+            // crashed after truncating a fully replayed spool, before saving its offset
+            readOffset = 0L;
+        }
+        long position = readOffset;
+        Frame frame;
+        while (null != (frame = readFrame(position))) {
+            if (0 == depth) {
+                oldestMillis = frame.spooledMillis;
+            }
+            depth++;
+            position = frame.next;
+        }
+        if (position < channel.size()) {
+            log.warn("Discarding " + (channel.size() - position) + " bytes of torn frame at the end of dead letter spool " + file);
+            channel.truncate(position);
+        }
+        if (depth > 0) {
+            log.info("Dead letter spool " + file + " holds " + depth + " records to replay");
+        }
+    }
+
+    /**
+     * Append records to the spool, forcing them to disk.
+     *
+     * @param records
+     *            the records that could not be written
+     * @param spooledMillis
+     *            when the records were first spooled
+     */
+    public synchronized void append(final List<Record> records, final long spooledMillis) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        final List<ByteBuffer> frames = new ArrayList<ByteBuffer>(records.size());
+        for (Record record : records) {
+            final byte[] payload = encode(record);
+            final ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            frame.putInt(payload.length).putInt(0).putLong(spooledMillis).put(payload);
+            frame.putInt(4, checksum(frame.array(), 8, frame.capacity() - 8));
+            frame.flip();
+            frames.add(frame);
+        }
+        long position = channel.size();
+        for (ByteBuffer frame : frames) {
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+        }
+        channel.force(false);
+        if (0 == depth) {
+            oldestMillis = spooledMillis;
+        }
+        depth += records.size();
+    }
+
+    /**
+     * @param maxRecords
+     *            the maximum number of records to read
+     * @return the oldest records not replayed yet, in spool order
+     */
+    public synchronized List<Entry> peek(final int maxRecords) throws IOException {
+        final List<Entry> entries = new ArrayList<Entry>();
+        long position = readOffset;
+        Frame frame;
+        while (entries.size() < maxRecords && null != (frame = readFrame(position))) {
+            entries.add(new Entry(decode(frame.payload), frame.spooledMillis));
+            position = frame.next;
+        }
+        return entries;
+    }
+
+    /**
+     * Remove the oldest records from the spool once they were replayed, or spooled again.
+     *
+     * @param count
+     *            the number of records returned by the last {@link #peek(int)} to remove
+     */
+    public synchronized void remove(final int count) throws IOException {
+        long position = readOffset;
+        for (int i = 0; i < count; i++) {
+            final Frame frame = readFrame(position);
+            if (null == frame) {
+                throw new IllegalStateException("Cannot remove " + count + " records from dead letter spool " + file + " holding " + depth);
+            }
+            position = frame.next;
+        }
+        depth -= count;
+        if (position == channel.size()) {
+            // fully replayed, start over with an empty spool
+            channel.truncate(0);
+            channel.force(false);
+            position = 0;
+        } else {
+            final Frame oldest = readFrame(position);
+            oldestMillis = oldest.spooledMillis;
+        }
+        readOffset = position;
+        final File temporary = new File(offsetFile.getPath() + ".tmp");
+        Files.write(temporary.toPath(), Long.toString(readOffset).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary.toPath(), offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the number of records not replayed yet
+     */
+    public synchronized int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @param now
+     *            the current time
+     * @return how long ago the oldest record not replayed yet was spooled, 0 if the spool is empty
+     */
+    public synchronized long getAgeMillis(final long now) {
+        return 0 == depth ? 0L : now - oldestMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A frame read from the spool.
+     */
+    @AllArgsConstructor
+    private static class Frame {
+        private final byte[] payload;
+        private final long spooledMillis;
+        private final long next;
+    }
+
+    /**
+     * @return the frame at the position, or null if there is no complete and valid frame
+     */
+    private Frame readFrame(final long position) throws IOException {
+        final long size = channel.size();
+        if (position + HEADER_BYTES > size) {
+            return null;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, position);
+        final int length = header.getInt(0);
+        if (length < 0 || position + HEADER_BYTES + length > size) {
+            return null;
+        }
+        final ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + length);
+        readFully(frame, position);
+        if (checksum(frame.array(), 8, frame.capacity() - 8) != header.getInt(4)) {
+            return null;
+        }
+        final byte[] payload = new byte[length];
+        System.arraycopy(frame.array(), HEADER_BYTES, payload, 0, length);
+        return new Frame(payload, header.getLong(8), position + HEADER_BYTES + length);
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long read = position;
+        while (buffer.hasRemaining()) {
+            final int bytes = channel.read(buffer, read);
+            if (bytes < 0) {
+                throw new IOException("Unexpected end of dead letter spool " + file);
+            }
+            read += bytes;
+        }
+    }
+
+    static byte[] encode(final Record record) throws IOException {
+        final StreamRecord streamRecord = record.getDynamodb();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = DynamoDBJson.getFactory().createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeStringField(EVENT_NAME, record.getEventName());
+            generator.writeStringField(SEQUENCE_NUMBER, streamRecord.getSequenceNumber());
+            if (null != streamRecord.getApproximateCreationDateTime()) {
+                generator.writeNumberField(CREATION_MILLIS, streamRecord.getApproximateCreationDateTime().getTime());
+            }
+            writeImage(generator, KEYS, streamRecord.getKeys());
+            writeImage(generator, NEW_IMAGE, streamRecord.getNewImage());
+            writeImage(generator, OLD_IMAGE, streamRecord.getOldImage());
+            if (record instanceof TransformedRecord && null != ((TransformedRecord) record).getDestinationTable()) {
+                generator.writeStringField(DESTINATION_TABLE, ((TransformedRecord) record).getDestinationTable());
+            }
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    private static void writeImage(final JsonGenerator generator, final String field, final Map<String, AttributeValue> image) throws IOException {
+        if (null != image) {
+            generator.writeFieldName(field);
+            DynamoDBJson.writeItem(generator, image);
+        }
+    }
+
+    static Record decode(final byte[] payload) throws IOException {
+        final Record record = new Record();
+        final StreamRecord streamRecord = new StreamRecord().withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES);
+        String destinationTable = null;
+        try (JsonParser parser = DynamoDBJson.getFactory().createParser(payload)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case EVENT_NAME:
+                        record.setEventName(parser.getText());
+                        break;
+                    case SEQUENCE_NUMBER:
+                        streamRecord.setSequenceNumber(parser.getText());
+                        break;
+                    case CREATION_MILLIS:
+                        streamRecord.setApproximateCreationDateTime(new Date(parser.getLongValue()));
+                        break;
+                    case KEYS:
+                        streamRecord.setKeys(DynamoDBJson.readItem(parser));
+                        break;
+                    case NEW_IMAGE:
+                        streamRecord.setNewImage(DynamoDBJson.readItem(parser));
+                        break;
+                    case OLD_IMAGE:
+                        streamRecord.setOldImage(DynamoDBJson.readItem(parser));
+                        break;
+                    case DESTINATION_TABLE:
+                        destinationTable = parser.getText();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        record.setDynamodb(streamRecord);
+        if (null != destinationTable) {
+            // the record keeps the route a transform plan gave it
+            return new TransformedRecord(record, streamRecord.getKeys(), streamRecord.getNewImage(), streamRecord.getOldImage(), destinationTable);
+        }
+        return record;
+    }
+
+    private static int checksum(final byte[] bytes, final int offset, final int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
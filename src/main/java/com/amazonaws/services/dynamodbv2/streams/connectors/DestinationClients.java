@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBReplicationEmitter.MAX_THREADS;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsyncClient;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
+
+/**
+ * Clients of the destination tables shared by the emitters of all shards, pipelines and workers of a process, so that
+ * writing to N regions costs one connection pool and thread pool per region rather than one per emitter. The clients
+ * are keyed by endpoint and region; the credentials of the first configuration asking for an endpoint are used.
+ */
+public class DestinationClients {
+
+    private final ConcurrentMap<String, AmazonDynamoDBAsync> dynamodb = new ConcurrentHashMap<String, AmazonDynamoDBAsync>();
+    private final ConcurrentMap<String, AmazonCloudWatchAsync> cloudwatch = new ConcurrentHashMap<String, AmazonCloudWatchAsync>();
+
+    /**
+     * @param configuration
+     *            the configuration of the destination table
+     * @return the shared DynamoDB client of the destination endpoint
+     */
+    public AmazonDynamoDBAsync getDynamoDB(final DynamoDBStreamsConnectorConfiguration configuration) {
+        return dynamodb.computeIfAbsent(configuration.DYNAMODB_ENDPOINT + "|" + configuration.REGION_NAME,
+            key -> createDynamoDB(configuration));
+    }
+
+    /**
+     * @param configuration
+     *            the configuration of the destination table
+     * @return the shared CloudWatch client of the destination region, null if metrics are not published
+     */
+    public AmazonCloudWatchAsync getCloudWatch(final DynamoDBStreamsConnectorConfiguration configuration) {
+        if (!configuration.isPublishCloudWatch()) {
+            return null;
+        }
+        return cloudwatch.computeIfAbsent(configuration.REGION_NAME, key -> createCloudWatch(configuration));
+    }
+
+    /**
+     * Shut down the shared clients.
+     */
+    public void shutdown() {
+        dynamodb.values().forEach(AmazonDynamoDBAsync::shutdown);
+        cloudwatch.values().forEach(AmazonCloudWatchAsync::shutdown);
+    }
+
+    /**
+     * @param configuration
+     *            the configuration of the destination table
+     * @return a new DynamoDB client of the destination endpoint
+     */
+    static AmazonDynamoDBAsync createDynamoDB(final DynamoDBStreamsConnectorConfiguration configuration) {
+        final ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .withMaxConnections(MAX_THREADS)
+                .withRetryPolicy(PredefinedRetryPolicies.DYNAMODB_DEFAULT);
+        return AmazonDynamoDBAsyncClient.asyncBuilder()
+                .withExecutorFactory(() -> Executors.newFixedThreadPool(MAX_THREADS))
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(configuration.DYNAMODB_ENDPOINT, configuration.REGION_NAME))
+                .withCredentials(configuration.AWS_CREDENTIALS_PROVIDER)
+                .withClientConfiguration(clientConfiguration)
+                .build();
+    }
+
+    /**
+     * @param configuration
+     *            the configuration of the destination table
+     * @return a new CloudWatch client of the destination region, null if metrics are not published
+     */
+    static AmazonCloudWatchAsync createCloudWatch(final DynamoDBStreamsConnectorConfiguration configuration) {
+        if (!configuration.isPublishCloudWatch()) {
+            return null;
+        }
+        return AmazonCloudWatchAsyncClient.asyncBuilder()
+                .withCredentials(configuration.AWS_CREDENTIALS_PROVIDER)
+                .withExecutorFactory(() -> Executors.newFixedThreadPool(MAX_THREADS))
+                .withRegion(Regions.fromName(configuration.REGION_NAME))
+                .build();
+    }
+}
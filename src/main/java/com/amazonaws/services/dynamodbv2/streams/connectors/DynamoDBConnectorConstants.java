@@ -42,8 +42,15 @@ public class DynamoDBConnectorConstants {
     public static final int IDLE_TIME_BETWEEN_READS = 500;
     public static final int STREAMS_RECORDS_LIMIT = 1000;
     public static final int KCL_FAILOVER_TIME = 60000;
-    public static final long DEFAULT_PARENT_SHARD_POLL_INTERVAL_MILLIS = 10000L;
+    public static final long DEFAULT_PARENT_SHARD_POLL_INTERVAL_MILLIS = 1000L;
+    public static final long DEFAULT_GRACEFUL_SHUTDOWN_MILLIS = 20000L;
+    public static final long DEFAULT_LOCAL_CHECKPOINT_FLUSH_MILLIS = 100L;
+    public static final long PREWARM_TIMEOUT_MILLIS = 10000L;
+    public static final long METRICS_FLUSH_INTERVAL_MILLIS = 60000L;
+    public static final int METRICS_MAX_QUEUED_REQUESTS = 100;
     public static final String WORKER_LABEL = "worker";
+    public static final String BOOTSTRAP_TABLE_SUFFIX = "-bootstrap";
+    public static final String DEFAULT_ORIGIN_ATTRIBUTE = "replicationOrigin";
 
     /**
      * MD5 digest instance
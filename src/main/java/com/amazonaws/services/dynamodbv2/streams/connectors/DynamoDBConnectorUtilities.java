@@ -6,13 +6,20 @@
 package com.amazonaws.services.dynamodbv2.streams.connectors;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.commons.codec.binary.Hex;
 
 import com.amazonaws.regions.Region;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
 import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
 import com.amazonaws.services.dynamodbv2.model.StreamViewType;
 import com.google.common.base.Strings;
 
@@ -21,6 +28,9 @@ import lombok.extern.log4j.Log4j;
 @Log4j
 public class DynamoDBConnectorUtilities {
 
+    private static final int REPLICATION_TIMESTAMP_MILLIS_DIGITS = 15;
+    private static final int REPLICATION_TIMESTAMP_SEQUENCE_NUMBER_DIGITS = 40;
+
     /**
      * Get the taskname from command line arguments if it exists, if not, autogenerate one to be used by KCL in the
      * checkpoint table and to publish CloudWatch metrics
@@ -91,4 +101,70 @@ public class DynamoDBConnectorUtilities {
         log.error(DynamoDBConnectorConstants.STREAM_NOT_READY + " StreamARN: " + streamArn);
         return false;
     }
+
+    /**
+     * Compare two DynamoDB Streams sequence numbers. Sequence numbers are decimal strings without leading zeros, so a
+     * longer sequence number is always the greater one.
+     *
+     * @param first
+     *            the first sequence number
+     * @param second
+     *            the second sequence number
+     * @return a negative integer, zero, or a positive integer as the first sequence number is less than, equal to, or
+     *         greater than the second
+     */
+    public static int compareSequenceNumbers(String first, String second) {
+        if (first.length() != second.length()) {
+            return first.length() < second.length() ? -1 : 1;
+        }
+        return first.compareTo(second);
+    }
+
+    /**
+     * Compute an MD5 digest of a DynamoDB item key that does not depend on the iteration order of the key map.
+     *
+     * @param key
+     *            the key attributes of an item
+     * @return the 16 byte digest of the key
+     */
+    public static byte[] getKeyDigest(Map<String, AttributeValue> key) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 digest is not available", e);
+        }
+        for (Map.Entry<String, AttributeValue> attribute : new TreeMap<String, AttributeValue>(key).entrySet()) {
+            digest.update(attribute.getKey().getBytes(StandardCharsets.UTF_8));
+            final AttributeValue value = attribute.getValue();
+            if (value.getS() != null) {
+                digest.update((byte) 'S');
+                digest.update(value.getS().getBytes(StandardCharsets.UTF_8));
+            } else if (value.getN() != null) {
+                digest.update((byte) 'N');
+                digest.update(value.getN().getBytes(StandardCharsets.UTF_8));
+            } else if (value.getB() != null) {
+                digest.update((byte) 'B');
+                digest.update(value.getB().duplicate());
+            }
+            digest.update((byte) 0);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Build the replication timestamp of a stream record from its approximate creation time in milliseconds and its
+     * sequence number, both zero padded, so that the replication timestamps of the records of an item compare as strings
+     * in stream order.
+     *
+     * @param record
+     *            the stream record
+     * @return the replication timestamp of the record
+     */
+    public static String getReplicationTimestamp(StreamRecord record) {
+        final long creationMillis = null == record.getApproximateCreationDateTime() ? 0L : record.getApproximateCreationDateTime().getTime();
+        final String sequenceNumber = null == record.getSequenceNumber() ? "0" : record.getSequenceNumber();
+        return Strings.padStart(Long.toString(creationMillis), REPLICATION_TIMESTAMP_MILLIS_DIGITS, '0') + "-"
+            + Strings.padStart(sequenceNumber, REPLICATION_TIMESTAMP_SEQUENCE_NUMBER_DIGITS, '0');
+    }
 }
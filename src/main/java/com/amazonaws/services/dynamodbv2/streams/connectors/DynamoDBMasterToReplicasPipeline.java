@@ -5,17 +5,12 @@
  */
 package com.amazonaws.services.dynamodbv2.streams.connectors;
 
-import com.amazonaws.ClientConfiguration;
-import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.client.builder.AwsClientBuilder;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
-import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsyncClient;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
 import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.streams.connectors.filter.ExpressionFilter;
+import com.amazonaws.services.dynamodbv2.streams.connectors.filter.UnchangedItemFilter;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformPlan;
 import com.amazonaws.services.kinesis.connectors.KinesisConnectorConfiguration;
 import com.amazonaws.services.kinesis.connectors.impl.AllPassFilter;
 import com.amazonaws.services.kinesis.connectors.interfaces.IBuffer;
@@ -24,51 +19,46 @@ import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
 import com.amazonaws.services.kinesis.connectors.interfaces.IKinesisConnectorPipeline;
 import com.amazonaws.services.kinesis.connectors.interfaces.ITransformer;
 
-import java.util.concurrent.Executors;
-
-import static com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBReplicationEmitter.MAX_THREADS;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Pipeline used when there is only one single master replicating to multiple replicas. Uses:
  * <ul>
  * <li>{@link DynamoDBReplicationEmitter}</li>
  * <li>{@link DynamoDBBuffer}</li>
- * <li>{@link DynamoDBStreamsRecordTransformer}</li>
- * <li>{@link AllPassFilter}</li>
+ * <li>{@link DynamoDBStreamsRecordTransformer}, with an {@link AttributeProjection} if included or excluded attributes are configured
+ * and a {@link TransformPlan} if a transform is configured</li>
+ * <li>{@link AllPassFilter}, or {@link ExpressionFilter}, {@link OriginFilter} and {@link UnchangedItemFilter} if a filter expression,
+ * origin markers or an attribute projection are configured</li>
  * </ul>
  */
 
 public class DynamoDBMasterToReplicasPipeline implements IKinesisConnectorPipeline<Record, Record> {
 
+    /**
+     * Clients shared by the emitters, null to create clients for each emitter.
+     */
+    private volatile DestinationClients clients;
+
+    /**
+     * @param clients
+     *            the clients shared by the emitters of this pipeline, null to create clients for each emitter
+     */
+    public void setDestinationClients(final DestinationClients clients) {
+        this.clients = clients;
+    }
+
     @Override
     public IEmitter<Record> getEmitter(final KinesisConnectorConfiguration configuration) {
         if (configuration instanceof DynamoDBStreamsConnectorConfiguration) {
-            AWSCredentialsProvider credentialsProvider = configuration.AWS_CREDENTIALS_PROVIDER;
-            ClientConfiguration clientConfiguration = new ClientConfiguration()
-                    .withMaxConnections(MAX_THREADS)
-                    .withRetryPolicy(PredefinedRetryPolicies.DYNAMODB_DEFAULT);
-
-            AmazonDynamoDBAsync client = AmazonDynamoDBAsyncClient.asyncBuilder()
-                    .withExecutorFactory(() -> Executors.newFixedThreadPool(MAX_THREADS))
-                    .withEndpointConfiguration(
-                            new AwsClientBuilder.EndpointConfiguration(
-                                    configuration.DYNAMODB_ENDPOINT,
-                                    configuration.REGION_NAME
-                            )
-                    )
-                    .withCredentials(credentialsProvider)
-                    .withClientConfiguration(clientConfiguration)
-                    .build();
-
-            AmazonCloudWatchAsync cloudWatch =
-                    ((DynamoDBStreamsConnectorConfiguration) configuration).isPublishCloudWatch() ?
-                            AmazonCloudWatchAsyncClient.asyncBuilder()
-                                    .withCredentials(credentialsProvider)
-                                    .withExecutorFactory(() -> Executors.newFixedThreadPool(MAX_THREADS))
-                                    .withRegion(Regions.fromName(configuration.REGION_NAME))
-                                    .build()
-                            : null;
-            return new DynamoDBReplicationEmitter(
+            final DynamoDBStreamsConnectorConfiguration streamsConfiguration = (DynamoDBStreamsConnectorConfiguration) configuration;
+            final DestinationClients shared = clients;
+            AmazonDynamoDBAsync client = null == shared ? DestinationClients.createDynamoDB(streamsConfiguration)
+                    : shared.getDynamoDB(streamsConfiguration);
+            AmazonCloudWatchAsync cloudWatch = null == shared ? DestinationClients.createCloudWatch(streamsConfiguration)
+                    : shared.getCloudWatch(streamsConfiguration);
+            final DynamoDBReplicationEmitter emitter = new DynamoDBReplicationEmitter(
                     configuration.APP_NAME,
                     configuration.DYNAMODB_ENDPOINT,
                     configuration.REGION_NAME,
@@ -77,6 +67,12 @@ public class DynamoDBMasterToReplicasPipeline implements IKinesisConnectorPipeli
                     ((DynamoDBStreamsConnectorConfiguration) configuration).getLastUpdateTimeKeyName(),
                     client,
                     cloudWatch);
+            emitter.setReplicationTimestampAttribute(((DynamoDBStreamsConnectorConfiguration) configuration).getReplicationTimestampAttribute());
+            emitter.setOrigin(((DynamoDBStreamsConnectorConfiguration) configuration).getOriginAttribute(),
+                    ((DynamoDBStreamsConnectorConfiguration) configuration).getOrigin());
+            emitter.setStripeCount(((DynamoDBStreamsConnectorConfiguration) configuration).getEmitStripes());
+            emitter.setMaxInFlightPerPartition(((DynamoDBStreamsConnectorConfiguration) configuration).getMaxInFlightPerPartition());
+            return emitter;
         } else {
             throw new IllegalArgumentException(this + " needs a DynamoDBStreamsConnectorConfiguration argument.");
         }
@@ -94,12 +90,81 @@ public class DynamoDBMasterToReplicasPipeline implements IKinesisConnectorPipeli
 
     @Override
     public ITransformer<Record, Record> getTransformer(final KinesisConnectorConfiguration configuration) {
-        return new DynamoDBStreamsRecordTransformer();
+        if (!(configuration instanceof DynamoDBStreamsConnectorConfiguration)) {
+            return new DynamoDBStreamsRecordTransformer();
+        }
+        final DynamoDBStreamsConnectorConfiguration streamsConfiguration = (DynamoDBStreamsConnectorConfiguration) configuration;
+        AttributeProjection projection = null;
+        if (isProjected(streamsConfiguration)) {
+            // the replicator relies on its own attributes in the destination items, whatever the projection
+            final List<String> retained = getReplicatorAttributes(streamsConfiguration);
+            projection = new AttributeProjection(streamsConfiguration.getIncludedAttributes(), streamsConfiguration.getExcludedAttributes(), retained);
+        }
+        final TransformPlan plan = null == streamsConfiguration.getTransform() ? null : new TransformPlan(streamsConfiguration.getTransform());
+        return new DynamoDBStreamsRecordTransformer(projection, plan);
     }
 
     @Override
     public IFilter<Record> getFilter(final KinesisConnectorConfiguration configuration) {
-        return new AllPassFilter<Record>();
+        return getFilter(configuration, true);
+    }
+
+    /**
+     * @return the filter of the items copied from the source table by a bootstrap or a repair. Copied items are not
+     *         writes: an item whose origin marker belongs to another replicator came into the source table from another
+     *         region, and must still be copied, so the {@link OriginFilter} is left out.
+     */
+    public IFilter<Record> getCopyFilter(final KinesisConnectorConfiguration configuration) {
+        return getFilter(configuration, false);
+    }
+
+    private IFilter<Record> getFilter(final KinesisConnectorConfiguration configuration, final boolean filterOrigin) {
+        final List<IFilter<Record>> filters = new ArrayList<>();
+        if (configuration instanceof DynamoDBStreamsConnectorConfiguration) {
+            final DynamoDBStreamsConnectorConfiguration streamsConfiguration = (DynamoDBStreamsConnectorConfiguration) configuration;
+            if (null != streamsConfiguration.getFilterExpression()) {
+                filters.add(new ExpressionFilter(streamsConfiguration.getFilterExpression()));
+            }
+            if (filterOrigin && null != streamsConfiguration.getOriginAttribute()) {
+                filters.add(new OriginFilter(streamsConfiguration.getOriginAttribute(), streamsConfiguration.getOrigin()));
+            }
+            if (isProjected(streamsConfiguration)) {
+                // changes of projected out attributes only still bump the attributes stamped by the replicator
+                filters.add(new UnchangedItemFilter(getReplicatorAttributes(streamsConfiguration)));
+            }
+        }
+        if (filters.isEmpty()) {
+            return new AllPassFilter<Record>();
+        } else if (1 == filters.size()) {
+            return filters.get(0);
+        }
+        return record -> {
+            for (int i = 0; i < filters.size(); i++) {
+                if (!filters.get(i).keepRecord(record)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static boolean isProjected(final KinesisConnectorConfiguration configuration) {
+        if (!(configuration instanceof DynamoDBStreamsConnectorConfiguration)) {
+            return false;
+        }
+        final DynamoDBStreamsConnectorConfiguration streamsConfiguration = (DynamoDBStreamsConnectorConfiguration) configuration;
+        return null != streamsConfiguration.getIncludedAttributes() || null != streamsConfiguration.getExcludedAttributes();
+    }
+
+    private static List<String> getReplicatorAttributes(final DynamoDBStreamsConnectorConfiguration configuration) {
+        final List<String> attributes = new ArrayList<>();
+        for (String attribute : new String[] {configuration.getLastUpdateTimeKeyName(), configuration.getReplicationTimestampAttribute(),
+            configuration.getOriginAttribute()}) {
+            if (null != attribute) {
+                attributes.add(attribute);
+            }
+        }
+        return attributes;
     }
 
 }
@@ -5,15 +5,26 @@
  */
 package com.amazonaws.services.dynamodbv2.streams.connectors;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -29,17 +40,22 @@ import com.amazonaws.regions.Regions;
 import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsyncClient;
+import com.amazonaws.services.cloudwatch.model.Dimension;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
 import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
 import com.amazonaws.services.cloudwatch.model.PutMetricDataResult;
 import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
 import com.amazonaws.services.dynamodbv2.model.InternalServerErrorException;
 import com.amazonaws.services.dynamodbv2.model.ItemCollectionSizeLimitExceededException;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.OperationType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
@@ -47,15 +63,21 @@ import com.amazonaws.services.dynamodbv2.model.PutItemResult;
 import com.amazonaws.services.dynamodbv2.model.Record;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformedRecord;
+import com.amazonaws.services.dynamodbv2.streams.connectors.verify.Divergence;
 import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
 import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.log4j.Log4j;
 
 /**
  * A general emitter for replication DynamoDB writes from a DynamoDB Stream to another DynamoDB table. Assumes the IBuffer implementation deduplicates writes to a single write per
- * item key. Asynchronously makes the writes to the DynamoDB table.
+ * item key. Asynchronously makes the writes to the DynamoDB table. The records of a batch can be split in stripes by the
+ * hash of their keys, whose requests are built and submitted by several threads.
  */
 @Log4j
 public class DynamoDBReplicationEmitter implements IEmitter<Record> {
@@ -72,9 +94,67 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
      * CloudWatch Metric for number of retries to write Records to the destination table.
      */
     private static final String RECORDS_RETRIED = "RecordsRetried";
+    /**
+     * CloudWatch Metric for Records skipped because they were already applied before a restart.
+     */
+    private static final String RECORDS_ALREADY_APPLIED = "RecordsAlreadyApplied";
+    /**
+     * CloudWatch Metric for Records spooled because the destination table is unavailable.
+     */
+    private static final String RECORDS_SPOOLED = "RecordsSpooled";
+    /**
+     * CloudWatch Metric for the milliseconds the writes waited for space in the full outage spool.
+     */
+    private static final String OUTAGE_SPOOL_FULL_WAIT = "OutageSpoolFullWait";
+    /**
+     * CloudWatch Metric for Records dropped because the destination table is known to hold a newer version of the item.
+     */
+    private static final String WRITES_AVOIDED = "WritesAvoided";
+    /**
+     * CloudWatch Metric for the percentage of last write cache lookups finding a timestamp.
+     */
+    private static final String LAST_WRITE_CACHE_HIT_RATE = "LastWriteCacheHitRate";
+    /**
+     * CloudWatch Metric for the number of Records of each stripe of a batch, published when the writes are striped.
+     */
+    private static final String STRIPE_QUEUE_DEPTH = "StripeQueueDepth";
+    /**
+     * CloudWatch Metric for writes throttled by the destination table when the writes are scheduled by partition key.
+     */
+    private static final String PARTITION_THROTTLES = "PartitionThrottles";
+    /**
+     * CloudWatch Metric for the partition keys of the destination table whose writes were throttled.
+     */
+    private static final String THROTTLED_PARTITIONS = "ThrottledPartitions";
+    /**
+     * CloudWatch Metric for pending writes cancelled because a newer record of the same item was received.
+     */
+    private static final String WRITES_SUPERSEDED = "WritesSuperseded";
+    /**
+     * CloudWatch Metric for duplicates sent of writes slower than the hedge delay.
+     */
+    private static final String HEDGED_WRITES = "HedgedWrites";
+    /**
+     * CloudWatch Metric for the percentage of hedged writes completed by the duplicate first.
+     */
+    private static final String HEDGE_WIN_RATE = "HedgeWinRate";
+    /**
+     * CloudWatch Dimensions of the metrics published through a shared {@link MetricsPublisher}.
+     */
+    private static final String DESTINATION_TABLE_DIMENSION = "DestinationTable";
+    private static final String SHARD_ID_DIMENSION = "ShardId";
+    /**
+     * Number of throttled partition keys whose throttle counts are kept.
+     */
+    private static final int MAX_THROTTLED_PARTITIONS = 1000;
 
     private static final int WAIT_TIME_MS = 100;
 
+    static final String REPLICATION_TIMESTAMP_NAME = "#replicationTimestamp";
+    static final String REPLICATION_TIMESTAMP_VALUE = ":replicationTimestamp";
+    static final String REPLICATION_TIMESTAMP_CONDITION = "attribute_not_exists(" + REPLICATION_TIMESTAMP_NAME + ") OR "
+        + REPLICATION_TIMESTAMP_NAME + " < " + REPLICATION_TIMESTAMP_VALUE;
+
     /**
      * DynamoDB Replication Emitter User Agent
      */
@@ -92,6 +172,17 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
      * Maximum number of threads for the Async clients.
      */
     public static final int MAX_THREADS = 1000;
+    /**
+     * Threads submitting the stripes of the batches, shared by the emitters of all shards. The threads mostly wait for
+     * the writes of their stripe, so the pool is not bounded by the number of cores.
+     */
+    private static final ExecutorService STRIPE_POOL = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("emitter-stripe-%d").build());
+    /**
+     * Timer sending the duplicates of the hedged writes, the writes themselves are asynchronous.
+     */
+    private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("emitter-hedge-%d").build());
     /**
      * The DynamoDB endpoint.
      */
@@ -109,6 +200,21 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
 
     private final String lastUpdateTimeKeyName;
 
+    /**
+     * Attribute the replication timestamp of each record is written to and conditioned on, null if disabled.
+     */
+    private volatile String replicationTimestampAttribute;
+
+    /**
+     * Attribute the origin marker of each record is written to, null if disabled.
+     */
+    private volatile String originAttribute;
+
+    /**
+     * Origin of this replicator written in the origin markers.
+     */
+    private volatile String origin;
+
     /**
      * The KCL application name
      */
@@ -116,10 +222,135 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
     /**
      * Emitter shutdown status. Makes the shutdown process idempotent.
      */
-    private boolean isShutdown = false;
+    private volatile boolean isShutdown = false;
 
     private final boolean skipErrors;
 
+    /**
+     * Log of the records applied since the last checkpoint of the shard, null if disabled.
+     */
+    private volatile AppliedRecordLog appliedRecordLog;
+
+    /**
+     * Records skipped because they were already applied, since the last CloudWatch metrics were emitted.
+     */
+    private final AtomicInteger alreadyApplied = new AtomicInteger();
+
+    /**
+     * File the keys of the records that could not be written are appended to, null if disabled.
+     */
+    private volatile File failedKeysFile;
+
+    /**
+     * Spool of the records that could not be written, null if disabled. When set, non-retryable errors fail the
+     * record instead of exiting the process.
+     */
+    private volatile DeadLetterSpool deadLetterSpool;
+
+    /**
+     * Circuit breaker of the writes to the destination table, null if disabled.
+     */
+    private volatile CircuitBreaker circuitBreaker;
+
+    /**
+     * Spool of the records written while the circuit breaker is open, null if disabled. Without a spool, the records
+     * rejected by an open circuit breaker are failed.
+     */
+    private volatile OutageSpool outageSpool;
+
+    /**
+     * Cache of the last update timestamps known to be in the destination table, null if disabled.
+     */
+    private volatile LastWriteCache lastWriteCache;
+
+    /**
+     * Records dropped because they would fail their last writer wins condition, since the last CloudWatch metrics were
+     * emitted.
+     */
+    private final AtomicInteger writesAvoided = new AtomicInteger();
+
+    /**
+     * Waits of {@link #WAIT_TIME_MS} for space in the full outage spool, since the last CloudWatch metrics were emitted.
+     */
+    private final AtomicInteger spoolFullWaits = new AtomicInteger();
+
+    /**
+     * Number of stripes the records of a batch are split in by the hash of their keys, each submitted by its own thread.
+     */
+    private volatile int stripeCount = 1;
+
+    /**
+     * Records of each stripe of the batch being emitted not completed yet.
+     */
+    private volatile CountDownLatch[] stripeSignals = new CountDownLatch[0];
+
+    /**
+     * Number of records of each stripe of the last batch emitted.
+     */
+    private volatile int[] stripeSizes = new int[0];
+
+    /**
+     * Maximum number of writes in flight of a partition key of the destination table, 0 to write the records of a stripe
+     * in the order they were buffered.
+     */
+    private volatile int maxInFlightPerPartition;
+
+    /**
+     * Partition key of the destination table the writes are scheduled by, null to schedule them by item key.
+     */
+    private volatile String schedulingKeyName;
+
+    private volatile boolean isSchedulingKeyResolved;
+
+    /**
+     * Throttled writes of the partition keys most recently throttled, by partition key.
+     */
+    @SuppressWarnings("serial")
+    private final Map<String, Long> partitionThrottles = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+            return size() > MAX_THROTTLED_PARTITIONS;
+        }
+    });
+
+    /**
+     * Writes throttled and partition keys throttled, since the last CloudWatch metrics were emitted.
+     */
+    private final AtomicInteger throttledWrites = new AtomicInteger();
+    private final AtomicInteger throttledPartitions = new AtomicInteger();
+
+    /**
+     * Latest record received for each item of the shard, null if pending writes are never superseded.
+     */
+    private volatile LatestVersionIndex latestVersionIndex;
+
+    /**
+     * Pending writes cancelled because a newer record of the same item was received, since the last CloudWatch metrics
+     * were emitted.
+     */
+    private final AtomicInteger writesSuperseded = new AtomicInteger();
+
+    /**
+     * Policy deciding when the conditional writes are hedged, null if the writes are never hedged.
+     */
+    private volatile HedgePolicy hedgePolicy;
+
+    /**
+     * Duplicates sent of hedged writes and duplicates completed first, since the last CloudWatch metrics were emitted.
+     */
+    private final AtomicInteger hedgesSent = new AtomicInteger();
+    private final AtomicInteger hedgesWon = new AtomicInteger();
+
+    /**
+     * Aggregator of the metrics of the worker, null to publish the metrics of every batch with the CloudWatch client.
+     */
+    private volatile MetricsPublisher metricsPublisher;
+
+    /**
+     * Shard this emitter writes for, a dimension of the metrics aggregated by the metrics publisher.
+     */
+    private volatile String shardId;
+
     /**
      * Constructor with default CloudWatch client and default DynamoDBAsync.
      *
@@ -222,8 +453,22 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
             // For INSERT or MODIFY: Put the new image in the DynamoDB table
             PutItemRequest putItemRequest = new PutItemRequest();
             putItemRequest.setItem(record.getDynamodb().getNewImage());
-            putItemRequest.setTableName(getTableName());
-            if (partitionKeyName != null) {
+            putItemRequest.setTableName(getTableName(record));
+            if (replicationTimestampAttribute != null || originAttribute != null) {
+                final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(record.getDynamodb().getNewImage());
+                if (replicationTimestampAttribute != null) {
+                    item.put(replicationTimestampAttribute, getWriteTimestamp(record));
+                }
+                if (originAttribute != null) {
+                    item.put(originAttribute, new AttributeValue().withS(OriginFilter.getMarker(origin, record.getDynamodb())));
+                }
+                putItemRequest.setItem(item);
+            }
+            if (replicationTimestampAttribute != null) {
+                putItemRequest.setConditionExpression(REPLICATION_TIMESTAMP_CONDITION);
+                putItemRequest.setExpressionAttributeNames(ImmutableMap.of(REPLICATION_TIMESTAMP_NAME, replicationTimestampAttribute));
+                putItemRequest.setExpressionAttributeValues(ImmutableMap.of(REPLICATION_TIMESTAMP_VALUE, getWriteTimestamp(record)));
+            } else if (partitionKeyName != null) {
                 putItemRequest.setConditionExpression("attribute_not_exists(" + partitionKeyName + ") OR " + lastUpdateTimeKeyName + " < :currentTimestamp");
                 putItemRequest.setExpressionAttributeValues(ImmutableMap.of(
                         ":currentTimestamp", record.getDynamodb().getNewImage().get(lastUpdateTimeKeyName)
@@ -234,7 +479,12 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
             // For REMOVE: Delete the item from the DynamoDB table
             DeleteItemRequest deleteItemRequest = new DeleteItemRequest();
             deleteItemRequest.setKey(record.getDynamodb().getKeys());
-            deleteItemRequest.setTableName(getTableName());
+            deleteItemRequest.setTableName(getTableName(record));
+            if (replicationTimestampAttribute != null) {
+                deleteItemRequest.setConditionExpression(REPLICATION_TIMESTAMP_CONDITION);
+                deleteItemRequest.setExpressionAttributeNames(ImmutableMap.of(REPLICATION_TIMESTAMP_NAME, replicationTimestampAttribute));
+                deleteItemRequest.setExpressionAttributeValues(ImmutableMap.of(REPLICATION_TIMESTAMP_VALUE, getWriteTimestamp(record)));
+            }
             request = deleteItemRequest;
         } else {
             // This should only happen if DynamoDB Streams adds/changes its operation types
@@ -250,7 +500,6 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("unchecked")
     @Override
     public List<Record> emit(final UnmodifiableBuffer<Record> buffer) {
         if (isShutdown) {
@@ -266,43 +515,46 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
         List<Record> records = buffer.getRecords();
         // Stores records that failed with a non-retryable exception
         final List<Record> failedRecords = Collections.synchronizedList(new ArrayList<Record>());
-        // Queue of records to submit
-        final BlockingQueue<Record> toSubmit = new LinkedBlockingQueue<Record>(records);
-        // Used to detect when all requests have either succeeded or resulted in a non-retryable exception
-        final CountDownLatch doneSignal = new CountDownLatch(records.size());
         final AtomicInteger retryCount = new AtomicInteger();
-        boolean interrupted = false;
+        final AtomicInteger spooledCount = new AtomicInteger();
+        // Records of a partition key always go to the same stripe, so their writes are never reordered
+        if (maxInFlightPerPartition > 0) {
+            resolvePartitionKeyName();
+        }
+        final List<List<Record>> stripes = partition(records);
+        final CountDownLatch[] doneSignals = new CountDownLatch[stripes.size()];
+        final WriteScheduler[] schedulers = new WriteScheduler[stripes.size()];
+        final int[] sizes = new int[stripes.size()];
+        for (int i = 0; i < stripes.size(); i++) {
+            doneSignals[i] = new CountDownLatch(stripes.get(i).size());
+            schedulers[i] = new WriteScheduler(stripes.get(i), this::getPartition, maxInFlightPerPartition);
+            sizes[i] = stripes.get(i).size();
+        }
+        stripeSignals = doneSignals;
+        stripeSizes = sizes;
+        final List<Future<Boolean>> workers = new ArrayList<Future<Boolean>>();
+        for (int i = 1; i < stripes.size(); i++) {
+            if (!stripes.get(i).isEmpty()) {
+                final WriteScheduler scheduler = schedulers[i];
+                final CountDownLatch doneSignal = doneSignals[i];
+                workers.add(STRIPE_POOL.submit(() -> submit(scheduler, doneSignal, failedRecords, retryCount, spooledCount)));
+            }
+        }
+        // The first stripe is submitted by the thread of the shard
+        boolean interrupted = submit(schedulers[0], doneSignals[0], failedRecords, retryCount, spooledCount);
         try {
-            while (doneSignal.getCount() > 0) {
-                Record recordToSubmit = null;
-                try {
-                    recordToSubmit = toSubmit.poll(WAIT_TIME_MS, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException e) {
-                    interrupted = true;
-                }
-                final Record record = recordToSubmit;
-                if (null == record) {
-                    continue; // Check if all records have completed and if not try to poll again
-                }
-                // Generate the request based on the record
-                AmazonWebServiceRequest request = createRequest(record);
-                if (request == null) { // Should only happen if DynamoDB Streams API updates to support different operations
-                                       // than {INSERT, MODIFY, REMOVE}.
-                    continue;
-                }
-                // Submit the write request based on its type
-                if (request instanceof PutItemRequest) { // PUT
-                    getDynamodb().putItemAsync((PutItemRequest) request,
-                        (AsyncHandler<PutItemRequest, PutItemResult>) getHandler(toSubmit, failedRecords, retryCount, doneSignal, record));
-                } else if (request instanceof DeleteItemRequest) { // DELETE
-                    getDynamodb().deleteItemAsync((DeleteItemRequest) request,
-                        (AsyncHandler<DeleteItemRequest, DeleteItemResult>) getHandler(toSubmit, failedRecords, retryCount, doneSignal, record));
-                } else if (request instanceof UpdateItemRequest) { // UPDATE
-                    getDynamodb().updateItemAsync((UpdateItemRequest) request,
-                        (AsyncHandler<UpdateItemRequest, UpdateItemResult>) getHandler(toSubmit, failedRecords, retryCount, doneSignal, record));
-                } else { // Should only happen if DynamoDB allows a new operation other than {PutItem, DeleteItem,
-                         // UpdateItem} for single item writes.
-                    log.warn("Unsupported DynamoDB request: " + request);
+            for (Future<Boolean> worker : workers) {
+                while (true) {
+                    try {
+                        worker.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        // the records of the stripe must be written or failed before returning
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Throwables.throwIfUnchecked(e.getCause());
+                        throw new IllegalStateException("Could not submit the records of a stripe", e.getCause());
+                    }
                 }
             }
         } finally {
@@ -310,7 +562,24 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
                 Thread.currentThread().interrupt();
             }
         }
-        emitCloudWatchMetrics(records, failedRecords, retryCount);
+        for (WriteScheduler scheduler : schedulers) {
+            for (Map.Entry<Object, Integer> throttled : scheduler.getThrottles().entrySet()) {
+                partitionThrottles.merge(String.valueOf(throttled.getKey()), (long) throttled.getValue(), Long::sum);
+                throttledWrites.addAndGet(throttled.getValue());
+                throttledPartitions.incrementAndGet();
+            }
+        }
+        final LatestVersionIndex index = latestVersionIndex;
+        if (null != index) {
+            for (Record record : records) {
+                index.completed(record);
+            }
+        }
+        if (spooledCount.get() > 0) {
+            // the records must be durable before the caller checkpoints past them
+            outageSpool.force();
+        }
+        emitCloudWatchMetrics(records, failedRecords, retryCount, spooledCount);
         if (!records.isEmpty()) {
             log.debug("Successfully emitted " + (records.size() - failedRecords.size()) + " records ending with sequence number "
                 + buffer.getLastSequenceNumber());
@@ -320,23 +589,373 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
         return failedRecords;
     }
 
-    private AsyncHandler<? extends AmazonWebServiceRequest, ?> getHandler(final BlockingQueue<Record> toSubmit, final List<Record> failedRecords,
-                                                                          final AtomicInteger retryCount, final CountDownLatch doneSignal, final Record record) {
+    /**
+     * Submit the records of a stripe until all of them were written, skipped, spooled or failed.
+     *
+     * @param scheduler
+     *            the queue of the records of the stripe, the records to retry are queued again
+     * @param doneSignal
+     *            counted down once for each record of the stripe completed
+     * @return true if the thread was interrupted
+     */
+    private boolean submit(final WriteScheduler scheduler, final CountDownLatch doneSignal, final List<Record> failedRecords,
+                           final AtomicInteger retryCount, final AtomicInteger spooledCount) {
+        boolean interrupted = false;
+        while (doneSignal.getCount() > 0) {
+            Record recordToSubmit = null;
+            try {
+                recordToSubmit = scheduler.poll(WAIT_TIME_MS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            final Record record = recordToSubmit;
+            if (null == record) {
+                continue; // Check if all records have completed and if not try to poll again
+            }
+            // Skip records, typically waiting for a retry, whose item has a newer record to write
+            final LatestVersionIndex index = latestVersionIndex;
+            if (null != index && index.isSuperseded(record)) {
+                writesSuperseded.incrementAndGet();
+                scheduler.completed(record);
+                doneSignal.countDown();
+                continue;
+            }
+            // Skip records that were written before the worker restarted from the last checkpoint
+            final AppliedRecordLog appliedLog = appliedRecordLog;
+            if (null != appliedLog && appliedLog.isApplied(record)) {
+                alreadyApplied.incrementAndGet();
+                scheduler.completed(record);
+                doneSignal.countDown();
+                continue;
+            }
+            // Skip records the destination table is known to reject
+            if (isKnownStale(record)) {
+                writesAvoided.incrementAndGet();
+                applied(record);
+                scheduler.completed(record);
+                doneSignal.countDown();
+                continue;
+            }
+            // Keep the records away from an unavailable destination table
+            final CircuitBreaker breaker = circuitBreaker;
+            boolean allowed;
+            try {
+                allowed = null == breaker || allowWrite(breaker, record);
+            } catch (InterruptedException e) {
+                // interrupted while waiting for space in the full outage spool
+                interrupted = true;
+                failedRecords.add(record);
+                scheduler.completed(record);
+                doneSignal.countDown();
+                continue;
+            }
+            if (!allowed) {
+                if (null == outageSpool) {
+                    failedRecords.add(record);
+                } else {
+                    spooledCount.incrementAndGet();
+                }
+                scheduler.completed(record);
+                doneSignal.countDown();
+                continue;
+            }
+            // Generate the request based on the record
+            AmazonWebServiceRequest request = createRequest(record);
+            if (request == null) { // Should only happen if DynamoDB Streams API updates to support different operations
+                                   // than {INSERT, MODIFY, REMOVE}.
+                continue;
+            }
+            final AsyncHandler<AmazonWebServiceRequest, Object> handler = getHandler(scheduler, failedRecords, retryCount, doneSignal, record);
+            final HedgePolicy policy = hedgePolicy;
+            if (null != policy && isIdempotent(request)) {
+                new HedgedWrite(request, handler, policy).send();
+            } else {
+                send(request, handler);
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * Submit the write request based on its type.
+     */
+    @SuppressWarnings("unchecked")
+    private void send(final AmazonWebServiceRequest request, final AsyncHandler<AmazonWebServiceRequest, Object> handler) {
+        final AsyncHandler<?, ?> untypedHandler = handler;
+        if (request instanceof PutItemRequest) { // PUT
+            getDynamodb().putItemAsync((PutItemRequest) request, (AsyncHandler<PutItemRequest, PutItemResult>) untypedHandler);
+        } else if (request instanceof DeleteItemRequest) { // DELETE
+            getDynamodb().deleteItemAsync((DeleteItemRequest) request, (AsyncHandler<DeleteItemRequest, DeleteItemResult>) untypedHandler);
+        } else if (request instanceof UpdateItemRequest) { // UPDATE
+            getDynamodb().updateItemAsync((UpdateItemRequest) request, (AsyncHandler<UpdateItemRequest, UpdateItemResult>) untypedHandler);
+        } else { // Should only happen if DynamoDB allows a new operation other than {PutItem, DeleteItem,
+                 // UpdateItem} for single item writes.
+            log.warn("Unsupported DynamoDB request: " + request);
+        }
+    }
+
+    /**
+     * @return true if the request carries a last writer wins condition: a duplicate landing after a newer write of the
+     *         item fails its condition instead of overwriting it
+     */
+    private static boolean isIdempotent(final AmazonWebServiceRequest request) {
+        if (request instanceof PutItemRequest) {
+            return null != ((PutItemRequest) request).getConditionExpression();
+        }
+        return request instanceof DeleteItemRequest && null != ((DeleteItemRequest) request).getConditionExpression();
+    }
+
+    /**
+     * Write sent a second time if it did not complete within the hedge delay. The first attempt to succeed completes
+     * the write; a failure only completes it once no other attempt is in flight.
+     */
+    private final class HedgedWrite {
+        private final AmazonWebServiceRequest request;
+        private final AsyncHandler<AmazonWebServiceRequest, Object> handler;
+        private final HedgePolicy policy;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final AtomicInteger attempts = new AtomicInteger(1);
+        private final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        private long sentMillis;
+
+        HedgedWrite(final AmazonWebServiceRequest request, final AsyncHandler<AmazonWebServiceRequest, Object> handler, final HedgePolicy policy) {
+            this.request = request;
+            this.handler = handler;
+            this.policy = policy;
+        }
+
+        void send() {
+            final long delayMillis = policy.submitted();
+            sentMillis = System.currentTimeMillis();
+            DynamoDBReplicationEmitter.this.send(request, attempt(false));
+            if (delayMillis >= 0) {
+                HEDGE_TIMER.schedule(this::hedge, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void hedge() {
+            // the duplicate is only sent while the first attempt is in flight
+            if (done.get() || 0 == attempts.getAndUpdate(inFlight -> 0 == inFlight ? 0 : inFlight + 1)) {
+                return;
+            }
+            if (!policy.tryHedge()) {
+                // the first attempt may have failed meanwhile, its error is delivered once the hedge is given up
+                attemptFailed(null);
+                return;
+            }
+            hedgesSent.incrementAndGet();
+            // the async client leases another pooled connection, the first one being busy with the first attempt
+            DynamoDBReplicationEmitter.this.send(request, attempt(true));
+        }
+
+        private AsyncHandler<AmazonWebServiceRequest, Object> attempt(final boolean duplicate) {
+            return new AsyncHandler<AmazonWebServiceRequest, Object>() {
+                @Override
+                public void onSuccess(final AmazonWebServiceRequest completedRequest, final Object result) {
+                    if (!duplicate) {
+                        policy.completed(System.currentTimeMillis() - sentMillis);
+                    }
+                    if (done.compareAndSet(false, true)) {
+                        if (duplicate) {
+                            hedgesWon.incrementAndGet();
+                        }
+                        handler.onSuccess(completedRequest, result);
+                    }
+                }
+
+                @Override
+                public void onError(final Exception exception) {
+                    attemptFailed(exception);
+                }
+            };
+        }
+
+        /**
+         * An attempt failed with the given error, or a hedge was given up if null. The last error is delivered once no
+         * attempt is in flight any more, unless one succeeded.
+         */
+        private void attemptFailed(final Exception exception) {
+            if (null != exception) {
+                error.set(exception);
+            }
+            if (0 == attempts.decrementAndGet() && done.compareAndSet(false, true)) {
+                handler.onError(error.get());
+            }
+        }
+    }
+
+    /**
+     * @return the partition key of the destination table of the record, or its item key if the partition key is unknown
+     */
+    private Object getPartition(final Record record) {
+        final Map<String, AttributeValue> keys = record.getDynamodb().getKeys();
+        final String keyName = schedulingKeyName;
+        final AttributeValue partition = null == keyName ? null : keys.get(keyName);
+        return null == partition ? keys : partition;
+    }
+
+    /**
+     * Find the partition key of the destination table once, from the configuration or the key schema of the table.
+     */
+    private synchronized void resolvePartitionKeyName() {
+        if (isSchedulingKeyResolved) {
+            return;
+        }
+        if (null != partitionKeyName) {
+            schedulingKeyName = partitionKeyName;
+        } else {
+            try {
+                for (KeySchemaElement key : getDynamodb().describeTable(getTableName()).getTable().getKeySchema()) {
+                    if (KeyType.HASH.toString().equals(key.getKeyType())) {
+                        schedulingKeyName = key.getAttributeName();
+                    }
+                }
+            } catch (AmazonClientException e) {
+                log.warn("Could not describe " + getTableName() + ", scheduling the writes by item key instead of partition key", e);
+            }
+        }
+        isSchedulingKeyResolved = true;
+    }
+
+    /**
+     * @return the records of the batch split in stripes by the hash of their keys, a single stripe if striping is
+     *         disabled
+     */
+    private List<List<Record>> partition(final List<Record> records) {
+        final int count = stripeCount;
+        if (count <= 1 || records.size() <= 1) {
+            return Collections.singletonList(records);
+        }
+        final List<List<Record>> stripes = new ArrayList<List<Record>>(count);
+        for (int i = 0; i < count; i++) {
+            stripes.add(new ArrayList<Record>(records.size() / count + 1));
+        }
+        for (Record record : records) {
+            stripes.get(Math.floorMod(getPartition(record).hashCode(), count)).add(record);
+        }
+        return stripes;
+    }
+
+    /**
+     * Check the record against the last write cache, forgetting the timestamp of the items about to be deleted.
+     *
+     * @return true if the record would fail its last writer wins condition
+     */
+    private boolean isKnownStale(final Record record) {
+        final LastWriteCache cache = lastWriteCache;
+        if (null == cache || (null == partitionKeyName && null == replicationTimestampAttribute) || isRouted(record)) {
+            return false;
+        }
+        if (OperationType.REMOVE.toString().equalsIgnoreCase(record.getEventName())) {
+            cache.invalidate(record.getDynamodb().getKeys());
+            return false;
+        }
+        return null != record.getDynamodb().getNewImage() && cache.isStale(record.getDynamodb().getKeys(), getWriteTimestamp(record));
+    }
+
+    /**
+     * Remember that the destination table holds the timestamp of a put record, or a newer one.
+     */
+    private void rememberWrite(final Record record) {
+        final LastWriteCache cache = lastWriteCache;
+        if (null != cache && (null != partitionKeyName || null != replicationTimestampAttribute) && !isRouted(record) && null != record.getDynamodb().getNewImage()
+            && !OperationType.REMOVE.toString().equalsIgnoreCase(record.getEventName())) {
+            cache.written(record.getDynamodb().getKeys(), getWriteTimestamp(record));
+        }
+    }
+
+    /**
+     * @return true if a transform plan routed the record to another table than the table of the emitter, whose writes
+     *         the last write cache does not track
+     */
+    private static boolean isRouted(final Record record) {
+        return record instanceof TransformedRecord && null != ((TransformedRecord) record).getDestinationTable();
+    }
+
+    /**
+     * @return the table the record is written to
+     */
+    private String getTableName(final Record record) {
+        return isRouted(record) ? ((TransformedRecord) record).getDestinationTable() : getTableName();
+    }
+
+    /**
+     * @return the timestamp the last writer wins condition of the record compares
+     */
+    private AttributeValue getWriteTimestamp(final Record record) {
+        if (null != replicationTimestampAttribute) {
+            return new AttributeValue().withS(DynamoDBConnectorUtilities.getReplicationTimestamp(record.getDynamodb()));
+        }
+        return record.getDynamodb().getNewImage().get(lastUpdateTimeKeyName);
+    }
+
+    /**
+     * Spool the record instead of writing it if the circuit breaker is open, or if an older record of its key is
+     * spooled already. While the spool is full, the stripe waits for the drainer to free space: the batch is not
+     * completed, so the shard is neither read further nor checkpointed past the record.
+     *
+     * @return true if the record may be written to the destination table
+     * @throws InterruptedException
+     *             if interrupted while waiting for space in the spool
+     */
+    private boolean allowWrite(final CircuitBreaker breaker, final Record record) throws InterruptedException {
+        final OutageSpool spool = outageSpool;
+        boolean waiting = false;
+        while (true) {
+            try {
+                if (null != spool && spool.offer(record, false)) {
+                    return false;
+                }
+                if (breaker.allowRequest(System.currentTimeMillis())) {
+                    return true;
+                }
+                if (null != spool) {
+                    spool.offer(record, true);
+                }
+                return false;
+            } catch (OutageSpool.FullException e) {
+                if (!waiting) {
+                    log.warn(e.getMessage() + ", waiting for it to be drained");
+                    waiting = true;
+                }
+                spoolFullWaits.incrementAndGet();
+                Thread.sleep(WAIT_TIME_MS);
+            } catch (IOException e) {
+                // the shard is not checkpointed yet, so its records are replayed from the stream after a restart
+                log.fatal("Could not spool record: " + record, e);
+                System.exit(StatusCodes.EIO);
+                return false;
+            }
+        }
+    }
+
+    private AsyncHandler<AmazonWebServiceRequest, Object> getHandler(final WriteScheduler scheduler, final List<Record> failedRecords,
+                                                                     final AtomicInteger retryCount, final CountDownLatch doneSignal, final Record record) {
         return new AsyncHandler<AmazonWebServiceRequest, Object>() {
             @Override
             public void onError(Exception exception) {
+                final CircuitBreaker breaker = circuitBreaker;
+                if (null != breaker) {
+                    if (isOutage(exception)) {
+                        // Retried through the circuit breaker, which spools the record once open
+                        breaker.recordFailure(System.currentTimeMillis());
+                        retryCount.incrementAndGet();
+                        scheduler.retry(record, false);
+                        return;
+                    }
+                    // The destination table responded
+                    breaker.recordSuccess();
+                }
                 if (isRetryable(exception)) { // Throttling or 500 response
                     retryCount.incrementAndGet();
-                    // Retryable
-                    while (!toSubmit.offer(record)) {
-                        ; // NOP
-                    }
+                    // Retryable, backing off the partition key of the item if throttled
+                    scheduler.retry(record, exception instanceof ProvisionedThroughputExceededException);
                 } else if (exception instanceof ItemCollectionSizeLimitExceededException) {
                     // Not Retryable, but from DynamoDB
                     log.error("Local Secondary Index is full: " + record, exception);
                     if (skipErrors) {
                         failedRecords.add(record);
-                        doneSignal.countDown();
+                        done();
                     } else {
                         System.exit(StatusCodes.EIO);
                     }
@@ -344,14 +963,16 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
                     log.error("Request entity too large: " + record, exception);
                     if (skipErrors) {
                         failedRecords.add(record);
-                        doneSignal.countDown();
+                        done();
                     } else {
                         System.exit(StatusCodes.EIO);
                     }
                 } else if (exception instanceof ConditionalCheckFailedException) {
                     // Skip
                     log.warn("Skip ConditionalCheckFailedException: " + record);
-                    doneSignal.countDown();
+                    rememberWrite(record);
+                    applied(record);
+                    done();
                 } else if (exception instanceof AmazonClientException) {
                     // This block catches unrecoverable AmazonWebServices errors:
                     //
@@ -362,10 +983,30 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
                     // AmazonClientException - any other 400 response: validation, authentication, authorization, or configuration exception
                     //
                     log.fatal("Exception emitting record: " + record, exception);
-                    System.exit(StatusCodes.EIO);
+                    failOrExit();
                 } else {
                     // This block catches all other exceptions. Since it was not expected, this is an unrecoverable exception.
                     log.fatal("Abnormal exception emitting record: " + record, exception);
+                    failOrExit();
+                }
+            }
+
+            /**
+             * The record was written, skipped or failed.
+             */
+            private void done() {
+                scheduler.completed(record);
+                doneSignal.countDown();
+            }
+
+            /**
+             * Fail the record so that it is spooled if a dead letter spool is set, exit otherwise.
+             */
+            private void failOrExit() {
+                if (null != deadLetterSpool) {
+                    failedRecords.add(record);
+                    done();
+                } else {
                     System.exit(StatusCodes.EIO);
                 }
             }
@@ -380,14 +1021,59 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
                 }
             }
 
+            /**
+             * @return true if the destination table did not respond, or responded with a server error
+             */
+            private boolean isOutage(Exception exception) {
+                if (exception instanceof AmazonServiceException) {
+                    return ((AmazonServiceException) exception).getStatusCode() >= 500;
+                }
+                return exception instanceof AmazonClientException;
+            }
+
             @Override
             public void onSuccess(AmazonWebServiceRequest request, Object result) {
                 log.trace("Record emitted successfully: " + record.getDynamodb().getSequenceNumber());
-                doneSignal.countDown();
+                final CircuitBreaker breaker = circuitBreaker;
+                if (null != breaker) {
+                    breaker.recordSuccess();
+                }
+                rememberWrite(record);
+                applied(record);
+                done();
             }
         };
     }
 
+    /**
+     * Append the keys of records that could not be written to the failed keys file, so that they can be repaired.
+     */
+    private void appendFailedKeys(final List<Record> records) {
+        final File file = failedKeysFile;
+        if (null == file || records.isEmpty()) {
+            return;
+        }
+        final List<String> lines = new ArrayList<String>(records.size());
+        for (Record record : records) {
+            lines.add(new Divergence(Divergence.Type.FAILED_WRITE, record.getDynamodb().getKeys()).toLine());
+        }
+        // emitters of all shards append to the same file
+        synchronized (DynamoDBReplicationEmitter.class) {
+            try {
+                Files.write(file.toPath(), lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.error("Could not append the keys of " + records.size() + " failed records to " + file, e);
+            }
+        }
+    }
+
+    private void applied(final Record record) {
+        final AppliedRecordLog appliedLog = appliedRecordLog;
+        if (null != appliedLog) {
+            appliedLog.append(record);
+        }
+    }
+
     /**
      * Emit CloudWatch metrics based on the records submitted for processing and failed writes.
      *
@@ -398,9 +1084,25 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
      * @param retryCount
      *            The retry count
      */
-    protected synchronized void emitCloudWatchMetrics(final List<Record> records, final List<Record> failures, final AtomicInteger retryCount) {
-        AmazonCloudWatchAsync cloudwatch = CLOUDWATCH.get();
-        if (null == cloudwatch) {
+    protected void emitCloudWatchMetrics(final List<Record> records, final List<Record> failures, final AtomicInteger retryCount) {
+        emitCloudWatchMetrics(records, failures, retryCount, new AtomicInteger());
+    }
+
+    /**
+     * Emit CloudWatch metrics based on the records submitted for processing, failed writes and spooled records.
+     *
+     * @param records
+     *            The records submitted for processing
+     * @param failures
+     *            The records that failed to write to DynamoDB
+     * @param retryCount
+     *            The retry count
+     * @param spooledCount
+     *            The number of records spooled while the destination table is unavailable
+     */
+    protected void emitCloudWatchMetrics(final List<Record> records, final List<Record> failures, final AtomicInteger retryCount,
+                                                      final AtomicInteger spooledCount) {
+        if (null == CLOUDWATCH.get() && null == metricsPublisher) {
             return;
         }
         if (isShutdown) {
@@ -412,7 +1114,11 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
             }
         }
         final List<MetricDatum> metrics = new ArrayList<MetricDatum>();
-        final double successful = records.size() - failures.size();
+        final double spooled = spooledCount.get();
+        if (spooled > 0) {
+            metrics.add(new MetricDatum().withMetricName(RECORDS_SPOOLED).withValue(spooled).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
+        final double successful = records.size() - failures.size() - spooled;
         if (successful > 0) {
             metrics.add(new MetricDatum().withMetricName(RECORDS_WRITTEN).withValue(successful).withUnit(StandardUnit.Count).withTimestamp(new Date()));
         }
@@ -420,10 +1126,87 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
         if (retries > 0) {
             metrics.add(new MetricDatum().withMetricName(RECORDS_RETRIED).withValue(retries).withUnit(StandardUnit.Count).withTimestamp(new Date()));
         }
+        final double skipped = alreadyApplied.getAndSet(0);
+        if (skipped > 0) {
+            metrics.add(new MetricDatum().withMetricName(RECORDS_ALREADY_APPLIED).withValue(skipped).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
+        final double avoided = writesAvoided.getAndSet(0);
+        if (avoided > 0) {
+            metrics.add(new MetricDatum().withMetricName(WRITES_AVOIDED).withValue(avoided).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
+        final double spoolFullWait = spoolFullWaits.getAndSet(0) * (double) WAIT_TIME_MS;
+        if (spoolFullWait > 0) {
+            metrics.add(new MetricDatum().withMetricName(OUTAGE_SPOOL_FULL_WAIT).withValue(spoolFullWait).withUnit(StandardUnit.Milliseconds)
+                .withTimestamp(new Date()));
+        }
+        final LastWriteCache cache = lastWriteCache;
+        if (null != cache) {
+            final long lookups = cache.getAndResetLookups();
+            final long hits = cache.getAndResetHits();
+            if (lookups > 0) {
+                metrics.add(new MetricDatum().withMetricName(LAST_WRITE_CACHE_HIT_RATE).withValue(100.0 * hits / lookups).withUnit(StandardUnit.Percent)
+                    .withTimestamp(new Date()));
+            }
+        }
+        final double throttled = throttledWrites.getAndSet(0);
+        if (throttled > 0) {
+            metrics.add(new MetricDatum().withMetricName(PARTITION_THROTTLES).withValue(throttled).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+            metrics.add(new MetricDatum().withMetricName(THROTTLED_PARTITIONS).withValue((double) throttledPartitions.getAndSet(0))
+                .withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
+        final double superseded = writesSuperseded.getAndSet(0);
+        if (superseded > 0) {
+            metrics.add(new MetricDatum().withMetricName(WRITES_SUPERSEDED).withValue(superseded).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
+        // both counters are reset in the same window, a hedge sent in an earlier window may win in this one
+        final double hedged = hedgesSent.getAndSet(0);
+        final double won = hedgesWon.getAndSet(0);
+        if (hedged > 0) {
+            metrics.add(new MetricDatum().withMetricName(HEDGED_WRITES).withValue(hedged).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+            metrics.add(new MetricDatum().withMetricName(HEDGE_WIN_RATE).withValue(100.0 * Math.min(won, hedged) / hedged).withUnit(StandardUnit.Percent)
+                .withTimestamp(new Date()));
+        }
+        final int[] sizes = stripeSizes;
+        if (sizes.length > 1) {
+            double minimum = Double.MAX_VALUE;
+            double maximum = 0;
+            double sum = 0;
+            for (int size : sizes) {
+                minimum = Math.min(minimum, size);
+                maximum = Math.max(maximum, size);
+                sum += size;
+            }
+            metrics.add(new MetricDatum().withMetricName(STRIPE_QUEUE_DEPTH).withStatisticValues(new StatisticSet().withMinimum(minimum)
+                .withMaximum(maximum).withSum(sum).withSampleCount((double) sizes.length)).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
         if (metrics.isEmpty()) {
             return;
         }
-        final PutMetricDataRequest request = new PutMetricDataRequest().withNamespace(applicationName).withMetricData(metrics);
+        publish(new PutMetricDataRequest().withNamespace(applicationName).withMetricData(metrics));
+    }
+
+    /**
+     * Hand the metrics to the metrics publisher, tagged with the destination table and shard, or publish them with the
+     * CloudWatch client.
+     */
+    private void publish(final PutMetricDataRequest request) {
+        final MetricsPublisher publisher = metricsPublisher;
+        if (null != publisher) {
+            final List<Dimension> dimensions = new ArrayList<Dimension>();
+            dimensions.add(new Dimension().withName(DESTINATION_TABLE_DIMENSION).withValue(getTableName()));
+            if (null != shardId) {
+                dimensions.add(new Dimension().withName(SHARD_ID_DIMENSION).withValue(shardId));
+            }
+            for (MetricDatum datum : request.getMetricData()) {
+                datum.setDimensions(dimensions);
+            }
+            publisher.putMetricData(request);
+            return;
+        }
+        final AmazonCloudWatchAsync cloudwatch = CLOUDWATCH.get();
+        if (null == cloudwatch) {
+            return;
+        }
         cloudwatch.putMetricDataAsync(request, new AsyncHandler<PutMetricDataRequest, PutMetricDataResult>() {
             @Override
             public void onSuccess(PutMetricDataRequest request, PutMetricDataResult result) {
@@ -454,14 +1237,21 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
         for (Record record : records) {
             log.error("Could not emit record: " + record);
         }
-        final AmazonCloudWatchAsync cloudwatch = CLOUDWATCH.get();
-        if (null != cloudwatch) {
-            final double failed = records.size();
-            final MetricDatum recordsProcessedFailedDatum = new MetricDatum().withMetricName(RECORDS_FAILED).withValue(failed).withUnit(StandardUnit.Count)
-                .withTimestamp(new Date());
-            final PutMetricDataRequest request = new PutMetricDataRequest().withNamespace(applicationName).withMetricData(recordsProcessedFailedDatum);
-            cloudwatch.putMetricDataAsync(request);
+        appendFailedKeys(records);
+        final DeadLetterSpool spool = deadLetterSpool;
+        if (null != spool && !records.isEmpty()) {
+            try {
+                spool.append(records, System.currentTimeMillis());
+            } catch (IOException e) {
+                // the shard is not checkpointed yet, so its records are replayed from the stream after a restart
+                log.fatal("Could not spool " + records.size() + " failed records", e);
+                System.exit(StatusCodes.EIO);
+            }
         }
+        final double failed = records.size();
+        final MetricDatum recordsProcessedFailedDatum = new MetricDatum().withMetricName(RECORDS_FAILED).withValue(failed).withUnit(StandardUnit.Count)
+            .withTimestamp(new Date());
+        publish(new PutMetricDataRequest().withNamespace(applicationName).withMetricData(recordsProcessedFailedDatum));
     }
 
     /**
@@ -512,4 +1302,147 @@ public class DynamoDBReplicationEmitter implements IEmitter<Record> {
         return region;
     }
 
+    /**
+     * @param appliedRecordLog
+     *            the log of records applied since the last checkpoint of the shard this emitter writes for
+     */
+    public void setAppliedRecordLog(final AppliedRecordLog appliedRecordLog) {
+        this.appliedRecordLog = appliedRecordLog;
+    }
+
+    /**
+     * @param metricsPublisher
+     *            the aggregator of the metrics of the worker, null to publish the metrics of every batch with the
+     *            CloudWatch client
+     */
+    public void setMetricsPublisher(final MetricsPublisher metricsPublisher) {
+        this.metricsPublisher = metricsPublisher;
+    }
+
+    /**
+     * @param shardId
+     *            the shard this emitter writes for, a dimension of the metrics aggregated by the metrics publisher
+     */
+    public void setShardId(final String shardId) {
+        this.shardId = shardId;
+    }
+
+    /**
+     * @param hedgePolicy
+     *            the policy deciding when the conditional writes are hedged, null to never hedge them
+     */
+    public void setHedgePolicy(final HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * @param latestVersionIndex
+     *            the latest record received for each item of the shard this emitter writes for, the pending writes of
+     *            older records are cancelled
+     */
+    public void setLatestVersionIndex(final LatestVersionIndex latestVersionIndex) {
+        this.latestVersionIndex = latestVersionIndex;
+    }
+
+    /**
+     * @param failedKeysFile
+     *            the file the keys of the records that could not be written are appended to
+     */
+    public void setFailedKeysFile(final File failedKeysFile) {
+        this.failedKeysFile = failedKeysFile;
+    }
+
+    /**
+     * @param deadLetterSpool
+     *            the spool the records that could not be written are appended to
+     */
+    public void setDeadLetterSpool(final DeadLetterSpool deadLetterSpool) {
+        this.deadLetterSpool = deadLetterSpool;
+    }
+
+    /**
+     * @param circuitBreaker
+     *            the circuit breaker of the writes to the destination table
+     * @param outageSpool
+     *            the spool of the records written while the circuit breaker is open, null to fail them instead
+     */
+    public void setCircuitBreaker(final CircuitBreaker circuitBreaker, final OutageSpool outageSpool) {
+        this.circuitBreaker = circuitBreaker;
+        this.outageSpool = outageSpool;
+    }
+
+    /**
+     * @param lastWriteCache
+     *            the cache of the last update timestamps known to be in the destination table, used with the last writer
+     *            wins condition only
+     */
+    public void setLastWriteCache(final LastWriteCache lastWriteCache) {
+        this.lastWriteCache = lastWriteCache;
+    }
+
+    /**
+     * @param replicationTimestampAttribute
+     *            the attribute the replication timestamp of each record is written to and conditioned on, instead of the
+     *            application maintained <code>lastUpdateTimeKeyName</code>
+     */
+    public void setReplicationTimestampAttribute(final String replicationTimestampAttribute) {
+        this.replicationTimestampAttribute = replicationTimestampAttribute;
+    }
+
+    /**
+     * @param originAttribute
+     *            the attribute each written item is stamped with the origin marker of its record in, see
+     *            {@link OriginFilter}
+     * @param origin
+     *            the origin of this replicator
+     */
+    public void setOrigin(final String originAttribute, final String origin) {
+        this.originAttribute = originAttribute;
+        this.origin = origin;
+    }
+
+    /**
+     * @param stripeCount
+     *            the number of stripes the records of a batch are split in by the hash of their keys and submitted in
+     *            parallel, 1 to submit them from the thread of the shard only
+     */
+    public void setStripeCount(final int stripeCount) {
+        Preconditions.checkArgument(stripeCount >= 1, "The stripe count must be positive");
+        this.stripeCount = stripeCount;
+    }
+
+    /**
+     * @param maxInFlightPerPartition
+     *            the maximum number of writes in flight of a partition key of the destination table, whose records are
+     *            interleaved round-robin and backed off when throttled, 0 to write the records in the order they were
+     *            buffered
+     */
+    public void setMaxInFlightPerPartition(final int maxInFlightPerPartition) {
+        Preconditions.checkArgument(maxInFlightPerPartition >= 0, "The maximum number of writes in flight must not be negative");
+        this.maxInFlightPerPartition = maxInFlightPerPartition;
+    }
+
+    /**
+     * @return the writes throttled by the destination table of the partition keys most recently throttled, by partition
+     *         key, when the writes are scheduled by partition key
+     */
+    public Map<String, Long> getPartitionThrottleCounts() {
+        synchronized (partitionThrottles) {
+            return new HashMap<String, Long>(partitionThrottles);
+        }
+    }
+
+    /**
+     * @return the number of records of each stripe of the batch being emitted that were not written, skipped, spooled or
+     *         failed yet
+     */
+    public long[] getStripeQueueDepths() {
+        final CountDownLatch[] signals = stripeSignals;
+        final long[] depths = new long[signals.length];
+        for (int i = 0; i < signals.length; i++) {
+            depths[i] = signals[i].getCount();
+        }
+        return depths;
+    }
+
 }
@@ -11,6 +11,7 @@ import java.util.Properties;
 
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.kinesis.connectors.KinesisConnectorConfiguration;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
@@ -28,12 +29,209 @@ public class DynamoDBStreamsConnectorConfiguration extends KinesisConnectorConfi
     public static final Map<String, List<String>> DEFAULT_DYNAMODB_REGIONS_TO_TABLES =
             ImmutableMap.<String, List<String>>of(DEFAULT_REGION_NAME, Lists.newArrayList(DEFAULT_DYNAMODB_DATA_TABLE_NAME));
 
+    /**
+     * Minimum time between two checkpoints of the same shard. 0 checkpoints after every emitted batch.
+     */
+    public static final String PROP_CHECKPOINT_INTERVAL_MILLIS = "checkpointIntervalMillis";
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 0L;
+
+    /**
+     * Number of records received by a shard after which a pending checkpoint is written even if the checkpoint interval
+     * has not elapsed. 0 disables the record based trigger.
+     */
+    public static final String PROP_CHECKPOINT_MAX_RECORDS = "checkpointMaxRecords";
+    public static final long DEFAULT_CHECKPOINT_MAX_RECORDS = 0L;
+
+    /**
+     * Directory of the per shard logs of records applied since the last checkpoint. Disabled if not set.
+     */
+    public static final String PROP_APPLIED_LOG_DIRECTORY = "appliedLogDirectory";
+
+    /**
+     * Size of the memory-mapped region of each applied record log.
+     */
+    public static final String PROP_APPLIED_LOG_SIZE_BYTES = "appliedLogSizeBytes";
+    public static final long DEFAULT_APPLIED_LOG_SIZE_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * File the keys of the records that could not be written are appended to, in the divergence file format read by the
+     * repair mode. Disabled if not set.
+     */
+    public static final String PROP_FAILED_KEYS_FILE = "failedKeysFile";
+
+    /**
+     * Directory of the spools of the records that could not be written, replayed in the background. Disabled if not
+     * set.
+     */
+    public static final String PROP_DEAD_LETTER_DIRECTORY = "deadLetterDirectory";
+
+    /**
+     * Directory of the spools of the records written while the destination table is unavailable. Enables the circuit
+     * breaker of the destination table. Disabled if not set.
+     */
+    public static final String PROP_OUTAGE_SPOOL_DIRECTORY = "outageSpoolDirectory";
+
+    /**
+     * Size of the memory-mapped region of each outage spool.
+     */
+    public static final String PROP_OUTAGE_SPOOL_SIZE_BYTES = "outageSpoolSizeBytes";
+    public static final long DEFAULT_OUTAGE_SPOOL_SIZE_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Number of consecutive writes failing because of the destination table after which its circuit breaker opens.
+     */
+    public static final String PROP_CIRCUIT_BREAKER_FAILURES = "circuitBreakerFailures";
+    public static final long DEFAULT_CIRCUIT_BREAKER_FAILURES = 10L;
+
+    /**
+     * Time the circuit breaker stays open before probing the destination table again.
+     */
+    public static final String PROP_CIRCUIT_BREAKER_OPEN_MILLIS = "circuitBreakerOpenMillis";
+    public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS = 30000L;
+
+    /**
+     * Maximum rate the outage spool is drained at once the destination table recovered. 0 disables the limit.
+     */
+    public static final String PROP_OUTAGE_DRAIN_ITEMS_PER_SECOND = "outageDrainItemsPerSecond";
+    public static final long DEFAULT_OUTAGE_DRAIN_ITEMS_PER_SECOND = 0L;
+
+    /**
+     * Maximum number of keys of the cache of the last update timestamps written to the destination table, used to skip
+     * the puts failing their last writer wins condition. 0 disables the cache.
+     */
+    public static final String PROP_LAST_WRITE_CACHE_SIZE = "lastWriteCacheSize";
+    public static final long DEFAULT_LAST_WRITE_CACHE_SIZE = 0L;
+
+    /**
+     * Attribute the replicator writes the replication timestamp of each record to, built from the approximate creation
+     * time and sequence number of the stream record, and conditions the writes on. Disabled if not set.
+     */
+    public static final String PROP_REPLICATION_TIMESTAMP_ATTRIBUTE = "replicationTimestampAttribute";
+
+    /**
+     * Attribute the replicator writes the origin marker of each record to, used to drop the records of writes made by
+     * the replicator of another origin. Disabled if not set.
+     */
+    public static final String PROP_ORIGIN_ATTRIBUTE = "originAttribute";
+
+    /**
+     * Origin of the replicator written in the origin markers, unique among the replicators of a bidirectional setup.
+     */
+    public static final String PROP_ORIGIN = "origin";
+
+    /**
+     * Expression the records to replicate match, see {@link com.amazonaws.services.dynamodbv2.streams.connectors.filter.ExpressionFilter}.
+     * All records are replicated if not set.
+     */
+    public static final String PROP_FILTER_EXPRESSION = "filterExpression";
+
+    /**
+     * Number of stripes the records of a batch are split in by the hash of their keys, each submitted to the destination
+     * table by its own thread. The records of a key always go to the same stripe.
+     */
+    public static final String PROP_EMIT_STRIPES = "emitStripes";
+    public static final long DEFAULT_EMIT_STRIPES = 1L;
+
+    /**
+     * Maximum number of writes in flight of a partition key of the destination table. The writes of the partition keys
+     * are interleaved round-robin, and the partition keys whose writes are throttled back off. 0 disables the
+     * scheduling.
+     */
+    public static final String PROP_MAX_IN_FLIGHT_PER_PARTITION = "maxInFlightPerPartition";
+    public static final long DEFAULT_MAX_IN_FLIGHT_PER_PARTITION = 0L;
+
+    /**
+     * Percentile of the recent latencies of the conditional writes after which a duplicate of a write still in flight is
+     * sent, whichever completes first wins. 0 disables hedging. Requires a last writer wins condition, so that the
+     * duplicates are idempotent.
+     */
+    public static final String PROP_HEDGE_PERCENTILE = "hedgePercentile";
+    public static final long DEFAULT_HEDGE_PERCENTILE = 0L;
+
+    /**
+     * Maximum number of hedged writes, in percent of the writes that may be hedged.
+     */
+    public static final String PROP_HEDGE_BUDGET_PERCENT = "hedgeBudgetPercent";
+    public static final long DEFAULT_HEDGE_BUDGET_PERCENT = 5L;
+
+    /**
+     * Index the records of each batch as soon as it is received, cancelling the pending writes of the previous batch
+     * that a newer record of the same item supersedes. Costs a second transformation of every record, off by default.
+     */
+    public static final String PROP_SUPERSEDE_PENDING_WRITES = "supersedePendingWrites";
+    public static final boolean DEFAULT_SUPERSEDE_PENDING_WRITES = false;
+
+    /**
+     * Comma separated attributes replicated besides the key attributes, see {@link AttributeProjection}. All attributes
+     * are replicated if neither included nor excluded attributes are set.
+     */
+    public static final String PROP_INCLUDED_ATTRIBUTES = "includedAttributes";
+
+    /**
+     * Comma separated attributes not replicated, exclusive with the included attributes.
+     */
+    public static final String PROP_EXCLUDED_ATTRIBUTES = "excludedAttributes";
+
+    /**
+     * Statements rewriting and routing the records before they are written, see
+     * {@link com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformPlan}.
+     */
+    public static final String PROP_TRANSFORM = "transform";
+
     private final boolean publishCloudWatch;
 
     private final String partitionKeyName;
 
     private final String lastUpdateTimeKeyName;
 
+    private final long checkpointIntervalMillis;
+
+    private final long checkpointMaxRecords;
+
+    private final String appliedLogDirectory;
+
+    private final int appliedLogSizeBytes;
+
+    private final String failedKeysFile;
+
+    private final String deadLetterDirectory;
+
+    private final String outageSpoolDirectory;
+
+    private final int outageSpoolSizeBytes;
+
+    private final int circuitBreakerFailures;
+
+    private final long circuitBreakerOpenMillis;
+
+    private final long outageDrainItemsPerSecond;
+
+    private final long lastWriteCacheSize;
+
+    private final String replicationTimestampAttribute;
+
+    private final String originAttribute;
+
+    private final String origin;
+
+    private final String filterExpression;
+
+    private final int emitStripes;
+
+    private final int maxInFlightPerPartition;
+
+    private final int hedgePercentile;
+
+    private final int hedgeBudgetPercent;
+
+    private final boolean supersedePendingWrites;
+
+    private final List<String> includedAttributes;
+
+    private final List<String> excludedAttributes;
+
+    private final String transform;
+
     /**
      * Constructor for the DynamoDBStreamsConnectorConfiguration class.
      *
@@ -50,6 +248,35 @@ public class DynamoDBStreamsConnectorConfiguration extends KinesisConnectorConfi
         this.publishCloudWatch = publishCloudWatch;
         this.partitionKeyName = partitionKeyName;
         this.lastUpdateTimeKeyName = lastUpdateTimeKeyName;
+        this.checkpointIntervalMillis = getLongProperty(properties, PROP_CHECKPOINT_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+        this.checkpointMaxRecords = getLongProperty(properties, PROP_CHECKPOINT_MAX_RECORDS, DEFAULT_CHECKPOINT_MAX_RECORDS);
+        this.appliedLogDirectory = properties.getProperty(PROP_APPLIED_LOG_DIRECTORY);
+        this.appliedLogSizeBytes = Math.toIntExact(getLongProperty(properties, PROP_APPLIED_LOG_SIZE_BYTES, DEFAULT_APPLIED_LOG_SIZE_BYTES));
+        this.failedKeysFile = properties.getProperty(PROP_FAILED_KEYS_FILE);
+        this.deadLetterDirectory = properties.getProperty(PROP_DEAD_LETTER_DIRECTORY);
+        this.outageSpoolDirectory = properties.getProperty(PROP_OUTAGE_SPOOL_DIRECTORY);
+        this.outageSpoolSizeBytes = Math.toIntExact(getLongProperty(properties, PROP_OUTAGE_SPOOL_SIZE_BYTES, DEFAULT_OUTAGE_SPOOL_SIZE_BYTES));
+        this.circuitBreakerFailures = Math.toIntExact(getLongProperty(properties, PROP_CIRCUIT_BREAKER_FAILURES, DEFAULT_CIRCUIT_BREAKER_FAILURES));
+        this.circuitBreakerOpenMillis = getLongProperty(properties, PROP_CIRCUIT_BREAKER_OPEN_MILLIS, DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS);
+        this.outageDrainItemsPerSecond = getLongProperty(properties, PROP_OUTAGE_DRAIN_ITEMS_PER_SECOND, DEFAULT_OUTAGE_DRAIN_ITEMS_PER_SECOND);
+        this.lastWriteCacheSize = getLongProperty(properties, PROP_LAST_WRITE_CACHE_SIZE, DEFAULT_LAST_WRITE_CACHE_SIZE);
+        this.replicationTimestampAttribute = properties.getProperty(PROP_REPLICATION_TIMESTAMP_ATTRIBUTE);
+        this.originAttribute = properties.getProperty(PROP_ORIGIN_ATTRIBUTE);
+        this.origin = properties.getProperty(PROP_ORIGIN);
+        this.filterExpression = properties.getProperty(PROP_FILTER_EXPRESSION);
+        this.emitStripes = Math.toIntExact(getLongProperty(properties, PROP_EMIT_STRIPES, DEFAULT_EMIT_STRIPES));
+        this.maxInFlightPerPartition = Math.toIntExact(getLongProperty(properties, PROP_MAX_IN_FLIGHT_PER_PARTITION,
+            DEFAULT_MAX_IN_FLIGHT_PER_PARTITION));
+        this.hedgePercentile = Math.toIntExact(getLongProperty(properties, PROP_HEDGE_PERCENTILE, DEFAULT_HEDGE_PERCENTILE));
+        this.hedgeBudgetPercent = Math.toIntExact(getLongProperty(properties, PROP_HEDGE_BUDGET_PERCENT, DEFAULT_HEDGE_BUDGET_PERCENT));
+        this.supersedePendingWrites = Boolean.parseBoolean(properties.getProperty(PROP_SUPERSEDE_PENDING_WRITES,
+            Boolean.toString(DEFAULT_SUPERSEDE_PENDING_WRITES)));
+        this.includedAttributes = getListProperty(properties, PROP_INCLUDED_ATTRIBUTES);
+        this.excludedAttributes = getListProperty(properties, PROP_EXCLUDED_ATTRIBUTES);
+        this.transform = properties.getProperty(PROP_TRANSFORM);
+        if (null != includedAttributes && null != excludedAttributes) {
+            throw new IllegalArgumentException(PROP_INCLUDED_ATTRIBUTES + " and " + PROP_EXCLUDED_ATTRIBUTES + " cannot be used together");
+        }
     }
 
     public DynamoDBStreamsConnectorConfiguration(final Properties properties,
@@ -68,4 +295,117 @@ public class DynamoDBStreamsConnectorConfiguration extends KinesisConnectorConfi
     public String getLastUpdateTimeKeyName() {
         return lastUpdateTimeKeyName;
     }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public long getCheckpointMaxRecords() {
+        return checkpointMaxRecords;
+    }
+
+    public String getAppliedLogDirectory() {
+        return appliedLogDirectory;
+    }
+
+    public int getAppliedLogSizeBytes() {
+        return appliedLogSizeBytes;
+    }
+
+    public String getFailedKeysFile() {
+        return failedKeysFile;
+    }
+
+    public String getDeadLetterDirectory() {
+        return deadLetterDirectory;
+    }
+
+    public String getOutageSpoolDirectory() {
+        return outageSpoolDirectory;
+    }
+
+    public int getOutageSpoolSizeBytes() {
+        return outageSpoolSizeBytes;
+    }
+
+    public int getCircuitBreakerFailures() {
+        return circuitBreakerFailures;
+    }
+
+    public long getCircuitBreakerOpenMillis() {
+        return circuitBreakerOpenMillis;
+    }
+
+    public long getOutageDrainItemsPerSecond() {
+        return outageDrainItemsPerSecond;
+    }
+
+    public long getLastWriteCacheSize() {
+        return lastWriteCacheSize;
+    }
+
+    public String getReplicationTimestampAttribute() {
+        return replicationTimestampAttribute;
+    }
+
+    public String getOriginAttribute() {
+        return originAttribute;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getFilterExpression() {
+        return filterExpression;
+    }
+
+    public int getEmitStripes() {
+        return emitStripes;
+    }
+
+    public int getMaxInFlightPerPartition() {
+        return maxInFlightPerPartition;
+    }
+
+    public int getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public int getHedgeBudgetPercent() {
+        return hedgeBudgetPercent;
+    }
+
+    public boolean isSupersedePendingWrites() {
+        return supersedePendingWrites;
+    }
+
+    public List<String> getIncludedAttributes() {
+        return includedAttributes;
+    }
+
+    public List<String> getExcludedAttributes() {
+        return excludedAttributes;
+    }
+
+    public String getTransform() {
+        return transform;
+    }
+
+    private static List<String> getListProperty(final Properties properties, final String property) {
+        final String value = properties.getProperty(property);
+        return null == value ? null : Splitter.on(',').trimResults().omitEmptyStrings().splitToList(value);
+    }
+
+    private static long getLongProperty(final Properties properties, final String property, final long defaultValue) {
+        final String value = properties.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + property + " must be a long but was: " + value, e);
+        }
+    }
 }
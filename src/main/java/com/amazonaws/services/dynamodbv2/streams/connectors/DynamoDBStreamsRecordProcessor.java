@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.streams.connectors.composite.IRecordsReceivedAware;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.InvalidStateException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.KinesisClientLibDependencyException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ThrottlingException;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.v2.IShutdownNotificationAware;
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.ShutdownReason;
+import com.amazonaws.services.kinesis.connectors.KinesisConnectorRecordProcessor;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+import com.amazonaws.services.kinesis.connectors.interfaces.ITransformer;
+import com.amazonaws.services.kinesis.connectors.interfaces.ITransformerBase;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Record processor for a single shard of the source table's stream. Behaves like the
+ * {@link KinesisConnectorRecordProcessor}, but routes the checkpoints it issues after every emitted batch through a
+ * {@link ThrottledCheckpointer} so that they are coalesced according to the connector configuration. Pending checkpoints
+ * are always written at shard end and on requested shutdown, and dropped when the lease has been lost. If configured,
+ * the processor also keeps the {@link AppliedRecordLog} of the shard and compacts it on every checkpoint.
+ * <p>
+ * On a graceful worker shutdown the records still buffered are emitted and the shard is checkpointed at the last
+ * record written, so the next owner of the lease resumes exactly where this processor stopped.
+ * <p>
+ * If configured, the records of each batch received are indexed as soon as the batch arrives, while the previous batch
+ * may still be written: a pending write of the previous batch, typically waiting for a retry after being throttled, is cancelled
+ * when the new batch holds a newer record of the same item.
+ * <p>
+ * The time from the initialization of the processor, when the lease of the shard is taken, to the end of its first
+ * batch of records is published as TimeToFirstEmittedRecord.
+ */
+@Log4j
+public class DynamoDBStreamsRecordProcessor extends KinesisConnectorRecordProcessor<Record, Record> implements IShutdownNotificationAware, IRecordsReceivedAware {
+
+    /**
+     * CloudWatch Metric for the time from taking the lease of a shard to emitting its first records.
+     */
+    private static final String TIME_TO_FIRST_EMITTED_RECORD = "TimeToFirstEmittedRecord";
+
+    private final ThrottledCheckpointer checkpointer;
+    private final IBuffer<Record> buffer;
+    private final IFilter<Record> filter;
+    private final IEmitter<Record> emitter;
+    private final ITransformerBase<Record, Record> transformer;
+    private final DynamoDBStreamsConnectorConfiguration configuration;
+    private final AmazonCloudWatch cloudwatch;
+    private final AtomicBoolean awaitingFirstEmit = new AtomicBoolean();
+    private long initializedMillis;
+    private AppliedRecordLog appliedRecordLog;
+    private LatestVersionIndex latestVersionIndex;
+
+    public DynamoDBStreamsRecordProcessor(final IBuffer<Record> buffer, final IFilter<Record> filter, final IEmitter<Record> emitter,
+                                          final ITransformerBase<Record, Record> transformer, final DynamoDBStreamsConnectorConfiguration configuration,
+                                          final AmazonCloudWatch cloudwatch) {
+        super(buffer, filter, emitter, transformer, configuration);
+        this.checkpointer = new ThrottledCheckpointer(configuration.getCheckpointIntervalMillis(), configuration.getCheckpointMaxRecords(),
+            cloudwatch, configuration.APP_NAME);
+        this.buffer = buffer;
+        this.filter = filter;
+        this.emitter = emitter;
+        this.transformer = transformer;
+        this.configuration = configuration;
+        this.cloudwatch = cloudwatch;
+        if (configuration.isSupersedePendingWrites() && emitter instanceof DynamoDBReplicationEmitter && transformer instanceof ITransformer) {
+            latestVersionIndex = new LatestVersionIndex();
+            ((DynamoDBReplicationEmitter) emitter).setLatestVersionIndex(latestVersionIndex);
+        }
+    }
+
+    /**
+     * Indexes the records of the batch that will be written, as the emitter sees them.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void recordsReceived(final List<com.amazonaws.services.kinesis.model.Record> records) {
+        if (null == latestVersionIndex) {
+            return;
+        }
+        final ITransformer<Record, Record> recordTransformer = (ITransformer<Record, Record>) transformer;
+        for (com.amazonaws.services.kinesis.model.Record record : records) {
+            try {
+                final Record received = recordTransformer.toClass(record);
+                if (filter.keepRecord(received)) {
+                    latestVersionIndex.received(recordTransformer.fromClass(received));
+                }
+            } catch (IOException | RuntimeException e) {
+                // the record is processed with its batch, only without superseding older writes
+                log.debug("Could not index record " + record.getSequenceNumber(), e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize(final String shardId) {
+        super.initialize(shardId);
+        initializedMillis = System.currentTimeMillis();
+        awaitingFirstEmit.set(true);
+        if (emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setShardId(shardId);
+        }
+        if (null != configuration.getFailedKeysFile() && emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setFailedKeysFile(new File(configuration.getFailedKeysFile()));
+        }
+        if (null != configuration.getAppliedLogDirectory() && emitter instanceof DynamoDBReplicationEmitter) {
+            final File file = new File(configuration.getAppliedLogDirectory(),
+                configuration.APP_NAME + "-" + configuration.DYNAMODB_DATA_TABLE_NAME + "-" + shardId + ".log");
+            try {
+                appliedRecordLog = new AppliedRecordLog(file, configuration.getAppliedLogSizeBytes());
+            } catch (IOException e) {
+                log.error("Could not open applied record log " + file + ", continuing without it", e);
+                return;
+            }
+            ((DynamoDBReplicationEmitter) emitter).setAppliedRecordLog(appliedRecordLog);
+            checkpointer.setCheckpointListener(sequenceNumber -> appliedRecordLog.compact());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processRecords(final List<com.amazonaws.services.kinesis.model.Record> records, final IRecordProcessorCheckpointer checkpointer) {
+        this.checkpointer.setDelegate(checkpointer);
+        this.checkpointer.recordsReceived(records.size());
+        super.processRecords(records, this.checkpointer);
+        if (!records.isEmpty() && awaitingFirstEmit.compareAndSet(true, false)) {
+            publishTimeToFirstEmit();
+        }
+        try {
+            // flushes checkpoints coalesced while the stream was idle
+            this.checkpointer.checkpointIfDue();
+        } catch (KinesisClientLibDependencyException | InvalidStateException | ThrottlingException | ShutdownException e) {
+            log.error("Could not write pending checkpoint", e);
+        }
+    }
+
+    /**
+     * Emits the buffered records and checkpoints the last record written before the lease is released. If some of the
+     * buffered records could not be written, only the batches emitted before are checkpointed.
+     */
+    @Override
+    public void shutdownRequested(final IRecordProcessorCheckpointer checkpointer) {
+        this.checkpointer.setDelegate(checkpointer);
+        try {
+            final List<Record> records = transformBuffered();
+            if (!records.isEmpty()) {
+                final List<Record> failed = emitter.emit(new UnmodifiableBuffer<Record>(buffer, records));
+                if (failed.isEmpty()) {
+                    this.checkpointer.checkpoint(buffer.getLastSequenceNumber());
+                } else {
+                    log.warn(failed.size() + " buffered records could not be written on shutdown, the next lease owner will replay them");
+                }
+                buffer.clear();
+            }
+            this.checkpointer.flush();
+        } catch (IOException e) {
+            log.error("Could not emit buffered records on shutdown", e);
+        } catch (KinesisClientLibDependencyException | InvalidStateException | ThrottlingException | ShutdownException e) {
+            log.error("Could not checkpoint on shutdown", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Record> transformBuffered() throws IOException {
+        if (!(transformer instanceof ITransformer)) {
+            return buffer.getRecords();
+        }
+        final List<Record> records = new ArrayList<Record>();
+        for (Record record : buffer.getRecords()) {
+            records.add(((ITransformer<Record, Record>) transformer).fromClass(record));
+        }
+        return records;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void shutdown(final IRecordProcessorCheckpointer checkpointer, final ShutdownReason reason) {
+        this.checkpointer.setDelegate(checkpointer);
+        if (ShutdownReason.ZOMBIE == reason) {
+            // the lease is owned by another worker now, it must not be checkpointed
+            this.checkpointer.discard();
+        } else {
+            try {
+                this.checkpointer.flush();
+            } catch (KinesisClientLibDependencyException | InvalidStateException | ThrottlingException | ShutdownException e) {
+                log.error("Could not write pending checkpoint on shutdown", e);
+            }
+        }
+        super.shutdown(this.checkpointer, reason);
+        if (null != appliedRecordLog) {
+            try {
+                appliedRecordLog.close();
+                // a finished shard is never replayed again
+                if (ShutdownReason.TERMINATE == reason) {
+                    appliedRecordLog.delete();
+                }
+            } catch (IOException e) {
+                log.error("Could not close applied record log", e);
+            }
+        }
+    }
+
+    private void publishTimeToFirstEmit() {
+        final long elapsedMillis = System.currentTimeMillis() - initializedMillis;
+        log.info("First records emitted " + elapsedMillis + " ms after the lease was taken");
+        if (null == cloudwatch) {
+            return;
+        }
+        try {
+            cloudwatch.putMetricData(new PutMetricDataRequest().withNamespace(configuration.APP_NAME).withMetricData(
+                new MetricDatum().withMetricName(TIME_TO_FIRST_EMITTED_RECORD).withValue((double) elapsedMillis)
+                    .withUnit(StandardUnit.Milliseconds).withTimestamp(new Date())));
+        } catch (RuntimeException e) {
+            log.error("Could not publish time to first emitted record", e);
+        }
+    }
+
+    /**
+     * @return the checkpointer coalescing the checkpoints of this processor
+     */
+    public ThrottledCheckpointer getCheckpointer() {
+        return checkpointer;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorFactory;
+import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IKinesisConnectorPipeline;
+
+/**
+ * Creates a {@link DynamoDBStreamsRecordProcessor} per shard using the buffer, filter, emitter and transformer of the
+ * given pipeline. If a dead letter directory is configured, the emitters of all shards append the records they could
+ * not write to the same {@link DeadLetterSpool}, which is replayed in the background. If an outage spool directory is
+ * configured, the emitters of all shards share a {@link CircuitBreaker} of the destination table and spool the records
+ * written while it is open to the same {@link OutageSpool}, which is drained in the background.
+ */
+public class DynamoDBStreamsRecordProcessorFactory implements IRecordProcessorFactory {
+
+    /**
+     * Time between two replays of the dead letter spool, before backoff.
+     */
+    static final long REPLAY_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * Time between two drains of the outage spool.
+     */
+    static final long DRAIN_INTERVAL_MILLIS = 1000L;
+
+    private final IKinesisConnectorPipeline<Record, Record> pipeline;
+    private final DynamoDBStreamsConnectorConfiguration configuration;
+    private final AmazonCloudWatch cloudwatch;
+    private final DeadLetterSpool deadLetterSpool;
+    private final CircuitBreaker circuitBreaker;
+    private final OutageSpool outageSpool;
+    private final LastWriteCache lastWriteCache;
+    private final HedgePolicy hedgePolicy;
+
+    /**
+     * @param pipeline
+     *            the pipeline providing the connector components
+     * @param configuration
+     *            the connector configuration
+     * @param cloudwatch
+     *            the CloudWatch client used by the record processors to publish metrics, the emitters aggregate their
+     *            metrics in it too if it is a {@link MetricsPublisher}
+     */
+    public DynamoDBStreamsRecordProcessorFactory(final IKinesisConnectorPipeline<Record, Record> pipeline,
+                                                 final DynamoDBStreamsConnectorConfiguration configuration, final AmazonCloudWatch cloudwatch) {
+        this.pipeline = pipeline;
+        this.configuration = configuration;
+        this.cloudwatch = cloudwatch;
+        this.lastWriteCache = configuration.getLastWriteCacheSize() > 0 ? new LastWriteCache(configuration.getLastWriteCacheSize()) : null;
+        this.hedgePolicy = configuration.getHedgePercentile() > 0
+            ? new HedgePolicy(configuration.getHedgePercentile(), configuration.getHedgeBudgetPercent()) : null;
+        this.deadLetterSpool = openDeadLetterSpool();
+        if (null == configuration.getOutageSpoolDirectory()) {
+            this.circuitBreaker = null;
+            this.outageSpool = null;
+        } else {
+            this.circuitBreaker = new CircuitBreaker(configuration.DYNAMODB_DATA_TABLE_NAME, configuration.getCircuitBreakerFailures(),
+                configuration.getCircuitBreakerOpenMillis());
+            this.outageSpool = openOutageSpool();
+        }
+    }
+
+    /**
+     * Open the dead letter spool of the pipeline and start replaying it in the background, if enabled.
+     */
+    private DeadLetterSpool openDeadLetterSpool() {
+        if (null == configuration.getDeadLetterDirectory()) {
+            return null;
+        }
+        final File file = new File(configuration.getDeadLetterDirectory(),
+            configuration.APP_NAME + "-" + pipeline.getClass().getSimpleName() + ".spool");
+        final DeadLetterSpool spool;
+        try {
+            spool = new DeadLetterSpool(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open dead letter spool " + file, e);
+        }
+        final IEmitter<Record> emitter = pipeline.getEmitter(configuration);
+        if (emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setDeadLetterSpool(spool);
+            ((DynamoDBReplicationEmitter) emitter).setLastWriteCache(lastWriteCache);
+            ((DynamoDBReplicationEmitter) emitter).setMetricsPublisher(getMetricsPublisher());
+        }
+        final ScheduledExecutorService replayExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "dead-letter-replayer-" + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayExecutor.scheduleWithFixedDelay(new DeadLetterReplayer(spool, emitter, pipeline.getBuffer(configuration), cloudwatch,
+            configuration.APP_NAME), REPLAY_INTERVAL_MILLIS, REPLAY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return spool;
+    }
+
+    /**
+     * Open the outage spool of the pipeline and start draining it in the background.
+     */
+    private OutageSpool openOutageSpool() {
+        final File file = new File(configuration.getOutageSpoolDirectory(),
+            configuration.APP_NAME + "-" + pipeline.getClass().getSimpleName() + ".outage");
+        final OutageSpool spool;
+        try {
+            spool = new OutageSpool(file, configuration.getOutageSpoolSizeBytes());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open outage spool " + file, e);
+        }
+        final IEmitter<Record> emitter = pipeline.getEmitter(configuration);
+        if (emitter instanceof DynamoDBReplicationEmitter) {
+            // shares the circuit breaker without spooling, so that the records rejected by the breaker stay in the spool
+            ((DynamoDBReplicationEmitter) emitter).setCircuitBreaker(circuitBreaker, null);
+            ((DynamoDBReplicationEmitter) emitter).setDeadLetterSpool(deadLetterSpool);
+            ((DynamoDBReplicationEmitter) emitter).setLastWriteCache(lastWriteCache);
+            ((DynamoDBReplicationEmitter) emitter).setMetricsPublisher(getMetricsPublisher());
+        }
+        final ScheduledExecutorService drainExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "outage-spool-drainer-" + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainExecutor.scheduleWithFixedDelay(new OutageSpoolDrainer(spool, circuitBreaker, emitter, pipeline.getBuffer(configuration),
+            configuration.getOutageDrainItemsPerSecond(), cloudwatch, configuration.APP_NAME), DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+        return spool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IRecordProcessor createProcessor() {
+        final IEmitter<Record> emitter = pipeline.getEmitter(configuration);
+        if (null != deadLetterSpool && emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setDeadLetterSpool(deadLetterSpool);
+        }
+        if (null != circuitBreaker && emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setCircuitBreaker(circuitBreaker, outageSpool);
+        }
+        if (null != lastWriteCache && emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setLastWriteCache(lastWriteCache);
+        }
+        if (null != hedgePolicy && emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setHedgePolicy(hedgePolicy);
+        }
+        if (emitter instanceof DynamoDBReplicationEmitter) {
+            ((DynamoDBReplicationEmitter) emitter).setMetricsPublisher(getMetricsPublisher());
+        }
+        return new DynamoDBStreamsRecordProcessor(pipeline.getBuffer(configuration), pipeline.getFilter(configuration),
+            emitter, pipeline.getTransformer(configuration), configuration, cloudwatch);
+    }
+
+    /**
+     * @return the aggregator of the metrics of the worker, null if the metrics are published directly
+     */
+    private MetricsPublisher getMetricsPublisher() {
+        return cloudwatch instanceof MetricsPublisher ? (MetricsPublisher) cloudwatch : null;
+    }
+}
@@ -9,25 +9,56 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 
 import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformPlan;
 import com.amazonaws.services.dynamodbv2.streamsadapter.model.RecordAdapter;
 import com.amazonaws.services.kinesis.connectors.interfaces.ITransformer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * This class implements {@link ITransformer} to convert input Kinesis records to output DynamoDB Streams records. It then converts all records into the format
- * expected by the emitter, which is also Streams records in this case.
+ * expected by the emitter, which is also Streams records in this case. If an {@link AttributeProjection} is given, the
+ * images of the records are projected as soon as they are read, before they are filtered and buffered. If a
+ * {@link TransformPlan} is given, the records are rewritten and routed by the plan before they are emitted.
  */
 public class DynamoDBStreamsRecordTransformer implements ITransformer<Record, Record> {
 
     private static final ObjectMapper MAPPER = DynamoDBStreamsRecordObjectMapper.getInstance();
     private static final Charset ENCODING = Charset.forName("UTF-8");
+
+    private final AttributeProjection projection;
+    private final TransformPlan plan;
+
+    public DynamoDBStreamsRecordTransformer() {
+        this(null, null);
+    }
+
+    /**
+     * @param projection
+     *            the projection of the images of the records, null to keep all attributes
+     */
+    public DynamoDBStreamsRecordTransformer(final AttributeProjection projection) {
+        this(projection, null);
+    }
+
+    /**
+     * @param projection
+     *            the projection of the images of the records, null to keep all attributes
+     * @param plan
+     *            the plan rewriting the records before they are emitted, null to emit the records as they are read
+     */
+    public DynamoDBStreamsRecordTransformer(final AttributeProjection projection, final TransformPlan plan) {
+        this.projection = projection;
+        this.plan = plan;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public Record fromClass(final Record record) throws IOException {
-        // since the emitter expects DynamoDB stream records, do nothing here
-        return record;
+        // the emitter expects DynamoDB stream records, so the plan rewrites them into stream records
+        return null == plan ? record : plan.transform(record);
     }
 
     /**
@@ -36,9 +67,25 @@ public class DynamoDBStreamsRecordTransformer implements ITransformer<Record, Re
     @Override
     public Record toClass(final com.amazonaws.services.kinesis.model.Record record) throws IOException {
         if (record instanceof RecordAdapter) {
-            return ((RecordAdapter) record).getInternalObject();
+            return project(((RecordAdapter) record).getInternalObject());
         } else {
-            return MAPPER.readValue(new String(record.getData().array(), ENCODING), Record.class);
+            return project(MAPPER.readValue(new String(record.getData().array(), ENCODING), Record.class));
         }
     }
+
+    /**
+     * Project the images of a record in place.
+     *
+     * @param record
+     *            a DynamoDB Streams record
+     * @return the record
+     */
+    public Record project(final Record record) {
+        if (null != projection && null != record.getDynamodb()) {
+            final StreamRecord streamRecord = record.getDynamodb();
+            streamRecord.setNewImage(projection.project(streamRecord.getNewImage(), streamRecord.getKeys()));
+            streamRecord.setOldImage(projection.project(streamRecord.getOldImage(), streamRecord.getKeys()));
+        }
+        return record;
+    }
 }
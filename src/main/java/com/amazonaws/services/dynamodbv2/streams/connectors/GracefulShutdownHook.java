@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
+import com.amazonaws.services.kinesis.leases.exceptions.DependencyException;
+import com.amazonaws.services.kinesis.leases.exceptions.InvalidStateException;
+import com.amazonaws.services.kinesis.leases.exceptions.ProvisionedThroughputException;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLease;
+import com.amazonaws.services.kinesis.leases.interfaces.ILeaseManager;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Shuts the worker down gracefully when the process is asked to stop: every record processor drains its in-flight
+ * writes and checkpoints the last record written, then the leases still owned by the worker are released in the lease
+ * table so that other workers can take them over on their next lease taker pass, without waiting for the failover time
+ * to expire.
+ * <p>
+ * The leases are only released once every record processor has shut down. If the graceful shutdown times out or
+ * fails, the record processors may still be writing and checkpointing, so the leases are left to expire instead: a
+ * worker taking a shard over while the old writes are still landing could otherwise replay older records over them.
+ */
+@Log4j
+public class GracefulShutdownHook implements Runnable {
+
+    private final Worker worker;
+    private final ILeaseManager<KinesisClientLease> leaseManager;
+    private final String workerId;
+    private final long timeoutMillis;
+    private MetricsPublisher metricsPublisher;
+
+    /**
+     * @param worker
+     *            the worker to shut down
+     * @param leaseManager
+     *            the manager of the worker's lease table
+     * @param workerId
+     *            the identifier the worker uses as lease owner
+     * @param timeoutMillis
+     *            how long to wait for the record processors to checkpoint
+     */
+    public GracefulShutdownHook(final Worker worker, final ILeaseManager<KinesisClientLease> leaseManager, final String workerId,
+        final long timeoutMillis) {
+        this.worker = worker;
+        this.leaseManager = leaseManager;
+        this.workerId = workerId;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        log.info("Shutting down worker " + workerId + " gracefully");
+        boolean completed = false;
+        try {
+            completed = worker.startGracefulShutdown().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (!completed) {
+                log.warn("Worker " + workerId + " was not running");
+            }
+        } catch (TimeoutException e) {
+            log.warn("Record processors did not shut down within " + timeoutMillis + " ms, their leases will expire after the failover time");
+            worker.shutdown();
+        } catch (ExecutionException e) {
+            log.error("Graceful shutdown failed, the leases will expire after the failover time", e.getCause());
+            worker.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (completed) {
+            releaseLeases();
+        }
+        if (null != metricsPublisher) {
+            metricsPublisher.shutdown();
+        }
+        if (leaseManager instanceof Closeable) {
+            try {
+                ((Closeable) leaseManager).close();
+            } catch (IOException e) {
+                log.error("Could not close lease manager", e);
+            }
+        }
+    }
+
+    /**
+     * @param metricsPublisher
+     *            the aggregator of the metrics of the worker, flushed once the worker stopped
+     */
+    public void setMetricsPublisher(final MetricsPublisher metricsPublisher) {
+        this.metricsPublisher = metricsPublisher;
+    }
+
+    /**
+     * Evicts the leases still owned by this worker, so that they are immediately available to the other workers.
+     */
+    void releaseLeases() {
+        try {
+            int released = 0;
+            for (KinesisClientLease lease : leaseManager.listLeases()) {
+                if (workerId.equals(lease.getLeaseOwner()) && leaseManager.evictLease(lease)) {
+                    released++;
+                }
+            }
+            log.info("Released " + released + " leases of worker " + workerId);
+        } catch (DependencyException | InvalidStateException | ProvisionedThroughputException e) {
+            log.error("Could not release the leases of worker " + workerId + ", they will expire after the failover time", e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides when a duplicate of a write still in flight is sent to the destination table. The hedge delay is a
+ * percentile of the latencies of the recent writes, and the hedges are limited by a budget in percent of the writes:
+ * each write earns a fraction of a hedge, and a hedge is only sent when a whole one was earned.
+ * <p>
+ * Writes are not hedged until enough latencies were sampled to know the percentile.
+ */
+public class HedgePolicy {
+
+    static final int SAMPLES = 1024;
+    static final int MIN_SAMPLES = 128;
+
+    /**
+     * Hedges saved up while the destination is fast, so that a burst of slow writes can be hedged.
+     */
+    static final int MAX_HEDGES = 20;
+
+    private final double percentile;
+    private final int budgetPercent;
+    private final long[] latencies = new long[SAMPLES];
+    private long samples;
+    private long delayMillis = -1L;
+    /**
+     * Hedges earned, in hundredths of a hedge.
+     */
+    private int credits;
+
+    /**
+     * @param percentile
+     *            the percentile of the latencies after which a write is hedged, between 1 and 99
+     * @param budgetPercent
+     *            the maximum number of hedges in percent of the writes
+     */
+    public HedgePolicy(final int percentile, final int budgetPercent) {
+        Preconditions.checkArgument(percentile > 0 && percentile < 100, "The hedge percentile must be between 1 and 99");
+        Preconditions.checkArgument(budgetPercent >= 0, "The hedge budget must not be negative");
+        this.percentile = percentile / 100.0;
+        this.budgetPercent = budgetPercent;
+    }
+
+    /**
+     * A write that may be hedged was sent.
+     *
+     * @return the time after which the write is hedged, negative if it must not be hedged
+     */
+    synchronized long submitted() {
+        credits = Math.min(100 * MAX_HEDGES, credits + budgetPercent);
+        return delayMillis;
+    }
+
+    /**
+     * Take a hedge from the budget.
+     *
+     * @return true if the write may be hedged
+     */
+    synchronized boolean tryHedge() {
+        if (credits < 100) {
+            return false;
+        }
+        credits -= 100;
+        return true;
+    }
+
+    /**
+     * The first attempt of a write completed after the given latency, whether it was hedged or not.
+     */
+    synchronized void completed(final long latencyMillis) {
+        latencies[(int) (samples++ % SAMPLES)] = latencyMillis;
+        // the percentile is only computed again every few writes
+        if (samples >= MIN_SAMPLES && 0 == samples % (MIN_SAMPLES / 4)) {
+            final long[] sorted = Arrays.copyOf(latencies, (int) Math.min(samples, SAMPLES));
+            Arrays.sort(sorted);
+            delayMillis = sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+
+    /**
+     * @return the time after which a write is hedged, negative until enough latencies were sampled
+     */
+    synchronized long getDelayMillis() {
+        return delayMillis;
+    }
+}
@@ -14,16 +14,28 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsClientBuilder;
 import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.Bootstrap;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.BootstrapSink;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.DynamoDBSegmentProgressStore;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.ExportFileBootstrap;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.LocalSegmentProgressStore;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.ParallelScanBootstrap;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.SegmentProgressStore;
+import com.amazonaws.services.dynamodbv2.streams.connectors.verify.DivergenceRepair;
+import com.amazonaws.services.dynamodbv2.streams.connectors.verify.MerkleVerifier;
 import com.amazonaws.services.dynamodbv2.streams.connectors.composite.CompositeRecordProcessorFactory;
 import com.amazonaws.services.dynamodbv2.streamsadapter.AmazonDynamoDBStreamsAdapterClient;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.KinesisClientLibConfiguration;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
-import com.amazonaws.services.kinesis.connectors.KinesisConnectorRecordProcessorFactory;
 import com.amazonaws.services.kinesis.connectors.interfaces.IKinesisConnectorPipeline;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLeaseManager;
+import com.amazonaws.services.kinesis.leases.interfaces.IKinesisClientLeaseManager;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -53,6 +65,53 @@ public class KinesisWorkerCreator {
     private List<IKinesisConnectorPipeline<Record, Record>> pipelines = new ArrayList<>();
     private Optional<Long> parentShardPollIntervalMillis = Optional.empty();
     private long failoverTimeMillis = DynamoDBConnectorConstants.KCL_FAILOVER_TIME;
+    private Optional<Long> checkpointIntervalMillis = Optional.empty();
+    private Optional<Long> checkpointMaxRecords = Optional.empty();
+    private Optional<String> appliedLogDirectory = Optional.empty();
+    private long gracefulShutdownMillis = DynamoDBConnectorConstants.DEFAULT_GRACEFUL_SHUTDOWN_MILLIS;
+    private long prewarmConnections;
+    private Optional<String> localCheckpointFile = Optional.empty();
+    private long localCheckpointFlushMillis = DynamoDBConnectorConstants.DEFAULT_LOCAL_CHECKPOINT_FLUSH_MILLIS;
+    private GracefulShutdownHook gracefulShutdownHook;
+    private boolean isBootstrap;
+    private int bootstrapSegments = Runtime.getRuntime().availableProcessors() * 2;
+    private double bootstrapReadUnitsPerSecond;
+    private double bootstrapWriteItemsPerSecond;
+    private Optional<String> bootstrapProgressDirectory = Optional.empty();
+    private boolean isBootstrapProgressTable;
+    private Optional<String> bootstrapExportDirectory = Optional.empty();
+    private Optional<Long> bootstrapExportTimeMillis = Optional.empty();
+    private Bootstrap bootstrap;
+    private boolean isVerify;
+    private int verifySegments = Runtime.getRuntime().availableProcessors() * 2;
+    private double verifyReadUnitsPerSecond;
+    private int verifyTreeDepth = MerkleVerifier.DEFAULT_DEPTH;
+    private MerkleVerifier.Step verifyStep;
+    private String verifyDirectory;
+    private String divergenceFile;
+    private boolean isRepair;
+    private double repairItemsPerSecond;
+    private Optional<String> failedKeysFile = Optional.empty();
+    private Optional<String> deadLetterDirectory = Optional.empty();
+    private Optional<String> outageSpoolDirectory = Optional.empty();
+    private Optional<Long> circuitBreakerFailures = Optional.empty();
+    private Optional<Long> circuitBreakerOpenMillis = Optional.empty();
+    private Optional<Long> outageDrainItemsPerSecond = Optional.empty();
+    private Optional<Long> lastWriteCacheSize = Optional.empty();
+    private Optional<String> replicationTimestampAttribute = Optional.empty();
+    private Optional<String> originAttribute = Optional.empty();
+    private Optional<String> origin = Optional.empty();
+    private Optional<String> filterExpression = Optional.empty();
+    private Optional<Long> emitStripes = Optional.empty();
+    private Optional<Long> maxInFlightPerPartition = Optional.empty();
+    private Optional<Long> hedgePercentile = Optional.empty();
+    private Optional<Long> hedgeBudgetPercent = Optional.empty();
+    private boolean isSupersedePendingWrites;
+    private Optional<String> includedAttributes = Optional.empty();
+    private Optional<String> excludedAttributes = Optional.empty();
+    private Optional<String> transform = Optional.empty();
+    private List<ReplicaTable> replicas = new ArrayList<>();
+    private Optional<DestinationClients> destinationClients = Optional.empty();
 
     public KinesisWorkerCreator() {
     }
@@ -82,6 +141,50 @@ public class KinesisWorkerCreator {
         isPublishCloudWatch = !params.isDontPublishCloudwatch();
         taskName = params.getTaskName();
         parentShardPollIntervalMillis = Optional.ofNullable(params.getParentShardPollIntervalMillis());
+        checkpointIntervalMillis = Optional.ofNullable(params.getCheckpointIntervalMillis());
+        checkpointMaxRecords = Optional.ofNullable(params.getCheckpointMaxRecords());
+        appliedLogDirectory = Optional.ofNullable(params.getAppliedLogDirectory());
+        Optional.ofNullable(params.getGracefulShutdownMillis()).ifPresent(timeout -> gracefulShutdownMillis = timeout);
+        Optional.ofNullable(params.getPrewarmConnections()).ifPresent(connections -> prewarmConnections = connections);
+        localCheckpointFile = Optional.ofNullable(params.getLocalCheckpointFile());
+        Optional.ofNullable(params.getLocalCheckpointFlushMillis()).ifPresent(interval -> localCheckpointFlushMillis = interval);
+        isBootstrap = params.isBootstrap();
+        Optional.ofNullable(params.getBootstrapSegments()).ifPresent(segments -> bootstrapSegments = segments);
+        Optional.ofNullable(params.getBootstrapReadUnitsPerSecond()).ifPresent(rate -> bootstrapReadUnitsPerSecond = rate);
+        Optional.ofNullable(params.getBootstrapWriteItemsPerSecond()).ifPresent(rate -> bootstrapWriteItemsPerSecond = rate);
+        bootstrapProgressDirectory = Optional.ofNullable(params.getBootstrapProgressDirectory());
+        isBootstrapProgressTable = params.isBootstrapProgressTable();
+        bootstrapExportDirectory = Optional.ofNullable(params.getBootstrapExportDirectory());
+        bootstrapExportTimeMillis = Optional.ofNullable(params.getBootstrapExportTimeMillis());
+        isVerify = params.isVerify();
+        Optional.ofNullable(params.getVerifySegments()).ifPresent(segments -> verifySegments = segments);
+        Optional.ofNullable(params.getVerifyReadUnitsPerSecond()).ifPresent(rate -> verifyReadUnitsPerSecond = rate);
+        Optional.ofNullable(params.getVerifyTreeDepth()).ifPresent(depth -> verifyTreeDepth = depth);
+        verifyStep = params.getVerifyStep();
+        verifyDirectory = params.getVerifyDirectory();
+        divergenceFile = params.getDivergenceFile();
+        isRepair = params.isRepair();
+        Optional.ofNullable(params.getRepairItemsPerSecond()).ifPresent(rate -> repairItemsPerSecond = rate);
+        failedKeysFile = Optional.ofNullable(params.getFailedKeysFile());
+        deadLetterDirectory = Optional.ofNullable(params.getDeadLetterDirectory());
+        outageSpoolDirectory = Optional.ofNullable(params.getOutageSpoolDirectory());
+        circuitBreakerFailures = Optional.ofNullable(params.getCircuitBreakerFailures());
+        circuitBreakerOpenMillis = Optional.ofNullable(params.getCircuitBreakerOpenMillis());
+        outageDrainItemsPerSecond = Optional.ofNullable(params.getOutageDrainItemsPerSecond());
+        lastWriteCacheSize = Optional.ofNullable(params.getLastWriteCacheSize());
+        replicationTimestampAttribute = Optional.ofNullable(params.getReplicationTimestampAttribute());
+        originAttribute = Optional.ofNullable(params.getOriginAttribute());
+        origin = Optional.ofNullable(params.getOrigin());
+        filterExpression = Optional.ofNullable(params.getFilterExpression());
+        emitStripes = Optional.ofNullable(params.getEmitStripes());
+        maxInFlightPerPartition = Optional.ofNullable(params.getMaxInFlightPerPartition());
+        hedgePercentile = Optional.ofNullable(params.getHedgePercentile());
+        hedgeBudgetPercent = Optional.ofNullable(params.getHedgeBudgetPercent());
+        isSupersedePendingWrites = params.isSupersedePendingWrites();
+        includedAttributes = Optional.ofNullable(params.getIncludedAttributes());
+        excludedAttributes = Optional.ofNullable(params.getExcludedAttributes());
+        transform = Optional.ofNullable(params.getTransform());
+        Optional.ofNullable(params.getReplicas()).ifPresent(tables -> replicas = ReplicaTable.parse(tables));
 
         pipelines.add(new DynamoDBMasterToReplicasPipeline());
     }
@@ -131,33 +234,56 @@ public class KinesisWorkerCreator {
         } else {
             kclCloudWatchClient = new NoopCloudWatch();
         }
+        // the metrics of the replicator are aggregated by a single publisher, the KCL batches its own metrics
+        final MetricsPublisher metricsPublisher = isPublishCloudWatch ? new MetricsPublisher(kclCloudWatchClient,
+                DynamoDBConnectorConstants.METRICS_FLUSH_INTERVAL_MILLIS, DynamoDBConnectorConstants.METRICS_MAX_QUEUED_REQUESTS) : null;
+        final AmazonCloudWatch metricsCloudWatchClient = null == metricsPublisher ? kclCloudWatchClient : metricsPublisher;
 
         // try to get taskname from command line arguments, auto generate one if needed
-        final AwsClientBuilder.EndpointConfiguration destinationEndpointConfiguration = createEndpointConfiguration(destinationRegion,
-                destinationDynamodbEndpoint, AmazonDynamoDB.ENDPOINT_PREFIX);
-        final String actualTaskName = DynamoDBConnectorUtilities.getTaskName(sourceRegion, destinationRegion, taskName, sourceTable, destinationTable);
-
-        // set the appropriate Connector properties for the destination KCL configuration
-        final Properties properties = new Properties();
-        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_APP_NAME, actualTaskName);
-        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_DYNAMODB_ENDPOINT, destinationEndpointConfiguration.getServiceEndpoint());
-        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_DYNAMODB_DATA_TABLE_NAME, destinationTable);
-        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_REGION_NAME, destinationRegion.getName());
+        final String actualTaskName = DynamoDBConnectorUtilities.getTaskName(sourceRegion, destinationRegion, taskName, sourceTable,
+                getDestinationTableNames());
+        final List<DynamoDBStreamsConnectorConfiguration> connectorConfigurations = createConnectorConfigurations(actualTaskName,
+                destinationCredentialsProvider);
+        final DynamoDBStreamsConnectorConfiguration connectorConfiguration = connectorConfigurations.get(0);
+        if ((prewarmConnections > 0 || null != metricsPublisher) && !destinationClients.isPresent()) {
+            // the emitters must use the clients whose connections are opened in advance, and need no CloudWatch client
+            // of their own when their metrics are aggregated
+            destinationClients = Optional.of(new DestinationClients());
+        }
+        destinationClients.ifPresent(clients -> pipelines.stream()
+                .filter(pipeline -> pipeline instanceof DynamoDBMasterToReplicasPipeline)
+                .forEach(pipeline -> ((DynamoDBMasterToReplicasPipeline) pipeline).setDestinationClients(clients)));
 
         // create the record processor factory based on given pipeline and connector configurations
-        // use the master to replicas pipeline
-        final List<KinesisConnectorRecordProcessorFactory<Record, Record>> factories = pipelines.stream().map(pipeline ->
-                new KinesisConnectorRecordProcessorFactory<>(
-                        pipeline,
-                        new DynamoDBStreamsConnectorConfiguration(
-                                properties, destinationCredentialsProvider, isPublishCloudWatch, partitionKeyName, lastUpdateTimeKeyName))
+        // use the master to replicas pipeline, once per destination table
+        final List<DynamoDBStreamsRecordProcessorFactory> factories = connectorConfigurations.stream().flatMap(configuration ->
+                pipelines.stream().map(pipeline -> new DynamoDBStreamsRecordProcessorFactory(pipeline, configuration, metricsCloudWatchClient))
         ).collect(Collectors.toList());
 
         // create the KCL configuration with default values
+        final String workerId = DynamoDBConnectorConstants.WORKER_LABEL + actualTaskName + UUID.randomUUID().toString();
+
+        // copy the existing items with the same pipelines before the worker starts tailing the stream
+        if (isBootstrap || bootstrapExportDirectory.isPresent()) {
+            final List<BootstrapSink> sinks = connectorConfigurations.stream().flatMap(configuration ->
+                    pipelines.stream().map(pipeline -> new BootstrapSink(pipeline, configuration))).collect(Collectors.toList());
+            if (bootstrapExportDirectory.isPresent()) {
+                // the export is taken from the source table, whose key schema the copied items keep
+                final long exportTimeMillis = bootstrapExportTimeMillis.orElseThrow(() -> new IllegalArgumentException(
+                        CommandLineArgs.BOOTSTRAP_EXPORT_TIME_MILLIS + " is required with " + CommandLineArgs.BOOTSTRAP_EXPORT_DIRECTORY));
+                bootstrap = new ExportFileBootstrap(new File(bootstrapExportDirectory.get()),
+                        dynamodbClient.describeTable(sourceTable).getTable().getKeySchema(), exportTimeMillis, bootstrapSegments,
+                        bootstrapWriteItemsPerSecond, sinks);
+            } else {
+                bootstrap = new ParallelScanBootstrap(dynamodbClient, sourceTable, bootstrapSegments, bootstrapReadUnitsPerSecond,
+                        bootstrapWriteItemsPerSecond, sinks, createSegmentProgressStore(kclDynamoDBClient, actualTaskName), workerId);
+            }
+        }
+
         final KinesisClientLibConfiguration kclConfig = new KinesisClientLibConfiguration(actualTaskName,
                 streamArn,
                 sourceCredentialsProvider,
-                DynamoDBConnectorConstants.WORKER_LABEL + actualTaskName + UUID.randomUUID().toString())
+                workerId)
                 // worker will use checkpoint table if available, otherwise it is safer
                 // to start at beginning of the stream
                 .withInitialPositionInStream(InitialPositionInStream.TRIM_HORIZON)
@@ -167,19 +293,201 @@ public class KinesisWorkerCreator {
                 .withIdleTimeBetweenReadsInMillis(DynamoDBConnectorConstants.IDLE_TIME_BETWEEN_READS)
                 // Remove calls to GetShardIterator
                 .withValidateSequenceNumberBeforeCheckpointing(false)
-                // make parent shard poll interval tunable to decrease time to run integration test
+                // child shards start as soon as the parent's shard end checkpoint is seen, so poll for it frequently
+                // to keep the replication lag of a shard rollover short, tunable for the integration test
                 .withParentShardPollIntervalMillis(parentShardPollIntervalMillis.orElse(DynamoDBConnectorConstants.DEFAULT_PARENT_SHARD_POLL_INTERVAL_MILLIS))
                 // avoid losing leases too often - default 60 seconds
-                .withFailoverTimeMillis(failoverTimeMillis);
+                .withFailoverTimeMillis(failoverTimeMillis)
+                // idle shards still need to write the checkpoints that were coalesced
+                .withCallProcessRecordsEvenForEmptyRecordList(connectorConfiguration.getCheckpointIntervalMillis() > 0);
+
+        // keep leases and checkpoints in a local file instead of the KCL lease table for single-node deployments
+        final Worker.Builder workerBuilder = new Worker.Builder();
+        final IKinesisClientLeaseManager leaseManager;
+        if (localCheckpointFile.isPresent()) {
+            try {
+                leaseManager = new LocalFileLeaseManager(new File(localCheckpointFile.get()), localCheckpointFlushMillis);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not load local checkpoint file " + localCheckpointFile.get(), e);
+            }
+            workerBuilder.leaseManager(leaseManager);
+        } else {
+            leaseManager = new KinesisClientLeaseManager(kclConfig.getTableName(), kclDynamoDBClient);
+        }
+
+        // open the connections before the leases are taken, so that the first batches are not delayed by them
+        if (prewarmConnections > 0) {
+            final ConnectionPrewarmer prewarmer = new ConnectionPrewarmer(Math.toIntExact(prewarmConnections),
+                    DynamoDBConnectorConstants.PREWARM_TIMEOUT_MILLIS);
+            for (DynamoDBStreamsConnectorConfiguration configuration : connectorConfigurations) {
+                final AmazonDynamoDB destinationClient = destinationClients.get().getDynamoDB(configuration);
+                prewarmer.prewarm("destination table " + configuration.DYNAMODB_DATA_TABLE_NAME, configuration.AWS_CREDENTIALS_PROVIDER,
+                        () -> destinationClient.describeTable(configuration.DYNAMODB_DATA_TABLE_NAME));
+            }
+            if (!localCheckpointFile.isPresent()) {
+                prewarmer.prewarm("lease table " + kclConfig.getTableName(), sourceCredentialsProvider,
+                        () -> kclDynamoDBClient.describeTable(kclConfig.getTableName()));
+            }
+        }
 
         // create the KCL worker for this connector
-        return new Worker.Builder()
-                .recordProcessorFactory(new CompositeRecordProcessorFactory(factories))
+        final Worker worker = workerBuilder
+                .recordProcessorFactory(new CompositeRecordProcessorFactory(factories, metricsCloudWatchClient, actualTaskName, leaseManager,
+                        gracefulShutdownMillis))
                 .config(kclConfig)
                 .kinesisClient(streamsAdapterClient)
                 .dynamoDBClient(kclDynamoDBClient)
                 .cloudWatchClient(kclCloudWatchClient)
                 .build();
+        gracefulShutdownHook = new GracefulShutdownHook(worker, leaseManager, workerId, gracefulShutdownMillis);
+        gracefulShutdownHook.setMetricsPublisher(metricsPublisher);
+        return worker;
+    }
+
+    /**
+     * @return a verifier comparing the source and destination tables, run instead of the worker
+     */
+    public MerkleVerifier createVerifier() {
+        final AmazonDynamoDB sourceClient = AmazonDynamoDBClientBuilder.standard()
+                .withCredentials(createSourceRegionCredentialProvider())
+                .withEndpointConfiguration(createEndpointConfiguration(sourceRegion, sourceDynamodbEndpoint, AmazonDynamoDB.ENDPOINT_PREFIX))
+                .build();
+        final AmazonDynamoDB destinationClient = AmazonDynamoDBClientBuilder.standard()
+                .withCredentials(createDestinationRegionCredentialProvider())
+                .withEndpointConfiguration(createEndpointConfiguration(destinationRegion, destinationDynamodbEndpoint, AmazonDynamoDB.ENDPOINT_PREFIX))
+                .build();
+        final MerkleVerifier verifier = new MerkleVerifier(sourceClient, sourceTable, destinationClient, destinationTable, verifySegments,
+                verifyReadUnitsPerSecond, verifyTreeDepth, new File(divergenceFile));
+        // the attributes written by the replicator differ between the tables
+        replicationTimestampAttribute.ifPresent(verifier::addIgnoredAttribute);
+        originAttribute.ifPresent(verifier::addIgnoredAttribute);
+        return verifier;
+    }
+
+    /**
+     * @return a repair of the items listed in the divergence file, run instead of the worker
+     */
+    public DivergenceRepair createRepair() {
+        final AmazonDynamoDB sourceClient = AmazonDynamoDBClientBuilder.standard()
+                .withCredentials(createSourceRegionCredentialProvider())
+                .withEndpointConfiguration(createEndpointConfiguration(sourceRegion, sourceDynamodbEndpoint, AmazonDynamoDB.ENDPOINT_PREFIX))
+                .build();
+        final String actualTaskName = DynamoDBConnectorUtilities.getTaskName(sourceRegion, destinationRegion, taskName, sourceTable,
+                getDestinationTableNames());
+        // the divergences were found in the destination table, not in the replicas
+        final DynamoDBStreamsConnectorConfiguration connectorConfiguration = createConnectorConfigurations(actualTaskName,
+                createDestinationRegionCredentialProvider()).get(0);
+        // repaired items are written with the same pipelines as the stream records
+        final List<BootstrapSink> sinks = pipelines.stream().map(pipeline -> new BootstrapSink(pipeline, connectorConfiguration))
+                .collect(Collectors.toList());
+        return new DivergenceRepair(sourceClient, sourceTable, sinks, repairItemsPerSecond, new File(divergenceFile));
+    }
+
+    /**
+     * @return the names of the destination tables, the tables of the replicas included
+     */
+    private String getDestinationTableNames() {
+        if (replicas.isEmpty()) {
+            return destinationTable;
+        }
+        return destinationTable + "," + replicas.stream().map(ReplicaTable::getName).collect(Collectors.joining(","));
+    }
+
+    /**
+     * @return the connector configuration of the destination table followed by those of the replicas. The
+     * configurations of a worker fanning out to replicas are named like the task replicating to each table alone, so
+     * that their metrics and local files stay apart
+     */
+    private List<DynamoDBStreamsConnectorConfiguration> createConnectorConfigurations(String actualTaskName,
+                                                                                      AWSCredentialsProvider destinationCredentialsProvider) {
+        final List<DynamoDBStreamsConnectorConfiguration> configurations = new ArrayList<>();
+        if (replicas.isEmpty()) {
+            configurations.add(createConnectorConfiguration(actualTaskName, destinationCredentialsProvider,
+                    new ReplicaTable(destinationRegion, destinationTable, destinationDynamodbEndpoint)));
+            return configurations;
+        }
+        final List<ReplicaTable> destinations = new ArrayList<>();
+        destinations.add(new ReplicaTable(destinationRegion, destinationTable, destinationDynamodbEndpoint));
+        destinations.addAll(replicas);
+        for (ReplicaTable destination : destinations) {
+            final String destinationTaskName = DynamoDBConnectorUtilities.getTaskName(sourceRegion, destination.getRegion(), null, sourceTable,
+                    destination.getTable());
+            configurations.add(createConnectorConfiguration(destinationTaskName, destinationCredentialsProvider, destination));
+        }
+        return configurations;
+    }
+
+    private DynamoDBStreamsConnectorConfiguration createConnectorConfiguration(String actualTaskName,
+                                                                               AWSCredentialsProvider destinationCredentialsProvider,
+                                                                               ReplicaTable destination) {
+        final AwsClientBuilder.EndpointConfiguration destinationEndpointConfiguration = createEndpointConfiguration(destination.getRegion(),
+                destination.getEndpoint(), AmazonDynamoDB.ENDPOINT_PREFIX);
+
+        // set the appropriate Connector properties for the destination KCL configuration
+        final Properties properties = new Properties();
+        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_APP_NAME, actualTaskName);
+        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_DYNAMODB_ENDPOINT, destinationEndpointConfiguration.getServiceEndpoint());
+        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_DYNAMODB_DATA_TABLE_NAME, destination.getTable());
+        properties.put(DynamoDBStreamsConnectorConfiguration.PROP_REGION_NAME, destination.getRegion().getName());
+        checkpointIntervalMillis.ifPresent(interval ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_CHECKPOINT_INTERVAL_MILLIS, interval.toString()));
+        checkpointMaxRecords.ifPresent(maxRecords ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_CHECKPOINT_MAX_RECORDS, maxRecords.toString()));
+        appliedLogDirectory.ifPresent(directory ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_APPLIED_LOG_DIRECTORY, directory));
+        failedKeysFile.ifPresent(file ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_FAILED_KEYS_FILE, file));
+        deadLetterDirectory.ifPresent(directory ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_DEAD_LETTER_DIRECTORY, directory));
+        outageSpoolDirectory.ifPresent(directory ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_OUTAGE_SPOOL_DIRECTORY, directory));
+        circuitBreakerFailures.ifPresent(failures ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_CIRCUIT_BREAKER_FAILURES, failures.toString()));
+        circuitBreakerOpenMillis.ifPresent(openMillis ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_CIRCUIT_BREAKER_OPEN_MILLIS, openMillis.toString()));
+        outageDrainItemsPerSecond.ifPresent(itemsPerSecond ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_OUTAGE_DRAIN_ITEMS_PER_SECOND, itemsPerSecond.toString()));
+        lastWriteCacheSize.ifPresent(size ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_LAST_WRITE_CACHE_SIZE, size.toString()));
+        replicationTimestampAttribute.ifPresent(attribute ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_REPLICATION_TIMESTAMP_ATTRIBUTE, attribute));
+        originAttribute.ifPresent(attribute -> {
+            properties.put(DynamoDBStreamsConnectorConfiguration.PROP_ORIGIN_ATTRIBUTE, attribute);
+            properties.put(DynamoDBStreamsConnectorConfiguration.PROP_ORIGIN, origin.orElse(sourceRegion.getName() + "/" + sourceTable));
+        });
+        filterExpression.ifPresent(expression ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_FILTER_EXPRESSION, expression));
+        emitStripes.ifPresent(stripes ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_EMIT_STRIPES, stripes.toString()));
+        maxInFlightPerPartition.ifPresent(inFlight ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_MAX_IN_FLIGHT_PER_PARTITION, inFlight.toString()));
+        hedgePercentile.ifPresent(percentile ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_HEDGE_PERCENTILE, percentile.toString()));
+        hedgeBudgetPercent.ifPresent(budget ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_HEDGE_BUDGET_PERCENT, budget.toString()));
+        if (isSupersedePendingWrites) {
+            properties.put(DynamoDBStreamsConnectorConfiguration.PROP_SUPERSEDE_PENDING_WRITES, Boolean.TRUE.toString());
+        }
+        includedAttributes.ifPresent(attributes ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_INCLUDED_ATTRIBUTES, attributes));
+        excludedAttributes.ifPresent(attributes ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_EXCLUDED_ATTRIBUTES, attributes));
+        transform.ifPresent(statements ->
+                properties.put(DynamoDBStreamsConnectorConfiguration.PROP_TRANSFORM, statements));
+        return new DynamoDBStreamsConnectorConfiguration(
+                properties, destinationCredentialsProvider, isPublishCloudWatch, partitionKeyName, lastUpdateTimeKeyName);
+    }
+
+    private SegmentProgressStore createSegmentProgressStore(AmazonDynamoDB kclDynamoDBClient, String actualTaskName) {
+        if (!isBootstrapProgressTable) {
+            return new LocalSegmentProgressStore(bootstrapProgressDirectory.map(File::new).orElse(null));
+        }
+        try {
+            return new DynamoDBSegmentProgressStore(kclDynamoDBClient, actualTaskName + DynamoDBConnectorConstants.BOOTSTRAP_TABLE_SUFFIX);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating the bootstrap progress table", e);
+        }
     }
 
     private AWSCredentialsProvider createSourceRegionCredentialProvider() {
@@ -380,6 +688,425 @@ public class KinesisWorkerCreator {
         return this;
     }
 
+    public Optional<Long> getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public KinesisWorkerCreator setCheckpointIntervalMillis(Long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = Optional.ofNullable(checkpointIntervalMillis);
+        return this;
+    }
+
+    public Optional<Long> getCheckpointMaxRecords() {
+        return checkpointMaxRecords;
+    }
+
+    public KinesisWorkerCreator setCheckpointMaxRecords(Long checkpointMaxRecords) {
+        this.checkpointMaxRecords = Optional.ofNullable(checkpointMaxRecords);
+        return this;
+    }
+
+    public long getGracefulShutdownMillis() {
+        return gracefulShutdownMillis;
+    }
+
+    public KinesisWorkerCreator setGracefulShutdownMillis(long gracefulShutdownMillis) {
+        this.gracefulShutdownMillis = gracefulShutdownMillis;
+        return this;
+    }
+
+    public long getPrewarmConnections() {
+        return prewarmConnections;
+    }
+
+    public KinesisWorkerCreator setPrewarmConnections(long prewarmConnections) {
+        this.prewarmConnections = prewarmConnections;
+        return this;
+    }
+
+    /**
+     * @return the hook shutting down the worker returned by the last call to {@link #create()} gracefully, or null
+     */
+    public GracefulShutdownHook getGracefulShutdownHook() {
+        return gracefulShutdownHook;
+    }
+
+    public boolean isBootstrap() {
+        return isBootstrap;
+    }
+
+    public KinesisWorkerCreator setBootstrap(boolean isBootstrap) {
+        this.isBootstrap = isBootstrap;
+        return this;
+    }
+
+    public int getBootstrapSegments() {
+        return bootstrapSegments;
+    }
+
+    public KinesisWorkerCreator setBootstrapSegments(int bootstrapSegments) {
+        this.bootstrapSegments = bootstrapSegments;
+        return this;
+    }
+
+    public double getBootstrapReadUnitsPerSecond() {
+        return bootstrapReadUnitsPerSecond;
+    }
+
+    public KinesisWorkerCreator setBootstrapReadUnitsPerSecond(double bootstrapReadUnitsPerSecond) {
+        this.bootstrapReadUnitsPerSecond = bootstrapReadUnitsPerSecond;
+        return this;
+    }
+
+    public double getBootstrapWriteItemsPerSecond() {
+        return bootstrapWriteItemsPerSecond;
+    }
+
+    public KinesisWorkerCreator setBootstrapWriteItemsPerSecond(double bootstrapWriteItemsPerSecond) {
+        this.bootstrapWriteItemsPerSecond = bootstrapWriteItemsPerSecond;
+        return this;
+    }
+
+    /**
+     * @return the copy to run before the worker returned by the last call to {@link #create()}, if enabled
+     */
+    public Optional<Bootstrap> getBootstrap() {
+        return Optional.ofNullable(bootstrap);
+    }
+
+    public Optional<String> getBootstrapProgressDirectory() {
+        return bootstrapProgressDirectory;
+    }
+
+    public KinesisWorkerCreator setBootstrapProgressDirectory(String bootstrapProgressDirectory) {
+        this.bootstrapProgressDirectory = Optional.ofNullable(bootstrapProgressDirectory);
+        return this;
+    }
+
+    public boolean isBootstrapProgressTable() {
+        return isBootstrapProgressTable;
+    }
+
+    public KinesisWorkerCreator setBootstrapProgressTable(boolean isBootstrapProgressTable) {
+        this.isBootstrapProgressTable = isBootstrapProgressTable;
+        return this;
+    }
+
+    public Optional<String> getBootstrapExportDirectory() {
+        return bootstrapExportDirectory;
+    }
+
+    public KinesisWorkerCreator setBootstrapExportDirectory(String bootstrapExportDirectory) {
+        this.bootstrapExportDirectory = Optional.ofNullable(bootstrapExportDirectory);
+        return this;
+    }
+
+    public Optional<Long> getBootstrapExportTimeMillis() {
+        return bootstrapExportTimeMillis;
+    }
+
+    public KinesisWorkerCreator setBootstrapExportTimeMillis(Long bootstrapExportTimeMillis) {
+        this.bootstrapExportTimeMillis = Optional.ofNullable(bootstrapExportTimeMillis);
+        return this;
+    }
+
+    public boolean isVerify() {
+        return isVerify;
+    }
+
+    public KinesisWorkerCreator setVerify(boolean isVerify) {
+        this.isVerify = isVerify;
+        return this;
+    }
+
+    public int getVerifySegments() {
+        return verifySegments;
+    }
+
+    public KinesisWorkerCreator setVerifySegments(int verifySegments) {
+        this.verifySegments = verifySegments;
+        return this;
+    }
+
+    public double getVerifyReadUnitsPerSecond() {
+        return verifyReadUnitsPerSecond;
+    }
+
+    public KinesisWorkerCreator setVerifyReadUnitsPerSecond(double verifyReadUnitsPerSecond) {
+        this.verifyReadUnitsPerSecond = verifyReadUnitsPerSecond;
+        return this;
+    }
+
+    public int getVerifyTreeDepth() {
+        return verifyTreeDepth;
+    }
+
+    public KinesisWorkerCreator setVerifyTreeDepth(int verifyTreeDepth) {
+        this.verifyTreeDepth = verifyTreeDepth;
+        return this;
+    }
+
+    public MerkleVerifier.Step getVerifyStep() {
+        return verifyStep;
+    }
+
+    public KinesisWorkerCreator setVerifyStep(MerkleVerifier.Step verifyStep) {
+        this.verifyStep = verifyStep;
+        return this;
+    }
+
+    public String getVerifyDirectory() {
+        return verifyDirectory;
+    }
+
+    public KinesisWorkerCreator setVerifyDirectory(String verifyDirectory) {
+        this.verifyDirectory = verifyDirectory;
+        return this;
+    }
+
+    public String getDivergenceFile() {
+        return divergenceFile;
+    }
+
+    public KinesisWorkerCreator setDivergenceFile(String divergenceFile) {
+        this.divergenceFile = divergenceFile;
+        return this;
+    }
+
+    public boolean isRepair() {
+        return isRepair;
+    }
+
+    public KinesisWorkerCreator setRepair(boolean isRepair) {
+        this.isRepair = isRepair;
+        return this;
+    }
+
+    public double getRepairItemsPerSecond() {
+        return repairItemsPerSecond;
+    }
+
+    public KinesisWorkerCreator setRepairItemsPerSecond(double repairItemsPerSecond) {
+        this.repairItemsPerSecond = repairItemsPerSecond;
+        return this;
+    }
+
+    public Optional<String> getFailedKeysFile() {
+        return failedKeysFile;
+    }
+
+    public KinesisWorkerCreator setFailedKeysFile(String failedKeysFile) {
+        this.failedKeysFile = Optional.ofNullable(failedKeysFile);
+        return this;
+    }
+
+    public Optional<String> getDeadLetterDirectory() {
+        return deadLetterDirectory;
+    }
+
+    public KinesisWorkerCreator setDeadLetterDirectory(String deadLetterDirectory) {
+        this.deadLetterDirectory = Optional.ofNullable(deadLetterDirectory);
+        return this;
+    }
+
+    public Optional<String> getOutageSpoolDirectory() {
+        return outageSpoolDirectory;
+    }
+
+    public KinesisWorkerCreator setOutageSpoolDirectory(String outageSpoolDirectory) {
+        this.outageSpoolDirectory = Optional.ofNullable(outageSpoolDirectory);
+        return this;
+    }
+
+    public Optional<Long> getCircuitBreakerFailures() {
+        return circuitBreakerFailures;
+    }
+
+    public KinesisWorkerCreator setCircuitBreakerFailures(Long circuitBreakerFailures) {
+        this.circuitBreakerFailures = Optional.ofNullable(circuitBreakerFailures);
+        return this;
+    }
+
+    public Optional<Long> getCircuitBreakerOpenMillis() {
+        return circuitBreakerOpenMillis;
+    }
+
+    public KinesisWorkerCreator setCircuitBreakerOpenMillis(Long circuitBreakerOpenMillis) {
+        this.circuitBreakerOpenMillis = Optional.ofNullable(circuitBreakerOpenMillis);
+        return this;
+    }
+
+    public Optional<Long> getOutageDrainItemsPerSecond() {
+        return outageDrainItemsPerSecond;
+    }
+
+    public KinesisWorkerCreator setOutageDrainItemsPerSecond(Long outageDrainItemsPerSecond) {
+        this.outageDrainItemsPerSecond = Optional.ofNullable(outageDrainItemsPerSecond);
+        return this;
+    }
+
+    public Optional<Long> getLastWriteCacheSize() {
+        return lastWriteCacheSize;
+    }
+
+    public KinesisWorkerCreator setLastWriteCacheSize(Long lastWriteCacheSize) {
+        this.lastWriteCacheSize = Optional.ofNullable(lastWriteCacheSize);
+        return this;
+    }
+
+    public Optional<String> getReplicationTimestampAttribute() {
+        return replicationTimestampAttribute;
+    }
+
+    public KinesisWorkerCreator setReplicationTimestampAttribute(String replicationTimestampAttribute) {
+        this.replicationTimestampAttribute = Optional.ofNullable(replicationTimestampAttribute);
+        return this;
+    }
+
+    public Optional<String> getOriginAttribute() {
+        return originAttribute;
+    }
+
+    public KinesisWorkerCreator setOriginAttribute(String originAttribute) {
+        this.originAttribute = Optional.ofNullable(originAttribute);
+        return this;
+    }
+
+    public Optional<String> getOrigin() {
+        return origin;
+    }
+
+    public KinesisWorkerCreator setOrigin(String origin) {
+        this.origin = Optional.ofNullable(origin);
+        return this;
+    }
+
+    public Optional<String> getFilterExpression() {
+        return filterExpression;
+    }
+
+    public KinesisWorkerCreator setFilterExpression(String filterExpression) {
+        this.filterExpression = Optional.ofNullable(filterExpression);
+        return this;
+    }
+
+    public Optional<Long> getEmitStripes() {
+        return emitStripes;
+    }
+
+    public KinesisWorkerCreator setEmitStripes(Long emitStripes) {
+        this.emitStripes = Optional.ofNullable(emitStripes);
+        return this;
+    }
+
+    public Optional<Long> getMaxInFlightPerPartition() {
+        return maxInFlightPerPartition;
+    }
+
+    public KinesisWorkerCreator setMaxInFlightPerPartition(Long maxInFlightPerPartition) {
+        this.maxInFlightPerPartition = Optional.ofNullable(maxInFlightPerPartition);
+        return this;
+    }
+
+    public Optional<Long> getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public KinesisWorkerCreator setHedgePercentile(Long hedgePercentile) {
+        this.hedgePercentile = Optional.ofNullable(hedgePercentile);
+        return this;
+    }
+
+    public Optional<Long> getHedgeBudgetPercent() {
+        return hedgeBudgetPercent;
+    }
+
+    public KinesisWorkerCreator setHedgeBudgetPercent(Long hedgeBudgetPercent) {
+        this.hedgeBudgetPercent = Optional.ofNullable(hedgeBudgetPercent);
+        return this;
+    }
+
+    public boolean isSupersedePendingWrites() {
+        return isSupersedePendingWrites;
+    }
+
+    public KinesisWorkerCreator setSupersedePendingWrites(boolean isSupersedePendingWrites) {
+        this.isSupersedePendingWrites = isSupersedePendingWrites;
+        return this;
+    }
+
+    public Optional<String> getIncludedAttributes() {
+        return includedAttributes;
+    }
+
+    public KinesisWorkerCreator setIncludedAttributes(String includedAttributes) {
+        this.includedAttributes = Optional.ofNullable(includedAttributes);
+        return this;
+    }
+
+    public Optional<String> getExcludedAttributes() {
+        return excludedAttributes;
+    }
+
+    public KinesisWorkerCreator setExcludedAttributes(String excludedAttributes) {
+        this.excludedAttributes = Optional.ofNullable(excludedAttributes);
+        return this;
+    }
+
+    public Optional<String> getTransform() {
+        return transform;
+    }
+
+    public KinesisWorkerCreator setTransform(String transform) {
+        this.transform = Optional.ofNullable(transform);
+        return this;
+    }
+
+    public List<ReplicaTable> getReplicas() {
+        return replicas;
+    }
+
+    public KinesisWorkerCreator setReplicas(List<ReplicaTable> replicas) {
+        this.replicas = new ArrayList<>(replicas);
+        return this;
+    }
+
+    public Optional<DestinationClients> getDestinationClients() {
+        return destinationClients;
+    }
+
+    public KinesisWorkerCreator setDestinationClients(DestinationClients destinationClients) {
+        this.destinationClients = Optional.ofNullable(destinationClients);
+        return this;
+    }
+
+    public Optional<String> getLocalCheckpointFile() {
+        return localCheckpointFile;
+    }
+
+    public KinesisWorkerCreator setLocalCheckpointFile(String localCheckpointFile) {
+        this.localCheckpointFile = Optional.ofNullable(localCheckpointFile);
+        return this;
+    }
+
+    public long getLocalCheckpointFlushMillis() {
+        return localCheckpointFlushMillis;
+    }
+
+    public KinesisWorkerCreator setLocalCheckpointFlushMillis(long localCheckpointFlushMillis) {
+        this.localCheckpointFlushMillis = localCheckpointFlushMillis;
+        return this;
+    }
+
+    public Optional<String> getAppliedLogDirectory() {
+        return appliedLogDirectory;
+    }
+
+    public KinesisWorkerCreator setAppliedLogDirectory(String appliedLogDirectory) {
+        this.appliedLogDirectory = Optional.ofNullable(appliedLogDirectory);
+        return this;
+    }
+
     public KinesisWorkerCreator setSourceDynamodbCredentials(String accessKeyId, String secretAccessKey) {
         this.sourceDynamodbAccessKeyId = Optional.of(accessKeyId);
         this.sourceDynamodbSecretAccessKey = Optional.of(secretAccessKey);
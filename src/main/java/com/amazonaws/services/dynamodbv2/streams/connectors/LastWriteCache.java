@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Bounded cache of the newest last update timestamp known to be in the destination table for each key, shared by the
+ * emitters of all shards of a worker. A record whose timestamp is not newer than the cached one would fail the last
+ * writer wins condition of its put, so it can be dropped without a round trip to the destination table.
+ * <p>
+ * The cached timestamps are lower bounds: they are updated after successful puts and after puts failing their
+ * condition, and invalidated before deletes since a deleted item accepts any put. Items deleted in the destination table
+ * by another writer are not seen, so the cache must only be used if the replicator is the only writer deleting items.
+ * Timestamps are compared like DynamoDB compares them in conditions: numerically for numbers, by UTF-8 bytes for
+ * strings. Timestamps of other types are never considered stale.
+ */
+public class LastWriteCache {
+
+    private final Cache<ByteBuffer, AttributeValue> timestamps;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * @param maximumSize
+     *            the maximum number of keys cached, the least recently used keys are evicted first
+     */
+    public LastWriteCache(final long maximumSize) {
+        this.timestamps = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * @param keys
+     *            the key attributes of the item
+     * @param timestamp
+     *            the last update timestamp of the record
+     * @return true if the destination table is known to hold a version of the item at least as recent
+     */
+    public boolean isStale(final Map<String, AttributeValue> keys, final AttributeValue timestamp) {
+        lookups.incrementAndGet();
+        final AttributeValue cached = timestamps.getIfPresent(key(keys));
+        if (null == cached) {
+            return false;
+        }
+        hits.incrementAndGet();
+        final Integer comparison = compare(timestamp, cached);
+        return null != comparison && comparison <= 0;
+    }
+
+    /**
+     * Record that the destination table holds a version of the item at least as recent as the timestamp.
+     *
+     * @param keys
+     *            the key attributes of the item
+     * @param timestamp
+     *            the last update timestamp written or rejected by the destination table
+     */
+    public void written(final Map<String, AttributeValue> keys, final AttributeValue timestamp) {
+        if (null == timestamp) {
+            return;
+        }
+        timestamps.asMap().merge(key(keys), timestamp, (current, written) -> {
+            final Integer comparison = compare(written, current);
+            return null != comparison && comparison > 0 ? written : current;
+        });
+    }
+
+    /**
+     * Forget the timestamp of an item about to be deleted.
+     *
+     * @param keys
+     *            the key attributes of the item
+     */
+    public void invalidate(final Map<String, AttributeValue> keys) {
+        timestamps.invalidate(key(keys));
+    }
+
+    /**
+     * @return the number of lookups since the last call
+     */
+    public long getAndResetLookups() {
+        return lookups.getAndSet(0);
+    }
+
+    /**
+     * @return the number of lookups finding a timestamp since the last call
+     */
+    public long getAndResetHits() {
+        return hits.getAndSet(0);
+    }
+
+    private static ByteBuffer key(final Map<String, AttributeValue> keys) {
+        return ByteBuffer.wrap(DynamoDBConnectorUtilities.getKeyDigest(keys));
+    }
+
+    /**
+     * @return the comparison of the timestamps, null if they are not comparable
+     */
+    static Integer compare(final AttributeValue left, final AttributeValue right) {
+        if (null == left || null == right) {
+            return null;
+        }
+        if (null != left.getN() && null != right.getN()) {
+            return new BigDecimal(left.getN()).compareTo(new BigDecimal(right.getN()));
+        }
+        if (null != left.getS() && null != right.getS()) {
+            return UnsignedBytes.lexicographicalComparator().compare(left.getS().getBytes(StandardCharsets.UTF_8),
+                right.getS().getBytes(StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformedRecord;
+
+/**
+ * Sequence number of the latest record received for each item key of a shard, shared by the record processor receiving
+ * the batches and the emitter writing them. A pending write of a record is superseded once a newer record of the same
+ * item has been received, since the newer record is written after it anyway.
+ * <p>
+ * Superseding a write is safe with respect to checkpoints: the newer record belongs to a batch that is not checkpointed
+ * yet, so it is replayed from the stream if the worker stops before writing it.
+ * <p>
+ * Records routed to another table by a transform plan are ignored: a newer record of an item may be routed elsewhere
+ * than the older one.
+ */
+public class LatestVersionIndex {
+
+    private final Map<Map<String, AttributeValue>, String> latest = new ConcurrentHashMap<Map<String, AttributeValue>, String>();
+
+    /**
+     * A record will be written, superseding the older records of its item.
+     */
+    public void received(final Record record) {
+        if (isRouted(record) || null == record.getDynamodb().getSequenceNumber()) {
+            return;
+        }
+        latest.merge(record.getDynamodb().getKeys(), record.getDynamodb().getSequenceNumber(),
+            (current, sequenceNumber) -> DynamoDBConnectorUtilities.compareSequenceNumbers(current, sequenceNumber) < 0 ? sequenceNumber : current);
+    }
+
+    /**
+     * @return true if a newer record of the item of the record was received
+     */
+    public boolean isSuperseded(final Record record) {
+        final String sequenceNumber = record.getDynamodb().getSequenceNumber();
+        if (isRouted(record) || null == sequenceNumber) {
+            return false;
+        }
+        final String current = latest.get(record.getDynamodb().getKeys());
+        return null != current && DynamoDBConnectorUtilities.compareSequenceNumbers(current, sequenceNumber) > 0;
+    }
+
+    /**
+     * The write of a record completed. The item is forgotten if no newer record was received.
+     */
+    public void completed(final Record record) {
+        latest.remove(record.getDynamodb().getKeys(), record.getDynamodb().getSequenceNumber());
+    }
+
+    /**
+     * @return the number of items with a record received and not written yet
+     */
+    public int size() {
+        return latest.size();
+    }
+
+    private static boolean isRouted(final Record record) {
+        return record instanceof TransformedRecord && null != ((TransformedRecord) record).getDestinationTable();
+    }
+}
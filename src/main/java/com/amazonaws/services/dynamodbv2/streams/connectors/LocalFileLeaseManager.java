@@ -0,0 +1,411 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLease;
+import com.amazonaws.services.kinesis.leases.interfaces.IKinesisClientLeaseManager;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Lease manager keeping the leases and checkpoints of a single-node deployment in a local file instead of a KCL lease
+ * table. Leases are held in memory, so lease renewals and checkpoints do not leave the process. Changes are written to
+ * the file by a background flusher at most once per flush interval: the leases are written to a temporary file which
+ * is synced to disk and atomically renamed over the previous version, and the directory is synced so that the rename
+ * survives a power loss. Flushes are serialized, so the file always holds a complete state, never older than the
+ * previous flush. After a crash, at most the checkpoints of the last flush interval are lost and their records are
+ * replayed.
+ * <p>
+ * Only one process may use a given file. The lease owners found in the file belonged to a previous process and are
+ * cleared when it is loaded, so the worker takes the leases over without waiting for them to expire.
+ */
+@Log4j
+public class LocalFileLeaseManager implements IKinesisClientLeaseManager, Closeable {
+
+    private static final String NULL = "-";
+    private static final String SEPARATOR = "\t";
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000L;
+
+    private final File file;
+    private final Map<String, KinesisClientLease> leases = new TreeMap<String, KinesisClientLease>();
+    private final ScheduledExecutorService flusher;
+    /**
+     * Serializes the flushes, from taking the snapshot of the leases to renaming the file.
+     */
+    private final Object flushLock = new Object();
+    private boolean dirty = false;
+
+    /**
+     * @param file
+     *            the file holding the leases, created on the first flush if it does not exist
+     * @param flushIntervalMillis
+     *            the maximum time between a change and the flush writing it to disk
+     * @throws IOException
+     *             if the existing file cannot be read
+     */
+    public LocalFileLeaseManager(final File file, final long flushIntervalMillis) throws IOException {
+        this.file = file;
+        load();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "local-lease-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean createLeaseTableIfNotExists(final Long readCapacity, final Long writeCapacity) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean leaseTableExists() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean waitUntilLeaseTableExists(final long secondsBetweenPolls, final long timeoutSeconds) {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<KinesisClientLease> listLeases() {
+        final List<KinesisClientLease> result = new ArrayList<KinesisClientLease>(leases.size());
+        for (KinesisClientLease lease : leases.values()) {
+            result.add(new KinesisClientLease(lease));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean createLeaseIfNotExists(final KinesisClientLease lease) {
+        if (leases.containsKey(lease.getLeaseKey())) {
+            return false;
+        }
+        final KinesisClientLease stored = new KinesisClientLease(lease);
+        if (null == stored.getLeaseCounter()) {
+            stored.setLeaseCounter(0L);
+        }
+        put(stored);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized KinesisClientLease getLease(final String shardId) {
+        final KinesisClientLease lease = leases.get(shardId);
+        return null == lease ? null : new KinesisClientLease(lease);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean renewLease(final KinesisClientLease lease) {
+        final KinesisClientLease stored = getIfOwned(lease);
+        if (null == stored) {
+            return false;
+        }
+        incrementCounter(stored, lease);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean takeLease(final KinesisClientLease lease, final String owner) {
+        final KinesisClientLease stored = getIfCounterMatches(lease);
+        if (null == stored) {
+            return false;
+        }
+        if (null != stored.getLeaseOwner() && !stored.getLeaseOwner().equals(owner)) {
+            stored.setOwnerSwitchesSinceCheckpoint(stored.getOwnerSwitchesSinceCheckpoint() + 1);
+        }
+        stored.setLeaseOwner(owner);
+        lease.setLeaseOwner(owner);
+        lease.setOwnerSwitchesSinceCheckpoint(stored.getOwnerSwitchesSinceCheckpoint());
+        incrementCounter(stored, lease);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean evictLease(final KinesisClientLease lease) {
+        final KinesisClientLease stored = getIfOwned(lease);
+        if (null == stored) {
+            return false;
+        }
+        stored.setLeaseOwner(null);
+        lease.setLeaseOwner(null);
+        incrementCounter(stored, lease);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void deleteLease(final KinesisClientLease lease) {
+        if (null != leases.remove(lease.getLeaseKey())) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void deleteAll() {
+        leases.clear();
+        dirty = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean updateLease(final KinesisClientLease lease) {
+        final KinesisClientLease stored = getIfOwned(lease);
+        if (null == stored) {
+            return false;
+        }
+        stored.setCheckpoint(lease.getCheckpoint());
+        stored.setPendingCheckpoint(lease.getPendingCheckpoint());
+        stored.setOwnerSwitchesSinceCheckpoint(lease.getOwnerSwitchesSinceCheckpoint());
+        incrementCounter(stored, lease);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isLeaseTableEmpty() {
+        return leases.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized ExtendedSequenceNumber getCheckpoint(final String shardId) {
+        final KinesisClientLease lease = leases.get(shardId);
+        return null == lease ? null : lease.getCheckpoint();
+    }
+
+    /**
+     * Writes the leases to the file if they changed since the last flush.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            final byte[] contents;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                contents = serialize();
+                dirty = false;
+            }
+            final File temporary = new File(file.getPath() + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(contents);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+            syncDirectory();
+        }
+    }
+
+    /**
+     * Stops the flusher, waiting for a flush in progress, and writes the pending changes.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Flusher of " + file + " did not stop within " + CLOSE_TIMEOUT_MILLIS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Syncs the directory of the file, so that the rename of the last flush is durable.
+     */
+    private void syncDirectory() {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // some platforms cannot open a directory, the rename is then as durable as the file system makes it
+            log.debug("Could not sync directory " + directory, e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.error("Could not write leases to " + file, e);
+        }
+    }
+
+    private KinesisClientLease getIfCounterMatches(final KinesisClientLease lease) {
+        final KinesisClientLease stored = leases.get(lease.getLeaseKey());
+        if (null == stored || !stored.getLeaseCounter().equals(lease.getLeaseCounter())) {
+            return null;
+        }
+        return stored;
+    }
+
+    private KinesisClientLease getIfOwned(final KinesisClientLease lease) {
+        final KinesisClientLease stored = getIfCounterMatches(lease);
+        if (null == stored || !Objects.equals(stored.getLeaseOwner(), lease.getLeaseOwner())) {
+            return null;
+        }
+        return stored;
+    }
+
+    private void incrementCounter(final KinesisClientLease stored, final KinesisClientLease lease) {
+        stored.setLeaseCounter(stored.getLeaseCounter() + 1);
+        lease.setLeaseCounter(stored.getLeaseCounter());
+        dirty = true;
+    }
+
+    private void put(final KinesisClientLease lease) {
+        leases.put(lease.getLeaseKey(), lease);
+        dirty = true;
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (!line.isEmpty()) {
+                    final KinesisClientLease lease = parse(line);
+                    leases.put(lease.getLeaseKey(), lease);
+                }
+            }
+        }
+        log.info("Loaded " + leases.size() + " leases from " + file);
+    }
+
+    private byte[] serialize() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            for (KinesisClientLease lease : leases.values()) {
+                writer.write(format(lease));
+                writer.write('\n');
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A lease is stored as a tab separated line of its key, counter, checkpoint, pending checkpoint, owner switches since
+     * checkpoint, parent shard ids and owner.
+     */
+    static String format(final KinesisClientLease lease) {
+        return String.join(SEPARATOR, lease.getLeaseKey(), String.valueOf(lease.getLeaseCounter()), format(lease.getCheckpoint()),
+            format(lease.getPendingCheckpoint()), String.valueOf(lease.getOwnerSwitchesSinceCheckpoint()),
+            lease.getParentShardIds().isEmpty() ? NULL : String.join(",", lease.getParentShardIds()),
+            null == lease.getLeaseOwner() ? NULL : lease.getLeaseOwner());
+    }
+
+    /**
+     * Parses a lease written by {@link #format(KinesisClientLease)}, without its owner.
+     */
+    static KinesisClientLease parse(final String line) {
+        final String[] fields = line.split(SEPARATOR, -1);
+        final KinesisClientLease lease = new KinesisClientLease();
+        lease.setLeaseKey(fields[0]);
+        lease.setLeaseCounter(Long.parseLong(fields[1]));
+        lease.setCheckpoint(parseSequenceNumber(fields[2]));
+        lease.setPendingCheckpoint(parseSequenceNumber(fields[3]));
+        lease.setOwnerSwitchesSinceCheckpoint(Long.parseLong(fields[4]));
+        if (!NULL.equals(fields[5])) {
+            lease.setParentShardIds(Arrays.asList(fields[5].split(",")));
+        }
+        return lease;
+    }
+
+    private static String format(final ExtendedSequenceNumber sequenceNumber) {
+        return null == sequenceNumber ? NULL : sequenceNumber.getSequenceNumber() + ":" + sequenceNumber.getSubSequenceNumber();
+    }
+
+    private static ExtendedSequenceNumber parseSequenceNumber(final String field) {
+        if (NULL.equals(field)) {
+            return null;
+        }
+        final int separator = field.lastIndexOf(':');
+        return new ExtendedSequenceNumber(field.substring(0, separator), Long.parseLong(field.substring(separator + 1)));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
+import com.google.common.base.Preconditions;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Runs active-active replication between N tables: one worker per source table reads its stream once and fans the
+ * records out to the N-1 other tables, so the number of stream readers grows linearly with the number of tables
+ * instead of the N×(N-1) tasks replicating each pair. The workers of a process share the clients of the destination
+ * tables.
+ * <p>
+ * Each worker stamps the items it writes with an origin marker naming its source table, and drops the records of the
+ * items written by the other workers with an {@link OriginFilter}, so that replicated writes are not replicated again.
+ * The settings other than the tables are taken from the creators supplied, such as the spool directories; each worker
+ * gets its own task name and origin.
+ */
+@Log4j
+public class MeshTopologyManager {
+
+    private final List<ReplicaTable> tables;
+    private final Supplier<KinesisWorkerCreator> creators;
+    private final DestinationClients clients = new DestinationClients();
+
+    /**
+     * @param tables
+     *            the tables of the mesh, at least two
+     * @param creators
+     *            supplies a new worker creator holding the settings shared by the workers
+     */
+    public MeshTopologyManager(final List<ReplicaTable> tables, final Supplier<KinesisWorkerCreator> creators) {
+        Preconditions.checkArgument(tables.size() >= 2, "A mesh needs at least two tables");
+        this.tables = new ArrayList<ReplicaTable>(tables);
+        this.creators = creators;
+    }
+
+    /**
+     * @param source
+     *            a table of the mesh
+     * @return the creator of the worker replicating the source table to all the other tables
+     */
+    public KinesisWorkerCreator getCreator(final ReplicaTable source) {
+        Preconditions.checkArgument(tables.contains(source), source + " is not a table of the mesh");
+        final List<ReplicaTable> destinations = new ArrayList<ReplicaTable>(tables);
+        destinations.remove(source);
+        final ReplicaTable destination = destinations.remove(0);
+        final KinesisWorkerCreator creator = creators.get()
+                .setSourceRegion(source.getRegion())
+                .setSourceTable(source.getTable())
+                .setSourceDynamodbEndpoint(source.getEndpoint().orElse(null))
+                .setSourceDynamodbStreamsEndpoint(source.getEndpoint().orElse(null))
+                .setDestinationRegion(destination.getRegion())
+                .setDestinationTable(destination.getTable())
+                .setDestinationDynamodbEndpoint(destination.getEndpoint().orElse(null))
+                .setReplicas(destinations)
+                .setDestinationClients(clients)
+                // the lease table, origin and local files of each worker are its own
+                .setTaskName(null)
+                .setOrigin(source.getName());
+        if (!creator.getOriginAttribute().isPresent()) {
+            creator.setOriginAttribute(DynamoDBConnectorConstants.DEFAULT_ORIGIN_ATTRIBUTE);
+        }
+        creator.getLocalCheckpointFile().ifPresent(file ->
+                creator.setLocalCheckpointFile(file + "-" + source.getRegion().getName() + "-" + source.getTable()));
+        return creator;
+    }
+
+    /**
+     * Run the workers of the given source tables until they are shut down. The workers of the other tables of the mesh
+     * are expected to run in other processes.
+     *
+     * @param sources
+     *            the tables of the mesh whose streams this process replicates
+     * @throws InterruptedException
+     *             if interrupted while waiting for the workers
+     */
+    public void run(final Collection<ReplicaTable> sources) throws InterruptedException {
+        final List<Thread> threads = new ArrayList<Thread>();
+        try {
+            for (ReplicaTable source : sources) {
+                final KinesisWorkerCreator creator = getCreator(source);
+                final Worker worker = creator.create();
+                Runtime.getRuntime().addShutdownHook(new Thread(creator.getGracefulShutdownHook()));
+                if (creator.getBootstrap().isPresent()) {
+                    log.info("Copying the existing items of " + source + " to the other tables of the mesh");
+                    creator.getBootstrap().get().run();
+                }
+                final Thread thread = new Thread(worker, "mesh-worker-" + source.getRegion().getName() + "-" + source.getTable());
+                thread.start();
+                threads.add(thread);
+                log.info("Replicating " + source + " to " + (tables.size() - 1) + " tables");
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    /**
+     * Run the workers of all the tables of the mesh in this process.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the workers
+     */
+    public void run() throws InterruptedException {
+        run(tables);
+    }
+}
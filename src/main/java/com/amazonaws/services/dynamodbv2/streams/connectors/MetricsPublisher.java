@@ -0,0 +1,253 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataResult;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * CloudWatch client shared by all the components of a worker, aggregating the metrics put instead of sending them.
+ * Every datum is folded into the statistic set of its namespace, name, unit and dimensions, kept in lock-free striped
+ * accumulators, so that recording a metric on the hot path never blocks nor calls CloudWatch. The statistic sets are
+ * flushed every interval in a few batched PutMetricData calls. A datum with dimensions is also folded into the statistic
+ * set without dimensions, so that the metrics of the whole worker are published as well.
+ * <p>
+ * A flush swaps in a fresh accumulator for every statistic set and waits for the datums still being folded into the
+ * old one, so that every datum is published once, with its sum and sample count in the same interval.
+ * <p>
+ * The requests CloudWatch could not take, for instance because it throttled them, are retried on the next flush. At
+ * most the given number of requests are queued, the oldest ones are dropped beyond that.
+ */
+@Log4j
+public class MetricsPublisher extends NoopCloudWatch {
+
+    static final int MAX_DATUMS_PER_REQUEST = 20;
+
+    /**
+     * Identity of a statistic set.
+     */
+    private static final class Key {
+        private final String namespace;
+        private final String name;
+        private final String unit;
+        private final List<Dimension> dimensions;
+
+        Key(final String namespace, final String name, final String unit, final List<Dimension> dimensions) {
+            this.namespace = namespace;
+            this.name = name;
+            this.unit = unit;
+            this.dimensions = null == dimensions ? Collections.<Dimension>emptyList() : new ArrayList<Dimension>(dimensions);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return Objects.equals(namespace, key.namespace) && Objects.equals(name, key.name) && Objects.equals(unit, key.unit)
+                && dimensions.equals(key.dimensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(namespace, name, unit, dimensions);
+        }
+    }
+
+    /**
+     * Statistic set of a metric since the last flush.
+     */
+    private static final class Accumulator {
+        private final DoubleAdder sum = new DoubleAdder();
+        private final DoubleAdder sampleCount = new DoubleAdder();
+        private final DoubleAccumulator minimum = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        private final DoubleAccumulator maximum = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile boolean retired;
+
+        /**
+         * @return false if the accumulator was retired by a flush, the datum must be folded into the current one
+         */
+        boolean add(final double sumValue, final double samples, final double minimumValue, final double maximumValue) {
+            writers.incrementAndGet();
+            try {
+                if (retired) {
+                    return false;
+                }
+                sum.add(sumValue);
+                minimum.accumulate(minimumValue);
+                maximum.accumulate(maximumValue);
+                sampleCount.add(samples);
+                return true;
+            } finally {
+                writers.decrementAndGet();
+            }
+        }
+
+        /**
+         * Stop taking datums, once the ones being folded in are complete.
+         */
+        void retire() {
+            retired = true;
+            while (writers.get() > 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private final AmazonCloudWatch cloudwatch;
+    private final int maxQueuedRequests;
+    private final ConcurrentMap<Key, Accumulator> accumulators = new ConcurrentHashMap<Key, Accumulator>();
+    private final ArrayDeque<PutMetricDataRequest> queue = new ArrayDeque<PutMetricDataRequest>();
+    private final AtomicLong droppedRequests = new AtomicLong();
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param cloudwatch
+     *            the client the batched metrics are sent with
+     * @param flushIntervalMillis
+     *            the time between two flushes
+     * @param maxQueuedRequests
+     *            the maximum number of requests waiting to be sent
+     */
+    public MetricsPublisher(final AmazonCloudWatch cloudwatch, final long flushIntervalMillis, final int maxQueuedRequests) {
+        this.cloudwatch = cloudwatch;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("metrics-publisher-%d").build());
+        timer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Folds the metrics of the request into their statistic sets, they are sent on the next flush.
+     */
+    @Override
+    public PutMetricDataResult putMetricData(final PutMetricDataRequest request) {
+        for (MetricDatum datum : request.getMetricData()) {
+            final double sum;
+            final double samples;
+            final double minimum;
+            final double maximum;
+            if (null != datum.getStatisticValues()) {
+                final StatisticSet statistics = datum.getStatisticValues();
+                sum = statistics.getSum();
+                samples = statistics.getSampleCount();
+                minimum = statistics.getMinimum();
+                maximum = statistics.getMaximum();
+            } else if (null != datum.getValue()) {
+                sum = datum.getValue();
+                samples = 1.0;
+                minimum = datum.getValue();
+                maximum = datum.getValue();
+            } else {
+                continue;
+            }
+            add(new Key(request.getNamespace(), datum.getMetricName(), datum.getUnit(), datum.getDimensions()), sum, samples, minimum, maximum);
+            if (null != datum.getDimensions() && !datum.getDimensions().isEmpty()) {
+                add(new Key(request.getNamespace(), datum.getMetricName(), datum.getUnit(), null), sum, samples, minimum, maximum);
+            }
+        }
+        return new PutMetricDataResult();
+    }
+
+    /**
+     * Sends the statistic sets accumulated since the last flush, after the requests still queued.
+     */
+    public synchronized void flush() {
+        final Date timestamp = new Date();
+        final Map<String, List<MetricDatum>> datums = new LinkedHashMap<String, List<MetricDatum>>();
+        for (Map.Entry<Key, Accumulator> entry : accumulators.entrySet()) {
+            final Key key = entry.getKey();
+            final Accumulator accumulator = entry.getValue();
+            // forget the metrics of the shards no longer processed, the samples racing with the removal are still sent
+            if (accumulator.sampleCount.sum() <= 0) {
+                accumulators.remove(key, accumulator);
+            } else {
+                accumulators.replace(key, accumulator, new Accumulator());
+            }
+            accumulator.retire();
+            final double samples = accumulator.sampleCount.sum();
+            if (samples <= 0) {
+                continue;
+            }
+            final StatisticSet statistics = new StatisticSet().withSampleCount(samples).withSum(accumulator.sum.sum())
+                .withMinimum(accumulator.minimum.get()).withMaximum(accumulator.maximum.get());
+            datums.computeIfAbsent(key.namespace, namespace -> new ArrayList<MetricDatum>()).add(new MetricDatum().withMetricName(key.name)
+                .withUnit(key.unit).withDimensions(key.dimensions).withStatisticValues(statistics).withTimestamp(timestamp));
+        }
+        for (Map.Entry<String, List<MetricDatum>> namespace : datums.entrySet()) {
+            for (List<MetricDatum> batch : Lists.partition(namespace.getValue(), MAX_DATUMS_PER_REQUEST)) {
+                queue.addLast(new PutMetricDataRequest().withNamespace(namespace.getKey()).withMetricData(batch));
+            }
+        }
+        while (queue.size() > maxQueuedRequests) {
+            queue.pollFirst();
+            droppedRequests.incrementAndGet();
+        }
+        while (!queue.isEmpty()) {
+            try {
+                cloudwatch.putMetricData(queue.peekFirst());
+                queue.pollFirst();
+            } catch (RuntimeException e) {
+                log.warn("Could not publish metrics, " + queue.size() + " requests are retried on the next flush", e);
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests dropped because too many were queued
+     */
+    public long getDroppedRequests() {
+        return droppedRequests.get();
+    }
+
+    /**
+     * Stops the periodic flushes and flushes the metrics accumulated. The client the metrics are sent with is left open.
+     */
+    @Override
+    public void shutdown() {
+        timer.shutdown();
+        flush();
+    }
+
+    private void add(final Key key, final double sum, final double samples, final double minimum, final double maximum) {
+        while (!accumulator(key).add(sum, samples, minimum, maximum)) {
+            // the accumulator was retired by a flush meanwhile, its replacement is looked up
+        }
+    }
+
+    private Accumulator accumulator(final Key key) {
+        final Accumulator accumulator = accumulators.get(key);
+        return null == accumulator ? accumulators.computeIfAbsent(key, ignored -> new Accumulator()) : accumulator;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+
+/**
+ * Filter dropping the records of writes made by the replicator of another origin, so that in bidirectional setups the
+ * replicated writes are not replicated back to the table they came from.
+ * <p>
+ * The emitters stamp each item they write with an origin marker made of the origin of the replicator and the
+ * replication timestamp of the record, see {@link #getMarker(String, StreamRecord)}. A record is a replicated write if
+ * its new image carries a marker of a foreign origin that differs from the marker of its old image: writes of the
+ * applications keep the marker of the old image unless they replace the whole item, in which case they drop it.
+ * Deletes carry no marker and are always kept, the conditional writes of the other replicator make them no-ops.
+ */
+public class OriginFilter implements IFilter<Record> {
+
+    private static final char SEPARATOR = '#';
+
+    private final String originAttribute;
+    private final String origin;
+
+    /**
+     * @param originAttribute
+     *            the attribute the origin markers are written to
+     * @param origin
+     *            the origin of this replicator, the records of writes marked with this origin are kept
+     */
+    public OriginFilter(final String originAttribute, final String origin) {
+        this.originAttribute = originAttribute;
+        this.origin = origin;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean keepRecord(final Record record) {
+        final StreamRecord streamRecord = record.getDynamodb();
+        final String marker = getMarker(streamRecord.getNewImage());
+        if (null == marker || isOrigin(marker)) {
+            return true;
+        }
+        // an unchanged marker was left by an earlier replicated write and then updated by an application
+        return marker.equals(getMarker(streamRecord.getOldImage()));
+    }
+
+    private String getMarker(final Map<String, AttributeValue> image) {
+        if (null == image) {
+            return null;
+        }
+        final AttributeValue marker = image.get(originAttribute);
+        return null == marker ? null : marker.getS();
+    }
+
+    private boolean isOrigin(final String marker) {
+        return marker.length() > origin.length() && marker.startsWith(origin) && SEPARATOR == marker.charAt(origin.length());
+    }
+
+    /**
+     * @param origin
+     *            the origin of the replicator writing the record
+     * @param record
+     *            the stream record written
+     * @return the origin marker the record is written with, different for every record of a key
+     */
+    public static String getMarker(final String origin, final StreamRecord record) {
+        return origin + SEPARATOR + DynamoDBConnectorUtilities.getReplicationTimestamp(record);
+    }
+}
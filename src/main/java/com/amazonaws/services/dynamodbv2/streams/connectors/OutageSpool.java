@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.amazonaws.services.dynamodbv2.model.Record;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Memory-mapped spool of the latest record of each key written while the destination is unavailable. Only the newest
+ * record of a key is kept: a new record of a key supersedes the spooled one, so the spool size is bounded by the number
+ * of keys changed during the outage rather than by the number of changes.
+ * <p>
+ * The file is a log of frames of the payload length (4 bytes), the CRC32 of the rest of the frame (4 bytes), the frame
+ * type (1 byte), the key digest (16 bytes) and, for record frames, the record encoded like in the
+ * {@link DeadLetterSpool}. Drained records are marked with tombstone frames. The index of the latest frame of each key
+ * lives in memory and is rebuilt from the log when the spool is opened; the log is compacted when it is full and reset
+ * once the spool is empty. Records are durable once {@link #force()} returned. A record that does not fit even after
+ * compaction is rejected with a {@link FullException}, leaving the spool unchanged.
+ */
+@Log4j
+public class OutageSpool implements Closeable {
+
+    private static final int HEADER_BYTES = 25;
+    private static final byte RECORD = 1;
+    private static final byte TOMBSTONE = 2;
+
+    private static final int END_OF_LOG = -1;
+
+    /**
+     * A spooled record.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final Record record;
+        private final String key;
+        private final long version;
+    }
+
+    /**
+     * Thrown when a record does not fit in the spool until records are drained.
+     */
+    public static class FullException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FullException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Position of the latest record frame of a key, and the version telling it apart from the frames spooled later.
+     */
+    @AllArgsConstructor
+    private static class Slot {
+        private int position;
+        private final long version;
+    }
+
+    private final File file;
+    private final int sizeBytes;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    /**
+     * Latest record frame of each key, in the order the keys were last spooled.
+     */
+    private final LinkedHashMap<String, Slot> index = new LinkedHashMap<String, Slot>();
+    private long nextVersion;
+
+    /**
+     * @param file
+     *            the spool file, created if needed
+     * @param sizeBytes
+     *            the size of the memory-mapped region
+     * @throws IOException
+     *             if the spool cannot be opened
+     */
+    public OutageSpool(final File file, final int sizeBytes) throws IOException {
+        this.file = file;
+        this.sizeBytes = sizeBytes;
+        map(file);
+        int position = 0;
+        while (isValidFrame(position)) {
+            final String key = Base64.getEncoder().encodeToString(digestAt(position));
+            index.remove(key);
+            if (RECORD == buffer.get(position + 8)) {
+                index.put(key, new Slot(position, nextVersion++));
+            }
+            position += HEADER_BYTES + buffer.getInt(position);
+        }
+        buffer.position(position);
+        // clear the remains of a torn frame
+        if (position + 4 <= sizeBytes) {
+            buffer.putInt(position, END_OF_LOG);
+        }
+        if (!index.isEmpty()) {
+            log.info("Outage spool " + file + " holds " + index.size() + " records to drain");
+        }
+    }
+
+    /**
+     * Spool a record if the outage requires it or if an older record of its key is spooled, so that the records of a
+     * key are always written in order.
+     *
+     * @param record
+     *            the record to write
+     * @param outage
+     *            true if the destination is unavailable
+     * @return true if the record was spooled and must not be written to the destination
+     * @throws FullException
+     *             if the record must be spooled but does not fit
+     */
+    public synchronized boolean offer(final Record record, final boolean outage) throws IOException {
+        final byte[] digest = DynamoDBConnectorUtilities.getKeyDigest(record.getDynamodb().getKeys());
+        final String key = Base64.getEncoder().encodeToString(digest);
+        if (!outage && !index.containsKey(key)) {
+            return false;
+        }
+        final int position = append(RECORD, digest, DeadLetterSpool.encode(record));
+        index.remove(key);
+        index.put(key, new Slot(position, nextVersion++));
+        return true;
+    }
+
+    /**
+     * Force the spooled records to disk.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    /**
+     * @param maxRecords
+     *            the maximum number of records to read
+     * @return the records spooled the longest ago
+     */
+    public synchronized List<Entry> peek(final int maxRecords) throws IOException {
+        final List<Entry> entries = new ArrayList<Entry>();
+        final Iterator<Map.Entry<String, Slot>> slots = index.entrySet().iterator();
+        while (entries.size() < maxRecords && slots.hasNext()) {
+            final Map.Entry<String, Slot> slot = slots.next();
+            entries.add(new Entry(DeadLetterSpool.decode(payloadAt(slot.getValue().position)), slot.getKey(), slot.getValue().version));
+        }
+        return entries;
+    }
+
+    /**
+     * Remove drained records, unless a newer record of their key was spooled since they were peeked.
+     *
+     * @param drained
+     *            the entries written to the destination
+     */
+    public synchronized void remove(final List<Entry> drained) throws IOException {
+        for (Entry entry : drained) {
+            final Slot slot = index.get(entry.getKey());
+            if (null != slot && slot.version == entry.getVersion()) {
+                // out of the index first, so that a full log is compacted without the drained record
+                index.remove(entry.getKey());
+                append(TOMBSTONE, Base64.getDecoder().decode(entry.getKey()), new byte[0]);
+            }
+        }
+        if (index.isEmpty()) {
+            // start over with an empty log
+            buffer.putInt(0, END_OF_LOG);
+            buffer.position(0);
+        }
+        buffer.force();
+    }
+
+    /**
+     * @return the number of spooled records
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int append(final byte type, final byte[] digest, final byte[] payload) throws IOException {
+        if (buffer.position() + HEADER_BYTES + payload.length + 4 > sizeBytes) {
+            compact();
+            if (buffer.position() + HEADER_BYTES + payload.length + 4 > sizeBytes) {
+                throw new FullException("Outage spool " + file + " is full with " + index.size() + " records");
+            }
+        }
+        final int position = buffer.position();
+        final ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length).putInt(0).put(type).put(digest).put(payload);
+        frame.putInt(4, checksum(frame.array(), 8, frame.capacity() - 8));
+        // terminate the log after the frame before writing its length, so a torn frame is never followed by old frames
+        buffer.putInt(position + frame.capacity(), END_OF_LOG);
+        buffer.position(position + 4);
+        buffer.put(frame.array(), 4, frame.capacity() - 4);
+        buffer.putInt(position, payload.length);
+        return position;
+    }
+
+    /**
+     * Rewrite the log with the latest record frame of each key only.
+     */
+    private void compact() throws IOException {
+        final File temporary = new File(file.getPath() + ".compact");
+        final int end;
+        try (FileChannel target = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer targetBuffer = target.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+            for (Slot slot : index.values()) {
+                final ByteBuffer frame = buffer.duplicate();
+                frame.position(slot.position);
+                frame.limit(slot.position + HEADER_BYTES + buffer.getInt(slot.position));
+                slot.position = targetBuffer.position();
+                targetBuffer.put(frame);
+            }
+            if (targetBuffer.remaining() >= 4) {
+                targetBuffer.putInt(targetBuffer.position(), END_OF_LOG);
+            }
+            end = targetBuffer.position();
+            targetBuffer.force();
+        }
+        channel.close();
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(file);
+        buffer.position(end);
+        log.info("Compacted outage spool " + file + " to " + end + " bytes for " + index.size() + " records");
+    }
+
+    private void map(final File mapped) throws IOException {
+        channel = FileChannel.open(mapped.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+    }
+
+    /**
+     * @return true if there is a complete and valid frame at the position
+     */
+    private boolean isValidFrame(final int position) {
+        if (position + HEADER_BYTES > sizeBytes) {
+            return false;
+        }
+        final int length = buffer.getInt(position);
+        if (length < 0 || position + HEADER_BYTES + length > sizeBytes) {
+            return false;
+        }
+        final byte type = buffer.get(position + 8);
+        if ((RECORD != type || 0 == length) && TOMBSTONE != type) {
+            return false;
+        }
+        final byte[] frame = new byte[HEADER_BYTES + length];
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.get(frame);
+        return checksum(frame, 8, frame.length - 8) == buffer.getInt(position + 4);
+    }
+
+    private byte[] digestAt(final int position) {
+        final byte[] digest = new byte[16];
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position + 9);
+        duplicate.get(digest);
+        return digest;
+    }
+
+    private byte[] payloadAt(final int position) {
+        final byte[] payload = new byte[buffer.getInt(position)];
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position + HEADER_BYTES);
+        duplicate.get(payload);
+        return payload;
+    }
+
+    private static int checksum(final byte[] bytes, final int offset, final int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
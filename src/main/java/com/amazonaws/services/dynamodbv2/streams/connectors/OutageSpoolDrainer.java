@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
+import com.google.common.util.concurrent.RateLimiter;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Drains an {@link OutageSpool} to the destination table once its {@link CircuitBreaker} lets writes through again, run
+ * periodically on a background thread. The drain rate is limited so that the backlog of an outage does not starve the
+ * records replicated live.
+ * <p>
+ * The emitter must share the circuit breaker without spooling, so that records rejected by the breaker are failed. While
+ * the breaker is not closed, a single record is drained at a time so that the drainer probes the destination table even
+ * without live traffic. Failed records stay in the spool while the breaker is not closed; records failing while it is
+ * closed are passed to {@link IEmitter#fail(List)} and dropped from the spool.
+ */
+@Log4j
+public class OutageSpoolDrainer implements Runnable {
+
+    /**
+     * CloudWatch metric for the number of records waiting in the outage spool.
+     */
+    public static final String OUTAGE_SPOOL_SIZE = "OutageSpoolSize";
+
+    /**
+     * CloudWatch metric set to 1 while the circuit breaker of the destination table is not closed.
+     */
+    public static final String CIRCUIT_BREAKER_OPEN = "CircuitBreakerOpen";
+
+    static final int BATCH_SIZE = 25;
+    static final long METRICS_INTERVAL_MILLIS = 60000L;
+
+    private final OutageSpool spool;
+    private final CircuitBreaker breaker;
+    private final IEmitter<Record> emitter;
+    private final IBuffer<Record> buffer;
+    private final RateLimiter rateLimiter;
+    private final AmazonCloudWatch cloudwatch;
+    private final String namespace;
+    private long lastMetricsMillis = 0L;
+
+    /**
+     * @param spool
+     *            the spool to drain
+     * @param breaker
+     *            the circuit breaker of the destination table
+     * @param emitter
+     *            the emitter the records are drained with
+     * @param buffer
+     *            the buffer handed to the emitter with the drained records
+     * @param itemsPerSecond
+     *            the maximum drain rate, 0 for no limit
+     * @param cloudwatch
+     *            the CloudWatch client the spool metrics are published with
+     * @param namespace
+     *            the CloudWatch namespace of the metrics
+     */
+    public OutageSpoolDrainer(final OutageSpool spool, final CircuitBreaker breaker, final IEmitter<Record> emitter, final IBuffer<Record> buffer,
+        final double itemsPerSecond, final AmazonCloudWatch cloudwatch, final String namespace) {
+        this.spool = spool;
+        this.breaker = breaker;
+        this.emitter = emitter;
+        this.buffer = buffer;
+        this.rateLimiter = itemsPerSecond > 0 ? RateLimiter.create(itemsPerSecond) : null;
+        this.cloudwatch = cloudwatch;
+        this.namespace = namespace;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            int drained;
+            do {
+                drained = drain();
+            } while (drained > 0);
+        } catch (Exception e) {
+            // keep the scheduled drains running
+            log.error("Could not drain outage spool", e);
+        }
+        publishMetrics(System.currentTimeMillis());
+    }
+
+    /**
+     * Drain one batch of spooled records, or a single record probing the destination table while the circuit breaker is
+     * not closed.
+     *
+     * @return the number of records removed from the spool
+     */
+    int drain() throws Exception {
+        if (0 == spool.size()) {
+            return 0;
+        }
+        final List<OutageSpool.Entry> entries = spool.peek(CircuitBreaker.State.CLOSED == breaker.getState() ? BATCH_SIZE : 1);
+        final List<Record> records = new ArrayList<Record>(entries.size());
+        for (OutageSpool.Entry entry : entries) {
+            records.add(entry.getRecord());
+        }
+        if (null != rateLimiter) {
+            rateLimiter.acquire(records.size());
+        }
+        final List<Record> failed = emitter.emit(new UnmodifiableBuffer<Record>(buffer, records));
+        final boolean closed = CircuitBreaker.State.CLOSED == breaker.getState();
+        final Set<Record> failedSet = Collections.newSetFromMap(new IdentityHashMap<Record, Boolean>());
+        failedSet.addAll(failed);
+        final List<OutageSpool.Entry> removed = new ArrayList<OutageSpool.Entry>(entries.size());
+        for (OutageSpool.Entry entry : entries) {
+            if (closed || !failedSet.contains(entry.getRecord())) {
+                removed.add(entry);
+            }
+        }
+        if (closed && !failed.isEmpty()) {
+            // not an outage, the records cannot be written
+            emitter.fail(failed);
+        }
+        spool.remove(removed);
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        log.info("Drained " + removed.size() + " records of the outage spool, " + spool.size() + " left");
+        return closed ? removed.size() : 0;
+    }
+
+    private void publishMetrics(final long now) {
+        if (now - lastMetricsMillis < METRICS_INTERVAL_MILLIS) {
+            return;
+        }
+        lastMetricsMillis = now;
+        final List<MetricDatum> metrics = new ArrayList<MetricDatum>();
+        metrics.add(new MetricDatum().withMetricName(OUTAGE_SPOOL_SIZE).withValue((double) spool.size()).withUnit(StandardUnit.Count)
+            .withTimestamp(new Date(now)));
+        metrics.add(new MetricDatum().withMetricName(CIRCUIT_BREAKER_OPEN)
+            .withValue(CircuitBreaker.State.CLOSED == breaker.getState() ? 0.0 : 1.0).withUnit(StandardUnit.Count).withTimestamp(new Date(now)));
+        try {
+            cloudwatch.putMetricData(new PutMetricDataRequest().withNamespace(namespace).withMetricData(metrics));
+        } catch (RuntimeException e) {
+            log.error("Could not publish outage spool metrics", e);
+        }
+    }
+}
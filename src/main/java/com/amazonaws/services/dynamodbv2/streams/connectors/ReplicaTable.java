@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.RegionUtils;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Strings;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A table of a replication topology: its region, name and optional DynamoDB endpoint.
+ */
+@Getter
+@AllArgsConstructor
+public class ReplicaTable {
+
+    private final Region region;
+    private final String table;
+    private final Optional<String> endpoint;
+
+    /**
+     * @return the table identified as <code>region/table</code>
+     */
+    public String getName() {
+        return region.getName() + "/" + table;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * @param tables
+     *            comma separated tables written as <code>region:table</code>
+     * @return the parsed tables
+     * @throws ParameterException
+     *             if a table is malformed or its region is unknown
+     */
+    public static List<ReplicaTable> parse(final String tables) {
+        final List<ReplicaTable> parsed = new ArrayList<ReplicaTable>();
+        for (String table : tables.split(",")) {
+            final String[] parts = table.trim().split(":", 2);
+            if (parts.length != 2 || Strings.isNullOrEmpty(parts[1])) {
+                throw new ParameterException("Expected region:table instead of " + table);
+            }
+            final Region region = RegionUtils.getRegion(parts[0]);
+            if (null == region) {
+                throw new ParameterException("Unknown region " + parts[0] + " in " + table);
+            }
+            parsed.add(new ReplicaTable(region, parts[1], Optional.empty()));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.dynamodbv2.streams.connectors.composite.IDeferredCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.InvalidStateException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.KinesisClientLibDependencyException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ThrottlingException;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IPreparedCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.model.Record;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Checkpointer that coalesces the per-batch checkpoints of the connector record processor, so that the KCL lease table
+ * receives at most one checkpoint per shard every checkpoint interval, or every given number of records, whichever
+ * comes first. Shard end checkpoints are never delayed. Pending checkpoints are written with {@link #flush()}.
+ * <p>
+ * When the delegate is an {@link IDeferredCheckpointer}, the checkpoint listener is handed over to it, since a
+ * checkpoint passed to the delegate may not reach the KCL lease table yet.
+ */
+@Log4j
+public class ThrottledCheckpointer implements IRecordProcessorCheckpointer {
+
+    /**
+     * CloudWatch Metric for checkpoints written to the KCL lease table.
+     */
+    private static final String CHECKPOINTS = "Checkpoints";
+    /**
+     * CloudWatch Metric for checkpoints that were coalesced into a later checkpoint.
+     */
+    private static final String CHECKPOINTS_COALESCED = "CheckpointsCoalesced";
+
+    private static final long METRICS_INTERVAL_MILLIS = 60000L;
+
+    private final long intervalMillis;
+    private final long maxRecords;
+    private final AmazonCloudWatch cloudwatch;
+    private final String namespace;
+
+    private IRecordProcessorCheckpointer delegate;
+    private Consumer<String> checkpointListener;
+    private String pendingSequenceNumber = null;
+    private long recordsSinceCheckpoint = 0;
+    private long lastCheckpointMillis;
+    private long checkpoints = 0;
+    private long coalesced = 0;
+    private long lastMetricsMillis;
+
+    /**
+     * @param intervalMillis
+     *            minimum time between two checkpoints, 0 to checkpoint every time
+     * @param maxRecords
+     *            number of records after which a pending checkpoint is written regardless of the interval, 0 to disable
+     * @param cloudwatch
+     *            the CloudWatch client used to publish checkpoint metrics, may be null
+     * @param namespace
+     *            the CloudWatch namespace of the metrics
+     */
+    public ThrottledCheckpointer(final long intervalMillis, final long maxRecords, final AmazonCloudWatch cloudwatch, final String namespace) {
+        this.intervalMillis = intervalMillis;
+        this.maxRecords = maxRecords;
+        this.cloudwatch = cloudwatch;
+        this.namespace = namespace;
+        this.lastCheckpointMillis = currentTimeMillis();
+        this.lastMetricsMillis = lastCheckpointMillis;
+    }
+
+    /**
+     * @param delegate
+     *            the KCL checkpointer of the current processRecords or shutdown call
+     */
+    public synchronized void setDelegate(final IRecordProcessorCheckpointer delegate) {
+        this.delegate = delegate;
+        forwardCheckpointListener();
+    }
+
+    /**
+     * @param checkpointListener
+     *            called with the sequence number of every checkpoint written to the KCL lease table, or with null when the
+     *            shard end has been checkpointed
+     */
+    public synchronized void setCheckpointListener(final Consumer<String> checkpointListener) {
+        this.checkpointListener = checkpointListener;
+        forwardCheckpointListener();
+    }
+
+    private void forwardCheckpointListener() {
+        if (delegate instanceof IDeferredCheckpointer) {
+            ((IDeferredCheckpointer) delegate).setCheckpointListener(checkpointListener);
+        }
+    }
+
+    /**
+     * @param count
+     *            number of records received from the stream since the previous call
+     */
+    public synchronized void recordsReceived(final int count) {
+        recordsSinceCheckpoint += count;
+    }
+
+    /**
+     * Coalesces the checkpoint, writing it only once the checkpoint interval or record count has been reached.
+     */
+    @Override
+    public synchronized void checkpoint(final String sequenceNumber)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        pendingSequenceNumber = sequenceNumber;
+        if (isDue()) {
+            flush();
+        } else {
+            coalesced++;
+            publishMetricsIfDue(false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void checkpoint(final Record record)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        checkpoint(record.getSequenceNumber());
+    }
+
+    /**
+     * Checkpoints at the end of the shard immediately. Any pending checkpoint is superseded.
+     */
+    @Override
+    public synchronized void checkpoint()
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        delegate.checkpoint();
+        checkpointed(null);
+    }
+
+    /**
+     * Checkpoints the sub sequence number immediately. Any pending checkpoint is superseded.
+     */
+    @Override
+    public synchronized void checkpoint(final String sequenceNumber, final long subSequenceNumber)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        delegate.checkpoint(sequenceNumber, subSequenceNumber);
+        checkpointed(sequenceNumber);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized IPreparedCheckpointer prepareCheckpoint()
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        return delegate.prepareCheckpoint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized IPreparedCheckpointer prepareCheckpoint(final Record record)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        return delegate.prepareCheckpoint(record);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized IPreparedCheckpointer prepareCheckpoint(final String sequenceNumber)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        return delegate.prepareCheckpoint(sequenceNumber);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized IPreparedCheckpointer prepareCheckpoint(final String sequenceNumber, final long subSequenceNumber)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        return delegate.prepareCheckpoint(sequenceNumber, subSequenceNumber);
+    }
+
+    /**
+     * Writes the pending checkpoint if the checkpoint interval or record count has been reached since the last one.
+     */
+    public synchronized void checkpointIfDue()
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        if (null != pendingSequenceNumber && isDue()) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the pending checkpoint, if any, regardless of the checkpoint interval.
+     */
+    public synchronized void flush()
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        if (null == pendingSequenceNumber) {
+            publishMetricsIfDue(true);
+            return;
+        }
+        delegate.checkpoint(pendingSequenceNumber);
+        log.debug("Checkpointed sequence number " + pendingSequenceNumber + " after " + recordsSinceCheckpoint + " records");
+        checkpointed(pendingSequenceNumber);
+    }
+
+    /**
+     * Drops the pending checkpoint, used when the lease of the shard has been lost.
+     */
+    public synchronized void discard() {
+        if (null != pendingSequenceNumber) {
+            log.info("Discarding pending checkpoint " + pendingSequenceNumber);
+        }
+        pendingSequenceNumber = null;
+        publishMetricsIfDue(true);
+    }
+
+    /**
+     * @return the sequence number that will be checkpointed on the next flush, or null
+     */
+    public synchronized String getPendingSequenceNumber() {
+        return pendingSequenceNumber;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private boolean isDue() {
+        if (intervalMillis <= 0 && maxRecords <= 0) {
+            return true;
+        }
+        return (intervalMillis > 0 && currentTimeMillis() - lastCheckpointMillis >= intervalMillis)
+            || (maxRecords > 0 && recordsSinceCheckpoint >= maxRecords);
+    }
+
+    private void checkpointed(final String sequenceNumber) {
+        if (null != checkpointListener && !(delegate instanceof IDeferredCheckpointer)) {
+            checkpointListener.accept(sequenceNumber);
+        }
+        pendingSequenceNumber = null;
+        recordsSinceCheckpoint = 0;
+        lastCheckpointMillis = currentTimeMillis();
+        checkpoints++;
+        publishMetricsIfDue(false);
+    }
+
+    /**
+     * Publish the checkpoint counts, at most once per metrics interval unless forced.
+     */
+    private void publishMetricsIfDue(final boolean force) {
+        final long now = currentTimeMillis();
+        if (null == cloudwatch || (!force && now - lastMetricsMillis < METRICS_INTERVAL_MILLIS) || (checkpoints == 0 && coalesced == 0)) {
+            return;
+        }
+        final List<MetricDatum> metrics = new ArrayList<MetricDatum>();
+        metrics.add(new MetricDatum().withMetricName(CHECKPOINTS).withValue((double) checkpoints).withUnit(StandardUnit.Count).withTimestamp(new Date(now)));
+        metrics.add(new MetricDatum().withMetricName(CHECKPOINTS_COALESCED).withValue((double) coalesced).withUnit(StandardUnit.Count).withTimestamp(new Date(now)));
+        checkpoints = 0;
+        coalesced = 0;
+        lastMetricsMillis = now;
+        try {
+            cloudwatch.putMetricData(new PutMetricDataRequest().withNamespace(namespace).withMetricData(metrics));
+        } catch (RuntimeException e) {
+            log.error("Could not publish checkpoint metrics", e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.model.Record;
+
+/**
+ * Queue of the records of a batch waiting to be written, handing them out round-robin across the partition keys of the
+ * destination table so that the writes of a burst on one partition key are spread over the batch. The writes in flight
+ * of each partition key are capped, and a partition key whose writes are throttled backs off exponentially while the
+ * others keep going.
+ * <p>
+ * Without a cap, all the records are in a single partition and the scheduler is a FIFO queue: retried records go back
+ * to the tail of the queue and throttled writes do not back off, like the writes of a batch are queued without a
+ * scheduler.
+ */
+class WriteScheduler {
+
+    static final long INITIAL_BACKOFF_MILLIS = 50L;
+    static final long MAX_BACKOFF_MILLIS = 5000L;
+
+    private static final Object SINGLE_PARTITION = new Object();
+
+    /**
+     * Pending records and writes in flight of a partition key.
+     */
+    private static final class Partition {
+        private final Object key;
+        private final ArrayDeque<Record> pending = new ArrayDeque<Record>();
+        private int inFlight;
+        private long backoffMillis;
+        private long readyAtMillis;
+        private int throttles;
+
+        Partition(final Object key) {
+            this.key = key;
+        }
+    }
+
+    private final Function<Record, Object> partitioner;
+    private final int maxInFlightPerPartition;
+    private final boolean capped;
+    private final Map<Object, Partition> partitions = new HashMap<Object, Partition>();
+    /**
+     * Partitions with pending records, in the order they get their next turn.
+     */
+    private final ArrayDeque<Partition> rotation = new ArrayDeque<Partition>();
+    private final Map<Object, Integer> throttles = new HashMap<Object, Integer>();
+
+    /**
+     * @param records
+     *            the records to write
+     * @param partitioner
+     *            the partition key of the destination table of a record
+     * @param maxInFlightPerPartition
+     *            the maximum number of writes in flight of a partition key, 0 for a FIFO queue
+     */
+    WriteScheduler(final Collection<Record> records, final Function<Record, Object> partitioner, final int maxInFlightPerPartition) {
+        this.partitioner = maxInFlightPerPartition > 0 ? partitioner : record -> SINGLE_PARTITION;
+        this.maxInFlightPerPartition = maxInFlightPerPartition > 0 ? maxInFlightPerPartition : Integer.MAX_VALUE;
+        this.capped = maxInFlightPerPartition > 0;
+        for (Record record : records) {
+            enqueue(partition(record), record, false);
+        }
+    }
+
+    /**
+     * Take the next record that may be written, waiting up to the timeout for one.
+     *
+     * @return the record, now in flight, or null if none could be written before the timeout
+     */
+    synchronized Record poll(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            final long now = System.currentTimeMillis();
+            long wakeUp = deadline;
+            for (int i = rotation.size(); i > 0; i--) {
+                final Partition partition = rotation.pollFirst();
+                if (partition.inFlight < maxInFlightPerPartition && partition.readyAtMillis <= now) {
+                    final Record record = partition.pending.pollFirst();
+                    partition.inFlight++;
+                    if (!partition.pending.isEmpty()) {
+                        rotation.addLast(partition);
+                    }
+                    return record;
+                }
+                if (partition.readyAtMillis > now) {
+                    wakeUp = Math.min(wakeUp, partition.readyAtMillis);
+                }
+                rotation.addLast(partition);
+            }
+            if (now >= deadline) {
+                return null;
+            }
+            // woken up early by the completion of a write or a new record
+            wait(Math.max(1L, wakeUp - now));
+        }
+    }
+
+    /**
+     * The write of a record handed out by {@link #poll(long)} succeeded, or will not be retried.
+     */
+    synchronized void completed(final Record record) {
+        final Partition partition = partitions.get(partition(record));
+        partition.inFlight--;
+        partition.backoffMillis = 0L;
+        release(partition);
+        notifyAll();
+    }
+
+    /**
+     * The write of a record handed out by {@link #poll(long)} failed and is retried.
+     *
+     * @param throttled
+     *            true if the write was throttled by the destination table, backing off the partition key if writes are
+     *            capped
+     */
+    synchronized void retry(final Record record, final boolean throttled) {
+        final Partition partition = partitions.get(partition(record));
+        partition.inFlight--;
+        if (throttled) {
+            partition.throttles++;
+        }
+        if (throttled && capped) {
+            partition.backoffMillis = Math.min(MAX_BACKOFF_MILLIS, Math.max(INITIAL_BACKOFF_MILLIS, 2 * partition.backoffMillis));
+            partition.readyAtMillis = System.currentTimeMillis() + partition.backoffMillis;
+        }
+        // the retried record keeps its turn in its partition, a FIFO queue retries it after the others
+        enqueue(partition.key, record, capped);
+        notifyAll();
+    }
+
+    /**
+     * @return the number of throttled writes of each partition key of the batch that was throttled at least once
+     */
+    synchronized Map<Object, Integer> getThrottles() {
+        final Map<Object, Integer> counts = new HashMap<Object, Integer>(throttles);
+        for (Partition partition : partitions.values()) {
+            if (partition.throttles > 0) {
+                counts.put(partition.key, partition.throttles);
+            }
+        }
+        return counts;
+    }
+
+    private Object partition(final Record record) {
+        final Object key = partitioner.apply(record);
+        return null == key ? SINGLE_PARTITION : key;
+    }
+
+    private void enqueue(final Object key, final Record record, final boolean first) {
+        Partition partition = partitions.get(key);
+        if (null == partition) {
+            partition = new Partition(key);
+            partitions.put(key, partition);
+        }
+        if (partition.pending.isEmpty()) {
+            rotation.addLast(partition);
+        }
+        if (first) {
+            partition.pending.addFirst(record);
+        } else {
+            partition.pending.addLast(record);
+        }
+    }
+
+    /**
+     * Forget a partition key without pending records nor writes in flight, keeping its throttle count.
+     */
+    private void release(final Partition partition) {
+        if (partition.pending.isEmpty() && 0 == partition.inFlight) {
+            partitions.remove(partition.key);
+            if (partition.throttles > 0) {
+                throttles.merge(partition.key, partition.throttles, Integer::sum);
+            }
+        }
+    }
+}
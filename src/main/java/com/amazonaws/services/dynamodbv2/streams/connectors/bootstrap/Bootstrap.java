@@ -0,0 +1,23 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+/**
+ * Copies the existing items of the source table to the replicas before the worker starts tailing the stream.
+ */
+public interface Bootstrap {
+
+    /**
+     * Copy the items, blocking until all of them have been written.
+     *
+     * @return the number of items copied
+     * @throws InterruptedException
+     *             if the copy was interrupted
+     * @throws IllegalStateException
+     *             if the copy failed or took too long for the stream to cover the changes made meanwhile
+     */
+    long run() throws InterruptedException;
+}
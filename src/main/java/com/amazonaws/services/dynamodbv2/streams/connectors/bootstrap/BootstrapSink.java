@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBBuffer;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBMasterToReplicasPipeline;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBStreamsConnectorConfiguration;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBStreamsRecordTransformer;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IKinesisConnectorPipeline;
+import com.amazonaws.services.kinesis.connectors.interfaces.ITransformer;
+import com.amazonaws.services.kinesis.connectors.interfaces.ITransformerBase;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Writes copied items through the filter, transformer and emitter of a pipeline, the same way the record processor
+ * writes stream records. Each item is turned into an INSERT record, so the replicas apply it exactly like a new item
+ * from the stream. The items are filtered with the copy filter of the pipeline, which keeps the items replicated into
+ * the source table from other regions. Safe to use from several threads.
+ */
+@Log4j
+public class BootstrapSink {
+
+    /**
+     * Sequence number of the copied items, lower than any sequence number of the stream.
+     */
+    public static final String SEQUENCE_NUMBER = "0";
+
+    private final IFilter<Record> filter;
+    private final ITransformerBase<Record, Record> transformer;
+    private final IEmitter<Record> emitter;
+    private final DynamoDBStreamsConnectorConfiguration configuration;
+
+    /**
+     * @param pipeline
+     *            the pipeline the stream records are replicated with
+     * @param configuration
+     *            the connector configuration
+     */
+    public BootstrapSink(final IKinesisConnectorPipeline<Record, Record> pipeline, final DynamoDBStreamsConnectorConfiguration configuration) {
+        this.filter = pipeline instanceof DynamoDBMasterToReplicasPipeline
+            ? ((DynamoDBMasterToReplicasPipeline) pipeline).getCopyFilter(configuration) : pipeline.getFilter(configuration);
+        this.transformer = pipeline.getTransformer(configuration);
+        this.emitter = pipeline.getEmitter(configuration);
+        this.configuration = configuration;
+    }
+
+    /**
+     * @param item
+     *            an item of the source table
+     * @param keySchema
+     *            the key schema of the source table
+     * @param copyStartTime
+     *            when the copy started, used as the creation time of the record
+     * @return an INSERT record of the item
+     */
+    public static Record toRecord(final Map<String, AttributeValue> item, final List<KeySchemaElement> keySchema, final Date copyStartTime) {
+        final StreamRecord streamRecord = new StreamRecord().withNewImage(item).withSequenceNumber(SEQUENCE_NUMBER)
+            .withApproximateCreationDateTime(copyStartTime).withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES);
+        for (KeySchemaElement key : keySchema) {
+            streamRecord.addKeysEntry(key.getAttributeName(), item.get(key.getAttributeName()));
+        }
+        return new Record().withEventName(OperationType.INSERT).withDynamodb(streamRecord);
+    }
+
+    /**
+     * Write the records, retrying the failed ones up to the retry limit of the connector configuration.
+     *
+     * @param records
+     *            the records of copied items
+     * @return the number of records that could not be written
+     */
+    @SuppressWarnings("unchecked")
+    public int write(final List<Record> records) throws InterruptedException {
+        final DynamoDBBuffer buffer = new DynamoDBBuffer(configuration);
+        for (Record record : records) {
+            if (transformer instanceof DynamoDBStreamsRecordTransformer) {
+                // copied items are projected like the stream records read by the transformer
+                ((DynamoDBStreamsRecordTransformer) transformer).project(record);
+            }
+            if (filter.keepRecord(record)) {
+                buffer.consumeRecord(record, 0, SEQUENCE_NUMBER);
+            }
+        }
+        List<Record> toEmit = new ArrayList<Record>();
+        try {
+            for (Record record : buffer.getRecords()) {
+                toEmit.add(transformer instanceof ITransformer ? ((ITransformer<Record, Record>) transformer).fromClass(record) : record);
+            }
+            for (int attempt = 0; !toEmit.isEmpty() && attempt < configuration.RETRY_LIMIT; attempt++) {
+                if (attempt > 0) {
+                    Thread.sleep(configuration.BACKOFF_INTERVAL);
+                }
+                toEmit = emitter.emit(new UnmodifiableBuffer<Record>(buffer, toEmit));
+            }
+        } catch (IOException e) {
+            log.error("Could not write copied items", e);
+        }
+        if (!toEmit.isEmpty()) {
+            emitter.fail(toEmit);
+        }
+        return toEmit.size();
+    }
+
+    /**
+     * Shut the emitter down once the copy is complete.
+     */
+    public void shutdown() {
+        emitter.shutdown();
+    }
+}
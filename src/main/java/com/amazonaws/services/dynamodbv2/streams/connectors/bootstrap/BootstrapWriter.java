@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.google.common.util.concurrent.RateLimiter;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Writes batches of copied items to the sinks of every pipeline under a shared write rate limit, counting the copied and
+ * failed items. Used concurrently by all the threads of a bootstrap copy.
+ */
+@Log4j
+class BootstrapWriter {
+
+    /**
+     * How long DynamoDB Streams keeps records, minus a margin for the worker to start reading the stream.
+     */
+    static final long STREAM_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(24) - TimeUnit.HOURS.toMillis(1);
+
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 60000L;
+
+    private final String source;
+    private final List<BootstrapSink> sinks;
+    private final RateLimiter writeLimiter;
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastProgressLogMillis = System.currentTimeMillis();
+
+    /**
+     * @param source
+     *            the description of the copied items used in logs
+     * @param sinks
+     *            the pipelines the items are written with
+     * @param writeItemsPerSecond
+     *            the items the copy may write per second to each replica, 0 for no limit
+     */
+    BootstrapWriter(final String source, final List<BootstrapSink> sinks, final double writeItemsPerSecond) {
+        this.source = source;
+        this.sinks = sinks;
+        this.writeLimiter = writeItemsPerSecond > 0 ? RateLimiter.create(writeItemsPerSecond) : null;
+    }
+
+    /**
+     * Write a batch of copied items to every sink.
+     */
+    void write(final List<Map<String, AttributeValue>> items, final List<KeySchemaElement> keySchema, final Date startTime)
+        throws InterruptedException {
+        if (items.isEmpty()) {
+            return;
+        }
+        final List<Record> records = new ArrayList<Record>(items.size());
+        for (Map<String, AttributeValue> item : items) {
+            records.add(BootstrapSink.toRecord(item, keySchema, startTime));
+        }
+        if (null != writeLimiter) {
+            writeLimiter.acquire(records.size());
+        }
+        for (BootstrapSink sink : sinks) {
+            failed.addAndGet(sink.write(records));
+        }
+        copied.addAndGet(records.size());
+        logProgress();
+    }
+
+    /**
+     * Shut the sinks down and check that the stream still holds the changes made since the copied items were read.
+     *
+     * @param startMillis
+     *            when the copied items were read
+     * @return the number of copied items
+     * @throws IllegalStateException
+     *             if the stream no longer holds the changes made since the start
+     */
+    long complete(final long startMillis) {
+        sinks.forEach(BootstrapSink::shutdown);
+        final long elapsedMillis = System.currentTimeMillis() - startMillis;
+        log.info("Copied " + copied.get() + " items of " + source + " read " + elapsedMillis + " ms ago, " + failed.get() + " failed");
+        if (elapsedMillis > STREAM_RETENTION_MILLIS) {
+            throw new IllegalStateException("Items of " + source + " were read " + elapsedMillis
+                + " ms ago, the stream no longer holds the changes made since then. Copy again faster");
+        }
+        return copied.get();
+    }
+
+    private void logProgress() {
+        final long now = System.currentTimeMillis();
+        if (now - lastProgressLogMillis >= PROGRESS_LOG_INTERVAL_MILLIS) {
+            lastProgressLogMillis = now;
+            log.info("Copied " + copied.get() + " items of " + source);
+        }
+    }
+}
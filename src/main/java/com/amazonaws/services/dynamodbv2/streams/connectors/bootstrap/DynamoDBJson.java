@@ -0,0 +1,225 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming codec between items and DynamoDB JSON, the format of the DynamoDB API and of table exports, in which every
+ * attribute value is an object whose single field names its type, e.g. <code>{"id": {"S": "a"}, "n": {"N": "1"}}</code>.
+ */
+public final class DynamoDBJson {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private DynamoDBJson() {
+    }
+
+    /**
+     * @param item
+     *            an item
+     * @return the item in DynamoDB JSON
+     */
+    public static String toJson(final Map<String, AttributeValue> item) {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = FACTORY.createGenerator(writer)) {
+            writeItem(generator, item);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write item " + item, e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @param json
+     *            an item in DynamoDB JSON
+     * @return the item
+     * @throws IOException
+     *             if the JSON is not a valid item
+     */
+    public static Map<String, AttributeValue> fromJson(final String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            parser.nextToken();
+            return readItem(parser);
+        }
+    }
+
+    /**
+     * @return the factory of the parsers and generators used by this codec
+     */
+    public static JsonFactory getFactory() {
+        return FACTORY;
+    }
+
+    /**
+     * Write an item as a JSON object.
+     */
+    public static void writeItem(final JsonGenerator generator, final Map<String, AttributeValue> item) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            generator.writeFieldName(attribute.getKey());
+            writeValue(generator, attribute.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Read an item from a parser positioned on the start of its JSON object, leaving it on the end of the object.
+     */
+    public static Map<String, AttributeValue> readItem(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        final Map<String, AttributeValue> item = new LinkedHashMap<String, AttributeValue>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            item.put(name, readValue(parser));
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        return item;
+    }
+
+    private static void writeValue(final JsonGenerator generator, final AttributeValue value) throws IOException {
+        generator.writeStartObject();
+        if (null != value.getS()) {
+            generator.writeStringField("S", value.getS());
+        } else if (null != value.getN()) {
+            generator.writeStringField("N", value.getN());
+        } else if (null != value.getB()) {
+            generator.writeStringField("B", encode(value.getB()));
+        } else if (null != value.getBOOL()) {
+            generator.writeBooleanField("BOOL", value.getBOOL());
+        } else if (null != value.getNULL()) {
+            generator.writeBooleanField("NULL", value.getNULL());
+        } else if (null != value.getSS()) {
+            writeStrings(generator, "SS", value.getSS());
+        } else if (null != value.getNS()) {
+            writeStrings(generator, "NS", value.getNS());
+        } else if (null != value.getBS()) {
+            final List<String> encoded = new ArrayList<String>(value.getBS().size());
+            for (ByteBuffer bytes : value.getBS()) {
+                encoded.add(encode(bytes));
+            }
+            writeStrings(generator, "BS", encoded);
+        } else if (null != value.getL()) {
+            generator.writeArrayFieldStart("L");
+            for (AttributeValue element : value.getL()) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else if (null != value.getM()) {
+            generator.writeFieldName("M");
+            writeItem(generator, value.getM());
+        } else {
+            throw new IllegalArgumentException("Attribute value has no type: " + value);
+        }
+        generator.writeEndObject();
+    }
+
+    private static AttributeValue readValue(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        expect(parser, parser.nextToken(), JsonToken.FIELD_NAME);
+        final String type = parser.getCurrentName();
+        final JsonToken token = parser.nextToken();
+        final AttributeValue value = new AttributeValue();
+        switch (type) {
+            case "S":
+                value.setS(parser.getText());
+                break;
+            case "N":
+                value.setN(parser.getText());
+                break;
+            case "B":
+                value.setB(decode(parser.getText()));
+                break;
+            case "BOOL":
+                value.setBOOL(token == JsonToken.VALUE_TRUE);
+                break;
+            case "NULL":
+                value.setNULL(token == JsonToken.VALUE_TRUE);
+                break;
+            case "SS":
+                value.setSS(readStrings(parser));
+                break;
+            case "NS":
+                value.setNS(readStrings(parser));
+                break;
+            case "BS":
+                final List<ByteBuffer> binaries = new ArrayList<ByteBuffer>();
+                for (String encoded : readStrings(parser)) {
+                    binaries.add(decode(encoded));
+                }
+                value.setBS(binaries);
+                break;
+            case "L":
+                expect(parser, token, JsonToken.START_ARRAY);
+                final List<AttributeValue> elements = new ArrayList<AttributeValue>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    elements.add(readValue(parser));
+                }
+                value.setL(elements);
+                break;
+            case "M":
+                value.setM(readItem(parser));
+                break;
+            default:
+                throw new IOException("Unknown attribute type " + type + " at " + parser.getCurrentLocation());
+        }
+        expect(parser, parser.nextToken(), JsonToken.END_OBJECT);
+        return value;
+    }
+
+    private static void writeStrings(final JsonGenerator generator, final String type, final List<String> values) throws IOException {
+        generator.writeArrayFieldStart(type);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    private static List<String> readStrings(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+        final List<String> values = new ArrayList<String>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getText());
+        }
+        return values;
+    }
+
+    private static String encode(final ByteBuffer bytes) {
+        return Base64.getEncoder().encodeToString(toArray(bytes));
+    }
+
+    private static ByteBuffer decode(final String encoded) {
+        return ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+    }
+
+    private static byte[] toArray(final ByteBuffer bytes) {
+        final ByteBuffer duplicate = bytes.duplicate();
+        duplicate.rewind();
+        final byte[] array = new byte[duplicate.remaining()];
+        duplicate.get(array);
+        return array;
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but found " + actual + " at " + parser.getCurrentLocation());
+        }
+    }
+}
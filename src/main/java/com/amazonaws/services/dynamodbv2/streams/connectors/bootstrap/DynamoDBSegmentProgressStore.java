@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BillingMode;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.util.TableUtils;
+import com.google.common.collect.ImmutableMap;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Segment progress store in a DynamoDB table, so that the segments of a copy can be leased by the threads of several
+ * workers. Each segment is an item holding its lease owner and expiry and the key its scan resumes from; all changes are
+ * conditional writes on the lease owner. The start of the copy is kept in the item of segment -1.
+ * <p>
+ * The KCL lease table cannot hold these items since the worker reads every item of it as a shard lease, so the store uses
+ * its own table, created on demand with on-demand capacity.
+ */
+@Log4j
+public class DynamoDBSegmentProgressStore implements SegmentProgressStore {
+
+    private static final String SEGMENT = "segment";
+    private static final String OWNER = "leaseOwner";
+    private static final String LEASE_EXPIRY = "leaseExpiry";
+    private static final String LAST_EVALUATED_KEY = "lastEvaluatedKey";
+    private static final String COMPLETE = "complete";
+    private static final String START_MILLIS = "startMillis";
+    private static final String TOTAL_SEGMENTS = "totalSegments";
+    private static final int START_SEGMENT = -1;
+
+    private static final Map<String, String> NAMES = ImmutableMap.<String, String>builder()
+        .put("#segment", SEGMENT)
+        .put("#owner", OWNER)
+        .put("#expiry", LEASE_EXPIRY)
+        .put("#lek", LAST_EVALUATED_KEY)
+        .put("#complete", COMPLETE)
+        .build();
+
+    private final AmazonDynamoDB dynamodb;
+    private final String tableName;
+
+    /**
+     * @param dynamodb
+     *            the client of the progress table
+     * @param tableName
+     *            the progress table, created if it does not exist
+     * @throws InterruptedException
+     *             if interrupted while waiting for the table to be created
+     */
+    public DynamoDBSegmentProgressStore(final AmazonDynamoDB dynamodb, final String tableName) throws InterruptedException {
+        this.dynamodb = dynamodb;
+        this.tableName = tableName;
+        if (TableUtils.createTableIfNotExists(dynamodb, new CreateTableRequest().withTableName(tableName)
+            .withKeySchema(new KeySchemaElement(SEGMENT, KeyType.HASH))
+            .withAttributeDefinitions(new AttributeDefinition(SEGMENT, ScalarAttributeType.N))
+            .withBillingMode(BillingMode.PAY_PER_REQUEST))) {
+            log.info("Created bootstrap progress table " + tableName);
+        }
+        TableUtils.waitUntilActive(dynamodb, tableName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long initialize(final int totalSegments, final long startMillis) {
+        final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put(SEGMENT, number(START_SEGMENT));
+        item.put(START_MILLIS, number(startMillis));
+        item.put(TOTAL_SEGMENTS, number(totalSegments));
+        try {
+            dynamodb.putItem(new PutItemRequest().withTableName(tableName).withItem(item)
+                .withConditionExpression("attribute_not_exists(" + SEGMENT + ")"));
+            return startMillis;
+        } catch (ConditionalCheckFailedException e) {
+            final Map<String, AttributeValue> start = get(START_SEGMENT);
+            if (Integer.parseInt(start.get(TOTAL_SEGMENTS).getN()) != totalSegments) {
+                throw new IllegalStateException("Copy in " + tableName + " was started with " + start.get(TOTAL_SEGMENTS).getN()
+                    + " segments, not " + totalSegments);
+            }
+            return Long.parseLong(start.get(START_MILLIS).getN());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SegmentProgress getProgress(final int segment) {
+        return toProgress(segment, get(segment));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SegmentProgress tryLease(final int segment, final String owner, final long leaseDurationMillis) {
+        final long now = System.currentTimeMillis();
+        try {
+            return toProgress(segment, dynamodb.updateItem(new UpdateItemRequest().withTableName(tableName).withKey(key(segment))
+                .withUpdateExpression("SET #owner = :owner, #expiry = :expiry")
+                .withConditionExpression("attribute_not_exists(#segment) OR (attribute_not_exists(#complete) AND (#expiry < :now OR #owner = :owner))")
+                .withExpressionAttributeNames(names("#segment", "#owner", "#expiry", "#complete"))
+                .withExpressionAttributeValues(ImmutableMap.of(":owner", new AttributeValue(owner), ":expiry", number(now + leaseDurationMillis),
+                    ":now", number(now)))
+                .withReturnValues(ReturnValue.ALL_NEW)).getAttributes());
+        } catch (ConditionalCheckFailedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkpoint(final int segment, final String owner, final Map<String, AttributeValue> lastEvaluatedKey,
+        final long leaseDurationMillis) {
+        return update(new UpdateItemRequest().withTableName(tableName).withKey(key(segment))
+            .withUpdateExpression("SET #lek = :lek, #expiry = :expiry")
+            .withConditionExpression("#owner = :owner AND attribute_not_exists(#complete)")
+            .withExpressionAttributeNames(names("#lek", "#expiry", "#owner", "#complete"))
+            .withExpressionAttributeValues(ImmutableMap.of(":lek", new AttributeValue(DynamoDBJson.toJson(lastEvaluatedKey)),
+                ":expiry", number(System.currentTimeMillis() + leaseDurationMillis), ":owner", new AttributeValue(owner))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean complete(final int segment, final String owner) {
+        return update(new UpdateItemRequest().withTableName(tableName).withKey(key(segment))
+            .withUpdateExpression("SET #complete = :complete REMOVE #lek, #owner, #expiry")
+            .withConditionExpression("#owner = :owner")
+            .withExpressionAttributeNames(names("#complete", "#lek", "#owner", "#expiry"))
+            .withExpressionAttributeValues(ImmutableMap.of(":complete", new AttributeValue().withBOOL(true), ":owner", new AttributeValue(owner))));
+    }
+
+    private boolean update(final UpdateItemRequest request) {
+        try {
+            dynamodb.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private Map<String, AttributeValue> get(final int segment) {
+        return dynamodb.getItem(new GetItemRequest().withTableName(tableName).withKey(key(segment)).withConsistentRead(true)).getItem();
+    }
+
+    private static SegmentProgress toProgress(final int segment, final Map<String, AttributeValue> item) {
+        if (null == item) {
+            return null;
+        }
+        if (item.containsKey(COMPLETE)) {
+            return new SegmentProgress(segment, null, true);
+        }
+        try {
+            return new SegmentProgress(segment, item.containsKey(LAST_EVALUATED_KEY) ? DynamoDBJson.fromJson(item.get(LAST_EVALUATED_KEY).getS()) : null,
+                false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, String> names(final String... placeholders) {
+        final Map<String, String> names = new HashMap<String, String>();
+        for (String placeholder : placeholders) {
+            names.put(placeholder, NAMES.get(placeholder));
+        }
+        return names;
+    }
+
+    private static Map<String, AttributeValue> key(final int segment) {
+        return ImmutableMap.of(SEGMENT, number(segment));
+    }
+
+    private static AttributeValue number(final long value) {
+        return new AttributeValue().withN(Long.toString(value));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Copies the items of a DynamoDB table export in DynamoDB JSON format from a local directory to the replicas, instead of
+ * scanning the source table. Every line of the data files, gzipped (<code>.json.gz</code>) or not (<code>.json</code>),
+ * holds one item as <code>{"Item": {...}}</code>. Files are decoded with a streaming parser by several threads, each
+ * writing batches of items as it reads them, so the memory used does not depend on the size of the export.
+ * <p>
+ * The worker started after the copy reads the stream from TRIM_HORIZON, so the export must have been taken less than 24
+ * hours before the copy completes; the copy fails otherwise.
+ */
+@Log4j
+public class ExportFileBootstrap implements Bootstrap {
+
+    static final int BATCH_SIZE = 100;
+
+    private static final String ITEM = "Item";
+
+    private final File directory;
+    private final List<KeySchemaElement> keySchema;
+    private final long exportTimeMillis;
+    private final int threads;
+    private final BootstrapWriter writer;
+
+    /**
+     * @param directory
+     *            the directory holding the data files of the export
+     * @param keySchema
+     *            the key schema of the exported table
+     * @param exportTimeMillis
+     *            the point in time of the export
+     * @param threads
+     *            the number of files read in parallel
+     * @param writeItemsPerSecond
+     *            the items the copy may write per second to each replica, 0 for no limit
+     * @param sinks
+     *            the pipelines the items are written with
+     */
+    public ExportFileBootstrap(final File directory, final List<KeySchemaElement> keySchema, final long exportTimeMillis, final int threads,
+        final double writeItemsPerSecond, final List<BootstrapSink> sinks) {
+        this.directory = directory;
+        this.keySchema = keySchema;
+        this.exportTimeMillis = exportTimeMillis;
+        this.threads = threads;
+        this.writer = new BootstrapWriter("export " + directory, sinks, writeItemsPerSecond);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run() throws InterruptedException {
+        if (System.currentTimeMillis() - exportTimeMillis > BootstrapWriter.STREAM_RETENTION_MILLIS) {
+            throw new IllegalStateException("Export " + directory + " is older than the stream retention, export the table again");
+        }
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".json.gz") || name.endsWith(".json"));
+        if (null == files) {
+            throw new IllegalStateException("Export directory " + directory + " cannot be read");
+        }
+        log.info("Copying " + files.length + " export files of " + directory + " with " + threads + " threads");
+        final ConcurrentLinkedQueue<File> queue = new ConcurrentLinkedQueue<File>(Arrays.asList(files));
+        final Date startTime = new Date(exportTimeMillis);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> readers = new ArrayList<Future<?>>();
+        try {
+            for (int thread = 0; thread < threads; thread++) {
+                readers.add(executor.submit(() -> {
+                    File file;
+                    while (null != (file = queue.poll())) {
+                        copy(file, startTime);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Copy of export " + directory + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return writer.complete(exportTimeMillis);
+    }
+
+    /**
+     * Copy the items of an export file.
+     */
+    void copy(final File file, final Date startTime) throws IOException, InterruptedException {
+        try (InputStream input = open(file); JsonParser parser = DynamoDBJson.getFactory().createParser(input)) {
+            List<Map<String, AttributeValue>> batch = new ArrayList<Map<String, AttributeValue>>(BATCH_SIZE);
+            // the lines of the file are a sequence of root level objects
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Map<String, AttributeValue> item = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (ITEM.equals(field)) {
+                        item = DynamoDBJson.readItem(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (null == item) {
+                    throw new IOException("Line without item at " + parser.getCurrentLocation() + " of " + file);
+                }
+                batch.add(item);
+                if (batch.size() == BATCH_SIZE) {
+                    writer.write(batch, keySchema, startTime);
+                    batch = new ArrayList<Map<String, AttributeValue>>(BATCH_SIZE);
+                }
+            }
+            writer.write(batch, keySchema, startTime);
+        }
+        log.debug("Copied export file " + file);
+    }
+
+    private static InputStream open(final File file) throws IOException {
+        final InputStream input = new BufferedInputStream(Files.newInputStream(file.toPath()));
+        return file.getName().endsWith(".gz") ? new GZIPInputStream(input) : input;
+    }
+}
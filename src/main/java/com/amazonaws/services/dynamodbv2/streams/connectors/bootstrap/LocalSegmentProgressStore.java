@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Segment progress store for copies run by a single worker. Leases only live in memory; the start of the copy and the
+ * progress of each segment are written to files of the given directory, replaced atomically on every checkpoint. Without
+ * a directory, the progress is kept in memory only and a restarted copy starts over.
+ */
+public class LocalSegmentProgressStore implements SegmentProgressStore {
+
+    private static final String START_FILE = "start";
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String COMPLETE = "complete";
+
+    private final File directory;
+    private final Map<Integer, SegmentProgress> progress = new HashMap<Integer, SegmentProgress>();
+    private final Map<Integer, String> owners = new HashMap<Integer, String>();
+    private final Map<Integer, Long> leaseExpiries = new HashMap<Integer, Long>();
+
+    /**
+     * @param directory
+     *            the directory of the progress files, created if needed, or null to keep the progress in memory
+     */
+    public LocalSegmentProgressStore(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long initialize(final int totalSegments, final long startMillis) {
+        if (null == directory) {
+            return startMillis;
+        }
+        try {
+            final File startFile = new File(directory, START_FILE);
+            if (startFile.exists()) {
+                final String[] start = read(startFile).trim().split(" ");
+                if (Integer.parseInt(start[1]) != totalSegments) {
+                    throw new IllegalStateException("Copy in " + directory + " was started with " + start[1] + " segments, not " + totalSegments);
+                }
+                return Long.parseLong(start[0]);
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            write(startFile, startMillis + " " + totalSegments);
+            return startMillis;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized SegmentProgress getProgress(final int segment) {
+        if (!progress.containsKey(segment)) {
+            progress.put(segment, load(segment));
+        }
+        return progress.get(segment);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized SegmentProgress tryLease(final int segment, final String owner, final long leaseDurationMillis) {
+        final SegmentProgress current = getProgress(segment);
+        if (null != current && current.isComplete()) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        final String currentOwner = owners.get(segment);
+        if (null != currentOwner && !currentOwner.equals(owner) && leaseExpiries.get(segment) > now) {
+            return null;
+        }
+        owners.put(segment, owner);
+        leaseExpiries.put(segment, now + leaseDurationMillis);
+        if (null == current) {
+            progress.put(segment, new SegmentProgress(segment, null, false));
+        }
+        return progress.get(segment);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean checkpoint(final int segment, final String owner, final Map<String, AttributeValue> lastEvaluatedKey,
+        final long leaseDurationMillis) {
+        if (!owner.equals(owners.get(segment))) {
+            return false;
+        }
+        save(new SegmentProgress(segment, lastEvaluatedKey, false));
+        leaseExpiries.put(segment, System.currentTimeMillis() + leaseDurationMillis);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean complete(final int segment, final String owner) {
+        if (!owner.equals(owners.get(segment))) {
+            return false;
+        }
+        save(new SegmentProgress(segment, null, true));
+        owners.remove(segment);
+        return true;
+    }
+
+    private void save(final SegmentProgress segmentProgress) {
+        progress.put(segmentProgress.getSegment(), segmentProgress);
+        if (null == directory) {
+            return;
+        }
+        try {
+            write(new File(directory, SEGMENT_FILE_PREFIX + segmentProgress.getSegment()),
+                segmentProgress.isComplete() ? COMPLETE : DynamoDBJson.toJson(segmentProgress.getLastEvaluatedKey()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SegmentProgress load(final int segment) {
+        if (null == directory) {
+            return null;
+        }
+        final File file = new File(directory, SEGMENT_FILE_PREFIX + segment);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final String contents = read(file);
+            return COMPLETE.equals(contents) ? new SegmentProgress(segment, null, true)
+                : new SegmentProgress(segment, DynamoDBJson.fromJson(contents), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(final File file, final String contents) throws IOException {
+        final File temporary = new File(file.getPath() + ".tmp");
+        Files.write(temporary.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.RateLimiter;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Copies the source table to the replicas with a segmented parallel Scan, one thread per segment. Reads are limited to
+ * the given read capacity units per second, and writes to the given number of items per second, so that the copy can
+ * use the capacity left by the application on both sides. A rate of 0 disables the limit.
+ * <p>
+ * DynamoDB Streams cannot be read from a point in time, so the worker started after the copy reads each shard from
+ * TRIM_HORIZON, which covers the changes of the last 24 hours. The copy captures its start time before scanning and
+ * fails if it took longer than the stream retention, since the changes made at its beginning would then be lost.
+ * <p>
+ * The key each segment has been scanned up to is checkpointed periodically to a {@link SegmentProgressStore}, so that a
+ * restarted copy resumes every segment where it stopped. Each copy thread leases one segment at a time from the store
+ * and moves on to the next segment that is neither complete nor leased, so several workers sharing a store copy the
+ * table together, and the segments of a worker that died are taken over once their lease expired.
+ */
+@Log4j
+public class ParallelScanBootstrap implements Bootstrap {
+
+    /**
+     * How long a segment stays leased to a copy thread without a checkpoint.
+     */
+    static final long LEASE_DURATION_MILLIS = 60000L;
+
+    /**
+     * Time between two checkpoints of the progress of a segment, which also renew its lease.
+     */
+    static final long CHECKPOINT_INTERVAL_MILLIS = 10000L;
+
+    private final AmazonDynamoDB dynamodb;
+    private final String tableName;
+    private final int totalSegments;
+    private final RateLimiter readLimiter;
+    private final BootstrapWriter writer;
+    private final SegmentProgressStore progressStore;
+    private final String workerId;
+
+    /**
+     * @param dynamodb
+     *            the client of the source table
+     * @param tableName
+     *            the source table
+     * @param totalSegments
+     *            the number of segments scanned in parallel
+     * @param readUnitsPerSecond
+     *            the read capacity units the copy may consume per second, 0 for no limit
+     * @param writeItemsPerSecond
+     *            the items the copy may write per second to each replica, 0 for no limit
+     * @param sinks
+     *            the pipelines the items are written with
+     */
+    public ParallelScanBootstrap(final AmazonDynamoDB dynamodb, final String tableName, final int totalSegments, final double readUnitsPerSecond,
+        final double writeItemsPerSecond, final List<BootstrapSink> sinks) {
+        this(dynamodb, tableName, totalSegments, readUnitsPerSecond, writeItemsPerSecond, sinks, new LocalSegmentProgressStore(null),
+            UUID.randomUUID().toString());
+    }
+
+    /**
+     * @param dynamodb
+     *            the client of the source table
+     * @param tableName
+     *            the source table
+     * @param totalSegments
+     *            the number of segments scanned in parallel
+     * @param readUnitsPerSecond
+     *            the read capacity units the copy may consume per second, 0 for no limit
+     * @param writeItemsPerSecond
+     *            the items the copy may write per second to each replica, 0 for no limit
+     * @param sinks
+     *            the pipelines the items are written with
+     * @param progressStore
+     *            the store of the progress of the segments
+     * @param workerId
+     *            the identifier of this worker, unique among the workers sharing the progress store
+     */
+    public ParallelScanBootstrap(final AmazonDynamoDB dynamodb, final String tableName, final int totalSegments, final double readUnitsPerSecond,
+        final double writeItemsPerSecond, final List<BootstrapSink> sinks, final SegmentProgressStore progressStore, final String workerId) {
+        this.dynamodb = dynamodb;
+        this.tableName = tableName;
+        this.totalSegments = totalSegments;
+        this.readLimiter = readUnitsPerSecond > 0 ? RateLimiter.create(readUnitsPerSecond) : null;
+        this.writer = new BootstrapWriter("table " + tableName, sinks, writeItemsPerSecond);
+        this.progressStore = progressStore;
+        this.workerId = workerId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run() throws InterruptedException {
+        // a resumed copy keeps the start time of its first run, the stream must cover the changes made since then
+        final long startMillis = progressStore.initialize(totalSegments, System.currentTimeMillis());
+        final Date startTime = new Date(startMillis);
+        final List<KeySchemaElement> keySchema = dynamodb.describeTable(tableName).getTable().getKeySchema();
+        log.info("Copying table " + tableName + " with " + totalSegments + " segments, started at " + startTime);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(totalSegments);
+        final List<Future<?>> segments = new ArrayList<Future<?>>();
+        try {
+            for (int thread = 0; thread < totalSegments; thread++) {
+                final int firstSegment = thread;
+                final String owner = workerId + "-" + thread;
+                segments.add(executor.submit(() -> {
+                    copySegments(firstSegment, owner, keySchema, startTime);
+                    return null;
+                }));
+            }
+            for (Future<?> segment : segments) {
+                segment.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Copy of table " + tableName + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return writer.complete(startMillis);
+    }
+
+    /**
+     * Lease and copy segments, starting with the given one, until all segments are complete.
+     */
+    private void copySegments(final int firstSegment, final String owner, final List<KeySchemaElement> keySchema, final Date startTime)
+        throws InterruptedException {
+        boolean incomplete = true;
+        while (incomplete) {
+            incomplete = false;
+            boolean copiedSegment = false;
+            for (int i = 0; i < totalSegments && !copiedSegment; i++) {
+                final int segment = (firstSegment + i) % totalSegments;
+                final SegmentProgress progress = progressStore.getProgress(segment);
+                if (null != progress && progress.isComplete()) {
+                    continue;
+                }
+                incomplete = true;
+                final SegmentProgress leased = progressStore.tryLease(segment, owner, LEASE_DURATION_MILLIS);
+                if (null != leased) {
+                    scanSegment(leased, owner, keySchema, startTime);
+                    copiedSegment = true;
+                }
+            }
+            if (incomplete && !copiedSegment) {
+                // the remaining segments are leased by other threads, take them over if their owner dies
+                Thread.sleep(CHECKPOINT_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    private void scanSegment(final SegmentProgress progress, final String owner, final List<KeySchemaElement> keySchema, final Date startTime)
+        throws InterruptedException {
+        final int segment = progress.getSegment();
+        Map<String, AttributeValue> exclusiveStartKey = progress.getLastEvaluatedKey();
+        if (null != exclusiveStartKey) {
+            log.info("Resuming segment " + segment + " of table " + tableName + " from " + exclusiveStartKey);
+        }
+        long lastCheckpointMillis = System.currentTimeMillis();
+        do {
+            final ScanResult result = dynamodb.scan(new ScanRequest().withTableName(tableName).withSegment(segment)
+                .withTotalSegments(totalSegments).withConsistentRead(true).withExclusiveStartKey(exclusiveStartKey)
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+            if (null != readLimiter && null != result.getConsumedCapacity()) {
+                readLimiter.acquire(Math.max(1, (int) Math.ceil(result.getConsumedCapacity().getCapacityUnits())));
+            }
+            writer.write(result.getItems(), keySchema, startTime);
+            exclusiveStartKey = result.getLastEvaluatedKey();
+            final long now = System.currentTimeMillis();
+            if (null != exclusiveStartKey && !exclusiveStartKey.isEmpty() && now - lastCheckpointMillis >= CHECKPOINT_INTERVAL_MILLIS) {
+                if (!progressStore.checkpoint(segment, owner, exclusiveStartKey, LEASE_DURATION_MILLIS)) {
+                    log.warn("Lost the lease of segment " + segment + " of table " + tableName + ", another thread continues it");
+                    return;
+                }
+                lastCheckpointMillis = now;
+            }
+        } while (null != exclusiveStartKey && !exclusiveStartKey.isEmpty());
+        if (progressStore.complete(segment, owner)) {
+            log.debug("Segment " + segment + " of table " + tableName + " copied");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Scan progress of a segment of the bootstrap copy.
+ */
+@Getter
+@AllArgsConstructor
+public class SegmentProgress {
+
+    /**
+     * The scan segment.
+     */
+    private final int segment;
+
+    /**
+     * The key to resume the scan of the segment from, null to start from its beginning.
+     */
+    private final Map<String, AttributeValue> lastEvaluatedKey;
+
+    /**
+     * Whether all the items of the segment have been copied.
+     */
+    private final boolean complete;
+}
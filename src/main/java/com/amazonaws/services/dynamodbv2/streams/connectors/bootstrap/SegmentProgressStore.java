@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Durable store of the scan progress of the bootstrap copy, so that a restarted copy resumes each segment where it
+ * stopped. Segments are leased to a single copy thread at a time; a lease that is not renewed by a checkpoint within
+ * its duration can be taken over by any other thread, possibly in another worker.
+ */
+public interface SegmentProgressStore {
+
+    /**
+     * Record the start of the copy, unless a previous run of the same copy already did.
+     *
+     * @param totalSegments
+     *            the number of segments of the copy
+     * @param startMillis
+     *            the start time of this run
+     * @return the start time of the first run of the copy
+     * @throws IllegalStateException
+     *             if the copy was started with a different number of segments
+     */
+    long initialize(int totalSegments, long startMillis);
+
+    /**
+     * @param segment
+     *            a segment of the copy
+     * @return the progress of the segment, null if it has never been leased
+     */
+    SegmentProgress getProgress(int segment);
+
+    /**
+     * Lease a segment that is neither complete nor leased by another owner.
+     *
+     * @param segment
+     *            the segment to lease
+     * @param owner
+     *            the copy thread leasing the segment
+     * @param leaseDurationMillis
+     *            how long the lease is valid without a checkpoint
+     * @return the progress of the leased segment, or null if it could not be leased
+     */
+    SegmentProgress tryLease(int segment, String owner, long leaseDurationMillis);
+
+    /**
+     * Record the key the scan of a segment resumes from and renew its lease.
+     *
+     * @return false if the lease has been lost, in which case the owner must stop copying the segment
+     */
+    boolean checkpoint(int segment, String owner, Map<String, AttributeValue> lastEvaluatedKey, long leaseDurationMillis);
+
+    /**
+     * Record that all the items of a segment have been copied.
+     *
+     * @return false if the lease has been lost
+     */
+    boolean complete(int segment, String owner);
+}
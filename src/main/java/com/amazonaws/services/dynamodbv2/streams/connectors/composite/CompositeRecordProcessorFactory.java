@@ -1,21 +1,64 @@
 package com.amazonaws.services.dynamodbv2.streams.connectors.composite;
 
-import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBConnectorConstants;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
 import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorFactory;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.v2.IRecordProcessor;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.v2.IShutdownNotificationAware;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.ShutdownReason;
+import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.clientlibrary.types.InitializationInput;
+import com.amazonaws.services.kinesis.clientlibrary.types.ProcessRecordsInput;
+import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownInput;
+import com.amazonaws.services.kinesis.leases.exceptions.DependencyException;
+import com.amazonaws.services.kinesis.leases.exceptions.InvalidStateException;
+import com.amazonaws.services.kinesis.leases.exceptions.ProvisionedThroughputException;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLease;
+import com.amazonaws.services.kinesis.leases.interfaces.ILeaseManager;
 import com.amazonaws.services.kinesis.model.Record;
+import lombok.extern.log4j.Log4j;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
-public class CompositeRecordProcessorFactory implements IRecordProcessorFactory {
+public class CompositeRecordProcessorFactory implements com.amazonaws.services.kinesis.clientlibrary.interfaces.v2.IRecordProcessorFactory {
     private final List<? extends IRecordProcessorFactory> delegates;
+    private final AmazonCloudWatch cloudwatch;
+    private final String namespace;
+    private final ILeaseManager<KinesisClientLease> leaseManager;
+    private final long drainTimeoutMillis;
 
     public CompositeRecordProcessorFactory(List<? extends IRecordProcessorFactory> delegates) {
+        this(delegates, null, null, null, DynamoDBConnectorConstants.DEFAULT_GRACEFUL_SHUTDOWN_MILLIS);
+    }
+
+    /**
+     * @param delegates          factories of the record processors each shard is dispatched to
+     * @param cloudwatch         the CloudWatch client used to publish the shard rollover lag, may be null
+     * @param namespace          the CloudWatch namespace of the metrics
+     * @param leaseManager       the manager of the lease table, telling the child shards apart, may be null
+     * @param drainTimeoutMillis how long a requested shutdown or the end of a shard waits for the batches being processed to complete
+     */
+    public CompositeRecordProcessorFactory(List<? extends IRecordProcessorFactory> delegates, AmazonCloudWatch cloudwatch, String namespace,
+                                           ILeaseManager<KinesisClientLease> leaseManager, long drainTimeoutMillis) {
         this.delegates = delegates;
+        this.cloudwatch = cloudwatch;
+        this.namespace = namespace;
+        this.leaseManager = leaseManager;
+        this.drainTimeoutMillis = drainTimeoutMillis;
     }
 
     @Override
@@ -24,35 +67,237 @@ public class CompositeRecordProcessorFactory implements IRecordProcessorFactory
                 delegates
                         .stream()
                         .map(IRecordProcessorFactory::createProcessor)
-                        .collect(Collectors.toList())
+                        .collect(Collectors.toList()),
+                cloudwatch,
+                namespace,
+                leaseManager,
+                drainTimeoutMillis
         );
     }
 }
 
-class CompositeRecordProcessor implements IRecordProcessor {
-    private final ExecutorService threadPool;
-    private final List<IRecordProcessor> processors;
+/**
+ * Dispatches each shard to the record processors of all pipelines. A shard whose lease starts at TRIM_HORIZON and has
+ * parent shards is a child shard created by a rollover: the age of its first record when it is processed is the lag
+ * caused by waiting for the parent shard and the child lease, and is published as ShardRolloverLag. The shards without
+ * parents, such as the shards of a new task or of a bootstrapped one, start from records unrelated to a rollover and
+ * are not measured.
+ * <p>
+ * Each record processor writes the batches of the shard in order on its own thread. With several record processors, the
+ * shard is checkpointed through a {@link SharedCheckpointer}, only up to the records every processor has written.
+ * <p>
+ * When the worker shuts down gracefully, the batches still being written are drained up to the drain timeout before the
+ * record processors that support it get their last chance to emit and checkpoint, so the lease can be handed over
+ * without replaying the records that were already written. At the end of a shard, the batches are drained up to the
+ * same timeout before the shard end is checkpointed; the batches still being written after it are cancelled and the
+ * shard end is not checkpointed, so that a restarted worker replays them from the last checkpoint instead of skipping
+ * them. When the lease was lost to another worker, the queued batches are cancelled right away, since that worker
+ * replays them.
+ */
+@Log4j
+class CompositeRecordProcessor implements IRecordProcessor, IShutdownNotificationAware {
+    /**
+     * CloudWatch Metric for the age of the first record of a shard started from the beginning.
+     */
+    private static final String SHARD_ROLLOVER_LAG = "ShardRolloverLag";
+
+    private final List<ExecutorService> threads;
+    private final SharedCheckpointer sharedCheckpointer;
+    private final List<com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor> processors;
+    private final AmazonCloudWatch cloudwatch;
+    private final String namespace;
+    private final ILeaseManager<KinesisClientLease> leaseManager;
+    private final long drainTimeoutMillis;
+    private final List<List<Future<?>>> inFlight;
+    private String shardId;
+    private boolean awaitingFirstRecord;
+    private boolean cancelled;
 
-    public CompositeRecordProcessor(List<IRecordProcessor> processors) {
+    public CompositeRecordProcessor(List<com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor> processors,
+                                    AmazonCloudWatch cloudwatch, String namespace, ILeaseManager<KinesisClientLease> leaseManager,
+                                    long drainTimeoutMillis) {
         this.processors = processors;
-        this.threadPool = Executors.newFixedThreadPool(processors.size());
+        this.cloudwatch = cloudwatch;
+        this.namespace = namespace;
+        this.leaseManager = leaseManager;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.threads = new ArrayList<>();
+        this.inFlight = new ArrayList<>();
+        processors.forEach(it -> {
+            threads.add(Executors.newSingleThreadExecutor());
+            inFlight.add(new ArrayList<>());
+        });
+        this.sharedCheckpointer = processors.size() > 1 ? new SharedCheckpointer(processors.size()) : null;
     }
 
     @Override
-    public void initialize(String shardId) {
+    public void initialize(InitializationInput initializationInput) {
+        shardId = initializationInput.getShardId();
+        awaitingFirstRecord = ExtendedSequenceNumber.TRIM_HORIZON.equals(initializationInput.getExtendedSequenceNumber()) && isChildShard();
         processors.forEach(it -> it.initialize(shardId));
     }
 
     @Override
-    public void processRecords(List<Record> records, IRecordProcessorCheckpointer checkpointer) {
-        for (IRecordProcessor processor : processors) {
-            threadPool.submit(() -> processor.processRecords(records, checkpointer));
+    public void processRecords(ProcessRecordsInput processRecordsInput) {
+        final List<Record> records = processRecordsInput.getRecords();
+        setDelegate(processRecordsInput.getCheckpointer());
+        if (awaitingFirstRecord && !records.isEmpty()) {
+            awaitingFirstRecord = false;
+            publishRolloverLag(records.get(0));
+        }
+        for (int i = 0; i < processors.size(); i++) {
+            final com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor processor = processors.get(i);
+            if (processor instanceof IRecordsReceivedAware) {
+                ((IRecordsReceivedAware) processor).recordsReceived(records);
+            }
+            final IRecordProcessorCheckpointer checkpointer = getCheckpointer(i, processRecordsInput.getCheckpointer());
+            final List<Future<?>> futures = inFlight.get(i);
+            synchronized (futures) {
+                futures.removeIf(Future::isDone);
+                futures.add(threads.get(i).submit(() -> {
+                    try {
+                        processor.processRecords(records, checkpointer);
+                    } catch (RuntimeException e) {
+                        log.error("Could not process records of shard " + shardId, e);
+                        throw e;
+                    }
+                }));
+            }
         }
     }
 
     @Override
-    public void shutdown(IRecordProcessorCheckpointer checkpointer, ShutdownReason reason) {
-        processors.forEach(it -> it.shutdown(checkpointer, reason));
+    public void shutdownRequested(IRecordProcessorCheckpointer checkpointer) {
+        setDelegate(checkpointer);
+        final long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        for (int i = 0; i < processors.size(); i++) {
+            final com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor processor = processors.get(i);
+            if (!drain(inFlight.get(i), deadline)) {
+                log.warn("Batches of shard " + shardId + " were still being written after " + drainTimeoutMillis
+                        + " ms, the next lease owner will replay them");
+                continue;
+            }
+            if (processor instanceof IShutdownNotificationAware) {
+                ((IShutdownNotificationAware) processor).shutdownRequested(getCheckpointer(i, checkpointer));
+            }
+        }
+        threads.forEach(ExecutorService::shutdown);
+    }
+
+    @Override
+    public void shutdown(ShutdownInput shutdownInput) {
+        setDelegate(shutdownInput.getCheckpointer());
+        ShutdownReason reason = shutdownInput.getShutdownReason();
+        if (ShutdownReason.ZOMBIE == reason) {
+            // the new lease owner replays the queued batches, writing them here too would only race with it
+            threads.forEach(ExecutorService::shutdownNow);
+        }
+        // the record processors are not thread safe, and the shard end must only be checkpointed after every batch
+        final long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        boolean drained = true;
+        for (List<Future<?>> futures : inFlight) {
+            drained &= drain(futures, deadline);
+        }
+        if (!drained) {
+            log.warn("Batches of shard " + shardId + " were still being written after " + drainTimeoutMillis + " ms, cancelling them");
+            threads.forEach(ExecutorService::shutdownNow);
+            awaitTermination(deadline + drainTimeoutMillis);
+            cancelled = true;
+        }
+        if (cancelled && ShutdownReason.TERMINATE == reason) {
+            // checkpointing the shard end would skip the cancelled batches, they are replayed from the last checkpoint instead
+            log.error("Not checkpointing the end of shard " + shardId + " after its batches were cancelled, restart the worker to replay them");
+            reason = ShutdownReason.ZOMBIE;
+        }
+        for (int i = 0; i < processors.size(); i++) {
+            processors.get(i).shutdown(getCheckpointer(i, shutdownInput.getCheckpointer()), reason);
+        }
+        threads.forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * Wait for the cancelled batches to stop, so that the record processors are not shut down while they still write.
+     */
+    private void awaitTermination(long deadline) {
+        for (ExecutorService thread : threads) {
+            try {
+                if (!thread.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    log.warn("A batch of shard " + shardId + " did not stop after it was cancelled");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
-}
 
+    private void setDelegate(IRecordProcessorCheckpointer checkpointer) {
+        if (null != sharedCheckpointer) {
+            sharedCheckpointer.setDelegate(checkpointer);
+        }
+    }
+
+    /**
+     * @return the checkpointer the processor at the given index checkpoints with
+     */
+    private IRecordProcessorCheckpointer getCheckpointer(int processor, IRecordProcessorCheckpointer checkpointer) {
+        return null == sharedCheckpointer ? checkpointer : sharedCheckpointer.get(processor);
+    }
+
+    /**
+     * @return true if all the given batches completed before the deadline
+     */
+    private static boolean drain(List<Future<?>> futures, long deadline) {
+        final List<Future<?>> pending;
+        synchronized (futures) {
+            pending = new ArrayList<>(futures);
+        }
+        for (Future<?> future : pending) {
+            try {
+                future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                log.error("Batch failed while draining", e.getCause());
+            } catch (CancellationException e) {
+                // the batch was cancelled before it started
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the lease of the shard has parent shards, false if it has none or could not be read
+     */
+    private boolean isChildShard() {
+        if (null == cloudwatch || null == leaseManager) {
+            return false;
+        }
+        try {
+            final KinesisClientLease lease = leaseManager.getLease(shardId);
+            return null != lease && null != lease.getParentShardIds() && !lease.getParentShardIds().isEmpty();
+        } catch (DependencyException | InvalidStateException | ProvisionedThroughputException e) {
+            log.warn("Could not read the lease of shard " + shardId + ", its rollover lag is not published", e);
+            return false;
+        }
+    }
+
+    private void publishRolloverLag(Record first) {
+        final Date created = first.getApproximateArrivalTimestamp();
+        if (null == cloudwatch || null == created) {
+            return;
+        }
+        final long lagMillis = Math.max(0L, System.currentTimeMillis() - created.getTime());
+        log.info("First record of shard " + shardId + " was processed " + lagMillis + " ms after it was written");
+        try {
+            cloudwatch.putMetricData(new PutMetricDataRequest().withNamespace(namespace).withMetricData(
+                    new MetricDatum().withMetricName(SHARD_ROLLOVER_LAG).withValue((double) lagMillis)
+                            .withUnit(StandardUnit.Milliseconds).withTimestamp(new Date())));
+        } catch (RuntimeException e) {
+            log.error("Could not publish shard rollover lag", e);
+        }
+    }
+}
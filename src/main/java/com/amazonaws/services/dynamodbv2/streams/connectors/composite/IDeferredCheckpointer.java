@@ -0,0 +1,22 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.composite;
+
+import java.util.function.Consumer;
+
+/**
+ * Checkpointer that may hold back the checkpoints it receives, so that the caller cannot tell from a returning
+ * checkpoint call whether the checkpoint reached the KCL lease table.
+ */
+public interface IDeferredCheckpointer {
+
+    /**
+     * @param checkpointListener
+     *            called with the sequence number of every checkpoint actually written to the KCL lease table, or with
+     *            null when the shard end has been checkpointed
+     */
+    void setCheckpointListener(Consumer<String> checkpointListener);
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.composite;
+
+import java.util.List;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Record processor notified of each batch of its shard as soon as the batch is received, possibly while the previous
+ * batches are still being processed.
+ */
+public interface IRecordsReceivedAware {
+
+    /**
+     * Called on the thread of the shard before the batch is dispatched to the record processor.
+     *
+     * @param records
+     *            the records of the batch
+     */
+    void recordsReceived(List<Record> records);
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.composite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBConnectorUtilities;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.InvalidStateException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.KinesisClientLibDependencyException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ShutdownException;
+import com.amazonaws.services.kinesis.clientlibrary.exceptions.ThrottlingException;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IPreparedCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.model.Record;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Checkpoints of a shard dispatched to several record processors, one per destination, each writing on its own thread.
+ * Every processor checkpoints through its own checkpointer, and the KCL checkpointer of the shard only receives the
+ * lowest sequence number all the processors have reached, so that a fast destination never moves the shard checkpoint
+ * past records a slower destination has not written yet. A processor that has not checkpointed yet holds the shard
+ * checkpoint back, and the shard end is only checkpointed once every processor has reached it.
+ * <p>
+ * The checkpoints written to the KCL only move forward, so a processor lagging behind never sends a checkpoint older
+ * than the shard checkpoint. The checkpoint listeners of all the processors are called once a checkpoint is written to
+ * the KCL, not when a processor checkpoint returns.
+ */
+@Log4j
+class SharedCheckpointer {
+
+    private final String[] positions;
+    private final boolean[] shardEnds;
+    private final List<ProcessorCheckpointer> checkpointers;
+    private IRecordProcessorCheckpointer delegate;
+    private String checkpointed;
+
+    /**
+     * @param processors
+     *            the number of record processors of the shard
+     */
+    SharedCheckpointer(final int processors) {
+        this.positions = new String[processors];
+        this.shardEnds = new boolean[processors];
+        final List<ProcessorCheckpointer> views = new ArrayList<ProcessorCheckpointer>(processors);
+        for (int i = 0; i < processors; i++) {
+            views.add(new ProcessorCheckpointer(i));
+        }
+        this.checkpointers = Collections.unmodifiableList(views);
+    }
+
+    /**
+     * @param delegate
+     *            the KCL checkpointer of the current processRecords or shutdown call
+     */
+    synchronized void setDelegate(final IRecordProcessorCheckpointer delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the checkpointer of the processor at the given index
+     */
+    IRecordProcessorCheckpointer get(final int processor) {
+        return checkpointers.get(processor);
+    }
+
+    /**
+     * @return the last sequence number written to the KCL checkpointer, or null
+     */
+    synchronized String getCheckpointed() {
+        return checkpointed;
+    }
+
+    private synchronized void checkpoint(final int processor, final String sequenceNumber)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        final String position = positions[processor];
+        if (null == position || DynamoDBConnectorUtilities.compareSequenceNumbers(position, sequenceNumber) < 0) {
+            positions[processor] = sequenceNumber;
+        }
+        final String lowest = getLowest();
+        if (null == lowest || (null != checkpointed && DynamoDBConnectorUtilities.compareSequenceNumbers(lowest, checkpointed) <= 0)) {
+            return;
+        }
+        delegate.checkpoint(lowest);
+        checkpointed = lowest;
+        log.debug("Checkpointed sequence number " + lowest + " reached by all destinations");
+        checkpointed(lowest);
+    }
+
+    private synchronized void checkpointShardEnd(final int processor)
+        throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+        shardEnds[processor] = true;
+        for (boolean shardEnd : shardEnds) {
+            if (!shardEnd) {
+                return;
+            }
+        }
+        delegate.checkpoint();
+        checkpointed(null);
+    }
+
+    private void checkpointed(final String sequenceNumber) {
+        for (ProcessorCheckpointer checkpointer : checkpointers) {
+            final Consumer<String> checkpointListener = checkpointer.checkpointListener;
+            if (null != checkpointListener) {
+                checkpointListener.accept(sequenceNumber);
+            }
+        }
+    }
+
+    /**
+     * @return the lowest sequence number reached by the processors still reading the shard, null if one of them has
+     *         not checkpointed yet or all of them reached the shard end
+     */
+    private String getLowest() {
+        String lowest = null;
+        for (int i = 0; i < positions.length; i++) {
+            if (shardEnds[i]) {
+                continue;
+            }
+            if (null == positions[i]) {
+                return null;
+            }
+            if (null == lowest || DynamoDBConnectorUtilities.compareSequenceNumbers(positions[i], lowest) < 0) {
+                lowest = positions[i];
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Checkpointer of a single record processor of the shard.
+     */
+    private final class ProcessorCheckpointer implements IRecordProcessorCheckpointer, IDeferredCheckpointer {
+        private final int processor;
+        private volatile Consumer<String> checkpointListener;
+
+        ProcessorCheckpointer(final int processor) {
+            this.processor = processor;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setCheckpointListener(final Consumer<String> checkpointListener) {
+            this.checkpointListener = checkpointListener;
+        }
+
+        /**
+         * The processor reached the shard end, the shard end is checkpointed once all the processors reached it.
+         */
+        @Override
+        public void checkpoint() throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+            checkpointShardEnd(processor);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkpoint(final Record record)
+            throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+            SharedCheckpointer.this.checkpoint(processor, record.getSequenceNumber());
+        }
+
+        /**
+         * The processor wrote the records up to the sequence number, the lowest sequence number written by all the
+         * processors is checkpointed.
+         */
+        @Override
+        public void checkpoint(final String sequenceNumber)
+            throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+            SharedCheckpointer.this.checkpoint(processor, sequenceNumber);
+        }
+
+        /**
+         * DynamoDB Streams records have no sub sequence numbers, the sequence number is checkpointed.
+         */
+        @Override
+        public void checkpoint(final String sequenceNumber, final long subSequenceNumber)
+            throws KinesisClientLibDependencyException, InvalidStateException, ThrottlingException, ShutdownException {
+            SharedCheckpointer.this.checkpoint(processor, sequenceNumber);
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint() {
+            throw new UnsupportedOperationException("Prepared checkpoints are not supported with several destinations");
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint(final Record record) {
+            throw new UnsupportedOperationException("Prepared checkpoints are not supported with several destinations");
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint(final String sequenceNumber) {
+            throw new UnsupportedOperationException("Prepared checkpoints are not supported with several destinations");
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint(final String sequenceNumber, final long subSequenceNumber) {
+            throw new UnsupportedOperationException("Prepared checkpoints are not supported with several destinations");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.filter;
+
+import java.util.function.Predicate;
+
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+
+/**
+ * Filter keeping the records matching an expression over the event name, the user identity, the keys and the images of
+ * the record, such as
+ *
+ * <pre>
+ * NOT (userIdentity.type = 'Service' AND userIdentity.principalId = 'dynamodb.amazonaws.com')
+ *     AND NOT begins_with(keys.id, 'local#') AND NOT keys.tenant IN ('tenant-a', 'tenant-b')
+ * </pre>
+ *
+ * The syntax follows DynamoDB condition expressions, see {@link FilterExpressionParser}. The expression is compiled once
+ * to a tree of predicates, and evaluating a record allocates nothing except for numbers that do not fit in a long.
+ * Strings are compared by their UTF-16 code units, numbers by value. A comparison of a missing attribute, or of an
+ * attribute of another type than the literal, is false.
+ */
+public class ExpressionFilter implements IFilter<Record> {
+
+    private final String expression;
+    private final Predicate<Record> predicate;
+
+    /**
+     * @param expression
+     *            the expression the records to replicate match
+     * @throws IllegalArgumentException
+     *             if the expression is malformed
+     */
+    public ExpressionFilter(final String expression) {
+        this.expression = expression;
+        this.predicate = new FilterExpressionParser(expression).parse();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean keepRecord(final Record record) {
+        return predicate.test(record);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ExpressionFilter [" + expression + "]";
+    }
+}
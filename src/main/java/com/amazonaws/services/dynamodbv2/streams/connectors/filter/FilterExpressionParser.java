@@ -0,0 +1,428 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.filter;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Identity;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Recursive descent parser compiling a filter expression to a tree of predicates. Literals are converted once, when
+ * the expression is compiled, so that evaluating a record only reads its fields.
+ *
+ * <pre>
+ * expression := and ( OR and )*
+ * and        := not ( AND not )*
+ * not        := NOT not | primary
+ * primary    := ( expression ) | function | operand comparator literal | operand IN ( string ( , string )* )
+ * function   := begins_with ( operand , string ) | attribute_exists ( operand ) | attribute_not_exists ( operand )
+ * comparator := = | &lt;&gt; | &lt; | &lt;= | &gt; | &gt;=
+ * literal    := 'string' | number | TRUE | FALSE
+ * operand    := eventName | userIdentity.type | userIdentity.principalId | keys.name | newImage.name | oldImage.name
+ * </pre>
+ */
+class FilterExpressionParser {
+
+    private static final String EVENT_NAME = "eventName";
+    private static final String USER_IDENTITY_TYPE = "userIdentity.type";
+    private static final String USER_IDENTITY_PRINCIPAL_ID = "userIdentity.principalId";
+    private static final String KEYS = "keys.";
+    private static final String NEW_IMAGE = "newImage.";
+    private static final String OLD_IMAGE = "oldImage.";
+
+    /**
+     * Longest integer whose digits always fit in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final String expression;
+    private int position;
+
+    FilterExpressionParser(final String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * @return the compiled expression
+     * @throws IllegalArgumentException
+     *             if the expression is malformed
+     */
+    Predicate<Record> parse() {
+        final Predicate<Record> predicate = parseOr();
+        skipWhitespace();
+        if (position < expression.length()) {
+            throw error("Unexpected " + expression.substring(position));
+        }
+        return predicate;
+    }
+
+    private Predicate<Record> parseOr() {
+        Predicate<Record> predicate = parseAnd();
+        while (acceptKeyword("OR")) {
+            final Predicate<Record> left = predicate;
+            final Predicate<Record> right = parseAnd();
+            predicate = record -> left.test(record) || right.test(record);
+        }
+        return predicate;
+    }
+
+    private Predicate<Record> parseAnd() {
+        Predicate<Record> predicate = parseNot();
+        while (acceptKeyword("AND")) {
+            final Predicate<Record> left = predicate;
+            final Predicate<Record> right = parseNot();
+            predicate = record -> left.test(record) && right.test(record);
+        }
+        return predicate;
+    }
+
+    private Predicate<Record> parseNot() {
+        if (acceptKeyword("NOT")) {
+            final Predicate<Record> negated = parseNot();
+            return record -> !negated.test(record);
+        }
+        return parsePrimary();
+    }
+
+    private Predicate<Record> parsePrimary() {
+        if (accept("(")) {
+            final Predicate<Record> predicate = parseOr();
+            expect(")");
+            return predicate;
+        }
+        final String name = parseName();
+        switch (name) {
+            case "begins_with": {
+                expect("(");
+                final String operand = parseName();
+                expect(",");
+                final String prefix = parseString();
+                expect(")");
+                if (isAttribute(operand)) {
+                    final Function<Record, AttributeValue> attribute = attribute(operand);
+                    return record -> {
+                        final AttributeValue value = attribute.apply(record);
+                        return null != value && null != value.getS() && value.getS().startsWith(prefix);
+                    };
+                }
+                final Function<Record, String> field = field(operand);
+                return record -> {
+                    final String value = field.apply(record);
+                    return null != value && value.startsWith(prefix);
+                };
+            }
+            case "attribute_exists": {
+                expect("(");
+                final Function<Record, AttributeValue> attribute = attribute(parseName());
+                expect(")");
+                return record -> null != attribute.apply(record);
+            }
+            case "attribute_not_exists": {
+                expect("(");
+                final Function<Record, AttributeValue> attribute = attribute(parseName());
+                expect(")");
+                return record -> null == attribute.apply(record);
+            }
+            default:
+                if (acceptKeyword("IN")) {
+                    return parseIn(name);
+                }
+                return parseComparison(name);
+        }
+    }
+
+    private Predicate<Record> parseIn(final String operand) {
+        final Set<String> values = new HashSet<String>();
+        expect("(");
+        do {
+            values.add(parseString());
+        } while (accept(","));
+        expect(")");
+        if (isAttribute(operand)) {
+            final Function<Record, AttributeValue> attribute = attribute(operand);
+            return record -> {
+                final AttributeValue value = attribute.apply(record);
+                return null != value && null != value.getS() && values.contains(value.getS());
+            };
+        }
+        final Function<Record, String> field = field(operand);
+        return record -> values.contains(field.apply(record));
+    }
+
+    /**
+     * Strings are compared by their UTF-8 bytes, as DynamoDB compares them. Like in DynamoDB, <> matches an attribute
+     * that is missing or of another type than the literal, while the other comparators never match it.
+     */
+    private Predicate<Record> parseComparison(final String operand) {
+        final Comparator comparator = parseComparator();
+        skipWhitespace();
+        if (position < expression.length() && '\'' == expression.charAt(position)) {
+            final byte[] literal = parseString().getBytes(StandardCharsets.UTF_8);
+            if (isAttribute(operand)) {
+                final Function<Record, AttributeValue> attribute = attribute(operand);
+                return record -> {
+                    final AttributeValue value = attribute.apply(record);
+                    if (null == value || null == value.getS()) {
+                        return comparator.matchesMissing();
+                    }
+                    return comparator.matches(compare(value.getS(), literal));
+                };
+            }
+            final Function<Record, String> field = field(operand);
+            return record -> {
+                final String value = field.apply(record);
+                return null != value ? comparator.matches(compare(value, literal)) : comparator.matchesMissing();
+            };
+        }
+        final Function<Record, AttributeValue> attribute = attribute(operand);
+        final boolean isTrue = acceptKeyword("TRUE");
+        if (isTrue || acceptKeyword("FALSE")) {
+            final Boolean literal = Boolean.valueOf(isTrue);
+            if (Comparator.EQUAL != comparator && Comparator.NOT_EQUAL != comparator) {
+                throw error("Booleans can only be compared with = and <>");
+            }
+            return record -> {
+                final AttributeValue value = attribute.apply(record);
+                if (null == value || null == value.getBOOL()) {
+                    return comparator.matchesMissing();
+                }
+                return comparator.matches(value.getBOOL().equals(literal) ? 0 : 1);
+            };
+        }
+        final BigDecimal literal = parseNumber();
+        final boolean isLong = literal.signum() == 0 || (literal.scale() <= 0 && literal.precision() - literal.scale() <= MAX_LONG_DIGITS);
+        final long longLiteral = isLong ? literal.longValueExact() : 0L;
+        return record -> {
+            final AttributeValue value = attribute.apply(record);
+            if (null == value || null == value.getN()) {
+                return comparator.matchesMissing();
+            }
+            final String number = value.getN();
+            if (isLong && isShortInteger(number)) {
+                return comparator.matches(Long.compare(Long.parseLong(number), longLiteral));
+            }
+            return comparator.matches(new BigDecimal(number).compareTo(literal));
+        };
+    }
+
+    private static int compare(final String value, final byte[] literal) {
+        return UnsignedBytes.lexicographicalComparator().compare(value.getBytes(StandardCharsets.UTF_8), literal);
+    }
+
+    /**
+     * @return true if the number is an integer parsed without allocation
+     */
+    private static boolean isShortInteger(final String number) {
+        final int start = number.startsWith("-") ? 1 : 0;
+        if (number.length() == start || number.length() - start > MAX_LONG_DIGITS) {
+            return false;
+        }
+        for (int i = start; i < number.length(); i++) {
+            if (number.charAt(i) < '0' || number.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAttribute(final String operand) {
+        return operand.startsWith(KEYS) || operand.startsWith(NEW_IMAGE) || operand.startsWith(OLD_IMAGE);
+    }
+
+    private Function<Record, AttributeValue> attribute(final String operand) {
+        final Function<Record, Map<String, AttributeValue>> image;
+        final String name;
+        if (operand.startsWith(KEYS)) {
+            image = record -> record.getDynamodb().getKeys();
+            name = operand.substring(KEYS.length());
+        } else if (operand.startsWith(NEW_IMAGE)) {
+            image = record -> record.getDynamodb().getNewImage();
+            name = operand.substring(NEW_IMAGE.length());
+        } else if (operand.startsWith(OLD_IMAGE)) {
+            image = record -> record.getDynamodb().getOldImage();
+            name = operand.substring(OLD_IMAGE.length());
+        } else {
+            throw error("Expected an attribute of keys, newImage or oldImage instead of " + operand);
+        }
+        if (name.isEmpty()) {
+            throw error("Missing attribute name in " + operand);
+        }
+        return record -> {
+            final Map<String, AttributeValue> attributes = image.apply(record);
+            return null == attributes ? null : attributes.get(name);
+        };
+    }
+
+    private Function<Record, String> field(final String operand) {
+        switch (operand) {
+            case EVENT_NAME:
+                return Record::getEventName;
+            case USER_IDENTITY_TYPE:
+                return record -> {
+                    final Identity identity = record.getUserIdentity();
+                    return null == identity ? null : identity.getType();
+                };
+            case USER_IDENTITY_PRINCIPAL_ID:
+                return record -> {
+                    final Identity identity = record.getUserIdentity();
+                    return null == identity ? null : identity.getPrincipalId();
+                };
+            default:
+                throw error("Unknown operand " + operand);
+        }
+    }
+
+    /**
+     * Comparators, matching the result of a comparison.
+     */
+    private enum Comparator {
+        EQUAL, NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL;
+
+        boolean matches(final int comparison) {
+            switch (this) {
+                case EQUAL:
+                    return comparison == 0;
+                case NOT_EQUAL:
+                    return comparison != 0;
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case GREATER:
+                    return comparison > 0;
+                case GREATER_OR_EQUAL:
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        /**
+         * @return whether the comparator matches an operand that is missing or not of the type of the literal
+         */
+        boolean matchesMissing() {
+            return NOT_EQUAL == this;
+        }
+    }
+
+    private Comparator parseComparator() {
+        if (accept("<>")) {
+            return Comparator.NOT_EQUAL;
+        } else if (accept("<=")) {
+            return Comparator.LESS_OR_EQUAL;
+        } else if (accept(">=")) {
+            return Comparator.GREATER_OR_EQUAL;
+        } else if (accept("<")) {
+            return Comparator.LESS;
+        } else if (accept(">")) {
+            return Comparator.GREATER;
+        } else if (accept("=")) {
+            return Comparator.EQUAL;
+        }
+        throw error("Expected a comparator");
+    }
+
+    private String parseName() {
+        skipWhitespace();
+        final int start = position;
+        while (position < expression.length() && isNameCharacter(expression.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Expected a name");
+        }
+        return expression.substring(start, position);
+    }
+
+    private static boolean isNameCharacter(final char character) {
+        return Character.isLetterOrDigit(character) || '_' == character || '-' == character || '.' == character;
+    }
+
+    private String parseString() {
+        skipWhitespace();
+        if (position >= expression.length() || '\'' != expression.charAt(position)) {
+            throw error("Expected a quoted string");
+        }
+        final StringBuilder value = new StringBuilder();
+        position++;
+        while (true) {
+            if (position >= expression.length()) {
+                throw error("Unterminated string");
+            }
+            final char character = expression.charAt(position++);
+            if ('\'' == character) {
+                // a doubled quote stands for a quote
+                if (position < expression.length() && '\'' == expression.charAt(position)) {
+                    value.append('\'');
+                    position++;
+                } else {
+                    return value.toString();
+                }
+            } else {
+                value.append(character);
+            }
+        }
+    }
+
+    private BigDecimal parseNumber() {
+        skipWhitespace();
+        final int start = position;
+        while (position < expression.length() && "+-.0123456789eE".indexOf(expression.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return new BigDecimal(expression.substring(start, position));
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Expected a string, number or boolean");
+        }
+    }
+
+    private boolean acceptKeyword(final String keyword) {
+        skipWhitespace();
+        final int end = position + keyword.length();
+        if (end > expression.length() || !expression.substring(position, end).toUpperCase(Locale.ROOT).equals(keyword)
+            || (end < expression.length() && isNameCharacter(expression.charAt(end)))) {
+            return false;
+        }
+        position = end;
+        return true;
+    }
+
+    private boolean accept(final String token) {
+        skipWhitespace();
+        if (expression.startsWith(token, position)) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final String token) {
+        if (!accept(token)) {
+            throw error("Expected " + token);
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(message + " at position " + position + " of filter expression: " + expression);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.filter;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+
+/**
+ * Filter dropping the MODIFY records whose new image equals their old image, such as the records of changes to
+ * attributes removed by an {@link com.amazonaws.services.dynamodbv2.streams.connectors.AttributeProjection}: writing
+ * them would not change the replicas. Attributes changed by every write, such as a last update timestamp, can be left
+ * out of the comparison.
+ */
+public class UnchangedItemFilter implements IFilter<Record> {
+
+    private final Set<String> ignoredAttributes;
+
+    /**
+     * @param ignoredAttributes
+     *            the attributes left out of the comparison of the images
+     */
+    public UnchangedItemFilter(final Collection<String> ignoredAttributes) {
+        this.ignoredAttributes = new HashSet<String>(ignoredAttributes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean keepRecord(final Record record) {
+        final StreamRecord streamRecord = record.getDynamodb();
+        if (!OperationType.MODIFY.toString().equals(record.getEventName()) || null == streamRecord.getNewImage()
+            || null == streamRecord.getOldImage()) {
+            return true;
+        }
+        return !isUnchanged(streamRecord.getOldImage(), streamRecord.getNewImage());
+    }
+
+    private boolean isUnchanged(final Map<String, AttributeValue> oldImage, final Map<String, AttributeValue> newImage) {
+        for (Map.Entry<String, AttributeValue> attribute : newImage.entrySet()) {
+            if (!ignoredAttributes.contains(attribute.getKey()) && !attribute.getValue().equals(oldImage.get(attribute.getKey()))) {
+                return false;
+            }
+        }
+        for (String attribute : oldImage.keySet()) {
+            if (!ignoredAttributes.contains(attribute) && !newImage.containsKey(attribute)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
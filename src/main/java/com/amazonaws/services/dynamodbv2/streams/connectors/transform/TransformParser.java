@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.transform;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.streams.connectors.filter.ExpressionFilter;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformPlan.Route;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformPlan.Step;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformPlan.Target;
+
+/**
+ * Parser compiling the statements of a {@link TransformPlan}. Constants are converted once, when the statements are
+ * compiled.
+ *
+ * <pre>
+ * plan      := statement ( ; statement )*
+ * statement := RENAME name TO name | SET name = literal | PREFIX name string TO string | ROUTE TO string WHEN condition
+ * literal   := 'string' | number | TRUE | FALSE
+ * </pre>
+ *
+ * The condition of a route is a filter expression running up to the end of the statement.
+ */
+class TransformParser {
+
+    private final String statements;
+    private final List<Step> steps = new ArrayList<Step>();
+    private final List<Route> routes = new ArrayList<Route>();
+    private int position;
+
+    TransformParser(final String statements) {
+        this.statements = statements;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the statements are malformed
+     */
+    void parse() {
+        do {
+            skipWhitespace();
+            if (position < statements.length() && ';' != statements.charAt(position)) {
+                parseStatement();
+            }
+        } while (accept(";"));
+        skipWhitespace();
+        if (position < statements.length()) {
+            throw error("Unexpected " + statements.substring(position));
+        }
+    }
+
+    List<Step> getSteps() {
+        return steps;
+    }
+
+    List<Route> getRoutes() {
+        return routes;
+    }
+
+    private void parseStatement() {
+        if (acceptKeyword("RENAME")) {
+            final String from = parseName();
+            expectKeyword("TO");
+            steps.add(rename(from, parseName()));
+        } else if (acceptKeyword("SET")) {
+            final String name = parseName();
+            expect("=");
+            steps.add(set(name, parseLiteral()));
+        } else if (acceptKeyword("PREFIX")) {
+            final String name = parseName();
+            final String from = parseString();
+            expectKeyword("TO");
+            steps.add(prefix(name, from, parseString()));
+        } else if (acceptKeyword("ROUTE")) {
+            expectKeyword("TO");
+            final String table = parseString();
+            expectKeyword("WHEN");
+            final int start = position;
+            skipCondition();
+            try {
+                routes.add(new Route(new ExpressionFilter(statements.substring(start, position)), table));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid condition of the route to " + table + " in transform: " + statements, e);
+            }
+        } else {
+            throw error("Expected RENAME, SET, PREFIX or ROUTE");
+        }
+    }
+
+    private static Step rename(final String from, final String to) {
+        return new Step() {
+            @Override
+            Map<String, AttributeValue> apply(final Map<String, AttributeValue> map, final Map<String, AttributeValue> original,
+                final Target target) {
+                if (!map.containsKey(from)) {
+                    return map;
+                }
+                final Map<String, AttributeValue> renamed = writable(map, original);
+                renamed.put(to, renamed.remove(from));
+                return renamed;
+            }
+        };
+    }
+
+    private static Step set(final String name, final AttributeValue value) {
+        return new Step() {
+            @Override
+            Map<String, AttributeValue> apply(final Map<String, AttributeValue> map, final Map<String, AttributeValue> original,
+                final Target target) {
+                if (Target.NEW_IMAGE != target || value.equals(map.get(name))) {
+                    return map;
+                }
+                final Map<String, AttributeValue> injected = writable(map, original);
+                injected.put(name, value);
+                return injected;
+            }
+        };
+    }
+
+    private static Step prefix(final String name, final String from, final String to) {
+        return new Step() {
+            @Override
+            Map<String, AttributeValue> apply(final Map<String, AttributeValue> map, final Map<String, AttributeValue> original,
+                final Target target) {
+                final AttributeValue value = map.get(name);
+                if (null == value || null == value.getS() || !value.getS().startsWith(from)) {
+                    return map;
+                }
+                final Map<String, AttributeValue> rewritten = writable(map, original);
+                rewritten.put(name, new AttributeValue().withS(to + value.getS().substring(from.length())));
+                return rewritten;
+            }
+        };
+    }
+
+    private AttributeValue parseLiteral() {
+        skipWhitespace();
+        if (position < statements.length() && '\'' == statements.charAt(position)) {
+            return new AttributeValue().withS(parseString());
+        }
+        final boolean isTrue = acceptKeyword("TRUE");
+        if (isTrue || acceptKeyword("FALSE")) {
+            return new AttributeValue().withBOOL(isTrue);
+        }
+        final int start = position;
+        while (position < statements.length() && "+-.0123456789eE".indexOf(statements.charAt(position)) >= 0) {
+            position++;
+        }
+        final String number = statements.substring(start, position);
+        try {
+            new BigDecimal(number);
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Expected a string, number or boolean");
+        }
+        return new AttributeValue().withN(number);
+    }
+
+    /**
+     * Moves to the end of the statement, skipping the semicolons within strings.
+     */
+    private void skipCondition() {
+        boolean quoted = false;
+        while (position < statements.length() && (quoted || ';' != statements.charAt(position))) {
+            if ('\'' == statements.charAt(position)) {
+                // a doubled quote within a string toggles twice
+                quoted = !quoted;
+            }
+            position++;
+        }
+    }
+
+    private String parseName() {
+        skipWhitespace();
+        final int start = position;
+        while (position < statements.length() && isNameCharacter(statements.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Expected a name");
+        }
+        return statements.substring(start, position);
+    }
+
+    private static boolean isNameCharacter(final char character) {
+        return Character.isLetterOrDigit(character) || '_' == character || '-' == character || '.' == character;
+    }
+
+    private String parseString() {
+        skipWhitespace();
+        if (position >= statements.length() || '\'' != statements.charAt(position)) {
+            throw error("Expected a quoted string");
+        }
+        final StringBuilder value = new StringBuilder();
+        position++;
+        while (true) {
+            if (position >= statements.length()) {
+                throw error("Unterminated string");
+            }
+            final char character = statements.charAt(position++);
+            if ('\'' == character) {
+                // a doubled quote stands for a quote
+                if (position < statements.length() && '\'' == statements.charAt(position)) {
+                    value.append('\'');
+                    position++;
+                } else {
+                    return value.toString();
+                }
+            } else {
+                value.append(character);
+            }
+        }
+    }
+
+    private boolean acceptKeyword(final String keyword) {
+        skipWhitespace();
+        final int end = position + keyword.length();
+        if (end > statements.length() || !statements.substring(position, end).toUpperCase(Locale.ROOT).equals(keyword)
+            || (end < statements.length() && isNameCharacter(statements.charAt(end)))) {
+            return false;
+        }
+        position = end;
+        return true;
+    }
+
+    private void expectKeyword(final String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error("Expected " + keyword);
+        }
+    }
+
+    private boolean accept(final String token) {
+        skipWhitespace();
+        if (statements.startsWith(token, position)) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final String token) {
+        if (!accept(token)) {
+            throw error("Expected " + token);
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < statements.length() && Character.isWhitespace(statements.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(message + " at position " + position + " of transform: " + statements);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.transform;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+
+/**
+ * Declarative rewriting of the records before they are written to the destination, such as
+ *
+ * <pre>
+ * RENAME customer_id TO customerId; SET source = 'us-east-1'; PREFIX id 'us#' TO 'eu#';
+ * ROUTE TO 'orders-archive' WHEN newImage.status = 'CLOSED'
+ * </pre>
+ *
+ * The statements, separated by semicolons, are applied in order:
+ * <ul>
+ * <li>RENAME renames an attribute of the keys and images</li>
+ * <li>SET injects a string, number or boolean constant into the new image</li>
+ * <li>PREFIX replaces the prefix of a string attribute of the keys and images, if it has that prefix</li>
+ * <li>ROUTE writes the record to another table of the destination region if the record read from the stream matches a
+ * filter expression, see {@link com.amazonaws.services.dynamodbv2.streams.connectors.filter.ExpressionFilter}. The
+ * first matching route applies.</li>
+ * </ul>
+ * The statements are compiled once to an array of steps run in a straight line. The record read from the stream is
+ * never modified: an image is copied by the first step that changes it, and a record nothing applies to is returned as
+ * is.
+ */
+public class TransformPlan {
+
+    /**
+     * The maps of a stream record a step can rewrite.
+     */
+    enum Target {
+        KEYS, NEW_IMAGE, OLD_IMAGE
+    }
+
+    /**
+     * A compiled statement rewriting the maps of a record.
+     */
+    abstract static class Step {
+        /**
+         * @param map
+         *            the map, as rewritten by the previous steps, not null
+         * @param original
+         *            the map of the record read from the stream, which must be copied before it is changed
+         * @param target
+         *            which map of the record is rewritten
+         * @return the rewritten map
+         */
+        abstract Map<String, AttributeValue> apply(Map<String, AttributeValue> map, Map<String, AttributeValue> original, Target target);
+
+        static Map<String, AttributeValue> writable(final Map<String, AttributeValue> map, final Map<String, AttributeValue> original) {
+            return map == original ? new HashMap<String, AttributeValue>(map) : map;
+        }
+    }
+
+    /**
+     * A compiled route.
+     */
+    static final class Route {
+        private final IFilter<Record> condition;
+        private final String table;
+
+        Route(final IFilter<Record> condition, final String table) {
+            this.condition = condition;
+            this.table = table;
+        }
+    }
+
+    private final String statements;
+    private final Step[] steps;
+    private final Route[] routes;
+
+    /**
+     * @param statements
+     *            the statements of the plan
+     * @throws IllegalArgumentException
+     *             if the statements are malformed
+     */
+    public TransformPlan(final String statements) {
+        this.statements = statements;
+        final TransformParser parser = new TransformParser(statements);
+        parser.parse();
+        final List<Step> parsedSteps = parser.getSteps();
+        final List<Route> parsedRoutes = parser.getRoutes();
+        this.steps = parsedSteps.toArray(new Step[parsedSteps.size()]);
+        this.routes = parsedRoutes.toArray(new Route[parsedRoutes.size()]);
+    }
+
+    /**
+     * @param record
+     *            a DynamoDB Streams record
+     * @return a {@link TransformedRecord}, or the record itself if the plan does not change it
+     */
+    public Record transform(final Record record) {
+        final StreamRecord streamRecord = record.getDynamodb();
+        if (null == streamRecord) {
+            return record;
+        }
+        String table = null;
+        for (int i = 0; i < routes.length; i++) {
+            if (routes[i].condition.keepRecord(record)) {
+                table = routes[i].table;
+                break;
+            }
+        }
+        final Map<String, AttributeValue> keys = apply(streamRecord.getKeys(), Target.KEYS);
+        final Map<String, AttributeValue> newImage = apply(streamRecord.getNewImage(), Target.NEW_IMAGE);
+        final Map<String, AttributeValue> oldImage = apply(streamRecord.getOldImage(), Target.OLD_IMAGE);
+        if (null == table && keys == streamRecord.getKeys() && newImage == streamRecord.getNewImage() && oldImage == streamRecord.getOldImage()) {
+            return record;
+        }
+        return new TransformedRecord(record, keys, newImage, oldImage, table);
+    }
+
+    private Map<String, AttributeValue> apply(final Map<String, AttributeValue> original, final Target target) {
+        if (null == original) {
+            return null;
+        }
+        Map<String, AttributeValue> map = original;
+        for (int i = 0; i < steps.length; i++) {
+            map = steps[i].apply(map, original, target);
+        }
+        return map;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "TransformPlan [" + statements + "]";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.transform;
+
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+/**
+ * DynamoDB Streams record rewritten by a {@link TransformPlan}. The record read from the stream is left untouched, since
+ * it is shared by the pipelines of all the destinations.
+ */
+public class TransformedRecord extends Record {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String destinationTable;
+
+    /**
+     * @param record
+     *            the record read from the stream
+     * @param keys
+     *            the rewritten keys
+     * @param newImage
+     *            the rewritten new image, may be null
+     * @param oldImage
+     *            the rewritten old image, may be null
+     * @param destinationTable
+     *            the table of the destination region the record is routed to, null for the table of the destination
+     */
+    public TransformedRecord(final Record record, final Map<String, AttributeValue> keys, final Map<String, AttributeValue> newImage,
+        final Map<String, AttributeValue> oldImage, final String destinationTable) {
+        final StreamRecord streamRecord = record.getDynamodb();
+        setEventID(record.getEventID());
+        setEventName(record.getEventName());
+        setEventVersion(record.getEventVersion());
+        setEventSource(record.getEventSource());
+        setAwsRegion(record.getAwsRegion());
+        setUserIdentity(record.getUserIdentity());
+        setDynamodb(new StreamRecord().withApproximateCreationDateTime(streamRecord.getApproximateCreationDateTime())
+            .withSequenceNumber(streamRecord.getSequenceNumber()).withSizeBytes(streamRecord.getSizeBytes())
+            .withStreamViewType(streamRecord.getStreamViewType()).withKeys(keys).withNewImage(newImage).withOldImage(oldImage));
+        this.destinationTable = destinationTable;
+    }
+
+    /**
+     * @return the table of the destination region the record is routed to, null for the table of the destination
+     */
+    public String getDestinationTable() {
+        return destinationTable;
+    }
+}
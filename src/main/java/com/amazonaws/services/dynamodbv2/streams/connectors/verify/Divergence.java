@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.DynamoDBJson;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The key of an item that differs between the source and the destination table. Divergence files hold one divergence
+ * per line, as its type and the key in DynamoDB JSON separated by a tab.
+ */
+@Getter
+@AllArgsConstructor
+public class Divergence {
+
+    /**
+     * How the item differs.
+     */
+    public enum Type {
+        /** The item only exists in the source table. */
+        MISSING_IN_DESTINATION,
+        /** The item only exists in the destination table. */
+        MISSING_IN_SOURCE,
+        /** The item exists in both tables with different attributes. */
+        DIFFERENT,
+        /** A replicated write of the item could not be applied to the destination table. */
+        FAILED_WRITE
+    }
+
+    private final Type type;
+    private final Map<String, AttributeValue> key;
+
+    /**
+     * @return the line of the divergence in a divergence file
+     */
+    public String toLine() {
+        return type + "\t" + DynamoDBJson.toJson(key);
+    }
+
+    /**
+     * @param line
+     *            a line of a divergence file
+     * @return the divergence
+     * @throws IOException
+     *             if the line is not a divergence
+     */
+    public static Divergence parse(final String line) throws IOException {
+        final int tab = line.indexOf('\t');
+        if (tab < 0) {
+            throw new IOException("Not a divergence: " + line);
+        }
+        try {
+            return new Divergence(Type.valueOf(line.substring(0, tab)), DynamoDBJson.fromJson(line.substring(tab + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not a divergence: " + line, e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.BootstrapSink;
+import com.google.common.util.concurrent.RateLimiter;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Repairs the items listed in a divergence file, written by the verifier or by the emitters for the records they could
+ * not write, without copying the whole table again. Each item is read from the source table with a strongly consistent
+ * read and written through the pipelines like a stream record: a MODIFY record with the current item, or a REMOVE
+ * record if the item no longer exists, so the emitters apply their usual last writer wins conditions. Like the copied
+ * items of a bootstrap, the repaired items are not filtered on their origin marker.
+ * <p>
+ * The number of lines repaired is saved to an offset file next to the divergence file after every batch, so that a
+ * restarted repair continues after the last repaired batch. Once a batch had records that could not be written, the
+ * offset is no longer advanced, so that the next run retries from that batch on instead of skipping its items.
+ */
+@Log4j
+public class DivergenceRepair {
+
+    static final int BATCH_SIZE = 25;
+
+    static final String OFFSET_FILE_SUFFIX = ".offset";
+
+    private final AmazonDynamoDB source;
+    private final String sourceTable;
+    private final List<BootstrapSink> sinks;
+    private final RateLimiter limiter;
+    private final File divergenceFile;
+    private final File offsetFile;
+
+    /**
+     * @param source
+     *            the client of the source table
+     * @param sourceTable
+     *            the source table
+     * @param sinks
+     *            the pipelines the repaired items are written with
+     * @param itemsPerSecond
+     *            the items repaired per second, 0 for no limit
+     * @param divergenceFile
+     *            the file listing the keys of the items to repair
+     */
+    public DivergenceRepair(final AmazonDynamoDB source, final String sourceTable, final List<BootstrapSink> sinks, final double itemsPerSecond,
+        final File divergenceFile) {
+        this.source = source;
+        this.sourceTable = sourceTable;
+        this.sinks = sinks;
+        this.limiter = itemsPerSecond > 0 ? RateLimiter.create(itemsPerSecond) : null;
+        this.divergenceFile = divergenceFile;
+        this.offsetFile = new File(divergenceFile.getPath() + OFFSET_FILE_SUFFIX);
+    }
+
+    /**
+     * Repair the items of the divergence file not repaired yet.
+     *
+     * @return the number of items repaired by this run
+     * @throws InterruptedException
+     *             if interrupted while writing
+     */
+    public long run() throws InterruptedException {
+        final long offset = readOffset();
+        long line = 0;
+        long repaired = 0;
+        long failed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(divergenceFile.toPath(), StandardCharsets.UTF_8)) {
+            if (offset > 0) {
+                log.info("Resuming repair of " + divergenceFile + " after line " + offset);
+            }
+            final List<Record> batch = new ArrayList<Record>(BATCH_SIZE);
+            String text;
+            while (null != (text = reader.readLine())) {
+                line++;
+                if (line <= offset || text.isEmpty()) {
+                    continue;
+                }
+                if (null != limiter) {
+                    limiter.acquire();
+                }
+                batch.add(toRecord(Divergence.parse(text).getKey()));
+                if (batch.size() == BATCH_SIZE) {
+                    failed = completeBatch(batch, line, failed);
+                    repaired += batch.size();
+                    batch.clear();
+                }
+            }
+            failed = completeBatch(batch, line, failed);
+            repaired += batch.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not repair " + divergenceFile + " at line " + line, e);
+        } finally {
+            sinks.forEach(BootstrapSink::shutdown);
+        }
+        if (failed > 0) {
+            log.warn("Repaired " + repaired + " items of " + divergenceFile + ", " + failed + " failed: the offset stays before the first batch "
+                + "with failures, run the repair again to retry from there");
+        } else {
+            log.info("Repaired " + repaired + " items of " + divergenceFile);
+        }
+        return repaired;
+    }
+
+    /**
+     * Write a batch, and save the offset after it unless this batch or an earlier one had failures.
+     *
+     * @return the number of records that could not be written so far
+     */
+    private long completeBatch(final List<Record> batch, final long line, final long failedBefore) throws IOException, InterruptedException {
+        final long failed = failedBefore + write(batch);
+        if (0 == failed) {
+            writeOffset(line);
+        }
+        return failed;
+    }
+
+    /**
+     * Build the record bringing the replicas to the current state of an item of the source table.
+     */
+    Record toRecord(final Map<String, AttributeValue> key) {
+        final Map<String, AttributeValue> item = source.getItem(new GetItemRequest().withTableName(sourceTable).withKey(key)
+            .withConsistentRead(true)).getItem();
+        final StreamRecord streamRecord = new StreamRecord().withKeys(key).withSequenceNumber(BootstrapSink.SEQUENCE_NUMBER)
+            .withApproximateCreationDateTime(new Date()).withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES);
+        if (null == item) {
+            return new Record().withEventName(OperationType.REMOVE).withDynamodb(streamRecord);
+        }
+        return new Record().withEventName(OperationType.MODIFY).withDynamodb(streamRecord.withNewImage(item));
+    }
+
+    private int write(final List<Record> records) throws InterruptedException {
+        int failed = 0;
+        if (!records.isEmpty()) {
+            for (BootstrapSink sink : sinks) {
+                failed += sink.write(records);
+            }
+        }
+        return failed;
+    }
+
+    private long readOffset() {
+        if (!offsetFile.exists()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(offsetFile.toPath()), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeOffset(final long line) throws IOException {
+        final File temporary = new File(offsetFile.getPath() + ".tmp");
+        Files.write(temporary.toPath(), Long.toString(line).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary.toPath(), offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
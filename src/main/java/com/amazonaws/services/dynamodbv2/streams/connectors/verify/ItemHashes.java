@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * 64 bit hashes of the contents of items that do not depend on the iteration order of their maps and sets, so that the
+ * same item read from two tables has the same hash.
+ */
+public final class ItemHashes {
+
+    private ItemHashes() {
+    }
+
+    /**
+     * @param item
+     *            an item
+     * @return the first 8 bytes of the MD5 digest of the canonical form of the item
+     */
+    public static long hash(final Map<String, AttributeValue> item) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 digest is not available", e);
+        }
+        update(digest, item);
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static void update(final MessageDigest digest, final Map<String, AttributeValue> map) {
+        digest.update((byte) '{');
+        for (Map.Entry<String, AttributeValue> attribute : new TreeMap<String, AttributeValue>(map).entrySet()) {
+            update(digest, attribute.getKey());
+            update(digest, attribute.getValue());
+        }
+        digest.update((byte) '}');
+    }
+
+    private static void update(final MessageDigest digest, final AttributeValue value) {
+        if (null != value.getS()) {
+            digest.update((byte) 'S');
+            update(digest, value.getS());
+        } else if (null != value.getN()) {
+            digest.update((byte) 'N');
+            update(digest, value.getN());
+        } else if (null != value.getB()) {
+            digest.update((byte) 'B');
+            update(digest, value.getB());
+        } else if (null != value.getBOOL()) {
+            digest.update((byte) (value.getBOOL() ? 'T' : 'F'));
+        } else if (null != value.getNULL()) {
+            digest.update((byte) '0');
+        } else if (null != value.getSS()) {
+            digest.update((byte) 's');
+            updateSorted(digest, value.getSS());
+        } else if (null != value.getNS()) {
+            digest.update((byte) 'n');
+            updateSorted(digest, value.getNS());
+        } else if (null != value.getBS()) {
+            digest.update((byte) 'b');
+            final List<ByteBuffer> sorted = new ArrayList<ByteBuffer>(value.getBS());
+            Collections.sort(sorted);
+            digest.update(ByteBuffer.allocate(4).putInt(0, sorted.size()));
+            for (ByteBuffer element : sorted) {
+                update(digest, element);
+            }
+        } else if (null != value.getL()) {
+            digest.update((byte) 'L');
+            digest.update(ByteBuffer.allocate(4).putInt(0, value.getL().size()));
+            for (AttributeValue element : value.getL()) {
+                update(digest, element);
+            }
+        } else if (null != value.getM()) {
+            digest.update((byte) 'M');
+            update(digest, value.getM());
+        }
+    }
+
+    private static void updateSorted(final MessageDigest digest, final List<String> values) {
+        final List<String> sorted = new ArrayList<String>(values);
+        Collections.sort(sorted);
+        digest.update(ByteBuffer.allocate(4).putInt(0, sorted.size()));
+        for (String element : sorted) {
+            update(digest, element);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        update(digest, ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void update(final MessageDigest digest, final ByteBuffer bytes) {
+        // prefix every value with its length so that the concatenation is unambiguous
+        final ByteBuffer duplicate = bytes.duplicate();
+        duplicate.rewind();
+        digest.update(ByteBuffer.allocate(4).putInt(0, duplicate.remaining()));
+        digest.update(duplicate);
+    }
+}
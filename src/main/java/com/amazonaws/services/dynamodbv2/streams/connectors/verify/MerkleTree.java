@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Merkle tree of the items of a table over ranges of key digests. Leaf <i>i</i> covers the keys whose digest starts with
+ * the <code>depth</code> bits of <i>i</i> and holds the sum of the hashes of its items, so that items can be added
+ * concurrently and in any order. Every inner node hashes its two children.
+ * <p>
+ * Two trees built with the same depth are compared from the root down, only descending into the nodes whose hashes
+ * differ, which yields the key ranges holding different items after comparing a number of nodes proportional to the
+ * number of differences.
+ * <p>
+ * A tree is written as its depth followed by its leaves, so that the trees of tables in different regions are compared
+ * by exchanging 8 bytes per leaf instead of the items.
+ */
+public class MerkleTree {
+
+    /**
+     * The maximum depth, for which the tree uses 384 MB.
+     */
+    public static final int MAX_DEPTH = 24;
+
+    private final int depth;
+    private final AtomicLongArray leaves;
+    private long[] nodes;
+
+    /**
+     * @param depth
+     *            the number of key digest bits distinguishing the leaves, from 1 to {@link #MAX_DEPTH}
+     */
+    public MerkleTree(final int depth) {
+        Preconditions.checkArgument(depth > 0 && depth <= MAX_DEPTH, "Merkle tree depth must be between 1 and " + MAX_DEPTH);
+        this.depth = depth;
+        this.leaves = new AtomicLongArray(1 << depth);
+    }
+
+    /**
+     * @return the number of key digest bits distinguishing the leaves
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @param keyDigest
+     *            the digest of the key of an item
+     * @return the leaf covering the key
+     */
+    public int getLeaf(final byte[] keyDigest) {
+        final int prefix = (keyDigest[0] & 0xFF) << 24 | (keyDigest[1] & 0xFF) << 16 | (keyDigest[2] & 0xFF) << 8 | (keyDigest[3] & 0xFF);
+        return prefix >>> (Integer.SIZE - depth);
+    }
+
+    /**
+     * Add an item to its leaf. Safe to call concurrently, before {@link #seal()}.
+     *
+     * @param keyDigest
+     *            the digest of the key of the item
+     * @param itemHash
+     *            the hash of the item
+     */
+    public void add(final byte[] keyDigest, final long itemHash) {
+        leaves.addAndGet(getLeaf(keyDigest), itemHash);
+    }
+
+    /**
+     * Compute the inner nodes once all items were added.
+     */
+    public void seal() {
+        final int leafCount = leaves.length();
+        nodes = new long[2 * leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            nodes[leafCount + i] = leaves.get(i);
+        }
+        for (int i = leafCount - 1; i > 0; i--) {
+            nodes[i] = mix(nodes[2 * i] * 0x9E3779B97F4A7C15L + nodes[2 * i + 1]);
+        }
+    }
+
+    /**
+     * @return the hash of the root, which is equal for two trees of the same items
+     */
+    public long getRootHash() {
+        Preconditions.checkState(null != nodes, "Merkle tree is not sealed");
+        return nodes[1];
+    }
+
+    /**
+     * @param other
+     *            a sealed tree of the same depth
+     * @return the leaves whose items differ between the two trees, in ascending order
+     */
+    public List<Integer> diff(final MerkleTree other) {
+        Preconditions.checkState(null != nodes && null != other.nodes, "Merkle trees are not sealed");
+        Preconditions.checkArgument(depth == other.depth, "Merkle trees have different depths");
+        final int leafCount = leaves.length();
+        final List<Integer> divergent = new ArrayList<Integer>();
+        final Deque<Integer> pending = new ArrayDeque<Integer>();
+        pending.push(1);
+        while (!pending.isEmpty()) {
+            final int node = pending.pop();
+            if (nodes[node] == other.nodes[node]) {
+                continue;
+            }
+            if (node >= leafCount) {
+                divergent.add(node - leafCount);
+            } else {
+                pending.push(2 * node + 1);
+                pending.push(2 * node);
+            }
+        }
+        return divergent;
+    }
+
+    /**
+     * Write the depth and the leaves of the tree.
+     */
+    public void write(final DataOutput output) throws IOException {
+        output.writeInt(depth);
+        for (int i = 0; i < leaves.length(); i++) {
+            output.writeLong(leaves.get(i));
+        }
+    }
+
+    /**
+     * @return the sealed tree written by {@link #write(DataOutput)}
+     * @throws IOException
+     *             if the tree cannot be read
+     */
+    public static MerkleTree read(final DataInput input) throws IOException {
+        final int depth = input.readInt();
+        if (depth <= 0 || depth > MAX_DEPTH) {
+            throw new IOException("Not a Merkle tree of depth between 1 and " + MAX_DEPTH + ": " + depth);
+        }
+        final MerkleTree tree = new MerkleTree(depth);
+        for (int i = 0; i < tree.leaves.length(); i++) {
+            tree.leaves.set(i, input.readLong());
+        }
+        tree.seal();
+        return tree;
+    }
+
+    /**
+     * Finalization step of MurmurHash3, so that close sums give unrelated node hashes.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
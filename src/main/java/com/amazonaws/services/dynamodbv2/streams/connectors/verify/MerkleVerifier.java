@@ -0,0 +1,468 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBConnectorUtilities;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.DynamoDBJson;
+import com.google.common.util.concurrent.RateLimiter;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Verifies that the destination table holds the same items as the source table without comparing them one by one.
+ * <p>
+ * Each table is scanned with a segmented parallel Scan into a {@link MerkleTree} over the digests of the item keys,
+ * while the key and hash of every item are written to a local leaves file. The trees are compared from the root down
+ * to the leaves whose items differ, and only the keys and hashes of these leaves are compared. The keys whose hashes
+ * differ are read once more from both tables with strongly consistent reads, so that items changed by the replication
+ * during the scans are not reported, and the remaining divergences are written to the divergence file.
+ * <p>
+ * {@link #run()} does all of it from one process, which reads both tables in full, the remote one across regions. The
+ * {@link Step steps} split the same work between the regions of the tables, so that only the trees, the keys and
+ * hashes of the divergent leaves and the consistent reads of the divergent items cross regions:
+ * <ol>
+ * <li>{@link Step#EXPORT_SOURCE} and {@link Step#EXPORT_DESTINATION}, each in the region of its table, write the tree
+ * and the leaves file of the table to the verify directory.</li>
+ * <li>The trees are copied to the verify directory of the other region.</li>
+ * <li>{@link Step#EXTRACT_SOURCE} and {@link Step#EXTRACT_DESTINATION}, each in the region of its table, compare the
+ * trees and write the keys and hashes of the divergent leaves of the table to its extract file.</li>
+ * <li>The source extract is copied to the verify directory of the destination region, where {@link Step#COMPARE}
+ * writes the divergences.</li>
+ * </ol>
+ */
+@Log4j
+public class MerkleVerifier {
+
+    /**
+     * Depth of the trees, 65536 leaves.
+     */
+    public static final int DEFAULT_DEPTH = 16;
+
+    static final String TREE_SUFFIX = ".tree";
+    static final String LEAVES_SUFFIX = ".leaves";
+    static final String EXTRACT_SUFFIX = ".extract";
+
+    /**
+     * A part of the verification run on its own, in the region of the table it reads.
+     */
+    public enum Step {
+        /** Scan the source table into its tree and leaves file. */
+        EXPORT_SOURCE,
+        /** Scan the destination table into its tree and leaves file. */
+        EXPORT_DESTINATION,
+        /** Extract the keys and hashes of the divergent leaves of the source table. */
+        EXTRACT_SOURCE,
+        /** Extract the keys and hashes of the divergent leaves of the destination table. */
+        EXTRACT_DESTINATION,
+        /** Compare the extracts of both tables and write the divergences. */
+        COMPARE
+    }
+
+    /**
+     * One of the compared tables, naming its files in the verify directory.
+     */
+    enum Side {
+        SOURCE("source"),
+        DESTINATION("destination");
+
+        private final String fileName;
+
+        Side(final String fileName) {
+            this.fileName = fileName;
+        }
+
+        File file(final File directory, final String suffix) {
+            return new File(directory, fileName + suffix);
+        }
+    }
+
+    /**
+     * Key and hash of an item, as written to the leaves and extract files.
+     */
+    private static final class Entry {
+        private final int leaf;
+        private final String id;
+        private final long hash;
+        private final String key;
+
+        Entry(final int leaf, final String id, final long hash, final String key) {
+            this.leaf = leaf;
+            this.id = id;
+            this.hash = hash;
+            this.key = key;
+        }
+
+        String toLine() {
+            return leaf + "\t" + id + "\t" + hash + "\t" + key;
+        }
+
+        static Entry parse(final String line) throws IOException {
+            final String[] fields = line.split("\t", 4);
+            if (fields.length < 4) {
+                throw new IOException("Not an item key and hash: " + line);
+            }
+            try {
+                return new Entry(Integer.parseInt(fields[0]), fields[1], Long.parseLong(fields[2]), fields[3]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Not an item key and hash: " + line, e);
+            }
+        }
+    }
+
+    private final AmazonDynamoDB source;
+    private final String sourceTable;
+    private final AmazonDynamoDB destination;
+    private final String destinationTable;
+    private final int totalSegments;
+    private final double readUnitsPerSecond;
+    private final int depth;
+    private final File divergenceFile;
+    private final Set<String> ignoredAttributes = new HashSet<String>();
+
+    /**
+     * @param source
+     *            the client of the source table
+     * @param sourceTable
+     *            the source table
+     * @param destination
+     *            the client of the destination table
+     * @param destinationTable
+     *            the destination table
+     * @param totalSegments
+     *            the number of segments each table is scanned with in parallel
+     * @param readUnitsPerSecond
+     *            the read capacity units the verifier may consume per second on each table, 0 for no limit
+     * @param depth
+     *            the depth of the Merkle trees
+     * @param divergenceFile
+     *            the file the divergences are written to
+     */
+    public MerkleVerifier(final AmazonDynamoDB source, final String sourceTable, final AmazonDynamoDB destination, final String destinationTable,
+        final int totalSegments, final double readUnitsPerSecond, final int depth, final File divergenceFile) {
+        this.source = source;
+        this.sourceTable = sourceTable;
+        this.destination = destination;
+        this.destinationTable = destinationTable;
+        this.totalSegments = totalSegments;
+        this.readUnitsPerSecond = readUnitsPerSecond;
+        this.depth = depth;
+        this.divergenceFile = divergenceFile;
+    }
+
+    /**
+     * @param ignoredAttribute
+     *            an attribute left out of the comparison of the items, such as one written by the replicator only
+     */
+    public void addIgnoredAttribute(final String ignoredAttribute) {
+        ignoredAttributes.add(ignoredAttribute);
+    }
+
+    /**
+     * Compare the tables and write their divergences, scanning both tables from this process.
+     *
+     * @return the number of divergences
+     * @throws InterruptedException
+     *             if interrupted while scanning
+     */
+    public long run() throws InterruptedException {
+        final File directory;
+        try {
+            directory = Files.createTempDirectory("verify").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            final ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                final Future<Long> sourceExport = executor.submit(() -> export(Side.SOURCE, directory));
+                final Future<Long> destinationExport = executor.submit(() -> export(Side.DESTINATION, directory));
+                await(Collections.<Future<?>>singletonList(sourceExport));
+                await(Collections.<Future<?>>singletonList(destinationExport));
+            } finally {
+                executor.shutdownNow();
+            }
+            extract(Side.SOURCE, directory);
+            extract(Side.DESTINATION, directory);
+            return compare(directory);
+        } finally {
+            for (Side side : Side.values()) {
+                for (String suffix : new String[] {TREE_SUFFIX, LEAVES_SUFFIX, EXTRACT_SUFFIX}) {
+                    side.file(directory, suffix).delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Run a step of the verification in the region of the table it reads.
+     *
+     * @param directory
+     *            the verify directory holding the files of the steps
+     * @return the number of items exported, of keys extracted or of divergences
+     * @throws InterruptedException
+     *             if interrupted while scanning
+     */
+    public long run(final Step step, final File directory) throws InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Could not create verify directory " + directory));
+        }
+        switch (step) {
+            case EXPORT_SOURCE:
+                return export(Side.SOURCE, directory);
+            case EXPORT_DESTINATION:
+                return export(Side.DESTINATION, directory);
+            case EXTRACT_SOURCE:
+                return extract(Side.SOURCE, directory);
+            case EXTRACT_DESTINATION:
+                return extract(Side.DESTINATION, directory);
+            case COMPARE:
+                return compare(directory);
+            default:
+                throw new IllegalArgumentException("Unknown verify step " + step);
+        }
+    }
+
+    /**
+     * Scan a table into its tree and leaves file.
+     *
+     * @return the number of items scanned
+     */
+    long export(final Side side, final File directory) throws InterruptedException {
+        final AmazonDynamoDB dynamodb = Side.SOURCE == side ? source : destination;
+        final String tableName = Side.SOURCE == side ? sourceTable : destinationTable;
+        final List<KeySchemaElement> keySchema = dynamodb.describeTable(tableName).getTable().getKeySchema();
+        final RateLimiter limiter = readUnitsPerSecond > 0 ? RateLimiter.create(readUnitsPerSecond) : null;
+        final MerkleTree tree = new MerkleTree(depth);
+        final AtomicLong items = new AtomicLong();
+        final ExecutorService executor = Executors.newFixedThreadPool(totalSegments);
+        try (BufferedWriter leaves = Files.newBufferedWriter(side.file(directory, LEAVES_SUFFIX).toPath(), StandardCharsets.UTF_8)) {
+            final List<Future<?>> scans = new ArrayList<Future<?>>();
+            for (int segment = 0; segment < totalSegments; segment++) {
+                final int scannedSegment = segment;
+                scans.add(executor.submit(() -> {
+                    Map<String, AttributeValue> exclusiveStartKey = null;
+                    do {
+                        final ScanResult result = dynamodb.scan(new ScanRequest().withTableName(tableName).withSegment(scannedSegment)
+                            .withTotalSegments(totalSegments).withExclusiveStartKey(exclusiveStartKey)
+                            .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+                        if (null != limiter && null != result.getConsumedCapacity()) {
+                            limiter.acquire(Math.max(1, (int) Math.ceil(result.getConsumedCapacity().getCapacityUnits())));
+                        }
+                        final StringBuilder lines = new StringBuilder();
+                        for (Map<String, AttributeValue> item : result.getItems()) {
+                            final Map<String, AttributeValue> key = key(item, keySchema);
+                            final byte[] digest = DynamoDBConnectorUtilities.getKeyDigest(key);
+                            final long hash = hash(item);
+                            tree.add(digest, hash);
+                            lines.append(new Entry(tree.getLeaf(digest), Base64.getEncoder().encodeToString(digest), hash,
+                                DynamoDBJson.toJson(key)).toLine()).append('\n');
+                        }
+                        synchronized (leaves) {
+                            leaves.write(lines.toString());
+                        }
+                        items.addAndGet(result.getItems().size());
+                        exclusiveStartKey = result.getLastEvaluatedKey();
+                    } while (null != exclusiveStartKey && !exclusiveStartKey.isEmpty());
+                    return null;
+                }));
+            }
+            await(scans);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        tree.seal();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(side.file(directory, TREE_SUFFIX).toPath())))) {
+            tree.write(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Exported " + items.get() + " items of table " + tableName + " to " + directory);
+        return items.get();
+    }
+
+    /**
+     * Write the keys and hashes of the leaves of a table that differ between the trees of both tables.
+     *
+     * @return the number of keys extracted
+     */
+    long extract(final Side side, final File directory) {
+        final Set<Integer> divergent = new HashSet<Integer>(readTree(Side.SOURCE, directory).diff(readTree(Side.DESTINATION, directory)));
+        log.info("Tables " + sourceTable + " and " + destinationTable + " differ in " + divergent.size() + " of " + (1 << depth) + " key ranges");
+        long extracted = 0;
+        try (BufferedReader leaves = Files.newBufferedReader(side.file(directory, LEAVES_SUFFIX).toPath(), StandardCharsets.UTF_8);
+            BufferedWriter extract = Files.newBufferedWriter(side.file(directory, EXTRACT_SUFFIX).toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = leaves.readLine())) {
+                if (divergent.contains(Entry.parse(line).leaf)) {
+                    extract.write(line);
+                    extract.newLine();
+                    extracted++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return extracted;
+    }
+
+    /**
+     * Compare the extracts of both tables and write the keys whose items still differ on a consistent read.
+     *
+     * @return the number of divergences
+     */
+    long compare(final File directory) {
+        final Map<String, Entry> sourceEntries = readExtract(Side.SOURCE, directory);
+        final Map<String, Entry> destinationEntries = readExtract(Side.DESTINATION, directory);
+        final Map<String, String> keys = new HashMap<String, String>();
+        for (Entry entry : sourceEntries.values()) {
+            final Entry other = destinationEntries.get(entry.id);
+            if (null == other || other.hash != entry.hash) {
+                keys.put(entry.id, entry.key);
+            }
+        }
+        for (Entry entry : destinationEntries.values()) {
+            if (!sourceEntries.containsKey(entry.id)) {
+                keys.put(entry.id, entry.key);
+            }
+        }
+        final List<Divergence> divergences = new ArrayList<Divergence>();
+        try {
+            for (String key : keys.values()) {
+                final Divergence divergence = confirm(DynamoDBJson.fromJson(key));
+                if (null != divergence) {
+                    divergences.add(divergence);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        write(divergences);
+        log.info("Tables " + sourceTable + " and " + destinationTable + " have " + divergences.size() + " divergent items, written to "
+            + divergenceFile);
+        return divergences.size();
+    }
+
+    private MerkleTree readTree(final Side side, final File directory) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(side.file(directory, TREE_SUFFIX).toPath())))) {
+            final MerkleTree tree = MerkleTree.read(input);
+            if (tree.getDepth() != depth) {
+                throw new IOException("Tree " + side.file(directory, TREE_SUFFIX) + " has depth " + tree.getDepth() + " instead of " + depth);
+            }
+            return tree;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Entry> readExtract(final Side side, final File directory) {
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+        try (BufferedReader extract = Files.newBufferedReader(side.file(directory, EXTRACT_SUFFIX).toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = extract.readLine())) {
+                final Entry entry = Entry.parse(line);
+                entries.put(entry.id, entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries;
+    }
+
+    private static void await(final List<Future<?>> scans) throws InterruptedException {
+        try {
+            for (Future<?> scan : scans) {
+                scan.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scan failed", e.getCause());
+        }
+    }
+
+    /**
+     * Read an item from both tables again to tell whether and how it differs.
+     */
+    private Divergence confirm(final Map<String, AttributeValue> key) {
+        final Map<String, AttributeValue> sourceItem = source.getItem(new GetItemRequest().withTableName(sourceTable).withKey(key)
+            .withConsistentRead(true)).getItem();
+        final Map<String, AttributeValue> destinationItem = destination.getItem(new GetItemRequest().withTableName(destinationTable).withKey(key)
+            .withConsistentRead(true)).getItem();
+        if (null == sourceItem && null == destinationItem) {
+            return null;
+        } else if (null == destinationItem) {
+            return new Divergence(Divergence.Type.MISSING_IN_DESTINATION, key);
+        } else if (null == sourceItem) {
+            return new Divergence(Divergence.Type.MISSING_IN_SOURCE, key);
+        } else if (hash(sourceItem) != hash(destinationItem)) {
+            return new Divergence(Divergence.Type.DIFFERENT, key);
+        }
+        return null;
+    }
+
+    private long hash(final Map<String, AttributeValue> item) {
+        if (Collections.disjoint(ignoredAttributes, item.keySet())) {
+            return ItemHashes.hash(item);
+        }
+        final Map<String, AttributeValue> compared = new HashMap<String, AttributeValue>(item);
+        compared.keySet().removeAll(ignoredAttributes);
+        return ItemHashes.hash(compared);
+    }
+
+    private void write(final List<Divergence> divergences) {
+        try (BufferedWriter writer = Files.newBufferedWriter(divergenceFile.toPath(), StandardCharsets.UTF_8)) {
+            for (Divergence divergence : divergences) {
+                writer.write(divergence.toLine());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, AttributeValue> key(final Map<String, AttributeValue> item, final List<KeySchemaElement> keySchema) {
+        final Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        for (KeySchemaElement element : keySchema) {
+            key.put(element.getAttributeName(), item.get(element.getAttributeName()));
+        }
+        return key;
+    }
+}
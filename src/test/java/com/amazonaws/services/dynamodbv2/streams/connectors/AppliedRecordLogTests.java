@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+public class AppliedRecordLogTests {
+    private static final int SIZE_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Record record(String key, String sequenceNumber) {
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("hashKey", new AttributeValue().withS(key));
+        return new Record().withEventName(OperationType.INSERT).withDynamodb(
+            new StreamRecord().withKeys(keys).withNewImage(keys).withSequenceNumber(sequenceNumber));
+    }
+
+    @Test
+    public void skipsSameOrOlderSequenceNumbers() throws Exception {
+        AppliedRecordLog log = new AppliedRecordLog(new File(folder.getRoot(), "shard.log"), SIZE_BYTES);
+        log.append(record("a", "200"));
+        assertTrue(log.isApplied(record("a", "200")));
+        assertTrue(log.isApplied(record("a", "100")));
+        assertFalse(log.isApplied(record("a", "1000")));
+        assertFalse(log.isApplied(record("b", "100")));
+        log.close();
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws Exception {
+        File file = new File(folder.getRoot(), "shard.log");
+        AppliedRecordLog log = new AppliedRecordLog(file, SIZE_BYTES);
+        log.append(record("a", "100"));
+        log.append(record("b", "200"));
+        log.close();
+
+        AppliedRecordLog reopened = new AppliedRecordLog(file, SIZE_BYTES);
+        assertEquals(2, reopened.size());
+        assertTrue(reopened.isApplied(record("a", "100")));
+        assertTrue(reopened.isApplied(record("b", "200")));
+        reopened.close();
+    }
+
+    @Test
+    public void compactEmptiesTheLog() throws Exception {
+        File file = new File(folder.getRoot(), "shard.log");
+        AppliedRecordLog log = new AppliedRecordLog(file, SIZE_BYTES);
+        log.append(record("a", "100"));
+        log.compact();
+        assertFalse(log.isApplied(record("a", "100")));
+        log.append(record("b", "200"));
+        log.close();
+
+        AppliedRecordLog reopened = new AppliedRecordLog(file, SIZE_BYTES);
+        assertEquals(1, reopened.size());
+        assertFalse(reopened.isApplied(record("a", "100")));
+        reopened.close();
+        reopened.delete();
+        assertFalse(file.exists());
+    }
+}
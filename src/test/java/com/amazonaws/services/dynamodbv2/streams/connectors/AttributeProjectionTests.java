@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.streams.connectors.filter.UnchangedItemFilter;
+
+public class AttributeProjectionTests {
+
+    private static final Map<String, AttributeValue> KEYS = Collections.singletonMap("id", new AttributeValue().withS("a"));
+
+    private static Map<String, AttributeValue> image(String name, String cache, String updated) {
+        Map<String, AttributeValue> image = new HashMap<String, AttributeValue>(KEYS);
+        image.put("name", new AttributeValue().withS(name));
+        image.put("cache", new AttributeValue().withS(cache));
+        image.put("updated", new AttributeValue().withN(updated));
+        return image;
+    }
+
+    @Test
+    public void keepsIncludedKeyAndRetainedAttributes() {
+        AttributeProjection projection = new AttributeProjection(Arrays.asList("name"), null, Arrays.asList("updated"));
+        Map<String, AttributeValue> projected = projection.project(image("n", "c", "1"), KEYS);
+        assertEquals(3, projected.size());
+        assertTrue(projected.containsKey("id"));
+        assertTrue(projected.containsKey("name"));
+        assertTrue(projected.containsKey("updated"));
+    }
+
+    @Test
+    public void removesExcludedAttributes() {
+        AttributeProjection projection = new AttributeProjection(null, Arrays.asList("cache", "id"), Collections.<String>emptyList());
+        Map<String, AttributeValue> projected = projection.project(image("n", "c", "1"), KEYS);
+        assertFalse(projected.containsKey("cache"));
+        assertTrue(projected.containsKey("id"));
+        assertEquals(3, projected.size());
+    }
+
+    @Test
+    public void returnsImageWhenNothingRemoved() {
+        AttributeProjection projection = new AttributeProjection(null, Arrays.asList("other"), Collections.<String>emptyList());
+        Map<String, AttributeValue> image = image("n", "c", "1");
+        assertSame(image, projection.project(image, KEYS));
+    }
+
+    @Test
+    public void dropsChangesOfProjectedOutAttributesOnly() {
+        DynamoDBStreamsRecordTransformer transformer = new DynamoDBStreamsRecordTransformer(
+            new AttributeProjection(null, Arrays.asList("cache"), Arrays.asList("updated")));
+        UnchangedItemFilter filter = new UnchangedItemFilter(Arrays.asList("updated"));
+        Record cacheOnly = transformer.project(new Record().withEventName(OperationType.MODIFY.toString())
+            .withDynamodb(new StreamRecord().withKeys(KEYS).withOldImage(image("n", "c1", "1")).withNewImage(image("n", "c2", "2"))));
+        assertFalse(filter.keepRecord(cacheOnly));
+        Record renamed = transformer.project(new Record().withEventName(OperationType.MODIFY.toString())
+            .withDynamodb(new StreamRecord().withKeys(KEYS).withOldImage(image("n", "c1", "1")).withNewImage(image("m", "c1", "2"))));
+        assertTrue(filter.keepRecord(renamed));
+        Record inserted = transformer.project(new Record().withEventName(OperationType.INSERT.toString())
+            .withDynamodb(new StreamRecord().withKeys(KEYS).withNewImage(image("n", "c", "1"))));
+        assertTrue(filter.keepRecord(inserted));
+        assertFalse(inserted.getDynamodb().getNewImage().containsKey("cache"));
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTests {
+
+    @Test
+    public void opensAfterConsecutiveFailuresAndClosesAfterProbe() {
+        CircuitBreaker breaker = new CircuitBreaker("table", 2, 1000L);
+        breaker.recordFailure(0L);
+        breaker.recordSuccess();
+        breaker.recordFailure(10L);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.recordFailure(20L);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(500L));
+
+        // a single probe once the open interval elapsed
+        assertTrue(breaker.allowRequest(1020L));
+        assertFalse(breaker.allowRequest(1021L));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.recordFailure(1030L);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(2000L));
+
+        assertTrue(breaker.allowRequest(2030L));
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(2031L));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+
+public class ConnectionPrewarmerTests {
+
+    private static class CountingCredentialsProvider implements AWSCredentialsProvider {
+        private final AtomicInteger resolved = new AtomicInteger();
+
+        @Override
+        public AWSCredentials getCredentials() {
+            resolved.incrementAndGet();
+            return new BasicAWSCredentials("access", "secret");
+        }
+
+        @Override
+        public void refresh() {
+        }
+    }
+
+    @Test
+    public void sendsConcurrentRequestsAfterResolvingCredentials() {
+        CountingCredentialsProvider credentials = new CountingCredentialsProvider();
+        CountDownLatch concurrent = new CountDownLatch(4);
+        new ConnectionPrewarmer(4, 5000L).prewarm("table", credentials, () -> {
+            concurrent.countDown();
+            // every request is in flight at the same time, so each one holds its own connection
+            return concurrent.await(5, TimeUnit.SECONDS);
+        });
+        assertEquals(1, credentials.resolved.get());
+        assertEquals(0, concurrent.getCount());
+    }
+
+    @Test
+    public void toleratesErrorResponses() {
+        AtomicInteger requests = new AtomicInteger();
+        new ConnectionPrewarmer(2, 5000L).prewarm("table", new CountingCredentialsProvider(), () -> {
+            requests.incrementAndGet();
+            throw new ResourceNotFoundException("lease table not created yet");
+        });
+        assertEquals(2, requests.get());
+    }
+}
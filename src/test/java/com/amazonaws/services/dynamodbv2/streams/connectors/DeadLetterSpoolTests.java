@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformedRecord;
+
+public class DeadLetterSpoolTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Record record(String key, String sequenceNumber) {
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("hashKey", new AttributeValue().withS(key));
+        return new Record().withEventName(OperationType.INSERT).withDynamodb(
+            new StreamRecord().withKeys(keys).withNewImage(keys).withSequenceNumber(sequenceNumber));
+    }
+
+    @Test
+    public void spooledRecordsSurviveReopenUntilRemoved() throws Exception {
+        File file = new File(folder.getRoot(), "pipeline.spool");
+        DeadLetterSpool spool = new DeadLetterSpool(file);
+        spool.append(Arrays.asList(record("a", "100"), record("b", "200")), 1000L);
+        spool.append(Collections.singletonList(record("c", "300")), 2000L);
+        assertEquals(3, spool.getDepth());
+        assertEquals(500L, spool.getAgeMillis(1500L));
+        spool.close();
+
+        DeadLetterSpool reopened = new DeadLetterSpool(file);
+        assertEquals(3, reopened.getDepth());
+        List<DeadLetterSpool.Entry> entries = reopened.peek(2);
+        assertEquals(2, entries.size());
+        assertEquals("100", entries.get(0).getRecord().getDynamodb().getSequenceNumber());
+        assertEquals(record("b", "200").getDynamodb().getKeys(), entries.get(1).getRecord().getDynamodb().getKeys());
+        reopened.remove(2);
+        assertEquals(1, reopened.getDepth());
+        assertEquals(0L, reopened.getAgeMillis(2000L));
+        reopened.close();
+
+        DeadLetterSpool resumed = new DeadLetterSpool(file);
+        assertEquals(1, resumed.getDepth());
+        assertEquals("300", resumed.peek(10).get(0).getRecord().getDynamodb().getSequenceNumber());
+        resumed.remove(1);
+        assertEquals(0, resumed.getDepth());
+        assertEquals(0L, file.length());
+        assertTrue(resumed.peek(10).isEmpty());
+        resumed.close();
+    }
+
+    @Test
+    public void tornFrameIsDiscarded() throws Exception {
+        File file = new File(folder.getRoot(), "pipeline.spool");
+        DeadLetterSpool spool = new DeadLetterSpool(file);
+        spool.append(Arrays.asList(record("a", "100"), record("b", "200")), 1000L);
+        spool.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        DeadLetterSpool reopened = new DeadLetterSpool(file);
+        assertEquals(1, reopened.getDepth());
+        reopened.append(Collections.singletonList(record("c", "300")), 2000L);
+        List<DeadLetterSpool.Entry> entries = reopened.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals("300", entries.get(1).getRecord().getDynamodb().getSequenceNumber());
+        assertEquals(2000L, entries.get(1).getSpooledMillis());
+        reopened.close();
+    }
+
+    @Test
+    public void routedRecordKeepsItsTable() throws Exception {
+        Record spooled = record("a", "100");
+        StreamRecord streamRecord = spooled.getDynamodb();
+        Record routed = new TransformedRecord(spooled, streamRecord.getKeys(), streamRecord.getNewImage(), null, "archive");
+        Record decoded = DeadLetterSpool.decode(DeadLetterSpool.encode(routed));
+        assertEquals("archive", ((TransformedRecord) decoded).getDestinationTable());
+        assertEquals(streamRecord.getKeys(), decoded.getDynamodb().getKeys());
+        assertFalse(DeadLetterSpool.decode(DeadLetterSpool.encode(spooled)) instanceof TransformedRecord);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+public class DynamoDBConnectorUtilitiesTests {
+
+    private static AttributeValue stamp(long creationMillis, String sequenceNumber) {
+        return new AttributeValue().withS(DynamoDBConnectorUtilities.getReplicationTimestamp(new StreamRecord()
+            .withApproximateCreationDateTime(new Date(creationMillis)).withSequenceNumber(sequenceNumber)));
+    }
+
+    @Test
+    public void replicationTimestampIsZeroPadded() {
+        assertEquals("000001420070400-0000000000000000000000000000000000000123",
+            stamp(1420070400L, "123").getS());
+        assertEquals("000000000000000-0000000000000000000000000000000000000000",
+            DynamoDBConnectorUtilities.getReplicationTimestamp(new StreamRecord()));
+    }
+
+    @Test
+    public void replicationTimestampsOrderByCreationTimeThenSequenceNumber() {
+        // sequence numbers of different lengths compare numerically once padded
+        assertTrue(LastWriteCache.compare(stamp(1000L, "99"), stamp(1000L, "100")) < 0);
+        assertTrue(LastWriteCache.compare(stamp(1000L, "500"), stamp(999L, "900")) > 0);
+        assertTrue(LastWriteCache.compare(stamp(999L, "12345678901234567890"), stamp(1000L, "1")) < 0);
+        assertEquals(0, (int) LastWriteCache.compare(stamp(1000L, "7"), stamp(1000L, "7")));
+    }
+}
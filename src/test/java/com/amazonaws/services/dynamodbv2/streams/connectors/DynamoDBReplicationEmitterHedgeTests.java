@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.easymock.Capture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+
+/**
+ * Runs the hedged writes of the emitter against an asynchronous client completing the attempts on demand. The writes
+ * carry a last writer wins condition, and the hedge delay is 0 so that every write is hedged right away.
+ */
+public class DynamoDBReplicationEmitterHedgeTests {
+    private static final Record RECORD = DynamoDBBufferTests.ITEM1_INSERT;
+
+    private final BlockingQueue<AsyncHandler<AmazonWebServiceRequest, Object>> attempts = new LinkedBlockingQueue<>();
+    private AmazonDynamoDBAsync dynamodb;
+    private DynamoDBBuffer buffer;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        dynamodb = createMock(AmazonDynamoDBAsync.class);
+        buffer = new DynamoDBBuffer(new DynamoDBStreamsConnectorConfiguration(new Properties(), null));
+        buffer.consumeRecord(RECORD, RECORD.getDynamodb().getSizeBytes().intValue(), RECORD.getDynamodb().getSequenceNumber());
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the policy with enough latencies of 0 sampled to hedge every write right away
+     */
+    private static HedgePolicy prime(HedgePolicy policy) {
+        for (int i = 0; i < HedgePolicy.MIN_SAMPLES; i++) {
+            policy.completed(0L);
+        }
+        return policy;
+    }
+
+    private static AmazonServiceException tooLarge() {
+        AmazonServiceException exception = new AmazonServiceException("Request entity too large");
+        exception.setStatusCode(413);
+        return exception;
+    }
+
+    /**
+     * Expect the given number of attempts of the write, each queued to be completed by the test.
+     */
+    @SuppressWarnings("unchecked")
+    private void expectAttempts(int count) {
+        dynamodb.putItemAsync(anyObject(PutItemRequest.class), anyObject(AsyncHandler.class));
+        expectLastCall().andAnswer(() -> {
+            attempts.add((AsyncHandler<AmazonWebServiceRequest, Object>) getCurrentArguments()[1]);
+            return null;
+        }).times(count);
+    }
+
+    private Future<List<Record>> emit(HedgePolicy policy, AmazonCloudWatchAsync cloudwatch) {
+        DynamoDBReplicationEmitter emitter = new DynamoDBReplicationEmitter("TEST", null, null, "TABLE", "hashKey", "att", dynamodb, cloudwatch);
+        emitter.setHedgePolicy(policy);
+        return executor.submit(() -> emitter.emit(new UnmodifiableBuffer<Record>(buffer)));
+    }
+
+    private static double getValue(PutMetricDataRequest request, String name) {
+        Map<String, Double> values = new HashMap<String, Double>();
+        for (MetricDatum datum : request.getMetricData()) {
+            values.put(datum.getMetricName(), datum.getValue());
+        }
+        assertNotNull(name, values.get(name));
+        return values.get(name);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void firstSuccessfulAttemptCompletesWrite() throws Exception {
+        AmazonCloudWatchAsync cloudwatch = createMock(AmazonCloudWatchAsync.class);
+        Capture<PutMetricDataRequest> metrics = new Capture<PutMetricDataRequest>();
+        expect(cloudwatch.putMetricDataAsync(capture(metrics), anyObject(AsyncHandler.class))).andReturn(null);
+        expectAttempts(2);
+        replay(dynamodb, cloudwatch);
+        Future<List<Record>> emitted = emit(prime(new HedgePolicy(50, 100)), cloudwatch);
+        AsyncHandler<AmazonWebServiceRequest, Object> first = attempts.poll(5, TimeUnit.SECONDS);
+        AsyncHandler<AmazonWebServiceRequest, Object> duplicate = attempts.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertNotNull(duplicate);
+        duplicate.onSuccess(null, null);
+        // the write completes while the first attempt is still in flight
+        assertEquals(Collections.emptyList(), emitted.get(5, TimeUnit.SECONDS));
+        first.onSuccess(null, null);
+        verify(dynamodb, cloudwatch);
+        assertEquals(1.0, getValue(metrics.getValue(), "HedgedWrites"), 0.0);
+        assertEquals(100.0, getValue(metrics.getValue(), "HedgeWinRate"), 0.0);
+    }
+
+    @Test
+    public void deliversErrorOnlyAfterLastAttemptFailed() throws Exception {
+        expectAttempts(2);
+        replay(dynamodb);
+        Future<List<Record>> emitted = emit(prime(new HedgePolicy(50, 100)), null);
+        AsyncHandler<AmazonWebServiceRequest, Object> first = attempts.poll(5, TimeUnit.SECONDS);
+        AsyncHandler<AmazonWebServiceRequest, Object> duplicate = attempts.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertNotNull(duplicate);
+        first.onError(tooLarge());
+        try {
+            emitted.get(100, TimeUnit.MILLISECONDS);
+            fail("The write failed while its duplicate was still in flight");
+        } catch (TimeoutException e) {
+            // the duplicate may still succeed
+        }
+        duplicate.onError(tooLarge());
+        assertEquals(Collections.singletonList(RECORD), emitted.get(5, TimeUnit.SECONDS));
+        verify(dynamodb);
+    }
+
+    @Test
+    public void deliversErrorOfFirstAttemptWhenHedgeIsGivenUp() throws Exception {
+        expectAttempts(1);
+        replay(dynamodb);
+        // no budget: the hedge is given up, after the first attempt failed while the hedge was being decided
+        HedgePolicy policy = prime(new HedgePolicy(50, 0) {
+            @Override
+            boolean tryHedge() {
+                attempts.poll().onError(tooLarge());
+                return super.tryHedge();
+            }
+        });
+        Future<List<Record>> emitted = emit(policy, null);
+        assertEquals(Collections.singletonList(RECORD), emitted.get(5, TimeUnit.SECONDS));
+        verify(dynamodb);
+    }
+}
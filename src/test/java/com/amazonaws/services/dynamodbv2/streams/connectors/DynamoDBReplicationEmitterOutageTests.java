@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+
+/**
+ * Runs the emitter with an open circuit breaker, so that every record goes to the outage spool instead of the
+ * destination table.
+ */
+public class DynamoDBReplicationEmitterOutageTests {
+    /**
+     * Bytes of a spool frame besides its payload, and of the end of log marker after it.
+     */
+    private static final int FRAME_OVERHEAD_BYTES = 29;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AmazonDynamoDBAsync dynamodb;
+    private DynamoDBBuffer buffer;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        dynamodb = createMock(AmazonDynamoDBAsync.class);
+        buffer = new DynamoDBBuffer(new DynamoDBStreamsConnectorConfiguration(new Properties(), null));
+        for (Record record : new Record[] {DynamoDBBufferTests.ITEM1_INSERT, DynamoDBBufferTests.ITEM2_INSERT}) {
+            buffer.consumeRecord(record, record.getDynamodb().getSizeBytes().intValue(), record.getDynamodb().getSequenceNumber());
+        }
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("TABLE", 1, 60000L);
+        breaker.recordFailure(System.currentTimeMillis());
+        return breaker;
+    }
+
+    @Test
+    public void waitsForSpaceInFullOutageSpool() throws Exception {
+        // room for a single record
+        OutageSpool spool = new OutageSpool(folder.newFile(), FRAME_OVERHEAD_BYTES + DeadLetterSpool.encode(DynamoDBBufferTests.ITEM1_INSERT).length + 8);
+        replay(dynamodb);
+        DynamoDBReplicationEmitter emitter = new DynamoDBReplicationEmitter("TEST", null, null, "TABLE", "hashKey", "att", dynamodb, null);
+        emitter.setCircuitBreaker(openBreaker(), spool);
+        Future<List<Record>> emitted = executor.submit(() -> emitter.emit(new UnmodifiableBuffer<Record>(buffer)));
+        try {
+            emitted.get(500, TimeUnit.MILLISECONDS);
+            fail("The batch completed while its last record could not be spooled");
+        } catch (TimeoutException e) {
+            // the shard is held back until the spool has room
+        }
+        // drain the first record, as the drainer does once the destination table is back
+        spool.remove(spool.peek(1));
+        assertEquals(Collections.emptyList(), emitted.get(5, TimeUnit.SECONDS));
+        List<OutageSpool.Entry> spooled = spool.peek(10);
+        assertEquals(1, spooled.size());
+        assertEquals(DynamoDBBufferTests.ITEM2_INSERT.getDynamodb().getSequenceNumber(), spooled.get(0).getRecord().getDynamodb().getSequenceNumber());
+        spool.close();
+        verify(dynamodb);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.easymock.Capture;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+
+/**
+ * Captures the requests the emitter sends to the destination table for each type of record.
+ */
+public class DynamoDBReplicationEmitterRequestTests {
+    private static final String HASH_KEY = "hashKey";
+    private static final String REPLICATION_TIMESTAMP_ATTRIBUTE = "replicatedAt";
+    private static final String ORIGIN_ATTRIBUTE = "origin";
+    private static final String ORIGIN = "us-east-1/table";
+    private static final Map<String, AttributeValue> KEY = Collections.singletonMap(HASH_KEY, new AttributeValue().withS("key1"));
+    private static final Map<String, AttributeValue> OLD_ITEM = new HashMap<String, AttributeValue>(KEY);
+    private static final Map<String, AttributeValue> NEW_ITEM = new HashMap<String, AttributeValue>(KEY);
+    static {
+        OLD_ITEM.put("att", new AttributeValue().withS("0"));
+        NEW_ITEM.put("att", new AttributeValue().withS("1"));
+    }
+
+    private static final Record INSERT = record(OperationType.INSERT, "SEQ_NUM_0", null, OLD_ITEM);
+    private static final Record MODIFY = record(OperationType.MODIFY, "SEQ_NUM_1", OLD_ITEM, NEW_ITEM);
+    private static final Record REMOVE = record(OperationType.REMOVE, "SEQ_NUM_2", NEW_ITEM, null);
+
+    private static final IAnswer<Object> SUCCESS_ANSWER = () -> {
+        ((AsyncHandler<?, ?>) getCurrentArguments()[1]).onSuccess(null, null);
+        return null;
+    };
+
+    private AmazonDynamoDBAsync dynamodb;
+
+    private static Record record(OperationType type, String sequenceNumber, Map<String, AttributeValue> oldImage,
+        Map<String, AttributeValue> newImage) {
+        return new Record().withEventName(type).withDynamodb(new StreamRecord().withKeys(KEY).withOldImage(oldImage).withNewImage(newImage)
+            .withSequenceNumber(sequenceNumber).withApproximateCreationDateTime(new Date(1500000000000L)).withSizeBytes(1L));
+    }
+
+    private static AttributeValue replicationTimestamp(Record record) {
+        return new AttributeValue().withS(DynamoDBConnectorUtilities.getReplicationTimestamp(record.getDynamodb()));
+    }
+
+    @Before
+    public void setUp() {
+        dynamodb = createMock(AmazonDynamoDBAsync.class);
+    }
+
+    private DynamoDBReplicationEmitter createEmitter() {
+        return new DynamoDBReplicationEmitter("TEST", null, null, "TABLE", null, null, dynamodb, null);
+    }
+
+    private static void emit(DynamoDBReplicationEmitter emitter, Record record) {
+        DynamoDBBuffer buffer = new DynamoDBBuffer(new DynamoDBStreamsConnectorConfiguration(new Properties(), null));
+        buffer.consumeRecord(record, record.getDynamodb().getSizeBytes().intValue(), record.getDynamodb().getSequenceNumber());
+        assertTrue(emitter.emit(new UnmodifiableBuffer<Record>(buffer)).isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Capture<PutItemRequest> expectPut() {
+        Capture<PutItemRequest> put = new Capture<PutItemRequest>();
+        dynamodb.putItemAsync(capture(put), anyObject(AsyncHandler.class));
+        expectLastCall().andAnswer(SUCCESS_ANSWER);
+        return put;
+    }
+
+    private void assertLastWriterWinsPut(Record record) {
+        Capture<PutItemRequest> put = expectPut();
+        replay(dynamodb);
+        DynamoDBReplicationEmitter emitter = createEmitter();
+        emitter.setReplicationTimestampAttribute(REPLICATION_TIMESTAMP_ATTRIBUTE);
+        emit(emitter, record);
+        verify(dynamodb);
+
+        Map<String, AttributeValue> expectedItem = new HashMap<String, AttributeValue>(record.getDynamodb().getNewImage());
+        expectedItem.put(REPLICATION_TIMESTAMP_ATTRIBUTE, replicationTimestamp(record));
+        assertEquals(expectedItem, put.getValue().getItem());
+        assertEquals(DynamoDBReplicationEmitter.REPLICATION_TIMESTAMP_CONDITION, put.getValue().getConditionExpression());
+        assertEquals(Collections.singletonMap(DynamoDBReplicationEmitter.REPLICATION_TIMESTAMP_NAME, REPLICATION_TIMESTAMP_ATTRIBUTE),
+            put.getValue().getExpressionAttributeNames());
+        assertEquals(Collections.singletonMap(DynamoDBReplicationEmitter.REPLICATION_TIMESTAMP_VALUE, replicationTimestamp(record)),
+            put.getValue().getExpressionAttributeValues());
+    }
+
+    @Test
+    public void insertCarriesReplicationTimestampCondition() {
+        assertLastWriterWinsPut(INSERT);
+    }
+
+    @Test
+    public void modifyCarriesReplicationTimestampCondition() {
+        assertLastWriterWinsPut(MODIFY);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void removeCarriesReplicationTimestampCondition() {
+        Capture<DeleteItemRequest> delete = new Capture<DeleteItemRequest>();
+        dynamodb.deleteItemAsync(capture(delete), anyObject(AsyncHandler.class));
+        expectLastCall().andAnswer(SUCCESS_ANSWER);
+        replay(dynamodb);
+        DynamoDBReplicationEmitter emitter = createEmitter();
+        emitter.setReplicationTimestampAttribute(REPLICATION_TIMESTAMP_ATTRIBUTE);
+        emit(emitter, REMOVE);
+        verify(dynamodb);
+
+        assertEquals(KEY, delete.getValue().getKey());
+        assertEquals(DynamoDBReplicationEmitter.REPLICATION_TIMESTAMP_CONDITION, delete.getValue().getConditionExpression());
+        assertEquals(Collections.singletonMap(DynamoDBReplicationEmitter.REPLICATION_TIMESTAMP_NAME, REPLICATION_TIMESTAMP_ATTRIBUTE),
+            delete.getValue().getExpressionAttributeNames());
+        assertEquals(Collections.singletonMap(DynamoDBReplicationEmitter.REPLICATION_TIMESTAMP_VALUE, replicationTimestamp(REMOVE)),
+            delete.getValue().getExpressionAttributeValues());
+    }
+
+    @Test
+    public void putWithoutReplicationTimestampIsUnconditional() {
+        Capture<PutItemRequest> put = expectPut();
+        replay(dynamodb);
+        emit(createEmitter(), MODIFY);
+        verify(dynamodb);
+
+        assertEquals(NEW_ITEM, put.getValue().getItem());
+        assertEquals(null, put.getValue().getConditionExpression());
+    }
+
+    @Test
+    public void putCarriesOriginMarker() {
+        Capture<PutItemRequest> put = expectPut();
+        replay(dynamodb);
+        DynamoDBReplicationEmitter emitter = createEmitter();
+        emitter.setOrigin(ORIGIN_ATTRIBUTE, ORIGIN);
+        emit(emitter, MODIFY);
+        verify(dynamodb);
+
+        Map<String, AttributeValue> written = put.getValue().getItem();
+        assertEquals(new AttributeValue().withS(OriginFilter.getMarker(ORIGIN, MODIFY.getDynamodb())), written.get(ORIGIN_ATTRIBUTE));
+        // the write is dropped by the replicator of the destination table, which would otherwise replicate it back
+        Record replicated = new Record().withEventName(OperationType.MODIFY)
+            .withDynamodb(new StreamRecord().withKeys(KEY).withOldImage(OLD_ITEM).withNewImage(written));
+        assertFalse(new OriginFilter(ORIGIN_ATTRIBUTE, "eu-west-1/table").keepRecord(replicated));
+        assertTrue(new OriginFilter(ORIGIN_ATTRIBUTE, ORIGIN).keepRecord(replicated));
+    }
+}
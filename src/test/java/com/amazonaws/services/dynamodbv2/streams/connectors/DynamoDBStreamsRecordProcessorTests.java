@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.streamsadapter.model.RecordAdapter;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+import com.amazonaws.services.kinesis.connectors.impl.AllPassFilter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
+
+public class DynamoDBStreamsRecordProcessorTests {
+    private static final String SHARD_ID = "shardId-00000001";
+
+    private DynamoDBBuffer buffer;
+    private IEmitter<Record> emitter;
+    private IRecordProcessorCheckpointer checkpointer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        buffer = new DynamoDBBuffer(new DynamoDBStreamsConnectorConfiguration(new Properties(), null));
+        emitter = createMock(IEmitter.class);
+        checkpointer = createMock(IRecordProcessorCheckpointer.class);
+    }
+
+    private DynamoDBStreamsRecordProcessor createProcessor(Properties properties) {
+        return createProcessor(properties, emitter);
+    }
+
+    private DynamoDBStreamsRecordProcessor createProcessor(Properties properties, IEmitter<Record> emitter) {
+        DynamoDBStreamsRecordProcessor processor = new DynamoDBStreamsRecordProcessor(buffer, new AllPassFilter<Record>(), emitter,
+            new DynamoDBStreamsRecordTransformer(), new DynamoDBStreamsConnectorConfiguration(properties, null), null);
+        processor.initialize(SHARD_ID);
+        return processor;
+    }
+
+    /**
+     * Expect a write of the first record of the item, throttled after the next batch of the shard, holding a newer record
+     * of the item, was received by the processor.
+     */
+    @SuppressWarnings("unchecked")
+    private static void expectWriteThrottledBeforeNextBatch(AmazonDynamoDBAsync dynamodb, DynamoDBStreamsRecordProcessor[] processor) {
+        dynamodb.putItemAsync(anyObject(PutItemRequest.class), anyObject(AsyncHandler.class));
+        expectLastCall().andAnswer(() -> {
+            processor[0].recordsReceived(Collections.singletonList(new RecordAdapter(DynamoDBBufferTests.ITEM1_MODIFY)));
+            ((AsyncHandler<?, ?>) getCurrentArguments()[1]).onError(new ProvisionedThroughputExceededException("Throttled"));
+            return null;
+        });
+    }
+
+    private void bufferRecords(Record... records) {
+        for (Record record : records) {
+            buffer.consumeRecord(record, record.getDynamodb().getSizeBytes().intValue(), record.getDynamodb().getSequenceNumber());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void emitsBufferedRecordsAndCheckpointsOnShutdownRequested() throws Exception {
+        expect(emitter.emit(anyObject(UnmodifiableBuffer.class))).andReturn(Collections.<Record>emptyList());
+        checkpointer.checkpoint(DynamoDBBufferTests.ITEM2_MODIFY.getDynamodb().getSequenceNumber());
+        replay(emitter, checkpointer);
+        DynamoDBStreamsRecordProcessor processor = createProcessor(new Properties());
+        bufferRecords(DynamoDBBufferTests.ITEM1_INSERT, DynamoDBBufferTests.ITEM2_MODIFY);
+        processor.shutdownRequested(checkpointer);
+        assertTrue(buffer.getRecords().isEmpty());
+        verify(emitter, checkpointer);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void checkpointsOnlyEarlierBatchesWhenBufferedRecordsFail() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(DynamoDBStreamsConnectorConfiguration.PROP_CHECKPOINT_INTERVAL_MILLIS, "3600000");
+        List<Record> failed = Collections.singletonList(DynamoDBBufferTests.ITEM2_MODIFY);
+        expect(emitter.emit(anyObject(UnmodifiableBuffer.class))).andReturn(failed);
+        // the checkpoint of the batch emitted before is still pending, it is the only one written
+        checkpointer.checkpoint(DynamoDBBufferTests.ITEM1_INSERT.getDynamodb().getSequenceNumber());
+        replay(emitter, checkpointer);
+        DynamoDBStreamsRecordProcessor processor = createProcessor(properties);
+        processor.getCheckpointer().checkpoint(DynamoDBBufferTests.ITEM1_INSERT.getDynamodb().getSequenceNumber());
+        bufferRecords(DynamoDBBufferTests.ITEM1_MODIFY, DynamoDBBufferTests.ITEM2_MODIFY);
+        processor.shutdownRequested(checkpointer);
+        assertTrue(buffer.getRecords().isEmpty());
+        verify(emitter, checkpointer);
+    }
+
+    @Test
+    public void checkpointsNothingWithoutBufferedRecords() throws Exception {
+        replay(emitter, checkpointer);
+        DynamoDBStreamsRecordProcessor processor = createProcessor(new Properties());
+        processor.shutdownRequested(checkpointer);
+        verify(emitter, checkpointer);
+    }
+
+    @Test
+    public void skipsThrottledWriteSupersededByNextBatch() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(DynamoDBStreamsConnectorConfiguration.PROP_SUPERSEDE_PENDING_WRITES, "true");
+        AmazonDynamoDBAsync dynamodb = createMock(AmazonDynamoDBAsync.class);
+        DynamoDBStreamsRecordProcessor[] processor = new DynamoDBStreamsRecordProcessor[1];
+        // the retry of the throttled write is never sent, the newer record of the item is written with its batch
+        expectWriteThrottledBeforeNextBatch(dynamodb, processor);
+        checkpointer.checkpoint(DynamoDBBufferTests.ITEM1_INSERT.getDynamodb().getSequenceNumber());
+        replay(dynamodb, checkpointer);
+        processor[0] = createProcessor(properties, new DynamoDBReplicationEmitter("TEST", null, null, "TABLE", null, null, dynamodb, null));
+        bufferRecords(DynamoDBBufferTests.ITEM1_INSERT);
+        processor[0].shutdownRequested(checkpointer);
+        verify(dynamodb, checkpointer);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void retriesThrottledWriteWithoutSupersedePendingWrites() throws Exception {
+        AmazonDynamoDBAsync dynamodb = createMock(AmazonDynamoDBAsync.class);
+        DynamoDBStreamsRecordProcessor[] processor = new DynamoDBStreamsRecordProcessor[1];
+        expectWriteThrottledBeforeNextBatch(dynamodb, processor);
+        dynamodb.putItemAsync(anyObject(PutItemRequest.class), anyObject(AsyncHandler.class));
+        expectLastCall().andAnswer(() -> {
+            ((AsyncHandler<PutItemRequest, ?>) getCurrentArguments()[1]).onSuccess(null, null);
+            return null;
+        });
+        checkpointer.checkpoint(DynamoDBBufferTests.ITEM1_INSERT.getDynamodb().getSequenceNumber());
+        replay(dynamodb, checkpointer);
+        processor[0] = createProcessor(new Properties(), new DynamoDBReplicationEmitter("TEST", null, null, "TABLE", null, null, dynamodb, null));
+        bufferRecords(DynamoDBBufferTests.ITEM1_INSERT);
+        processor[0].shutdownRequested(checkpointer);
+        verify(dynamodb, checkpointer);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.Worker;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLease;
+import com.amazonaws.services.kinesis.leases.interfaces.ILeaseManager;
+
+public class GracefulShutdownHookTests {
+    private static final String WORKER_ID = "worker-1";
+
+    private Worker worker;
+    private ILeaseManager<KinesisClientLease> leaseManager;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        worker = createMock(Worker.class);
+        leaseManager = createMock(ILeaseManager.class);
+    }
+
+    private static KinesisClientLease lease(String shardId, String owner) {
+        KinesisClientLease lease = new KinesisClientLease();
+        lease.setLeaseKey(shardId);
+        lease.setLeaseOwner(owner);
+        return lease;
+    }
+
+    @Test
+    public void releasesOnlyTheLeasesOfTheWorker() throws Exception {
+        KinesisClientLease owned = lease("shardId-1", WORKER_ID);
+        KinesisClientLease other = lease("shardId-2", "worker-2");
+        KinesisClientLease unowned = lease("shardId-3", null);
+        expect(worker.startGracefulShutdown()).andReturn(CompletableFuture.completedFuture(true));
+        expect(leaseManager.listLeases()).andReturn(Arrays.asList(owned, other, unowned));
+        expect(leaseManager.evictLease(owned)).andReturn(true);
+        replay(worker, leaseManager);
+        new GracefulShutdownHook(worker, leaseManager, WORKER_ID, 1000L).run();
+        verify(worker, leaseManager);
+    }
+
+    @Test
+    public void shutsWorkerDownWhenProcessorsDoNotCheckpointInTime() throws Exception {
+        expect(worker.startGracefulShutdown()).andReturn(new CompletableFuture<Boolean>());
+        worker.shutdown();
+        expectLastCall();
+        // the record processors may still be writing, the leases are left to expire
+        replay(worker, leaseManager);
+        new GracefulShutdownHook(worker, leaseManager, WORKER_ID, 50L).run();
+        verify(worker, leaseManager);
+    }
+
+    @Test
+    public void shutsWorkerDownWhenGracefulShutdownFails() throws Exception {
+        CompletableFuture<Boolean> failed = new CompletableFuture<Boolean>();
+        failed.completeExceptionally(new IllegalStateException("coordinator failed"));
+        expect(worker.startGracefulShutdown()).andReturn(failed);
+        worker.shutdown();
+        expectLastCall();
+        replay(worker, leaseManager);
+        new GracefulShutdownHook(worker, leaseManager, WORKER_ID, 1000L).run();
+        verify(worker, leaseManager);
+    }
+
+    @Test
+    public void keepsLeasesOfWorkerNotRunning() throws Exception {
+        expect(worker.startGracefulShutdown()).andReturn(CompletableFuture.completedFuture(false));
+        replay(worker, leaseManager);
+        new GracefulShutdownHook(worker, leaseManager, WORKER_ID, 1000L).run();
+        verify(worker, leaseManager);
+    }
+}
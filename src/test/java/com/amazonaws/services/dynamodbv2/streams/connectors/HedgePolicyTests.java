@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HedgePolicyTests {
+
+    @Test
+    public void hedgesAfterPercentileOfSampledLatencies() {
+        HedgePolicy policy = new HedgePolicy(90, 100);
+        for (int i = 1; i < HedgePolicy.MIN_SAMPLES; i++) {
+            policy.completed(i);
+        }
+        // not enough samples yet
+        assertEquals(-1L, policy.submitted());
+        policy.completed(HedgePolicy.MIN_SAMPLES);
+        assertEquals(116L, policy.getDelayMillis());
+    }
+
+    @Test
+    public void keepsHedgesWithinBudget() {
+        HedgePolicy policy = new HedgePolicy(99, 10);
+        for (int i = 0; i < 9; i++) {
+            policy.submitted();
+            assertFalse(policy.tryHedge());
+        }
+        policy.submitted();
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+    }
+
+    @Test
+    public void capsSavedHedges() {
+        HedgePolicy policy = new HedgePolicy(99, 100);
+        for (int i = 0; i < 100; i++) {
+            policy.submitted();
+        }
+        int hedges = 0;
+        while (policy.tryHedge()) {
+            hedges++;
+        }
+        assertEquals(HedgePolicy.MAX_HEDGES, hedges);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentileOutOfRange() {
+        new HedgePolicy(100, 5);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+public class LastWriteCacheTests {
+
+    private static Map<String, AttributeValue> key(String hashKey) {
+        return Collections.singletonMap("hashKey", new AttributeValue().withS(hashKey));
+    }
+
+    @Test
+    public void recordsNotNewerThanWrittenTimestampAreStale() {
+        LastWriteCache cache = new LastWriteCache(10);
+        assertFalse(cache.isStale(key("a"), new AttributeValue().withN("5")));
+        cache.written(key("a"), new AttributeValue().withN("10"));
+        // a rejected older timestamp does not lower the cached one
+        cache.written(key("a"), new AttributeValue().withN("7"));
+        assertTrue(cache.isStale(key("a"), new AttributeValue().withN("9.5")));
+        assertTrue(cache.isStale(key("a"), new AttributeValue().withN("10")));
+        assertFalse(cache.isStale(key("a"), new AttributeValue().withN("11")));
+        assertFalse(cache.isStale(key("b"), new AttributeValue().withN("1")));
+        assertEquals(5, cache.getAndResetLookups());
+        assertEquals(3, cache.getAndResetHits());
+        assertEquals(0, cache.getAndResetLookups());
+
+        cache.invalidate(key("a"));
+        assertFalse(cache.isStale(key("a"), new AttributeValue().withN("1")));
+    }
+
+    @Test
+    public void comparesLikeDynamoDB() {
+        assertTrue(LastWriteCache.compare(new AttributeValue().withN("9"), new AttributeValue().withN("10")) < 0);
+        assertTrue(LastWriteCache.compare(new AttributeValue().withS("9"), new AttributeValue().withS("10")) > 0);
+        // UTF-8 bytes are compared unsigned
+        assertTrue(LastWriteCache.compare(new AttributeValue().withS("é"), new AttributeValue().withS("z")) > 0);
+        assertNull(LastWriteCache.compare(new AttributeValue().withS("9"), new AttributeValue().withN("9")));
+    }
+}
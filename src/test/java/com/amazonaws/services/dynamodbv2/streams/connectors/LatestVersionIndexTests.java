@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.streams.connectors.transform.TransformedRecord;
+
+public class LatestVersionIndexTests {
+
+    private static Record record(String id, String sequenceNumber) {
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("id", new AttributeValue().withS(id));
+        return new Record().withEventName(OperationType.MODIFY)
+            .withDynamodb(new StreamRecord().withKeys(keys).withNewImage(keys).withSequenceNumber(sequenceNumber));
+    }
+
+    @Test
+    public void supersedesOlderRecordsOfTheSameItem() {
+        LatestVersionIndex index = new LatestVersionIndex();
+        Record older = record("a", "900");
+        index.received(older);
+        assertFalse(index.isSuperseded(older));
+        index.received(record("a", "1000"));
+        // an older record received late does not replace the latest one
+        index.received(record("a", "950"));
+        assertTrue(index.isSuperseded(older));
+        assertTrue(index.isSuperseded(record("a", "950")));
+        assertFalse(index.isSuperseded(record("a", "1000")));
+        assertFalse(index.isSuperseded(record("b", "1")));
+    }
+
+    @Test
+    public void forgetsItemOnceLatestRecordCompleted() {
+        LatestVersionIndex index = new LatestVersionIndex();
+        Record older = record("a", "1");
+        Record newer = record("a", "2");
+        index.received(older);
+        index.received(newer);
+        index.completed(older);
+        assertEquals(1, index.size());
+        index.completed(newer);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void ignoresRoutedRecords() {
+        LatestVersionIndex index = new LatestVersionIndex();
+        Record older = record("a", "1");
+        Record routed = record("a", "2");
+        index.received(older);
+        index.received(new TransformedRecord(routed, routed.getDynamodb().getKeys(), routed.getDynamodb().getNewImage(), null, "archive"));
+        assertFalse(index.isSuperseded(older));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLease;
+
+public class LocalFileLeaseManagerTests {
+    private static final String SHARD_ID = "shardId-00000001";
+    private static final String PARENT_SHARD_ID = "shardId-00000000";
+    private static final String OWNER = "worker1";
+    private static final long FLUSH_INTERVAL_MILLIS = 60000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static KinesisClientLease newLease() {
+        KinesisClientLease lease = new KinesisClientLease();
+        lease.setLeaseKey(SHARD_ID);
+        lease.setCheckpoint(ExtendedSequenceNumber.TRIM_HORIZON);
+        lease.setOwnerSwitchesSinceCheckpoint(0L);
+        lease.setParentShardIds(Collections.singleton(PARENT_SHARD_ID));
+        return lease;
+    }
+
+    @Test
+    public void leaseOperationsAreConditionalOnCounterAndOwner() throws Exception {
+        LocalFileLeaseManager leaseManager = new LocalFileLeaseManager(new File(folder.getRoot(), "leases"), FLUSH_INTERVAL_MILLIS);
+        assertTrue(leaseManager.createLeaseIfNotExists(newLease()));
+        assertFalse(leaseManager.createLeaseIfNotExists(newLease()));
+
+        KinesisClientLease lease = leaseManager.getLease(SHARD_ID);
+        KinesisClientLease stale = leaseManager.getLease(SHARD_ID);
+        assertTrue(leaseManager.takeLease(lease, OWNER));
+        assertFalse(leaseManager.takeLease(stale, "worker2"));
+        assertTrue(leaseManager.renewLease(lease));
+        assertFalse(leaseManager.renewLease(stale));
+
+        lease.setCheckpoint(new ExtendedSequenceNumber("100"));
+        assertTrue(leaseManager.updateLease(lease));
+        assertEquals(new ExtendedSequenceNumber("100"), leaseManager.getCheckpoint(SHARD_ID));
+        assertEquals(OWNER, leaseManager.getLease(SHARD_ID).getLeaseOwner());
+
+        assertTrue(leaseManager.evictLease(lease));
+        assertNull(leaseManager.getLease(SHARD_ID).getLeaseOwner());
+        leaseManager.close();
+    }
+
+    @Test
+    public void checkpointsSurviveReopen() throws Exception {
+        File file = new File(folder.getRoot(), "leases");
+        LocalFileLeaseManager leaseManager = new LocalFileLeaseManager(file, FLUSH_INTERVAL_MILLIS);
+        leaseManager.createLeaseIfNotExists(newLease());
+        KinesisClientLease lease = leaseManager.getLease(SHARD_ID);
+        leaseManager.takeLease(lease, OWNER);
+        lease.setCheckpoint(new ExtendedSequenceNumber("200", 3L));
+        leaseManager.updateLease(lease);
+        leaseManager.close();
+
+        LocalFileLeaseManager reopened = new LocalFileLeaseManager(file, FLUSH_INTERVAL_MILLIS);
+        KinesisClientLease loaded = reopened.getLease(SHARD_ID);
+        assertEquals(new ExtendedSequenceNumber("200", 3L), loaded.getCheckpoint());
+        assertEquals(lease.getLeaseCounter(), loaded.getLeaseCounter());
+        assertEquals(Collections.singleton(PARENT_SHARD_ID), loaded.getParentShardIds());
+        // the owner was a previous process, the lease is immediately available
+        assertNull(loaded.getLeaseOwner());
+        reopened.close();
+    }
+
+    @Test
+    public void flushOnlyWritesChanges() throws Exception {
+        File file = new File(folder.getRoot(), "leases");
+        LocalFileLeaseManager leaseManager = new LocalFileLeaseManager(file, FLUSH_INTERVAL_MILLIS);
+        leaseManager.flush();
+        assertFalse(file.exists());
+        leaseManager.createLeaseIfNotExists(newLease());
+        leaseManager.flush();
+        assertTrue(file.exists());
+        leaseManager.close();
+    }
+
+    @Test
+    public void concurrentFlushesNeverWriteOlderOrMixedState() throws Exception {
+        File file = new File(folder.getRoot(), "leases");
+        LocalFileLeaseManager leaseManager = new LocalFileLeaseManager(file, 1L);
+        leaseManager.createLeaseIfNotExists(newLease());
+        KinesisClientLease lease = leaseManager.getLease(SHARD_ID);
+        leaseManager.takeLease(lease, OWNER);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> flushes = new ArrayList<Future<?>>();
+        for (int i = 1; i <= 200; i++) {
+            lease.setCheckpoint(new ExtendedSequenceNumber(Integer.toString(i)));
+            assertTrue(leaseManager.updateLease(lease));
+            flushes.add(executor.submit(() -> {
+                leaseManager.flush();
+                return null;
+            }));
+        }
+        for (Future<?> flush : flushes) {
+            flush.get();
+        }
+        executor.shutdown();
+        // the scheduled flush and the closing flush do not overlap either
+        leaseManager.close();
+
+        LocalFileLeaseManager reopened = new LocalFileLeaseManager(file, FLUSH_INTERVAL_MILLIS);
+        assertEquals(new ExtendedSequenceNumber("200"), reopened.getCheckpoint(SHARD_ID));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        reopened.close();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.amazonaws.regions.Regions;
+import com.beust.jcommander.ParameterException;
+
+public class MeshTopologyManagerTests {
+
+    private static final List<ReplicaTable> TABLES = ReplicaTable.parse("us-east-1:table,eu-west-1:table, ap-southeast-2:other");
+
+    @Test
+    public void parsesTables() {
+        assertEquals(3, TABLES.size());
+        assertEquals(Regions.AP_SOUTHEAST_2.getName(), TABLES.get(2).getRegion().getName());
+        assertEquals("other", TABLES.get(2).getTable());
+        assertEquals("eu-west-1/table", TABLES.get(1).getName());
+    }
+
+    @Test(expected = ParameterException.class)
+    public void rejectsTableWithoutRegion() {
+        ReplicaTable.parse("us-east-1:table,table");
+    }
+
+    @Test
+    public void fansEachSourceOutToTheOtherTables() {
+        MeshTopologyManager mesh = new MeshTopologyManager(TABLES,
+            () -> new KinesisWorkerCreator().setTaskName("shared").setLocalCheckpointFile("checkpoints"));
+        KinesisWorkerCreator creator = mesh.getCreator(TABLES.get(1));
+        assertEquals(Regions.EU_WEST_1.getName(), creator.getSourceRegion().getName());
+        assertEquals(Regions.US_EAST_1.getName(), creator.getDestinationRegion().getName());
+        assertEquals("table", creator.getDestinationTable());
+        assertEquals(1, creator.getReplicas().size());
+        assertEquals("ap-southeast-2/other", creator.getReplicas().get(0).getName());
+        assertEquals(null, creator.getTaskName());
+        assertEquals(Optional.of("eu-west-1/table"), creator.getOrigin());
+        assertEquals(Optional.of(DynamoDBConnectorConstants.DEFAULT_ORIGIN_ATTRIBUTE), creator.getOriginAttribute());
+        assertEquals(Optional.of("checkpoints-eu-west-1-table"), creator.getLocalCheckpointFile());
+        assertFalse(creator.getDestinationClients().equals(Optional.empty()));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.LimitExceededException;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataResult;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+
+public class MetricsPublisherTests {
+
+    private static final long HOUR_MILLIS = 3600000L;
+
+    private static class RecordingCloudWatch extends NoopCloudWatch {
+        private final List<PutMetricDataRequest> requests = new ArrayList<PutMetricDataRequest>();
+        private boolean throttled;
+
+        @Override
+        public PutMetricDataResult putMetricData(PutMetricDataRequest request) {
+            if (throttled) {
+                throw new LimitExceededException("Rate exceeded");
+            }
+            requests.add(request);
+            return new PutMetricDataResult();
+        }
+
+        Map<String, StatisticSet> statistics() {
+            Map<String, StatisticSet> statistics = new HashMap<String, StatisticSet>();
+            for (PutMetricDataRequest request : requests) {
+                for (MetricDatum datum : request.getMetricData()) {
+                    statistics.put(datum.getMetricName() + datum.getDimensions(), datum.getStatisticValues());
+                }
+            }
+            return statistics;
+        }
+    }
+
+    private final RecordingCloudWatch cloudwatch = new RecordingCloudWatch();
+    private MetricsPublisher publisher;
+
+    @After
+    public void tearDown() {
+        publisher.shutdown();
+    }
+
+    private static PutMetricDataRequest request(String name, double value, Dimension... dimensions) {
+        return new PutMetricDataRequest().withNamespace("app").withMetricData(
+            new MetricDatum().withMetricName(name).withValue(value).withUnit(StandardUnit.Count).withDimensions(dimensions));
+    }
+
+    @Test
+    public void aggregatesDatumsIntoStatisticSets() {
+        publisher = new MetricsPublisher(cloudwatch, HOUR_MILLIS, 10);
+        Dimension shard = new Dimension().withName("ShardId").withValue("shard-1");
+        publisher.putMetricData(request("RecordsWritten", 3, shard));
+        publisher.putMetricData(request("RecordsWritten", 7, shard));
+        publisher.putMetricData(request("RecordsWritten", 5));
+        assertTrue(cloudwatch.requests.isEmpty());
+        publisher.flush();
+        assertEquals(1, cloudwatch.requests.size());
+        StatisticSet perShard = cloudwatch.statistics().get("RecordsWritten[" + shard + "]");
+        assertEquals(10.0, perShard.getSum(), 0.0);
+        assertEquals(2.0, perShard.getSampleCount(), 0.0);
+        assertEquals(3.0, perShard.getMinimum(), 0.0);
+        assertEquals(7.0, perShard.getMaximum(), 0.0);
+        // the datums with dimensions are rolled up
+        StatisticSet worker = cloudwatch.statistics().get("RecordsWritten[]");
+        assertEquals(15.0, worker.getSum(), 0.0);
+        assertEquals(3.0, worker.getSampleCount(), 0.0);
+        // nothing was recorded since the last flush
+        publisher.flush();
+        assertEquals(1, cloudwatch.requests.size());
+    }
+
+    @Test
+    public void batchesDatumsPerRequest() {
+        publisher = new MetricsPublisher(cloudwatch, HOUR_MILLIS, 10);
+        for (int i = 0; i < MetricsPublisher.MAX_DATUMS_PER_REQUEST + 1; i++) {
+            publisher.putMetricData(request("Metric" + i, 1));
+        }
+        publisher.flush();
+        assertEquals(2, cloudwatch.requests.size());
+    }
+
+    @Test
+    public void retriesThrottledRequestsAndDropsOldestBeyondQueueSize() {
+        publisher = new MetricsPublisher(cloudwatch, HOUR_MILLIS, 2);
+        cloudwatch.throttled = true;
+        for (int i = 0; i < 3; i++) {
+            publisher.putMetricData(request("Metric" + i, 1));
+            publisher.flush();
+        }
+        assertEquals(1, publisher.getDroppedRequests());
+        cloudwatch.throttled = false;
+        publisher.flush();
+        assertEquals(2, cloudwatch.requests.size());
+        assertEquals("Metric1", cloudwatch.requests.get(0).getMetricData().get(0).getMetricName());
+    }
+
+    @Test
+    public void publishesDatumsPutDuringFlushOnceAndConsistently() throws Exception {
+        publisher = new MetricsPublisher(cloudwatch, HOUR_MILLIS, Integer.MAX_VALUE);
+        final int writers = 4;
+        final int datums = 20000;
+        Dimension shard = new Dimension().withName("ShardId").withValue("shard-1");
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < writers; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < datums; j++) {
+                    publisher.putMetricData(request("RecordsWritten", 2, shard));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        while (!futures.stream().allMatch(Future::isDone)) {
+            publisher.flush();
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        publisher.flush();
+        double sum = 0;
+        double samples = 0;
+        for (PutMetricDataRequest request : cloudwatch.requests) {
+            for (MetricDatum datum : request.getMetricData()) {
+                StatisticSet statistics = datum.getStatisticValues();
+                // the sum and the sample count of a datum put during a flush are published in the same interval
+                assertEquals(2.0 * statistics.getSampleCount(), statistics.getSum(), 0.0);
+                if (!datum.getDimensions().isEmpty()) {
+                    sum += statistics.getSum();
+                    samples += statistics.getSampleCount();
+                }
+            }
+        }
+        assertEquals(2.0 * writers * datums, sum, 0.0);
+        assertEquals((double) writers * datums, samples, 0.0);
+    }
+}
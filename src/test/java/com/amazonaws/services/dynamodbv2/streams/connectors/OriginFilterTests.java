@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.kinesis.connectors.impl.AllPassFilter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+
+public class OriginFilterTests {
+
+    private static final String ORIGIN_ATTRIBUTE = "origin";
+
+    private final OriginFilter filter = new OriginFilter(ORIGIN_ATTRIBUTE, "us-east-1/table");
+
+    private static Map<String, AttributeValue> image(String marker) {
+        Map<String, AttributeValue> image = new HashMap<String, AttributeValue>();
+        image.put("hashKey", new AttributeValue().withS("a"));
+        if (null != marker) {
+            image.put(ORIGIN_ATTRIBUTE, new AttributeValue().withS(marker));
+        }
+        return image;
+    }
+
+    private static Record record(OperationType operation, Map<String, AttributeValue> oldImage, Map<String, AttributeValue> newImage) {
+        return new Record().withEventName(operation.toString())
+            .withDynamodb(new StreamRecord().withKeys(image(null)).withOldImage(oldImage).withNewImage(newImage));
+    }
+
+    @Test
+    public void dropsWritesOfForeignReplicator() {
+        assertFalse(filter.keepRecord(record(OperationType.INSERT, null, image("eu-west-1/table#1"))));
+        assertFalse(filter.keepRecord(record(OperationType.MODIFY, image("eu-west-1/table#1"), image("eu-west-1/table#2"))));
+        assertFalse(filter.keepRecord(record(OperationType.MODIFY, image(null), image("eu-west-1/table#2"))));
+        // an origin sharing the prefix of this one is still foreign
+        assertFalse(filter.keepRecord(record(OperationType.INSERT, null, image("us-east-1/table2#1"))));
+    }
+
+    @Test
+    public void keepsApplicationWrites() {
+        assertTrue(filter.keepRecord(record(OperationType.INSERT, null, image(null))));
+        // an update leaving the marker of an earlier replicated write unchanged
+        assertTrue(filter.keepRecord(record(OperationType.MODIFY, image("eu-west-1/table#1"), image("eu-west-1/table#1"))));
+        assertTrue(filter.keepRecord(record(OperationType.MODIFY, image(null), image("us-east-1/table#2"))));
+        assertTrue(filter.keepRecord(record(OperationType.REMOVE, image("eu-west-1/table#1"), null)));
+    }
+
+    @Test
+    public void markersDifferForEveryRecord() {
+        assertFalse(OriginFilter.getMarker("us-east-1/table", new StreamRecord().withSequenceNumber("1"))
+            .equals(OriginFilter.getMarker("us-east-1/table", new StreamRecord().withSequenceNumber("2"))));
+    }
+
+    @Test
+    public void pipelineFiltersOriginOnceConfigured() {
+        DynamoDBMasterToReplicasPipeline pipeline = new DynamoDBMasterToReplicasPipeline();
+        assertTrue(pipeline.getFilter(new DynamoDBStreamsConnectorConfiguration(new Properties(), null)) instanceof AllPassFilter);
+
+        Properties properties = new Properties();
+        properties.setProperty(DynamoDBStreamsConnectorConfiguration.PROP_ORIGIN_ATTRIBUTE, ORIGIN_ATTRIBUTE);
+        properties.setProperty(DynamoDBStreamsConnectorConfiguration.PROP_ORIGIN, "us-east-1/table");
+        DynamoDBStreamsConnectorConfiguration configuration = new DynamoDBStreamsConnectorConfiguration(properties, null);
+        IFilter<Record> originFilter = pipeline.getFilter(configuration);
+        assertTrue(originFilter instanceof OriginFilter);
+        assertFalse(originFilter.keepRecord(record(OperationType.INSERT, null, image("eu-west-1/table#1"))));
+        // copied items are not writes, whatever their origin
+        assertTrue(pipeline.getCopyFilter(configuration) instanceof AllPassFilter);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+public class OutageSpoolTests {
+
+    private static final int SIZE_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Record record(String key, String sequenceNumber) {
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("hashKey", new AttributeValue().withS(key));
+        return new Record().withEventName(OperationType.MODIFY).withDynamodb(
+            new StreamRecord().withKeys(keys).withNewImage(keys).withSequenceNumber(sequenceNumber));
+    }
+
+    @Test
+    public void keepsLatestRecordPerKeyAcrossReopen() throws Exception {
+        File file = new File(folder.getRoot(), "pipeline.outage");
+        OutageSpool spool = new OutageSpool(file, SIZE_BYTES);
+        assertFalse(spool.offer(record("a", "100"), false));
+        assertTrue(spool.offer(record("a", "200"), true));
+        assertTrue(spool.offer(record("b", "300"), true));
+        // spooled keys keep being spooled after the outage, so that their records stay in order
+        assertTrue(spool.offer(record("a", "400"), false));
+        assertFalse(spool.offer(record("c", "500"), false));
+        assertEquals(2, spool.size());
+        spool.close();
+
+        OutageSpool reopened = new OutageSpool(file, SIZE_BYTES);
+        List<OutageSpool.Entry> entries = reopened.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals("300", entries.get(0).getRecord().getDynamodb().getSequenceNumber());
+        assertEquals("400", entries.get(1).getRecord().getDynamodb().getSequenceNumber());
+        reopened.remove(entries.subList(0, 1));
+        reopened.close();
+
+        OutageSpool resumed = new OutageSpool(file, SIZE_BYTES);
+        assertEquals(1, resumed.size());
+        assertEquals("400", resumed.peek(10).get(0).getRecord().getDynamodb().getSequenceNumber());
+        resumed.close();
+    }
+
+    @Test
+    public void supersededRecordIsNotRemoved() throws Exception {
+        OutageSpool spool = new OutageSpool(new File(folder.getRoot(), "pipeline.outage"), SIZE_BYTES);
+        spool.offer(record("a", "100"), true);
+        List<OutageSpool.Entry> drained = spool.peek(10);
+        spool.offer(record("a", "200"), false);
+        spool.remove(drained);
+        assertEquals(1, spool.size());
+        assertEquals("200", spool.peek(10).get(0).getRecord().getDynamodb().getSequenceNumber());
+        spool.close();
+    }
+
+    @Test
+    public void compactsWhenFull() throws Exception {
+        File file = new File(folder.getRoot(), "pipeline.outage");
+        OutageSpool spool = new OutageSpool(file, SIZE_BYTES);
+        // far more updates than fit in the spool, of only two keys
+        for (int i = 0; i < 200; i++) {
+            spool.offer(record(i % 2 == 0 ? "a" : "b", Integer.toString(i)), true);
+        }
+        assertEquals(2, spool.size());
+        spool.close();
+
+        OutageSpool reopened = new OutageSpool(file, SIZE_BYTES);
+        List<OutageSpool.Entry> entries = reopened.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals("198", entries.get(0).getRecord().getDynamodb().getSequenceNumber());
+        assertEquals("199", entries.get(1).getRecord().getDynamodb().getSequenceNumber());
+        reopened.remove(entries);
+        assertEquals(0, reopened.size());
+        reopened.close();
+    }
+}
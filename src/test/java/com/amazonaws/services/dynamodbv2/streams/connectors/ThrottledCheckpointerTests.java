@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+
+public class ThrottledCheckpointerTests {
+    private static final String SEQ_NUM_1 = "100";
+    private static final String SEQ_NUM_2 = "200";
+
+    private final AtomicLong now = new AtomicLong(0L);
+    private IRecordProcessorCheckpointer delegate;
+
+    @Before
+    public void setUp() {
+        now.set(0L);
+        delegate = createMock(IRecordProcessorCheckpointer.class);
+    }
+
+    private ThrottledCheckpointer createCheckpointer(long intervalMillis, long maxRecords) {
+        ThrottledCheckpointer checkpointer = new ThrottledCheckpointer(intervalMillis, maxRecords, null, "TEST") {
+            @Override
+            protected long currentTimeMillis() {
+                return now.get();
+            }
+        };
+        checkpointer.setDelegate(delegate);
+        return checkpointer;
+    }
+
+    @Test
+    public void checkpointsEveryTimeByDefault() throws Exception {
+        delegate.checkpoint(SEQ_NUM_1);
+        delegate.checkpoint(SEQ_NUM_2);
+        replay(delegate);
+        ThrottledCheckpointer checkpointer = createCheckpointer(0L, 0L);
+        checkpointer.checkpoint(SEQ_NUM_1);
+        checkpointer.checkpoint(SEQ_NUM_2);
+        assertNull(checkpointer.getPendingSequenceNumber());
+        verify(delegate);
+    }
+
+    @Test
+    public void coalescesWithinInterval() throws Exception {
+        delegate.checkpoint(SEQ_NUM_2);
+        replay(delegate);
+        ThrottledCheckpointer checkpointer = createCheckpointer(1000L, 0L);
+        checkpointer.checkpoint(SEQ_NUM_1);
+        now.set(500L);
+        checkpointer.checkpoint(SEQ_NUM_2);
+        assertEquals(SEQ_NUM_2, checkpointer.getPendingSequenceNumber());
+        now.set(1000L);
+        checkpointer.checkpointIfDue();
+        assertNull(checkpointer.getPendingSequenceNumber());
+        verify(delegate);
+    }
+
+    @Test
+    public void checkpointsAfterMaxRecords() throws Exception {
+        delegate.checkpoint(SEQ_NUM_2);
+        replay(delegate);
+        ThrottledCheckpointer checkpointer = createCheckpointer(60000L, 10L);
+        checkpointer.recordsReceived(5);
+        checkpointer.checkpoint(SEQ_NUM_1);
+        checkpointer.recordsReceived(5);
+        checkpointer.checkpoint(SEQ_NUM_2);
+        assertNull(checkpointer.getPendingSequenceNumber());
+        verify(delegate);
+    }
+
+    @Test
+    public void flushWritesPendingCheckpoint() throws Exception {
+        delegate.checkpoint(SEQ_NUM_1);
+        replay(delegate);
+        ThrottledCheckpointer checkpointer = createCheckpointer(60000L, 0L);
+        checkpointer.checkpoint(SEQ_NUM_1);
+        checkpointer.flush();
+        checkpointer.flush();
+        verify(delegate);
+    }
+
+    @Test
+    public void shardEndIsNotDelayed() throws Exception {
+        delegate.checkpoint();
+        replay(delegate);
+        ThrottledCheckpointer checkpointer = createCheckpointer(60000L, 0L);
+        checkpointer.checkpoint(SEQ_NUM_1);
+        checkpointer.checkpoint();
+        assertNull(checkpointer.getPendingSequenceNumber());
+        checkpointer.flush();
+        verify(delegate);
+    }
+
+    @Test
+    public void discardDropsPendingCheckpoint() throws Exception {
+        replay(delegate);
+        ThrottledCheckpointer checkpointer = createCheckpointer(60000L, 0L);
+        checkpointer.checkpoint(SEQ_NUM_1);
+        checkpointer.discard();
+        checkpointer.flush();
+        verify(delegate);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+public class WriteSchedulerTests {
+
+    private static Record record(String partition, String sort) {
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("pk", new AttributeValue().withS(partition));
+        keys.put("sk", new AttributeValue().withS(sort));
+        return new Record().withEventName(OperationType.INSERT).withDynamodb(new StreamRecord().withKeys(keys).withNewImage(keys));
+    }
+
+    private static Object partition(Record record) {
+        return record.getDynamodb().getKeys().get("pk");
+    }
+
+    @Test
+    public void interleavesPartitionsAndCapsWritesInFlight() throws Exception {
+        Record a1 = record("a", "1");
+        Record a2 = record("a", "2");
+        Record a3 = record("a", "3");
+        Record b1 = record("b", "1");
+        WriteScheduler scheduler = new WriteScheduler(Arrays.asList(a1, a2, a3, b1), WriteSchedulerTests::partition, 2);
+        assertSame(a1, scheduler.poll(0L));
+        assertSame(b1, scheduler.poll(0L));
+        assertSame(a2, scheduler.poll(0L));
+        // two writes of partition a in flight already
+        assertNull(scheduler.poll(10L));
+        scheduler.completed(a1);
+        assertSame(a3, scheduler.poll(0L));
+    }
+
+    @Test
+    public void backsOffThrottledPartitionOnly() throws Exception {
+        Record a1 = record("a", "1");
+        Record b1 = record("b", "1");
+        Record b2 = record("b", "2");
+        WriteScheduler scheduler = new WriteScheduler(Arrays.asList(a1, b1, b2), WriteSchedulerTests::partition, 1);
+        assertSame(a1, scheduler.poll(0L));
+        assertSame(b1, scheduler.poll(0L));
+        scheduler.retry(a1, true);
+        scheduler.completed(b1);
+        assertSame(b2, scheduler.poll(0L));
+        final long start = System.currentTimeMillis();
+        assertSame(a1, scheduler.poll(1000L));
+        assertTrue(System.currentTimeMillis() - start >= WriteScheduler.INITIAL_BACKOFF_MILLIS - 5);
+        scheduler.completed(a1);
+        assertEquals(Integer.valueOf(1), scheduler.getThrottles().get(new AttributeValue().withS("a")));
+        assertEquals(1, scheduler.getThrottles().size());
+    }
+
+    @Test
+    public void keepsOrderWithoutCap() throws Exception {
+        Record a1 = record("a", "1");
+        Record b1 = record("b", "1");
+        Record a2 = record("a", "2");
+        Record b2 = record("b", "2");
+        WriteScheduler scheduler = new WriteScheduler(Arrays.asList(a1, b1, a2, b2), WriteSchedulerTests::partition, 0);
+        assertSame(a1, scheduler.poll(0L));
+        assertSame(b1, scheduler.poll(0L));
+        // retried records go back to the tail of the queue
+        scheduler.retry(b1, false);
+        assertSame(a2, scheduler.poll(0L));
+        // a throttled write is retried without backing off the queue
+        scheduler.retry(a1, true);
+        assertSame(b2, scheduler.poll(0L));
+        assertSame(b1, scheduler.poll(0L));
+        assertSame(a1, scheduler.poll(0L));
+        assertNull(scheduler.poll(0L));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+
+public class ExportFileBootstrapTests {
+    private static final String HASH_KEY = "hashKey";
+    private static final List<KeySchemaElement> KEY_SCHEMA = Collections.singletonList(new KeySchemaElement(HASH_KEY, KeyType.HASH));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String line(String key) {
+        return "{\"Item\":{\"" + HASH_KEY + "\":{\"S\":\"" + key + "\"},\"list\":{\"L\":[{\"N\":\"1\"},{\"M\":{\"flag\":{\"BOOL\":true}}}]}}}\n";
+    }
+
+    @Test
+    public void copiesTheItemsOfGzippedAndPlainExportFiles() throws Exception {
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(folder.newFile("a.json.gz").toPath())),
+            StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ExportFileBootstrap.BATCH_SIZE + 1; i++) {
+                writer.write(line("a" + i));
+            }
+        }
+        try (OutputStream output = Files.newOutputStream(folder.newFile("b.json").toPath())) {
+            output.write(line("b").getBytes(StandardCharsets.UTF_8));
+        }
+        folder.newFile("manifest-summary.md5");
+
+        ParallelScanBootstrapTests.RecordingPipeline pipeline = new ParallelScanBootstrapTests.RecordingPipeline();
+        File directory = folder.getRoot();
+        long exportTimeMillis = System.currentTimeMillis();
+        ExportFileBootstrap bootstrap = new ExportFileBootstrap(directory, KEY_SCHEMA, exportTimeMillis, 2, 0,
+            Collections.singletonList(new BootstrapSink(pipeline, ParallelScanBootstrapTests.config)));
+
+        assertEquals(ExportFileBootstrap.BATCH_SIZE + 2L, bootstrap.run());
+        Set<String> keys = new HashSet<String>();
+        for (Record record : pipeline.emitted) {
+            assertEquals(OperationType.INSERT.toString(), record.getEventName());
+            AttributeValue list = record.getDynamodb().getNewImage().get("list");
+            assertEquals("1", list.getL().get(0).getN());
+            assertTrue(list.getL().get(1).getM().get("flag").getBOOL());
+            keys.add(record.getDynamodb().getKeys().get(HASH_KEY).getS());
+        }
+        assertEquals(ExportFileBootstrap.BATCH_SIZE + 2, keys.size());
+        assertTrue(keys.contains("b"));
+        assertTrue(pipeline.shutdown);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsWhenTheExportIsOlderThanTheStreamRetention() throws Exception {
+        try (OutputStream output = Files.newOutputStream(folder.newFile("b.json").toPath())) {
+            output.write(line("b").getBytes(StandardCharsets.UTF_8));
+        }
+        ExportFileBootstrap bootstrap = new ExportFileBootstrap(folder.getRoot(), KEY_SCHEMA,
+            System.currentTimeMillis() - BootstrapWriter.STREAM_RETENTION_MILLIS - 1, 1, 0,
+            Collections.singletonList(new BootstrapSink(new ParallelScanBootstrapTests.RecordingPipeline(), ParallelScanBootstrapTests.config)));
+        bootstrap.run();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+public class LocalSegmentProgressStoreTests {
+    private static final long LEASE_DURATION_MILLIS = 60000L;
+    private static final Map<String, AttributeValue> KEY = Collections.singletonMap("hashKey", new AttributeValue().withS("key1"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void segmentIsLeasedToOneOwner() {
+        LocalSegmentProgressStore store = new LocalSegmentProgressStore(null);
+        assertNotNull(store.tryLease(0, "owner1", LEASE_DURATION_MILLIS));
+        assertNull(store.tryLease(0, "owner2", LEASE_DURATION_MILLIS));
+        assertFalse(store.checkpoint(0, "owner2", KEY, LEASE_DURATION_MILLIS));
+        assertTrue(store.complete(0, "owner1"));
+        assertNull(store.tryLease(0, "owner2", LEASE_DURATION_MILLIS));
+    }
+
+    @Test
+    public void expiredLeaseIsTakenOver() {
+        LocalSegmentProgressStore store = new LocalSegmentProgressStore(null);
+        assertNotNull(store.tryLease(0, "owner1", 0L));
+        assertNotNull(store.tryLease(0, "owner2", LEASE_DURATION_MILLIS));
+        assertFalse(store.checkpoint(0, "owner1", KEY, LEASE_DURATION_MILLIS));
+    }
+
+    @Test
+    public void progressSurvivesRestart() {
+        LocalSegmentProgressStore store = new LocalSegmentProgressStore(folder.getRoot());
+        assertEquals(100L, store.initialize(2, 100L));
+        store.tryLease(0, "owner1", LEASE_DURATION_MILLIS);
+        store.checkpoint(0, "owner1", KEY, LEASE_DURATION_MILLIS);
+        store.tryLease(1, "owner1", LEASE_DURATION_MILLIS);
+        store.complete(1, "owner1");
+
+        LocalSegmentProgressStore restarted = new LocalSegmentProgressStore(folder.getRoot());
+        assertEquals(100L, restarted.initialize(2, 200L));
+        SegmentProgress resumed = restarted.tryLease(0, "owner2", LEASE_DURATION_MILLIS);
+        assertEquals(KEY, resumed.getLastEvaluatedKey());
+        assertFalse(resumed.isComplete());
+        assertTrue(restarted.getProgress(1).isComplete());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void segmentCountCannotChange() {
+        new LocalSegmentProgressStore(folder.getRoot()).initialize(2, 100L);
+        new LocalSegmentProgressStore(folder.getRoot()).initialize(4, 200L);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBBuffer;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBMasterToReplicasPipeline;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBStreamsConnectorConfiguration;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBStreamsRecordTransformer;
+import com.amazonaws.services.kinesis.connectors.KinesisConnectorConfiguration;
+import com.amazonaws.services.kinesis.connectors.UnmodifiableBuffer;
+import com.amazonaws.services.kinesis.connectors.impl.AllPassFilter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IBuffer;
+import com.amazonaws.services.kinesis.connectors.interfaces.IEmitter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IFilter;
+import com.amazonaws.services.kinesis.connectors.interfaces.IKinesisConnectorPipeline;
+import com.amazonaws.services.kinesis.connectors.interfaces.ITransformer;
+
+public class ParallelScanBootstrapTests {
+    private static final String TABLE_NAME = "table";
+    private static final String HASH_KEY = "hashKey";
+    static final DynamoDBStreamsConnectorConfiguration config = new DynamoDBStreamsConnectorConfiguration(new Properties(), null);
+
+    private static Map<String, AttributeValue> item(String key) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put(HASH_KEY, new AttributeValue().withS(key));
+        item.put("att", new AttributeValue().withN("1"));
+        return item;
+    }
+
+    /**
+     * Pipeline whose emitter records the emitted records.
+     */
+    static class RecordingPipeline implements IKinesisConnectorPipeline<Record, Record> {
+        final List<Record> emitted = Collections.synchronizedList(new ArrayList<Record>());
+        boolean shutdown = false;
+
+        @Override
+        public IEmitter<Record> getEmitter(KinesisConnectorConfiguration configuration) {
+            return new IEmitter<Record>() {
+                @Override
+                public List<Record> emit(UnmodifiableBuffer<Record> buffer) {
+                    emitted.addAll(buffer.getRecords());
+                    return Collections.emptyList();
+                }
+
+                @Override
+                public void fail(List<Record> records) {
+                }
+
+                @Override
+                public void shutdown() {
+                    shutdown = true;
+                }
+            };
+        }
+
+        @Override
+        public IBuffer<Record> getBuffer(KinesisConnectorConfiguration configuration) {
+            return new DynamoDBBuffer(config);
+        }
+
+        @Override
+        public ITransformer<Record, Record> getTransformer(KinesisConnectorConfiguration configuration) {
+            return new DynamoDBStreamsRecordTransformer();
+        }
+
+        @Override
+        public IFilter<Record> getFilter(KinesisConnectorConfiguration configuration) {
+            return new AllPassFilter<Record>();
+        }
+    }
+
+    @Test
+    public void copiesAllPagesOfEverySegmentAsInserts() throws Exception {
+        AmazonDynamoDB dynamodb = createMock(AmazonDynamoDB.class);
+        expect(dynamodb.describeTable(TABLE_NAME)).andReturn(new DescribeTableResult().withTable(
+            new TableDescription().withKeySchema(new KeySchemaElement(HASH_KEY, KeyType.HASH))));
+        Map<String, AttributeValue> lastEvaluatedKey = Collections.singletonMap(HASH_KEY, new AttributeValue().withS("b"));
+        expect(dynamodb.scan(anyObject(ScanRequest.class))).andReturn(
+            new ScanResult().withItems(item("a"), item("b")).withLastEvaluatedKey(lastEvaluatedKey));
+        expect(dynamodb.scan(anyObject(ScanRequest.class))).andReturn(new ScanResult().withItems(item("c")));
+        replay(dynamodb);
+
+        RecordingPipeline pipeline = new RecordingPipeline();
+        ParallelScanBootstrap bootstrap = new ParallelScanBootstrap(dynamodb, TABLE_NAME, 1, 0, 0,
+            Collections.singletonList(new BootstrapSink(pipeline, config)));
+
+        assertEquals(3L, bootstrap.run());
+        assertEquals(3, pipeline.emitted.size());
+        for (Record record : pipeline.emitted) {
+            assertEquals(OperationType.INSERT.toString(), record.getEventName());
+            assertEquals(Collections.singleton(HASH_KEY), record.getDynamodb().getKeys().keySet());
+            assertEquals(record.getDynamodb().getKeys().get(HASH_KEY), record.getDynamodb().getNewImage().get(HASH_KEY));
+        }
+        assertTrue(pipeline.shutdown);
+        verify(dynamodb);
+    }
+
+    @Test
+    public void copiesItemsReplicatedFromOtherRegions() throws Exception {
+        AmazonDynamoDB dynamodb = createMock(AmazonDynamoDB.class);
+        expect(dynamodb.describeTable(TABLE_NAME)).andReturn(new DescribeTableResult().withTable(
+            new TableDescription().withKeySchema(new KeySchemaElement(HASH_KEY, KeyType.HASH))));
+        Map<String, AttributeValue> replicated = item("a");
+        replicated.put("origin", new AttributeValue().withS("eu-west-1/table#1"));
+        expect(dynamodb.scan(anyObject(ScanRequest.class))).andReturn(new ScanResult().withItems(replicated, item("b")));
+        replay(dynamodb);
+
+        Properties properties = new Properties();
+        properties.setProperty(DynamoDBStreamsConnectorConfiguration.PROP_ORIGIN_ATTRIBUTE, "origin");
+        properties.setProperty(DynamoDBStreamsConnectorConfiguration.PROP_ORIGIN, "us-east-1/table");
+        DynamoDBStreamsConnectorConfiguration meshConfig = new DynamoDBStreamsConnectorConfiguration(properties, null);
+        RecordingPipeline recording = new RecordingPipeline();
+        DynamoDBMasterToReplicasPipeline pipeline = new DynamoDBMasterToReplicasPipeline() {
+            @Override
+            public IEmitter<Record> getEmitter(KinesisConnectorConfiguration configuration) {
+                return recording.getEmitter(configuration);
+            }
+        };
+        // the stream record of the same item is a replicated write, never replicated back
+        assertFalse(pipeline.getFilter(meshConfig).keepRecord(BootstrapSink.toRecord(replicated,
+            Collections.singletonList(new KeySchemaElement(HASH_KEY, KeyType.HASH)), new Date())));
+        ParallelScanBootstrap bootstrap = new ParallelScanBootstrap(dynamodb, TABLE_NAME, 1, 0, 0,
+            Collections.singletonList(new BootstrapSink(pipeline, meshConfig)));
+
+        assertEquals(2L, bootstrap.run());
+        assertEquals(2, recording.emitted.size());
+        verify(dynamodb);
+    }
+}
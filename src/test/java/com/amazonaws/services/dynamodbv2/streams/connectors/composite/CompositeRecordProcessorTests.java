@@ -0,0 +1,319 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.composite;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataResult;
+import com.amazonaws.services.dynamodbv2.streams.connectors.NoopCloudWatch;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessor;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.v2.IShutdownNotificationAware;
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.ShutdownReason;
+import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.clientlibrary.types.InitializationInput;
+import com.amazonaws.services.kinesis.clientlibrary.types.ProcessRecordsInput;
+import com.amazonaws.services.kinesis.clientlibrary.types.ShutdownInput;
+import com.amazonaws.services.kinesis.leases.impl.KinesisClientLease;
+import com.amazonaws.services.kinesis.leases.interfaces.ILeaseManager;
+import com.amazonaws.services.kinesis.model.Record;
+
+public class CompositeRecordProcessorTests {
+    private static final String SHARD_ID = "shardId-00000001";
+    private static final String PARENT_SHARD_ID = "shardId-00000000";
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000L;
+
+    static class RecordingProcessor implements IRecordProcessor, IShutdownNotificationAware, IRecordsReceivedAware {
+        final List<Record> received = new CopyOnWriteArrayList<Record>();
+        final List<Record> processed = new CopyOnWriteArrayList<Record>();
+        volatile String shardId;
+        volatile boolean shutdownRequested;
+
+        @Override
+        public void initialize(String shardId) {
+            this.shardId = shardId;
+        }
+
+        @Override
+        public void recordsReceived(List<Record> records) {
+            received.addAll(records);
+        }
+
+        @Override
+        public void processRecords(List<Record> records, IRecordProcessorCheckpointer checkpointer) {
+            processed.addAll(records);
+        }
+
+        @Override
+        public void shutdownRequested(IRecordProcessorCheckpointer checkpointer) {
+            shutdownRequested = true;
+        }
+
+        @Override
+        public void shutdown(IRecordProcessorCheckpointer checkpointer, ShutdownReason reason) {
+        }
+    }
+
+    /**
+     * Processor checkpointing the last record of every batch after waiting for the given latch, and the shard end when
+     * the shard is terminated.
+     */
+    static class CheckpointingProcessor extends RecordingProcessor {
+        private final CountDownLatch start;
+
+        CheckpointingProcessor(CountDownLatch start) {
+            this.start = start;
+        }
+
+        @Override
+        public void processRecords(List<Record> records, IRecordProcessorCheckpointer checkpointer) {
+            try {
+                start.await();
+                super.processRecords(records, checkpointer);
+                checkpointer.checkpoint(records.get(records.size() - 1));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void shutdown(IRecordProcessorCheckpointer checkpointer, ShutdownReason reason) {
+            if (ShutdownReason.TERMINATE != reason) {
+                return;
+            }
+            try {
+                checkpointer.checkpoint();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class RecordingCloudWatch extends NoopCloudWatch {
+        private final List<MetricDatum> datums = new ArrayList<MetricDatum>();
+
+        @Override
+        public PutMetricDataResult putMetricData(PutMetricDataRequest request) {
+            datums.addAll(request.getMetricData());
+            return new PutMetricDataResult();
+        }
+    }
+
+    static Record record(String sequenceNumber) {
+        return new Record().withSequenceNumber(sequenceNumber).withApproximateArrivalTimestamp(new Date(System.currentTimeMillis() - 1000L));
+    }
+
+    static ProcessRecordsInput batch(IRecordProcessorCheckpointer checkpointer, Record... records) {
+        return new ProcessRecordsInput().withRecords(Arrays.asList(records)).withCheckpointer(checkpointer);
+    }
+
+    private static KinesisClientLease lease(String... parentShardIds) {
+        KinesisClientLease lease = new KinesisClientLease();
+        lease.setLeaseKey(SHARD_ID);
+        lease.setParentShardIds(Arrays.asList(parentShardIds));
+        return lease;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ILeaseManager<KinesisClientLease> leaseManager(KinesisClientLease lease) throws Exception {
+        ILeaseManager<KinesisClientLease> leaseManager = createMock(ILeaseManager.class);
+        expect(leaseManager.getLease(SHARD_ID)).andReturn(lease);
+        replay(leaseManager);
+        return leaseManager;
+    }
+
+    @Test
+    public void initializesAndDispatchesToEveryProcessor() {
+        RecordingProcessor first = new RecordingProcessor();
+        RecordingProcessor second = new RecordingProcessor();
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Arrays.<IRecordProcessor>asList(first, second), null, null, null,
+            DRAIN_TIMEOUT_MILLIS);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(null, record("100"), record("200")));
+        composite.processRecords(batch(null, record("300")));
+        // the batches are drained before the processors are asked to shut down
+        composite.shutdownRequested(null);
+        for (RecordingProcessor processor : Arrays.asList(first, second)) {
+            assertEquals(SHARD_ID, processor.shardId);
+            assertEquals(3, processor.received.size());
+            assertEquals(3, processor.processed.size());
+            assertTrue(processor.shutdownRequested);
+        }
+    }
+
+    @Test
+    public void publishesRolloverLagOfChildShards() throws Exception {
+        RecordingCloudWatch cloudwatch = new RecordingCloudWatch();
+        ILeaseManager<KinesisClientLease> leaseManager = leaseManager(lease(PARENT_SHARD_ID));
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Collections.<IRecordProcessor>singletonList(new RecordingProcessor()),
+            cloudwatch, "TEST", leaseManager, DRAIN_TIMEOUT_MILLIS);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(null));
+        composite.processRecords(batch(null, record("100")));
+        composite.processRecords(batch(null, record("200")));
+        composite.shutdownRequested(null);
+        // only the first record of the shard is measured
+        assertEquals(1, cloudwatch.datums.size());
+        assertEquals("ShardRolloverLag", cloudwatch.datums.get(0).getMetricName());
+        assertTrue(cloudwatch.datums.get(0).getValue() >= 1000.0);
+        verify(leaseManager);
+    }
+
+    @Test
+    public void skipsRolloverLagOfShardsWithoutParents() throws Exception {
+        RecordingCloudWatch cloudwatch = new RecordingCloudWatch();
+        ILeaseManager<KinesisClientLease> leaseManager = leaseManager(lease());
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Collections.<IRecordProcessor>singletonList(new RecordingProcessor()),
+            cloudwatch, "TEST", leaseManager, DRAIN_TIMEOUT_MILLIS);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(null, record("100")));
+        composite.shutdownRequested(null);
+        assertTrue(cloudwatch.datums.isEmpty());
+        verify(leaseManager);
+    }
+
+    @Test
+    public void skipsRolloverLagOfShardsResumedFromCheckpoint() {
+        RecordingCloudWatch cloudwatch = new RecordingCloudWatch();
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Collections.<IRecordProcessor>singletonList(new RecordingProcessor()),
+            cloudwatch, "TEST", null, DRAIN_TIMEOUT_MILLIS);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(new ExtendedSequenceNumber("100")));
+        composite.processRecords(batch(null, record("200")));
+        composite.shutdownRequested(null);
+        assertTrue(cloudwatch.datums.isEmpty());
+    }
+
+    @Test
+    public void skipsProcessorsStillWritingAfterDrainTimeout() {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingProcessor slow = new RecordingProcessor() {
+            @Override
+            public void processRecords(List<Record> records, IRecordProcessorCheckpointer checkpointer) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.processRecords(records, checkpointer);
+            }
+        };
+        RecordingProcessor fast = new RecordingProcessor();
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Arrays.<IRecordProcessor>asList(slow, fast), null, null, null, 100L);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(null, record("100")));
+        long start = System.currentTimeMillis();
+        composite.shutdownRequested(null);
+        assertTrue(System.currentTimeMillis() - start < DRAIN_TIMEOUT_MILLIS);
+        // the processor still writing must not emit nor checkpoint, the next lease owner replays its batch
+        assertFalse(slow.shutdownRequested);
+        assertTrue(fast.shutdownRequested);
+        assertEquals(1, fast.processed.size());
+        release.countDown();
+    }
+
+    @Test
+    public void drainsFailedBatches() {
+        RecordingProcessor failing = new RecordingProcessor() {
+            @Override
+            public void processRecords(List<Record> records, IRecordProcessorCheckpointer checkpointer) {
+                throw new IllegalStateException("emit failed");
+            }
+        };
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Collections.<IRecordProcessor>singletonList(failing), null, null, null,
+            DRAIN_TIMEOUT_MILLIS);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(null, record("100")));
+        composite.shutdownRequested(null);
+        assertTrue(failing.shutdownRequested);
+    }
+
+    @Test
+    public void checkpointsOnlyRecordsWrittenToEveryDestination() throws Exception {
+        CountDownLatch slowStart = new CountDownLatch(1);
+        CheckpointingProcessor fast = new CheckpointingProcessor(new CountDownLatch(0));
+        CheckpointingProcessor slow = new CheckpointingProcessor(slowStart);
+        SharedCheckpointerTests.RecordingCheckpointer checkpointer = new SharedCheckpointerTests.RecordingCheckpointer();
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Arrays.<IRecordProcessor>asList(fast, slow), null, null, null,
+            DRAIN_TIMEOUT_MILLIS);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(checkpointer, record("100")));
+        composite.processRecords(batch(checkpointer, record("200"), record("300")));
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (fast.processed.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(3, fast.processed.size());
+        // the fast destination wrote both batches, but the slow one has not written anything yet
+        assertTrue(checkpointer.checkpoints.isEmpty());
+        slowStart.countDown();
+        composite.shutdown(new ShutdownInput().withCheckpointer(checkpointer).withShutdownReason(ShutdownReason.TERMINATE));
+        assertEquals(3, slow.processed.size());
+        assertEquals(Arrays.asList("100", "300", SharedCheckpointerTests.SHARD_END), checkpointer.checkpoints);
+    }
+
+    @Test
+    public void cancelsQueuedBatchesOfLostLease() {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingProcessor slow = new RecordingProcessor() {
+            @Override
+            public void processRecords(List<Record> records, IRecordProcessorCheckpointer checkpointer) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.processRecords(records, checkpointer);
+            }
+        };
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Collections.<IRecordProcessor>singletonList(slow), null, null, null,
+            DRAIN_TIMEOUT_MILLIS);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(null, record("100")));
+        composite.processRecords(batch(null, record("200")));
+        long start = System.currentTimeMillis();
+        composite.shutdown(new ShutdownInput().withShutdownReason(ShutdownReason.ZOMBIE));
+        assertTrue(System.currentTimeMillis() - start < DRAIN_TIMEOUT_MILLIS);
+        // the batch being written is interrupted and the queued one is never written
+        assertEquals(1, slow.processed.size());
+        release.countDown();
+    }
+
+    @Test
+    public void skipsShardEndAfterDrainTimeout() {
+        SharedCheckpointerTests.RecordingCheckpointer checkpointer = new SharedCheckpointerTests.RecordingCheckpointer();
+        CheckpointingProcessor stuck = new CheckpointingProcessor(new CountDownLatch(1));
+        CompositeRecordProcessor composite = new CompositeRecordProcessor(Collections.<IRecordProcessor>singletonList(stuck), null, null, null,
+            100L);
+        composite.initialize(new InitializationInput().withShardId(SHARD_ID).withExtendedSequenceNumber(ExtendedSequenceNumber.TRIM_HORIZON));
+        composite.processRecords(batch(checkpointer, record("100")));
+        long start = System.currentTimeMillis();
+        composite.shutdown(new ShutdownInput().withCheckpointer(checkpointer).withShutdownReason(ShutdownReason.TERMINATE));
+        assertTrue(System.currentTimeMillis() - start < DRAIN_TIMEOUT_MILLIS);
+        // the cancelled batch is replayed from the last checkpoint instead of being skipped by the shard end
+        assertTrue(checkpointer.checkpoints.isEmpty());
+        // nor is the shard end checkpointed when the shutdown is retried
+        composite.shutdown(new ShutdownInput().withCheckpointer(checkpointer).withShutdownReason(ShutdownReason.TERMINATE));
+        assertTrue(checkpointer.checkpoints.isEmpty());
+    }
+}
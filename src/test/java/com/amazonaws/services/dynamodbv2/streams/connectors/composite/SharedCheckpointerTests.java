@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.composite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.streams.connectors.ThrottledCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IPreparedCheckpointer;
+import com.amazonaws.services.kinesis.clientlibrary.interfaces.IRecordProcessorCheckpointer;
+import com.amazonaws.services.kinesis.model.Record;
+
+public class SharedCheckpointerTests {
+    static final String SHARD_END = "SHARD_END";
+
+    /**
+     * KCL checkpointer recording the checkpoints written, the shard end as {@link #SHARD_END}.
+     */
+    static class RecordingCheckpointer implements IRecordProcessorCheckpointer {
+        final List<String> checkpoints = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void checkpoint() {
+            checkpoints.add(SHARD_END);
+        }
+
+        @Override
+        public void checkpoint(Record record) {
+            checkpoints.add(record.getSequenceNumber());
+        }
+
+        @Override
+        public void checkpoint(String sequenceNumber) {
+            checkpoints.add(sequenceNumber);
+        }
+
+        @Override
+        public void checkpoint(String sequenceNumber, long subSequenceNumber) {
+            checkpoints.add(sequenceNumber);
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint(Record record) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint(String sequenceNumber) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPreparedCheckpointer prepareCheckpoint(String sequenceNumber, long subSequenceNumber) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void checkpointsLowestSequenceNumberOfAllProcessors() throws Exception {
+        RecordingCheckpointer delegate = new RecordingCheckpointer();
+        SharedCheckpointer shared = new SharedCheckpointer(2);
+        shared.setDelegate(delegate);
+        shared.get(0).checkpoint("300");
+        // the second processor has not written anything yet
+        assertNull(shared.getCheckpointed());
+        shared.get(1).checkpoint("100");
+        shared.get(1).checkpoint("200");
+        shared.get(1).checkpoint("400");
+        assertEquals(Arrays.asList("100", "200", "300"), delegate.checkpoints);
+        assertEquals("300", shared.getCheckpointed());
+    }
+
+    @Test
+    public void neverCheckpointsBackwards() throws Exception {
+        RecordingCheckpointer delegate = new RecordingCheckpointer();
+        SharedCheckpointer shared = new SharedCheckpointer(2);
+        shared.setDelegate(delegate);
+        shared.get(0).checkpoint("200");
+        shared.get(1).checkpoint("200");
+        shared.get(1).checkpoint("100");
+        shared.get(0).checkpoint("1000");
+        assertEquals(Collections.singletonList("200"), delegate.checkpoints);
+    }
+
+    @Test
+    public void checkpointsShardEndOnceAllProcessorsReachedIt() throws Exception {
+        RecordingCheckpointer delegate = new RecordingCheckpointer();
+        SharedCheckpointer shared = new SharedCheckpointer(2);
+        shared.setDelegate(delegate);
+        shared.get(0).checkpoint("100");
+        shared.get(0).checkpoint();
+        // the processor at the shard end no longer holds the checkpoint back
+        shared.get(1).checkpoint("200");
+        shared.get(1).checkpoint();
+        assertEquals(Arrays.asList("200", SHARD_END), delegate.checkpoints);
+    }
+
+    @Test
+    public void notifiesListenersOnlyOnceCheckpointIsWritten() throws Exception {
+        RecordingCheckpointer delegate = new RecordingCheckpointer();
+        SharedCheckpointer shared = new SharedCheckpointer(2);
+        shared.setDelegate(delegate);
+        List<String> fast = new ArrayList<String>();
+        List<String> slow = new ArrayList<String>();
+        // the fast processor checkpoints through its throttled checkpointer, as the record processors do
+        ThrottledCheckpointer throttled = new ThrottledCheckpointer(0, 0, null, "TEST");
+        throttled.setCheckpointListener(fast::add);
+        throttled.setDelegate(shared.get(0));
+        ((IDeferredCheckpointer) shared.get(1)).setCheckpointListener(slow::add);
+
+        throttled.checkpoint("300");
+        // held back by the slow processor, which has not written anything yet
+        assertEquals(Collections.emptyList(), delegate.checkpoints);
+        assertEquals(Collections.emptyList(), fast);
+        shared.get(1).checkpoint("100");
+        assertEquals(Collections.singletonList("100"), fast);
+        assertEquals(Collections.singletonList("100"), slow);
+        throttled.checkpoint();
+        shared.get(1).checkpoint();
+        assertEquals(Arrays.asList("100", null), fast);
+        assertEquals(Arrays.asList("100", null), slow);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.filter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Identity;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+public class ExpressionFilterTests {
+
+    private static Record record(OperationType operation, String id, String tenant, String count) {
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("id", new AttributeValue().withS(id));
+        keys.put("tenant", new AttributeValue().withS(tenant));
+        Map<String, AttributeValue> image = new HashMap<String, AttributeValue>(keys);
+        image.put("count", new AttributeValue().withN(count));
+        image.put("active", new AttributeValue().withBOOL(true));
+        return new Record().withEventName(operation.toString())
+            .withDynamodb(new StreamRecord().withKeys(keys).withNewImage(OperationType.REMOVE == operation ? null : image).withOldImage(image));
+    }
+
+    @Test
+    public void dropsTimeToLiveDeletes() {
+        ExpressionFilter filter = new ExpressionFilter(
+            "NOT (userIdentity.type = 'Service' AND userIdentity.principalId = 'dynamodb.amazonaws.com')");
+        Record expired = record(OperationType.REMOVE, "a", "t", "1")
+            .withUserIdentity(new Identity().withType("Service").withPrincipalId("dynamodb.amazonaws.com"));
+        assertFalse(filter.keepRecord(expired));
+        assertTrue(filter.keepRecord(record(OperationType.REMOVE, "a", "t", "1")));
+    }
+
+    @Test
+    public void matchesKeysAndImages() {
+        ExpressionFilter filter = new ExpressionFilter("not begins_with(keys.id, 'local#') and not keys.tenant in ('eu-only', 'o''brien')"
+            + " and (newImage.count >= 10 or newImage.count < -2.5 or attribute_not_exists(newImage.count))");
+        assertTrue(filter.keepRecord(record(OperationType.INSERT, "a", "t", "10")));
+        assertTrue(filter.keepRecord(record(OperationType.INSERT, "a", "t", "-3")));
+        assertTrue(filter.keepRecord(record(OperationType.INSERT, "a", "t", "123456789012345678901234567890")));
+        assertTrue(filter.keepRecord(record(OperationType.REMOVE, "a", "t", "0")));
+        assertFalse(filter.keepRecord(record(OperationType.INSERT, "a", "t", "9.99")));
+        assertFalse(filter.keepRecord(record(OperationType.INSERT, "local#a", "t", "10")));
+        assertFalse(filter.keepRecord(record(OperationType.INSERT, "a", "eu-only", "10")));
+        assertFalse(filter.keepRecord(record(OperationType.INSERT, "a", "o'brien", "10")));
+    }
+
+    @Test
+    public void comparesEventNamesAndBooleans() {
+        ExpressionFilter filter = new ExpressionFilter("eventName <> 'REMOVE' AND newImage.active = TRUE");
+        assertTrue(filter.keepRecord(record(OperationType.MODIFY, "a", "t", "1")));
+        assertFalse(filter.keepRecord(record(OperationType.REMOVE, "a", "t", "1")));
+    }
+
+    @Test
+    public void comparesStringsByUtf8Bytes() {
+        // an emoji sorts before U+FFFD in UTF-16 but after it in UTF-8, as in DynamoDB
+        ExpressionFilter filter = new ExpressionFilter("keys.id > '\uFFFD' AND userIdentity.type < '\uD83D\uDE00'");
+        Record record = record(OperationType.INSERT, "\uD83D\uDE00", "t", "1").withUserIdentity(new Identity().withType("\uFFFD"));
+        assertTrue(filter.keepRecord(record));
+        assertFalse(filter.keepRecord(record(OperationType.INSERT, "\uFFFD", "t", "1").withUserIdentity(new Identity().withType("\uFFFD"))));
+    }
+
+    @Test
+    public void notEqualMatchesMissingAttributes() {
+        Record removed = record(OperationType.REMOVE, "a", "t", "1");
+        assertTrue(new ExpressionFilter("newImage.count <> 1").keepRecord(removed));
+        assertTrue(new ExpressionFilter("newImage.id <> 'a'").keepRecord(removed));
+        assertTrue(new ExpressionFilter("newImage.active <> TRUE").keepRecord(removed));
+        assertTrue(new ExpressionFilter("userIdentity.type <> 'Service'").keepRecord(removed));
+        // an attribute of another type than the literal is not equal either
+        assertTrue(new ExpressionFilter("keys.id <> 1").keepRecord(removed));
+        assertFalse(new ExpressionFilter("newImage.count = 1 OR newImage.count < 1 OR newImage.count >= 1").keepRecord(removed));
+        assertFalse(new ExpressionFilter("oldImage.count <> 1").keepRecord(removed));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownOperand() {
+        new ExpressionFilter("userIdentity.name = 'x'");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTrailingTokens() {
+        new ExpressionFilter("eventName = 'INSERT' 'MODIFY'");
+    }
+}
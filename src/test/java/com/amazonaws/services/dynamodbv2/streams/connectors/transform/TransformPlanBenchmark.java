@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.transform;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+/**
+ * Per record cost of a transform plan, run with {@code -prof gc} to see the allocation rate. Not run by the unit tests,
+ * start {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformPlanBenchmark {
+
+    private TransformPlan rewrite;
+    private TransformPlan route;
+    private TransformPlan unmatched;
+    private Record record;
+
+    @Setup
+    public void setUp() {
+        rewrite = new TransformPlan("RENAME customer_id TO customerId; SET source = 'us-east-1'; PREFIX id 'us#' TO 'eu#'");
+        route = new TransformPlan("ROUTE TO 'archive' WHEN newImage.status = 'CLOSED'; ROUTE TO 'large' WHEN newImage.total >= 1000");
+        unmatched = new TransformPlan("RENAME other TO another; PREFIX id 'ap#' TO 'eu#'");
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("id", new AttributeValue().withS("us#42"));
+        Map<String, AttributeValue> image = new HashMap<String, AttributeValue>(keys);
+        image.put("customer_id", new AttributeValue().withS("customer"));
+        image.put("status", new AttributeValue().withS("OPEN"));
+        image.put("total", new AttributeValue().withN("1250"));
+        for (int i = 0; i < 10; i++) {
+            image.put("attribute" + i, new AttributeValue().withS("value" + i));
+        }
+        record = new Record().withEventName(OperationType.MODIFY.toString())
+            .withDynamodb(new StreamRecord().withKeys(keys).withNewImage(image).withOldImage(image).withSequenceNumber("1"));
+    }
+
+    @Benchmark
+    public Record rewrite() {
+        return rewrite.transform(record);
+    }
+
+    @Benchmark
+    public Record route() {
+        return route.transform(record);
+    }
+
+    @Benchmark
+    public Record unmatched() {
+        return unmatched.transform(record);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TransformPlanBenchmark.class.getSimpleName()).build()).run();
+    }
+}
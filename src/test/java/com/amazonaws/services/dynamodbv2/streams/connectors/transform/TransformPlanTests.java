@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+public class TransformPlanTests {
+
+    private static Record record(OperationType operation, String id, String status) {
+        Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+        keys.put("id", new AttributeValue().withS(id));
+        Map<String, AttributeValue> image = new HashMap<String, AttributeValue>(keys);
+        image.put("customer_id", new AttributeValue().withS("c"));
+        image.put("status", new AttributeValue().withS(status));
+        return new Record().withEventName(operation.toString()).withDynamodb(new StreamRecord().withKeys(keys)
+            .withNewImage(OperationType.REMOVE == operation ? null : image).withOldImage(image).withSequenceNumber("1"));
+    }
+
+    @Test
+    public void rewritesKeysAndImagesWithoutChangingTheRecord() {
+        TransformPlan plan = new TransformPlan("RENAME customer_id TO customerId; SET source = 'us-east-1'; SET version = 2; PREFIX id 'us#' TO 'eu#'");
+        Record record = record(OperationType.MODIFY, "us#1", "OPEN");
+        Record transformed = plan.transform(record);
+        StreamRecord streamRecord = transformed.getDynamodb();
+        assertEquals("eu#1", streamRecord.getKeys().get("id").getS());
+        assertEquals("eu#1", streamRecord.getNewImage().get("id").getS());
+        assertEquals("c", streamRecord.getNewImage().get("customerId").getS());
+        assertFalse(streamRecord.getNewImage().containsKey("customer_id"));
+        assertEquals("us-east-1", streamRecord.getNewImage().get("source").getS());
+        assertEquals("2", streamRecord.getNewImage().get("version").getN());
+        assertFalse(streamRecord.getOldImage().containsKey("source"));
+        assertEquals("1", streamRecord.getSequenceNumber());
+        assertEquals("us#1", record.getDynamodb().getKeys().get("id").getS());
+        assertTrue(record.getDynamodb().getNewImage().containsKey("customer_id"));
+    }
+
+    @Test
+    public void returnsUnchangedRecord() {
+        TransformPlan plan = new TransformPlan("RENAME other TO another; PREFIX id 'us#' TO 'eu#';");
+        Record record = record(OperationType.MODIFY, "ap#1", "OPEN");
+        assertSame(record, plan.transform(record));
+    }
+
+    @Test
+    public void routesFirstMatchingRoute() {
+        TransformPlan plan = new TransformPlan("ROUTE TO 'closed;archive' WHEN newImage.status = 'CLOSED;' OR eventName = 'REMOVE';"
+            + " ROUTE TO 'other' WHEN attribute_exists(keys.id)");
+        assertEquals("closed;archive", ((TransformedRecord) plan.transform(record(OperationType.MODIFY, "1", "CLOSED;"))).getDestinationTable());
+        assertEquals("closed;archive", ((TransformedRecord) plan.transform(record(OperationType.REMOVE, "1", "OPEN"))).getDestinationTable());
+        assertEquals("other", ((TransformedRecord) plan.transform(record(OperationType.MODIFY, "1", "OPEN"))).getDestinationTable());
+    }
+
+    @Test
+    public void injectsConstantsWithoutRoute() {
+        Record injected = new TransformPlan("SET a = TRUE").transform(record(OperationType.INSERT, "1", "OPEN"));
+        assertTrue(injected instanceof TransformedRecord);
+        assertNull(((TransformedRecord) injected).getDestinationTable());
+        assertTrue(injected.getDynamodb().getNewImage().get("a").getBOOL());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownStatement() {
+        new TransformPlan("DROP status");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedRouteCondition() {
+        new TransformPlan("ROUTE TO 'archive' WHEN newImage.status =");
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBStreamsConnectorConfiguration;
+import com.amazonaws.services.dynamodbv2.streams.connectors.bootstrap.BootstrapSink;
+import com.amazonaws.services.kinesis.connectors.interfaces.IKinesisConnectorPipeline;
+
+public class DivergenceRepairTests {
+    private static final String TABLE_NAME = "table";
+    private static final String HASH_KEY = "hashKey";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, AttributeValue> key(String value) {
+        return Collections.singletonMap(HASH_KEY, new AttributeValue().withS(value));
+    }
+
+    private static String line(Divergence.Type type, String key) {
+        return new Divergence(type, key(key)).toLine();
+    }
+
+    /**
+     * Sink recording the keys written, and failing the records of the given key.
+     */
+    private static class RecordingSink extends BootstrapSink {
+        private final List<String> written = new ArrayList<String>();
+        private final String failingKey;
+
+        @SuppressWarnings("unchecked")
+        RecordingSink(String failingKey) {
+            super(pipeline(), new DynamoDBStreamsConnectorConfiguration(new Properties(), null));
+            this.failingKey = failingKey;
+        }
+
+        @SuppressWarnings("rawtypes")
+        private static IKinesisConnectorPipeline pipeline() {
+            IKinesisConnectorPipeline pipeline = createNiceMock(IKinesisConnectorPipeline.class);
+            replay(pipeline);
+            return pipeline;
+        }
+
+        @Override
+        public int write(List<Record> records) {
+            int failed = 0;
+            for (Record record : records) {
+                String key = record.getDynamodb().getKeys().get(HASH_KEY).getS();
+                if (key.equals(failingKey)) {
+                    failed++;
+                } else {
+                    written.add(key);
+                }
+            }
+            return failed;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    @Test
+    public void existingItemsAreModifiedAndMissingItemsRemoved() throws Exception {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(key("a"));
+        item.put("att", new AttributeValue().withN("1"));
+        AmazonDynamoDB dynamodb = createMock(AmazonDynamoDB.class);
+        expect(dynamodb.getItem(anyObject(GetItemRequest.class))).andReturn(new GetItemResult().withItem(item));
+        expect(dynamodb.getItem(anyObject(GetItemRequest.class))).andReturn(new GetItemResult());
+        replay(dynamodb);
+
+        DivergenceRepair repair = new DivergenceRepair(dynamodb, TABLE_NAME, Collections.emptyList(), 0, folder.newFile());
+        Record modify = repair.toRecord(key("a"));
+        assertEquals(OperationType.MODIFY.toString(), modify.getEventName());
+        assertEquals(item, modify.getDynamodb().getNewImage());
+        Record remove = repair.toRecord(key("b"));
+        assertEquals(OperationType.REMOVE.toString(), remove.getEventName());
+        assertEquals(key("b"), remove.getDynamodb().getKeys());
+        assertNull(remove.getDynamodb().getNewImage());
+        verify(dynamodb);
+    }
+
+    @Test
+    public void restartedRepairContinuesAfterTheRepairedLines() throws Exception {
+        File divergenceFile = folder.newFile();
+        Files.write(divergenceFile.toPath(), Arrays.asList(line(Divergence.Type.DIFFERENT, "a"), line(Divergence.Type.MISSING_IN_DESTINATION, "b"),
+            line(Divergence.Type.FAILED_WRITE, "c")), StandardCharsets.UTF_8);
+        AmazonDynamoDB dynamodb = createMock(AmazonDynamoDB.class);
+        expect(dynamodb.getItem(anyObject(GetItemRequest.class))).andReturn(new GetItemResult()).times(4);
+        replay(dynamodb);
+
+        assertEquals(3L, new DivergenceRepair(dynamodb, TABLE_NAME, Collections.emptyList(), 0, divergenceFile).run());
+        Files.write(divergenceFile.toPath(), Collections.singletonList(line(Divergence.Type.MISSING_IN_SOURCE, "d")), StandardCharsets.UTF_8,
+            StandardOpenOption.APPEND);
+        assertEquals(1L, new DivergenceRepair(dynamodb, TABLE_NAME, Collections.emptyList(), 0, divergenceFile).run());
+        assertEquals(0L, new DivergenceRepair(dynamodb, TABLE_NAME, Collections.emptyList(), 0, divergenceFile).run());
+        verify(dynamodb);
+    }
+
+    @Test
+    public void offsetStaysBeforeBatchWithFailures() throws Exception {
+        File divergenceFile = folder.newFile();
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < DivergenceRepair.BATCH_SIZE + 5; i++) {
+            lines.add(line(Divergence.Type.DIFFERENT, "k" + i));
+        }
+        Files.write(divergenceFile.toPath(), lines, StandardCharsets.UTF_8);
+        AmazonDynamoDB dynamodb = createMock(AmazonDynamoDB.class);
+        expect(dynamodb.getItem(anyObject(GetItemRequest.class))).andReturn(new GetItemResult()).times(DivergenceRepair.BATCH_SIZE + 10);
+        replay(dynamodb);
+
+        // a record of the second batch cannot be written
+        String failingKey = "k" + (DivergenceRepair.BATCH_SIZE + 2);
+        RecordingSink sink = new RecordingSink(failingKey);
+        assertEquals(DivergenceRepair.BATCH_SIZE + 5L, new DivergenceRepair(dynamodb, TABLE_NAME, Collections.singletonList(sink), 0, divergenceFile).run());
+        assertEquals(DivergenceRepair.BATCH_SIZE + 4, sink.written.size());
+        // the next run retries the second batch only
+        RecordingSink retry = new RecordingSink(null);
+        assertEquals(5L, new DivergenceRepair(dynamodb, TABLE_NAME, Collections.singletonList(retry), 0, divergenceFile).run());
+        assertTrue(retry.written.contains(failingKey));
+        verify(dynamodb);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.streams.connectors.DynamoDBConnectorUtilities;
+
+public class MerkleTreeTests {
+    private static final String HASH_KEY = "hashKey";
+    private static final int DEPTH = 8;
+
+    private static Map<String, AttributeValue> item(int key, String value) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put(HASH_KEY, new AttributeValue().withN(Integer.toString(key)));
+        item.put("value", new AttributeValue().withS(value));
+        return item;
+    }
+
+    private static byte[] keyDigest(Map<String, AttributeValue> item) {
+        return DynamoDBConnectorUtilities.getKeyDigest(Collections.singletonMap(HASH_KEY, item.get(HASH_KEY)));
+    }
+
+    private static MerkleTree tree(boolean reverse, int changedKey) {
+        MerkleTree tree = new MerkleTree(DEPTH);
+        for (int i = 0; i < 1000; i++) {
+            int key = reverse ? 999 - i : i;
+            Map<String, AttributeValue> item = item(key, key == changedKey ? "changed" : "value");
+            tree.add(keyDigest(item), ItemHashes.hash(item));
+        }
+        tree.seal();
+        return tree;
+    }
+
+    @Test
+    public void treesOfTheSameItemsAreEqual() {
+        MerkleTree first = tree(false, -1);
+        MerkleTree second = tree(true, -1);
+        assertEquals(first.getRootHash(), second.getRootHash());
+        assertTrue(first.diff(second).isEmpty());
+    }
+
+    @Test
+    public void diffFindsTheLeafOfTheChangedItem() {
+        MerkleTree first = tree(false, -1);
+        MerkleTree second = tree(true, 42);
+        assertNotEquals(first.getRootHash(), second.getRootHash());
+        assertEquals(Collections.singletonList(first.getLeaf(keyDigest(item(42, "changed")))), first.diff(second));
+    }
+
+    @Test
+    public void treeReadBackComparesLikeTheWrittenOne() throws Exception {
+        MerkleTree written = tree(false, 42);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        written.write(new DataOutputStream(bytes));
+        assertEquals(4 + 8 * (1 << DEPTH), bytes.size());
+        MerkleTree read = MerkleTree.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(DEPTH, read.getDepth());
+        assertEquals(written.getRootHash(), read.getRootHash());
+        assertEquals(written.diff(tree(true, -1)), read.diff(tree(true, -1)));
+    }
+
+    @Test
+    public void itemHashDoesNotDependOnAttributeOrder() {
+        Map<String, AttributeValue> first = new LinkedHashMap<String, AttributeValue>();
+        first.put("a", new AttributeValue().withSS("x", "y"));
+        first.put("b", new AttributeValue().withN("1"));
+        Map<String, AttributeValue> second = new LinkedHashMap<String, AttributeValue>();
+        second.put("b", new AttributeValue().withN("1"));
+        second.put("a", new AttributeValue().withSS(Arrays.asList("y", "x")));
+        assertEquals(ItemHashes.hash(first), ItemHashes.hash(second));
+        second.put("b", new AttributeValue().withS("1"));
+        assertNotEquals(ItemHashes.hash(first), ItemHashes.hash(second));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.amazonaws.services.dynamodbv2.streams.connectors.verify;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+/**
+ * Runs the verifier against tables held in memory: a is equal in both tables, b differs, c is missing in the
+ * destination and d is missing in the source.
+ */
+public class MerkleVerifierTests {
+    private static final String HASH_KEY = "hashKey";
+    private static final int DEPTH = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, AttributeValue> key(String value) {
+        return Collections.singletonMap(HASH_KEY, new AttributeValue().withS(value));
+    }
+
+    private static Map<String, AttributeValue> item(String key, String value) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(key(key));
+        item.put("att", new AttributeValue().withS(value));
+        return item;
+    }
+
+    /**
+     * @return a client of a table holding the given items, scanned as a single segment
+     */
+    @SafeVarargs
+    private static AmazonDynamoDB table(Map<String, AttributeValue>... items) {
+        Map<Map<String, AttributeValue>, Map<String, AttributeValue>> table = new HashMap<Map<String, AttributeValue>, Map<String, AttributeValue>>();
+        for (Map<String, AttributeValue> item : items) {
+            table.put(key(item.get(HASH_KEY).getS()), item);
+        }
+        AmazonDynamoDB dynamodb = createMock(AmazonDynamoDB.class);
+        expect(dynamodb.describeTable(anyObject(String.class))).andReturn(new DescribeTableResult().withTable(new TableDescription()
+            .withKeySchema(new KeySchemaElement(HASH_KEY, KeyType.HASH)))).anyTimes();
+        expect(dynamodb.scan(anyObject(ScanRequest.class))).andAnswer(() -> new ScanResult().withItems(new ArrayList<>(table.values())))
+            .anyTimes();
+        expect(dynamodb.getItem(anyObject(GetItemRequest.class)))
+            .andAnswer(() -> new GetItemResult().withItem(table.get(((GetItemRequest) getCurrentArguments()[0]).getKey()))).anyTimes();
+        replay(dynamodb);
+        return dynamodb;
+    }
+
+    private static AmazonDynamoDB source() {
+        return table(item("a", "1"), item("b", "1"), item("c", "1"));
+    }
+
+    private static AmazonDynamoDB destination() {
+        return table(item("a", "1"), item("b", "2"), item("d", "1"));
+    }
+
+    /**
+     * A client for the other region, which the exports and extracts never call.
+     */
+    private static AmazonDynamoDB remote() {
+        AmazonDynamoDB dynamodb = createMock(AmazonDynamoDB.class);
+        replay(dynamodb);
+        return dynamodb;
+    }
+
+    private static Set<String> divergences(File divergenceFile) throws Exception {
+        return new HashSet<String>(Files.readAllLines(divergenceFile.toPath(), StandardCharsets.UTF_8));
+    }
+
+    private static Set<String> expected() {
+        return new HashSet<String>(Arrays.asList(new Divergence(Divergence.Type.DIFFERENT, key("b")).toLine(),
+            new Divergence(Divergence.Type.MISSING_IN_DESTINATION, key("c")).toLine(),
+            new Divergence(Divergence.Type.MISSING_IN_SOURCE, key("d")).toLine()));
+    }
+
+    private static void copy(File from, File to, String fileName) throws Exception {
+        Files.copy(new File(from, fileName).toPath(), new File(to, fileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Test
+    public void singleRunFindsDivergences() throws Exception {
+        File divergenceFile = folder.newFile();
+        MerkleVerifier verifier = new MerkleVerifier(source(), "source", destination(), "destination", 1, 0, DEPTH, divergenceFile);
+        assertEquals(3L, verifier.run());
+        assertEquals(expected(), divergences(divergenceFile));
+    }
+
+    @Test
+    public void stepsInEachRegionFindDivergences() throws Exception {
+        File sourceRegion = folder.newFolder();
+        File destinationRegion = folder.newFolder();
+        File divergenceFile = folder.newFile();
+        MerkleVerifier inSource = new MerkleVerifier(source(), "source", remote(), "destination", 1, 0, DEPTH, divergenceFile);
+        MerkleVerifier inDestination = new MerkleVerifier(remote(), "source", destination(), "destination", 1, 0, DEPTH, divergenceFile);
+
+        assertEquals(3L, inSource.run(MerkleVerifier.Step.EXPORT_SOURCE, sourceRegion));
+        assertEquals(3L, inDestination.run(MerkleVerifier.Step.EXPORT_DESTINATION, destinationRegion));
+        copy(sourceRegion, destinationRegion, "source" + MerkleVerifier.TREE_SUFFIX);
+        copy(destinationRegion, sourceRegion, "destination" + MerkleVerifier.TREE_SUFFIX);
+        inSource.run(MerkleVerifier.Step.EXTRACT_SOURCE, sourceRegion);
+        inDestination.run(MerkleVerifier.Step.EXTRACT_DESTINATION, destinationRegion);
+        copy(sourceRegion, destinationRegion, "source" + MerkleVerifier.EXTRACT_SUFFIX);
+
+        MerkleVerifier compare = new MerkleVerifier(source(), "source", destination(), "destination", 1, 0, DEPTH, divergenceFile);
+        assertEquals(3L, compare.run(MerkleVerifier.Step.COMPARE, destinationRegion));
+        assertEquals(expected(), divergences(divergenceFile));
+    }
+}